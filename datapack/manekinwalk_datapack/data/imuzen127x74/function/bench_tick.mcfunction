@@ -0,0 +1,10 @@
+# /bot bench の計測用ボット（aiminer_bench_feet / aiminer_bench_body）をbot_tickと同じ手順で動かす
+execute as @e[tag=aiminer_bench_body] at @s at @n[tag=aiminer_bench_feet] run tp @s ~ ~ ~
+execute as @e[tag=aiminer_bench_body] at @s rotated as @n[tag=aiminer_bench_feet] run rotate @s ~ ~
+execute as @e[tag=aiminer_bench_feet] run data modify entity @s AngryAt set from entity @e[limit=1,tag=aim1] UUID
+execute as @e[tag=aiminer_bench_feet] run data modify entity @s AngerTime set value 1
+
+execute as @e[tag=aiminer_bench_feet] store result score @s movex run data get entity @s Motion[0] 1000
+execute as @e[tag=aiminer_bench_feet] store result score @s movez run data get entity @s Motion[2] 1000
+
+execute as @e[tag=aiminer_bench_feet] at @s run function imuzen127x74:ifmine
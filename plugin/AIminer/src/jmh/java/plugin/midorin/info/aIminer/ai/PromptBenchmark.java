@@ -0,0 +1,107 @@
+package plugin.midorin.info.aIminer.ai;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import plugin.midorin.info.aIminer.model.BlockVisionData;
+import plugin.midorin.info.aIminer.model.BrainData;
+import plugin.midorin.info.aIminer.model.ChatMessage;
+import plugin.midorin.info.aIminer.model.Episode;
+import plugin.midorin.info.aIminer.model.Position;
+import plugin.midorin.info.aIminer.model.Task;
+import plugin.midorin.info.aIminer.model.TaskType;
+import plugin.midorin.info.aIminer.model.VisibleBlock;
+import plugin.midorin.info.aIminer.util.CycleTracer;
+import plugin.midorin.info.aIminer.util.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * AIサーバーとのやり取りのうちCPUで完結する部分（プロンプトの組み立てと応答の解析）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PromptBenchmark {
+    private static final String RESPONSE = "考えた結果です。\n```json\n{\n"
+        + "  \"thought\": \"近くに木があるので採取する\",\n"
+        + "  \"memory_updates\": {\"last_target\": \"oak\", \"trees_seen\": 3},\n"
+        + "  \"new_tasks\": [\n"
+        + "    {\"type\": \"MINE_WOOD\", \"parameters\": {\"x\": -20, \"y\": 64, \"z\": 5}, \"reason\": \"近くの木を採取\"},\n"
+        + "    {\"type\": \"MOVE_TO\", \"parameters\": {\"x\": -25, \"y\": 64, \"z\": 10}, \"reason\": \"探索のため移動\"},\n"
+        + "    {\"type\": \"CHAT\", \"parameters\": {\"message\": \"木を切りに行きます\"}, \"reason\": \"状況報告\"}\n"
+        + "  ]\n}\n```\n";
+
+    /**
+     * 視覚のブロック数・メモリの項目数・チャットとエピソードの件数
+     */
+    @Param({"10", "50"})
+    public int size;
+
+    private AIServerClient client;
+    private BrainData brain;
+    private List<ChatMessage> chat;
+    private List<Episode> episodes;
+
+    @Setup
+    public void setUp() {
+        Logger logger = Logger.getLogger("AIminer-bench-prompt");
+        logger.setLevel(Level.OFF);
+        client = new AIServerClient("http://localhost:1", logger, new MetricsRegistry(), new CycleTracer(false, 0, null), 1);
+
+        brain = new BrainData();
+        List<VisibleBlock> blocks = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            blocks.add(new VisibleBlock(new Position(i % 7, 0, i / 7), new Position(100 + i % 7, 64, 200 + i / 7),
+                i % 3 == 0 ? "OAK_LOG" : "STONE", 1.0 + i * 0.3));
+        }
+        BlockVisionData vision = new BlockVisionData(10, null, blocks);
+        vision.setBotPosition(new Position(100.5, 64, 200.5));
+        brain.getVision().setBlocks(vision);
+        for (int i = 0; i < size; i++) {
+            brain.getMemory().put("key_" + i, "value " + i);
+        }
+        for (int i = 0; i < 5; i++) {
+            brain.getTasks().add(new Task(i, TaskType.MINE_WOOD, Map.<String, Object>of("x", 100, "y", 64, "z", 200 + i), "bench"));
+        }
+        chat = new ArrayList<>();
+        episodes = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < Math.min(size, 15); i++) {
+            chat.add(new ChatMessage(now - i * 1000L, "player" + (i % 3), "bot, please mine the oak " + i,
+                i % 4 == 0 ? ChatMessage.MENTION : 0));
+            episodes.add(new Episode(i, now - i * 60_000L, "TASK", "MINE_WOOD completed at (100, 64, " + i + ")",
+                new Position(100, 64, i)));
+        }
+    }
+
+    @Benchmark
+    public String buildSystemPrompt() {
+        return client.buildSystemPrompt(brain.getRules());
+    }
+
+    @Benchmark
+    public String buildUserMessage() {
+        return client.buildUserMessage(brain, chat, episodes);
+    }
+
+    @Benchmark
+    public int findJsonStart() {
+        return client.findJsonStart(RESPONSE);
+    }
+
+    @Benchmark
+    public AIDecision parseAIResponse() {
+        return client.parseAIResponse(brain, chat, RESPONSE);
+    }
+}
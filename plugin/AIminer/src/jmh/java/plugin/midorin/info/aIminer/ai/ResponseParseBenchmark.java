@@ -0,0 +1,251 @@
+package plugin.midorin.info.aIminer.ai;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import plugin.midorin.info.aIminer.model.BrainData;
+import plugin.midorin.info.aIminer.model.ChatMessage;
+import plugin.midorin.info.aIminer.model.Task;
+import plugin.midorin.info.aIminer.model.TaskStatus;
+import plugin.midorin.info.aIminer.model.TaskType;
+import plugin.midorin.info.aIminer.util.CycleTracer;
+import plugin.midorin.info.aIminer.util.MetricsRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * LLMサーバーの応答の本文から判断（タスク）までの解析
+ * - tree: 以前の方法（本文をStringにして木にし、contentを正規表現で切り出して、もう一度木にする。パラメーターはMap.classで往復）
+ * - streaming: JsonReaderで本文を読みながら必要な値だけを取り出す（contentの文字列だけは作る）
+ * 応答は会話ログ（*.md の ```json ブロック）かExchangeRecorderの記録（*.jsonl）から読み、OpenAI互換の本文に包む
+ * （見つからなければ組み込みの応答を使う）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseParseBenchmark {
+    private static final Pattern JSON_BLOCK = Pattern.compile("```json\\s*\\n(.*?)```", Pattern.DOTALL);
+    private static final String BUILT_IN = "{\n"
+        + "  \"thought\": \"近くに木があるので採取する\",\n"
+        + "  \"memory_updates\": {\"last_target\": \"oak\", \"trees_seen\": 3},\n"
+        + "  \"new_tasks\": [\n"
+        + "    {\"type\": \"MINE_WOOD\", \"parameters\": {\"x\": -20, \"y\": 64, \"z\": 5}, \"reason\": \"近くの木を採取\"},\n"
+        + "    {\"type\": \"CHAT\", \"parameters\": {\"message\": \"木を切りに行きます\"}, \"reason\": \"状況報告\"}\n"
+        + "  ]\n}";
+
+    /**
+     * 会話ログのディレクトリ・ファイル、またはExchangeRecorderの記録（jmhはプロジェクトのディレクトリで動く）
+     */
+    @Param({"../../conversation-logs"})
+    public String source;
+
+    @Param({"tree", "streaming"})
+    public String parser;
+
+    private final Gson gson = new Gson();
+    private AIServerClient client;
+    private ModelBackend backend;
+    private BrainData brain;
+    private List<ChatMessage> chat;
+    private byte[][] bodies;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        Logger logger = Logger.getLogger("AIminer-bench-response");
+        logger.setLevel(Level.OFF);
+        client = new AIServerClient("http://localhost:1", logger, new MetricsRegistry(), new CycleTracer(false, 0, null), 1);
+        backend = new OpenAICompatibleBackend("http://localhost:1", "local-model");
+        brain = new BrainData();
+        chat = new ArrayList<>();
+
+        List<String> contents = loadContents(Path.of(source));
+        if (contents.isEmpty()) {
+            contents.add("```json\n" + BUILT_IN + "\n```");
+        }
+        bodies = new byte[contents.size()][];
+        for (int i = 0; i < contents.size(); i++) {
+            bodies[i] = envelope(contents.get(i)).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 記録された応答を1件ずつ順番に解析する
+     */
+    @Benchmark
+    public AIDecision parse() throws IOException {
+        byte[] body = bodies[next];
+        next = (next + 1) % bodies.length;
+        if (parser.equals("streaming")) {
+            // OkHttpのcharStream()と同じく、バイト列をそのまま読む
+            ModelBackend.Completion completion = backend.parseResponse(
+                new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+            return client.parseAIResponse(brain, chat, completion.getContent());
+        }
+        return parseTree(new String(body, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 以前の解析（比較用にそのまま残したもの）
+     */
+    private AIDecision parseTree(String responseBody) {
+        JsonObject responseJson = JsonParser.parseString(responseBody).getAsJsonObject();
+        String content = responseJson.getAsJsonArray("choices").get(0).getAsJsonObject()
+            .getAsJsonObject("message").get("content").getAsString();
+
+        AIDecision decision = new AIDecision();
+        String jsonStr = extractJson(content);
+        if (jsonStr == null) {
+            return decision;
+        }
+        JsonObject responseObj = JsonParser.parseString(jsonStr).getAsJsonObject();
+        if (responseObj.has("thought")) {
+            decision.setThought(responseObj.get("thought").getAsString());
+        }
+        if (responseObj.has("memory_updates") && !responseObj.get("memory_updates").isJsonNull()) {
+            JsonObject memoryUpdates = responseObj.getAsJsonObject("memory_updates");
+            for (String key : memoryUpdates.keySet()) {
+                decision.getMemoryUpdates().put(key, gson.fromJson(memoryUpdates.get(key), Object.class));
+            }
+        }
+        if (responseObj.has("new_tasks") && responseObj.get("new_tasks").isJsonArray()) {
+            JsonArray tasksArray = responseObj.getAsJsonArray("new_tasks");
+            for (int i = 0; i < tasksArray.size(); i++) {
+                Task task = parseTask(tasksArray.get(i).getAsJsonObject());
+                if (task != null) {
+                    decision.getNewTasks().add(task);
+                }
+            }
+        }
+        if (decision.getNewTasks().isEmpty() && responseObj.has("new_task") && !responseObj.get("new_task").isJsonNull()) {
+            Task task = parseTask(responseObj.getAsJsonObject("new_task"));
+            if (task != null) {
+                decision.getNewTasks().add(task);
+            }
+        }
+        return decision;
+    }
+
+    private Task parseTask(JsonObject taskObj) {
+        try {
+            Task task = new Task();
+            task.setType(TaskType.valueOf(taskObj.get("type").getAsString()));
+            if (taskObj.has("parameters")) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> params = gson.fromJson(taskObj.get("parameters"), Map.class);
+                task.setParameters(params);
+            }
+            if (taskObj.has("reason")) {
+                task.setReason(taskObj.get("reason").getAsString());
+            }
+            task.setStatus(TaskStatus.PENDING);
+            return task;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String extractJson(String content) {
+        Matcher matcher = Pattern.compile("```(?:json)?\\s*\\n?([\\s\\S]*?)\\n?```").matcher(content);
+        if (matcher.find()) {
+            return matcher.group(1).trim();
+        }
+        matcher = Pattern.compile("\\{[\\s\\S]*\\}").matcher(content);
+        return matcher.find() ? matcher.group(0) : null;
+    }
+
+    /**
+     * 応答の本文（contentは会話ログのJSONをコードブロックに入れたもの）
+     */
+    private static String envelope(String content) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("message", message);
+        choice.addProperty("finish_reason", "stop");
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject usage = new JsonObject();
+        usage.addProperty("prompt_tokens", 1800);
+        usage.addProperty("completion_tokens", Math.max(1, content.length() / 4));
+        JsonObject response = new JsonObject();
+        response.addProperty("id", "chatcmpl-bench");
+        response.addProperty("object", "chat.completion");
+        response.addProperty("model", "local-model");
+        response.add("choices", choices);
+        response.add("usage", usage);
+        return response.toString();
+    }
+
+    /**
+     * 会話ログ（*.md）のnew_tasksを含む```jsonブロック、またはExchangeRecorderの記録（*.jsonl）のdecideの応答
+     */
+    static List<String> loadContents(Path path) throws IOException {
+        List<String> contents = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return contents;
+        }
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> stream = Files.list(path)) {
+                stream.filter(file -> file.getFileName().toString().endsWith(".md")).sorted().forEach(files::add);
+            }
+        } else {
+            files.add(path);
+        }
+        for (Path file : files) {
+            String text = Files.readString(file, StandardCharsets.UTF_8);
+            if (file.getFileName().toString().endsWith(".jsonl")) {
+                for (String line : text.split("\n")) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    JsonObject exchange = JsonParser.parseString(line).getAsJsonObject();
+                    JsonElement response = exchange.get("response");
+                    if ("decide".equals(string(exchange.get("purpose"))) && response != null && !response.isJsonNull()) {
+                        contents.add(response.getAsString());
+                    }
+                }
+                continue;
+            }
+            Matcher matcher = JSON_BLOCK.matcher(text);
+            while (matcher.find()) {
+                String json = matcher.group(1).trim();
+                if (json.contains("\"new_tasks\"") || json.contains("\"new_task\"")) {
+                    contents.add("```json\n" + json + "\n```");
+                }
+            }
+        }
+        return contents;
+    }
+
+    private static String string(JsonElement element) {
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+}
@@ -0,0 +1,152 @@
+package plugin.midorin.info.aIminer.bench;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ベンチマーク用の最小限のBukkit環境（サーバーなしで動かす）
+ * - Server: コマンドは常に成功、オンラインのプレイヤー・ワールドはなし
+ * - プラグイン: テスト用のコンストラクタで作る（ログはWARNING以上だけ）
+ * - ワールド: 座標から決まる地形をgetTypeで返す
+ */
+public final class BenchEnvironment {
+    private static final Logger LOGGER = Logger.getLogger("AIminer-bench");
+    private static JavaPlugin plugin;
+
+    private BenchEnvironment() {
+    }
+
+    /**
+     * ベンチマーク用のプラグイン（初回にServerも差し替える）
+     */
+    @SuppressWarnings("deprecation")   // テスト用のコンストラクタ
+    public static synchronized JavaPlugin plugin() {
+        if (plugin == null) {
+            LOGGER.setLevel(Level.WARNING);
+            Server server = proxy(Server.class, (proxy, method, args) -> switch (method.getName()) {
+                case "getLogger" -> LOGGER;
+                case "getConsoleSender" -> console();
+                case "dispatchCommand" -> true;
+                case "getOnlinePlayers", "getWorlds" -> List.of();
+                case "isPrimaryThread" -> true;
+                case "getName", "getVersion", "getBukkitVersion" -> "bench";
+                default -> defaultValue(method.getReturnType(), proxy, method.getName(), args);
+            });
+            if (Bukkit.getServer() == null) {
+                Bukkit.setServer(server);
+            }
+            plugin = new BenchPlugin(new JavaPluginLoader(server), tempDirectory("aiminer-plugin"));
+            plugin.getLogger().setLevel(Level.WARNING);
+        }
+        return plugin;
+    }
+
+    /**
+     * 地形を返すワールド
+     * y < 56: 石（ところどころ鉱石）、56〜63: 土と安山岩、64: 草、65〜69: 9x11マスおきに木、それより上は空気
+     */
+    public static World terrainWorld() {
+        UUID worldId = UUID.randomUUID();
+        return proxy(World.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getType" -> args.length == 3 && args[0] instanceof Integer
+                ? terrain((int) args[0], (int) args[1], (int) args[2]) : Material.AIR;
+            case "getUID" -> worldId;
+            case "getName" -> "bench";
+            case "getMinHeight" -> -64;
+            case "getMaxHeight" -> 320;
+            case "getNearbyEntities", "getEntities", "getPlayers" -> List.of();
+            case "isChunkLoaded" -> false;
+            default -> defaultValue(method.getReturnType(), proxy, method.getName(), args);
+        });
+    }
+
+    public static Material terrain(int x, int y, int z) {
+        int hash = (x * 73856093) ^ (y * 19349663) ^ (z * 83492791);
+        if (y < 56) {
+            return Math.floorMod(hash, 97) == 0 ? Material.COAL_ORE
+                : Math.floorMod(hash, 211) == 0 ? Material.IRON_ORE : Material.STONE;
+        }
+        if (y < 64) {
+            return Math.floorMod(hash, 7) == 0 ? Material.ANDESITE : Material.DIRT;
+        }
+        if (y == 64) {
+            return Material.GRASS_BLOCK;
+        }
+        if (y < 70 && Math.floorMod(x, 9) == 0 && Math.floorMod(z, 11) == 0) {
+            return Material.OAK_LOG;
+        }
+        return Material.AIR;
+    }
+
+    /**
+     * 空の作業ディレクトリ（JVM終了時に中身ごと消す）
+     */
+    public static File tempDirectory(String prefix) {
+        try {
+            File directory = Files.createTempDirectory(prefix).toFile();
+            directory.deleteOnExit();
+            return directory;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ConsoleCommandSender console() {
+        return proxy(ConsoleCommandSender.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getName" -> "CONSOLE";
+            case "isOp", "hasPermission" -> true;
+            default -> defaultValue(method.getReturnType(), proxy, method.getName(), args);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(BenchEnvironment.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private static Object defaultValue(Class<?> type, Object proxy, String name, Object[] args) {
+        switch (name) {
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return args[0] == proxy;
+            case "toString":
+                return "bench";
+            default:
+                break;
+        }
+        // プリミティブは0（falseなど）を返す
+        if (type.isPrimitive() && type != void.class) {
+            return Array.get(Array.newInstance(type, 1), 0);
+        }
+        return null;
+    }
+
+    /**
+     * テスト用コンストラクタで作るプラグイン（プラグインのクラスローダーを経由しない）
+     */
+    @SuppressWarnings({"deprecation", "removal"})
+    private static final class BenchPlugin extends JavaPlugin {
+        BenchPlugin(JavaPluginLoader loader, File dataFolder) {
+            super(loader, new PluginDescriptionFile("AIminer", "bench", BenchPlugin.class.getName()),
+                dataFolder, new File(dataFolder, "AIminer.jar"));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package plugin.midorin.info.aIminer.brain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import plugin.midorin.info.aIminer.bench.BenchEnvironment;
+import plugin.midorin.info.aIminer.model.BrainData;
+import plugin.midorin.info.aIminer.model.Episode;
+import plugin.midorin.info.aIminer.model.Position;
+import plugin.midorin.info.aIminer.model.Task;
+import plugin.midorin.info.aIminer.model.TaskStatus;
+import plugin.midorin.info.aIminer.model.TaskType;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 脳ファイルの保存・読み込み（書き込みは呼び出したスレッドで同期的に行う）
+ * - checkpoint: brain.binを丸ごと書き出す
+ * - load: brain.binを読み込む（BrainCodecでの復元まで）
+ * - journalCommit: 変更1件をジャーナルに追記してコミットする
+ * - recall: 現在の状況からエピソード記憶を思い出す
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BrainFileBenchmark {
+    /**
+     * エピソード記憶の件数（メモリの項目数はその1/10、タスクは1/100）
+     */
+    @Param({"100", "1000", "10000", "100000"})
+    public int episodes;
+
+    private File dataFolder;
+    private BrainFileManager manager;
+    private int taskId;
+    private int counter = 0;
+
+    @Setup
+    public void setUp() {
+        dataFolder = BenchEnvironment.tempDirectory("aiminer-brain");
+        manager = new BrainFileManager(dataFolder);
+        manager.loadBrainFile();
+        for (int i = 0; i < episodes; i++) {
+            manager.recordEpisode(i % 2 == 0 ? "TASK" : "CHAT",
+                (i % 2 == 0 ? "MINE_WOOD completed at " : "player asked for oak logs near ") + i,
+                new Position(i % 500, 64, i / 500));
+        }
+        for (int i = 0; i < episodes / 10; i++) {
+            manager.updateMemory("note_" + i, "value " + i);
+        }
+        taskId = manager.nextTaskId();   // 最初に追加するタスク
+        for (int i = 0; i < Math.max(1, episodes / 100); i++) {
+            manager.addTask(new Task(manager.nextTaskId(), TaskType.MINE_STONE,
+                Map.<String, Object>of("x", i, "y", 60, "z", i), "bench"));
+        }
+        manager.updateMemory("current_position", new Position(250, 64, 10));
+        manager.addChatMessage("player", "oak logs please", System.currentTimeMillis());
+        manager.checkpoint();
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.close();
+        File[] files = dataFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dataFolder.delete();
+    }
+
+    @Benchmark
+    public long checkpoint() {
+        manager.checkpoint();
+        return manager.getCheckpointCount();
+    }
+
+    @Benchmark
+    public BrainData load() throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(new File(dataFolder, "brain.bin").toPath()))) {
+            return BrainCodec.readSnapshot(in).getBrain();
+        }
+    }
+
+    @Benchmark
+    public long journalCommit() {
+        manager.updateTaskStatus(taskId, (counter++ & 1) == 0 ? TaskStatus.IN_PROGRESS : TaskStatus.PENDING);
+        manager.saveBrainFile();
+        return manager.getJournalSize();
+    }
+
+    @Benchmark
+    public List<Episode> recall() {
+        return manager.recallRelevantEpisodes(5);
+    }
+}
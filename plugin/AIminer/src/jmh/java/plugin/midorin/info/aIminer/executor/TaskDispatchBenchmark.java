@@ -0,0 +1,76 @@
+package plugin.midorin.info.aIminer.executor;
+
+import org.bukkit.plugin.java.JavaPlugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import plugin.midorin.info.aIminer.bench.BenchEnvironment;
+import plugin.midorin.info.aIminer.bot.BotEntityTracker;
+import plugin.midorin.info.aIminer.bot.BotManager;
+import plugin.midorin.info.aIminer.brain.BrainFileManager;
+import plugin.midorin.info.aIminer.listener.DataCommandListener;
+import plugin.midorin.info.aIminer.model.Task;
+import plugin.midorin.info.aIminer.model.TaskType;
+import plugin.midorin.info.aIminer.util.CommandDispatcher;
+import plugin.midorin.info.aIminer.util.CycleTracer;
+import plugin.midorin.info.aIminer.util.MetricsRegistry;
+import plugin.midorin.info.aIminer.util.TickBudgetScheduler;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * タスク実行の1サイクル（PENDINGタスクの選択 → コマンド実行 → 状態の更新と片付け）
+ * コマンドは差し替えたServerが即座に成功を返すため、プラグイン側の処理だけを測る
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TaskDispatchBenchmark {
+    private BrainFileManager brainFileManager;
+    private TaskExecutor taskExecutor;
+
+    @Setup
+    public void setUp() {
+        JavaPlugin plugin = BenchEnvironment.plugin();
+        brainFileManager = new BrainFileManager(BenchEnvironment.tempDirectory("aiminer-tasks"));
+        brainFileManager.loadBrainFile();
+        CommandDispatcher commandDispatcher = new CommandDispatcher(plugin, 8);
+        BotManager botManager = new BotManager(plugin, commandDispatcher);
+        TickBudgetScheduler scheduler = new TickBudgetScheduler(plugin, new MetricsRegistry(), 2.0, 45.0, 20);
+        taskExecutor = new TaskExecutor(plugin, brainFileManager, botManager, new BotEntityTracker(plugin.getLogger()),
+            new DataCommandListener(plugin, commandDispatcher), null, null, commandDispatcher, scheduler, new CycleTracer(false, 0, null));
+    }
+
+    @TearDown
+    public void tearDown() {
+        brainFileManager.close();
+    }
+
+    /**
+     * 採掘2件とチャット1件を追加して1サイクル実行する
+     */
+    @Benchmark
+    public int cycle() {
+        addTask(TaskType.MINE_WOOD, Map.<String, Object>of("x", 10, "y", 64, "z", -3));
+        addTask(TaskType.MINE_STONE, Map.<String, Object>of("x", 12, "y", 60, "z", 4));
+        addTask(TaskType.CHAT, Map.<String, Object>of("message", "木を切りに行きます"));
+
+        int steps = 0;
+        if (taskExecutor.begin()) {
+            while (taskExecutor.step() != TickBudgetScheduler.Step.DONE) {
+                steps++;
+            }
+        }
+        return steps;
+    }
+
+    private void addTask(TaskType type, Map<String, Object> parameters) {
+        brainFileManager.addTask(new Task(brainFileManager.nextTaskId(), type, parameters, "bench"));
+    }
+}
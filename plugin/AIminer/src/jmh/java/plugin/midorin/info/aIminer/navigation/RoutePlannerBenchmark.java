@@ -0,0 +1,113 @@
+package plugin.midorin.info.aIminer.navigation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 経路探索（A*）と巡回順の決定
+ * 一辺sizeの立方体のグリッドに、起伏のある地形（丘・段差・水たまり・木）を作って測る
+ * 探索上限はconfig.ymlの既定値（navigation.max-search-nodes）と同じ
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RoutePlannerBenchmark {
+    private static final int MAX_SEARCH_NODES = 20000;
+    private static final int TREE_HEIGHT = 5;
+
+    /**
+     * グリッドの一辺（ブロック、高さも同じ）
+     */
+    @Param({"64", "256"})
+    public int size;
+
+    private RoutePlanner planner;
+    private WalkabilityGrid grid;
+    private int[] heights;
+    private int[] start;
+    private int[] goal;
+    private List<int[]> targets;
+
+    @Setup
+    public void setUp() {
+        planner = new RoutePlanner(MAX_SEARCH_NODES);
+        grid = new WalkabilityGrid(0, 0, 0, size, size, size);
+        grid.fill(WalkabilityGrid.PASSABLE);
+        Random random = new Random(size);
+
+        // 高さ = 大きな丘 + 細かい起伏（隣との差はほとんど1段以内で、ところどころ2段以上の崖になる）
+        int base = size / 3;
+        int waterLevel = base - size / 16;
+        double phaseX = random.nextDouble() * Math.PI * 2;
+        double phaseZ = random.nextDouble() * Math.PI * 2;
+        heights = new int[size * size];
+        for (int x = 0; x < size; x++) {
+            for (int z = 0; z < size; z++) {
+                double hills = size / 10.0 * Math.sin(2 * Math.PI * x / size + phaseX)
+                    * Math.cos(2 * Math.PI * z / size + phaseZ);
+                double bumps = size / 40.0 * Math.sin(2 * Math.PI * (x + z) * 3 / size);
+                int height = Math.max(1, Math.min(size - TREE_HEIGHT - 3, (int) Math.round(base + hills + bumps)));
+                heights[x * size + z] = height;
+                for (int y = 0; y < height; y++) {
+                    grid.set(x, y, z, WalkabilityGrid.SOLID);
+                }
+                // 低い所は水たまり
+                for (int y = height; y < waterLevel; y++) {
+                    grid.set(x, y, z, WalkabilityGrid.LIQUID);
+                }
+            }
+        }
+
+        // 木（登れない高さの幹）
+        for (int i = 0; i < size * size / 64; i++) {
+            int x = random.nextInt(size);
+            int z = random.nextInt(size);
+            int height = heights[x * size + z];
+            if (height < waterLevel) {
+                continue;
+            }
+            for (int y = height; y < height + TREE_HEIGHT; y++) {
+                grid.set(x, y, z, WalkabilityGrid.SOLID);
+            }
+        }
+
+        start = surface(1, 1);
+        goal = surface(size - 2, size - 2);
+        targets = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            targets.add(surface(random.nextInt(size), random.nextInt(size)));
+        }
+    }
+
+    /**
+     * 地表の座標（木の上なら幹の上）
+     */
+    private int[] surface(int x, int z) {
+        int y = heights[x * size + z];
+        while (y < size - 1 && !grid.isPassable(x, y, z)) {
+            y++;
+        }
+        return new int[] {x, y, z};
+    }
+
+    @Benchmark
+    public List<int[]> findPath() {
+        return planner.findPath(grid, start[0], start[1], start[2], goal[0], goal[1], goal[2]);
+    }
+
+    @Benchmark
+    public int[] orderTargets() {
+        return planner.orderTargets(start, targets);
+    }
+}
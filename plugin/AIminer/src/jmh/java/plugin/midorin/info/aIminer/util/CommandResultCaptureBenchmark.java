@@ -0,0 +1,54 @@
+package plugin.midorin.info.aIminer.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /data get entityの結果（サーバーログの行）の正規表現による解析
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandResultCaptureBenchmark {
+    private static final String INVENTORY_LINE = "[12:34:56 INFO]: test1 has the following entity data: ["
+        + "{count: 12, Slot: 0b, id: \"minecraft:oak_log\"}, {id: \"minecraft:oak_log\", count: 12}, "
+        + "{id: \"minecraft:cobblestone\", count: 64}, {id: \"minecraft:dirt\", count: 7}, "
+        + "{id: \"minecraft:coal\", count: 3}, {id: \"minecraft:stick\", count: 8}, "
+        + "{id: \"minecraft:wooden_pickaxe\", count: 1, components: {\"minecraft:damage\": 12}}]";
+    private static final String POSITION_LINE =
+        "[12:34:56 INFO]: test1 has the following entity data: [-24.5d, -58.0d, 1.2300000190734863d]";
+    private static final String ITEM_LINE =
+        "[12:34:56 INFO]: Item has the following entity data: {id: \"minecraft:oak_log\", count: 1}";
+    private static final String UNRELATED_LINE =
+        "[12:34:56 INFO]: imuzen128 issued server command: /bot status";
+
+    @Benchmark
+    public List<CommandResultCapture.InventoryItem> parseInventory() {
+        return CommandResultCapture.parseInventoryFromLog(INVENTORY_LINE);
+    }
+
+    @Benchmark
+    public double[] parsePosition() {
+        return CommandResultCapture.parsePositionFromLog(POSITION_LINE);
+    }
+
+    @Benchmark
+    public CommandResultCapture.InventoryItem parseItem() {
+        return CommandResultCapture.parseItemFromLog(ITEM_LINE);
+    }
+
+    /**
+     * 関係のない行（ログの大半）を読み捨てる場合
+     */
+    @Benchmark
+    public double[] parseUnrelated() {
+        return CommandResultCapture.parsePositionFromLog(UNRELATED_LINE);
+    }
+}
@@ -0,0 +1,140 @@
+package plugin.midorin.info.aIminer.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import plugin.midorin.info.aIminer.bench.BenchEnvironment;
+import plugin.midorin.info.aIminer.listener.DataCommandListener;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * 1サイクル分のログ（タスク3件の開始・完了、コマンド3件、サイクル完了、視覚スキャン、AIの応答）にかかる時間と、
+ * DataCommandListenerがサーバーのログ1行を受け取るのにかかる時間
+ * 出力先は受け取るだけのハンドラ（コンソールへの書き込みは含めない）
+ * - legacy: 以前の書き方（すべてINFOで文字列を組み立てる、FINEでも文字列は組み立てる）
+ * - normal: BotLog（デバッグモードでない）
+ * - debug: BotLog（デバッグモード）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LogOverheadBenchmark {
+    private static final String RESPONSE = "{\"thought\":\"近くに木があるので採取する\",\"memory_updates\":{},"
+        + "\"new_tasks\":[{\"type\":\"MINE_WOOD\",\"parameters\":{\"x\":-20,\"y\":64,\"z\":5},\"reason\":\"近くの木\"}]}";
+    private static final String COMMAND = "function imuzen127x74:xaim {x:-20,y:64,z:5}";
+    private static final String SERVER_LINE = "imuzen128 issued server command: /bot status";
+    private static final List<String> INVENTORY = List.of("minecraft:oak_log x12", "minecraft:cobblestone x64");
+
+    @Param({"legacy", "normal", "debug"})
+    public String mode;
+
+    private Logger logger;
+    private BotLog log;
+    private Handler serverLogHandler;
+    private LogRecord serverRecord;
+    private int cycle;
+
+    @Setup
+    public void setUp() {
+        logger = Logger.getLogger("AIminer-bench-log-" + mode);
+        logger.setUseParentHandlers(false);
+        for (Handler handler : logger.getHandlers()) {
+            logger.removeHandler(handler);
+        }
+        logger.addHandler(new CountingHandler());
+        logger.setLevel(mode.equals("debug") ? Level.FINE : Level.INFO);
+        log = new BotLog(logger);
+
+        Logger serverLogger = BenchEnvironment.plugin().getServer().getLogger();
+        new DataCommandListener(BenchEnvironment.plugin(), new CommandDispatcher(BenchEnvironment.plugin(), 8))
+            .register();
+        Handler[] handlers = serverLogger.getHandlers();
+        serverLogHandler = handlers[handlers.length - 1];
+        serverRecord = new LogRecord(Level.INFO, SERVER_LINE);
+    }
+
+    @Benchmark
+    public int cycle(Blackhole blackhole) {
+        cycle++;
+        if (mode.equals("legacy")) {
+            for (int id = 0; id < 3; id++) {
+                logger.info("Executing task: " + "MINE_WOOD" + " (ID: " + (cycle + id) + ")");
+                logger.fine("Executing as " + "sim-owner" + ": " + COMMAND);
+                logger.info("Task completed: " + (cycle + id));
+            }
+            logger.info(String.format("Task cycle complete: %d processed, %d succeeded", 3, 3));
+            logger.info(String.format("Vision scan completed: %d blocks, %d items, %d players (radius: %d)",
+                50, 2, 1, 10));
+            logger.fine("Inventory auto-captured: " + INVENTORY);
+            logger.info("AI Response: " + RESPONSE);
+        } else {
+            for (int id = 0; id < 3; id++) {
+                log.debug("task.start", "type", "MINE_WOOD", "id", cycle + id);
+                log.debug("command.dispatch", "sender", "sim-owner", "command", COMMAND);
+                log.debug("task.completed", "type", "MINE_WOOD", "id", cycle + id);
+            }
+            log.sampled("task.cycle", 20, "processed", 3, "succeeded", 3);
+            log.sampled("vision.scan", 12, "blocks", 50, "items", 2, "players", 1, "radius", 10);
+            log.debug("vision.inventory", "items", INVENTORY);
+            log.debug("ai.response", "content", RESPONSE);
+        }
+        blackhole.consume(logger);
+        return cycle;
+    }
+
+    /**
+     * 同じ警告が続く場合（limitedで抑えるもの）
+     */
+    @Benchmark
+    public void repeatedWarning() {
+        if (mode.equals("legacy")) {
+            logger.warning("Bot owner not found, skipping vision update");
+        } else {
+            log.limited(Level.WARNING, "vision.skipped", 60_000L, "reason", "owner-not-found");
+        }
+    }
+
+    /**
+     * 関係のないサーバーのログ1行（取得待ちのコマンドはない）
+     */
+    @Benchmark
+    public boolean serverLogLine() {
+        if (mode.equals("legacy")) {
+            return serverRecord.getMessage().contains("has the following entity data:");
+        }
+        serverLogHandler.publish(serverRecord);
+        return false;
+    }
+
+    /**
+     * レコードを受け取って数えるだけのハンドラ
+     */
+    private static final class CountingHandler extends Handler {
+        private long published;
+
+        @Override
+        public void publish(LogRecord record) {
+            published += record.getMessage().length();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package plugin.midorin.info.aIminer.vision;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import plugin.midorin.info.aIminer.bench.BenchEnvironment;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 視覚スキャン（VisionScanner.scanSurroundings → ブロックの走査と選別）
+ * 地表（木と草）と地下（石と鉱石）の2か所で測る
+ * 1回の計測は全ボットが1回ずつスキャンする1巡。ボットはspacingブロック間隔の格子に並び、1巡ごとに1ブロックずつ動く
+ * direct（ボットごとに読む）とshared-cache（PerceptionCacheを共有）で、ボットの密度に対する仕事量を比べる
+ * 例: -p mode=direct,shared-cache -p bots=1,8,32 -p spacing=2,8,32
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VisionScanBenchmark {
+    @Param({"10", "16"})
+    public int radius;
+
+    /**
+     * direct: ワールドから直接読む / shared-cache: PerceptionCacheのセクション要約を使う / summarize: 種類ごとの要約も作る
+     */
+    @Param({"direct", "shared-cache", "summarize"})
+    public String mode;
+
+    @Param({"surface", "underground"})
+    public String place;
+
+    @Param({"1", "8"})
+    public int bots;
+
+    /**
+     * ボットどうしの間隔（ブロック）
+     */
+    @Param({"4", "16"})
+    public int spacing;
+
+    // 1巡ごとの移動（8巡で元の位置に戻る）
+    private static final int[] STEP_X = {1, 1, 0, -1, -1, -1, 0, 1};
+    private static final int[] STEP_Z = {0, 1, 1, 1, 0, -1, -1, -1};
+
+    private VisionScanner[] scanners;
+    private Location[] locations;
+    private int round;
+
+    @Setup
+    public void setUp() {
+        World world = BenchEnvironment.terrainWorld();
+        // shared-cacheでは全ボットが1つのキャッシュを使い、それ以外はボットごとにワールドを読む
+        PerceptionCache cache = mode.equals("shared-cache") ? new PerceptionCache(Long.MAX_VALUE / 2) : null;
+        int side = (int) Math.ceil(Math.sqrt(bots));
+        scanners = new VisionScanner[bots];
+        locations = new Location[bots];
+        for (int i = 0; i < bots; i++) {
+            scanners[i] = new VisionScanner(BenchEnvironment.plugin(), 5, cache, null, mode.equals("summarize"));
+            locations[i] = new Location(world, 4.5 + (i % side) * spacing, place.equals("surface") ? 65 : 50,
+                4.5 + (i / side) * spacing);
+        }
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) {
+        int step = round++ & 7;
+        for (int i = 0; i < bots; i++) {
+            Location location = locations[i];
+            location.setX(location.getX() + STEP_X[step]);
+            location.setZ(location.getZ() + STEP_Z[step]);
+            blackhole.consume(scanners[i].scanSurroundings(location, radius));
+        }
+    }
+}
@@ -1,25 +1,68 @@
 package plugin.midorin.info.aIminer;
 
 import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.plugin.java.JavaPlugin;
 import plugin.midorin.info.aIminer.ai.AIProcessingTask;
+import plugin.midorin.info.aIminer.ai.ExchangeRecorder;
+import plugin.midorin.info.aIminer.ai.LlamaCppBackend;
+import plugin.midorin.info.aIminer.ai.MemorySummarizer;
+import plugin.midorin.info.aIminer.ai.ModelBackend;
+import plugin.midorin.info.aIminer.ai.ModelRouter;
+import plugin.midorin.info.aIminer.ai.ModelTier;
+import plugin.midorin.info.aIminer.ai.OllamaBackend;
+import plugin.midorin.info.aIminer.ai.OpenAICompatibleBackend;
+import plugin.midorin.info.aIminer.bot.BotEntityTracker;
 import plugin.midorin.info.aIminer.bot.BotManager;
+import plugin.midorin.info.aIminer.bot.ControllerBenchmark;
+import plugin.midorin.info.aIminer.bot.NativeBotController;
 import plugin.midorin.info.aIminer.brain.BrainFileManager;
+import plugin.midorin.info.aIminer.brain.BrainPersistenceTask;
+import plugin.midorin.info.aIminer.brain.MemoryRetentionPolicy;
 import plugin.midorin.info.aIminer.command.BotCommand;
 import plugin.midorin.info.aIminer.executor.TaskExecutor;
 import plugin.midorin.info.aIminer.listener.ChatListener;
 import plugin.midorin.info.aIminer.listener.DataCommandListener;
 import plugin.midorin.info.aIminer.listener.PlayerActivityListener;
+import plugin.midorin.info.aIminer.navigation.RouteNavigator;
+import plugin.midorin.info.aIminer.util.ChunkSnapshotCache;
+import plugin.midorin.info.aIminer.util.CommandDispatcher;
+import plugin.midorin.info.aIminer.util.CycleTracer;
+import plugin.midorin.info.aIminer.util.MetricsExporter;
+import plugin.midorin.info.aIminer.util.MetricsRegistry;
+import plugin.midorin.info.aIminer.util.TickBudgetScheduler;
+import plugin.midorin.info.aIminer.vision.PerceptionCache;
+import plugin.midorin.info.aIminer.vision.LineOfSight;
 import plugin.midorin.info.aIminer.vision.VisionUpdateTask;
 
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+
 public final class AIminer extends JavaPlugin {
 
     private BrainFileManager brainFileManager;
+    private BrainPersistenceTask brainPersistenceTask;
     private BotManager botManager;
+    private BotEntityTracker botEntityTracker;
     private TaskExecutor taskExecutor;
     private VisionUpdateTask visionUpdateTask;
     private AIProcessingTask aiProcessingTask;
+    private MemorySummarizer memorySummarizer;
+    private ExchangeRecorder exchangeRecorder;
     private DataCommandListener dataCommandListener;
+    private ChunkSnapshotCache chunkSnapshotCache;
+    private PerceptionCache perceptionCache;
+    private CommandDispatcher commandDispatcher;
+    private TickBudgetScheduler tickBudgetScheduler;
+    private RouteNavigator routeNavigator;
+    private NativeBotController nativeBotController;
+    private ControllerBenchmark controllerBenchmark;
+    private MetricsRegistry metricsRegistry;
+    private MetricsExporter metricsExporter;
+    private CycleTracer cycleTracer;
 
     @Override
     public void onEnable() {
@@ -29,15 +72,65 @@ public final class AIminer extends JavaPlugin {
         // 設定ファイルの保存（初回起動時）
         saveDefaultConfig();
 
+        // デバッグモード: サイクルごとの詳細（BotLog.debug）も出す
+        getLogger().setLevel(getConfig().getBoolean("debug", false) ? Level.FINE : Level.INFO);
+
+        // 計測値の登録先（/bot metrics・Prometheus形式の書き出し）
+        metricsRegistry = new MetricsRegistry();
+
+        // 知覚 → 思考 → 行動のサイクルのトレース（/bot traceでChromeのトレース形式に書き出す）
+        cycleTracer = new CycleTracer(
+            getConfig().getBoolean("trace.enabled", true),
+            getConfig().getInt("trace.buffer-size", 4096),
+            new File(getDataFolder(), "trace.json").toPath()
+        );
+
         // 脳ファイルマネージャーの初期化
         brainFileManager = new BrainFileManager(getDataFolder());
+        brainFileManager.setMetrics(metricsRegistry);
+        brainFileManager.setIoExecutor(task -> Bukkit.getScheduler().runTaskAsynchronously(this, task));
+        brainFileManager.setVisionHistorySize(getConfig().getInt("vision.history-size", 12));
+        brainFileManager.setRetentionPolicy(loadRetentionPolicy());
+        brainFileManager.configureChat(
+            getConfig().getInt("chat.history-size", 64),
+            getConfig().getStringList("chat.mention-names")
+        );
         brainFileManager.loadBrainFile();
 
+        // 脳データの保存（ジャーナルのグループコミットと定期チェックポイント）
+        brainPersistenceTask = new BrainPersistenceTask(
+            this,
+            brainFileManager,
+            getConfig().getLong("brain.commit-interval-ticks", 20),
+            getConfig().getLong("brain.checkpoint-interval", 300),
+            getConfig().getLong("brain.checkpoint-journal-kb", 1024)
+        );
+        brainPersistenceTask.startPersistenceLoop();
+
+        // コマンド実行の一元化（データパック関数の呼び出し・まとめ実行・実行時間の記録）
+        commandDispatcher = new CommandDispatcher(this, getConfig().getInt("dispatch.max-commands-per-tick", 8));
+        commandDispatcher.startDispatchLoop();
+
+        // メインスレッド処理の時間予算（タスク実行・視覚更新をtickごとに分散）
+        tickBudgetScheduler = new TickBudgetScheduler(
+            this,
+            metricsRegistry,
+            getConfig().getDouble("scheduler.tick-budget-ms", 2.0),
+            getConfig().getDouble("scheduler.mspt-limit", 45.0),
+            getConfig().getInt("scheduler.max-defer-ticks", 100)
+        );
+        tickBudgetScheduler.startScheduler();
+
         // ボットマネージャーの初期化
-        botManager = new BotManager(this);
+        botManager = new BotManager(this, commandDispatcher);
+
+        // ボットエンティティの追跡（summon・チャンク読み込み時にUUIDを記録）
+        botEntityTracker = new BotEntityTracker(getLogger());
+        getServer().getPluginManager().registerEvents(botEntityTracker, this);
+        Bukkit.getScheduler().runTask(this, botEntityTracker::rescan);
 
         // データコマンドリスナーの初期化と登録
-        dataCommandListener = new DataCommandListener(this);
+        dataCommandListener = new DataCommandListener(this, commandDispatcher);
         dataCommandListener.register();
 
         // 設定値の読み込み
@@ -47,17 +140,64 @@ public final class AIminer extends JavaPlugin {
         int aiProcessingIntervalSeconds = getConfig().getInt("ai-server.interval", 60);
         int aiTimeoutSeconds = getConfig().getInt("ai-server.timeout-seconds", 120);
 
+        // チャンクスナップショットキャッシュ（経路探索・視線判定で使用）
+        chunkSnapshotCache = new ChunkSnapshotCache(getConfig().getLong("navigation.snapshot-max-age", 10) * 1000L);
+        getServer().getPluginManager().registerEvents(chunkSnapshotCache, this);
+
+        // 経路探索システムの初期化と起動
+        if (getConfig().getBoolean("navigation.enabled", true)) {
+            routeNavigator = new RouteNavigator(
+                this,
+                chunkSnapshotCache,
+                commandDispatcher,
+                botEntityTracker::findBotLocation,
+                getConfig().getInt("navigation.grid-radius", 48),
+                getConfig().getInt("navigation.waypoint-spacing", 8),
+                getConfig().getInt("navigation.max-search-nodes", 20000),
+                getConfig().getInt("navigation.route-timeout", 60)
+            );
+            routeNavigator.startNavigationLoop();
+        } else {
+            getLogger().info("Route navigator is disabled in config");
+        }
+
+        // ボット制御（datapack: main.mcfunctionが毎tick制御 / native: プラグインが制御）
+        boolean nativeControl = "native".equalsIgnoreCase(getConfig().getString("controller.mode", "datapack"));
+        nativeBotController = new NativeBotController(this, botEntityTracker, chunkSnapshotCache, nativeControl);
+        nativeBotController.startControlLoop();
+        controllerBenchmark = new ControllerBenchmark(this, nativeBotController);
+        getServer().getPluginManager().registerEvents(controllerBenchmark, this);
+
         // タスク実行システムの初期化と起動
-        taskExecutor = new TaskExecutor(this, brainFileManager, botManager, dataCommandListener);
+        taskExecutor = new TaskExecutor(this, brainFileManager, botManager, botEntityTracker,
+            dataCommandListener, routeNavigator, nativeBotController, commandDispatcher, tickBudgetScheduler,
+            cycleTracer);
         taskExecutor.startTaskLoop();
         getLogger().info("Task executor started.");
 
+        // ブロック知覚の共有キャッシュ（複数のボットが近くで動く場合に有効）
+        if (getConfig().getBoolean("vision.shared-cache.enabled", false)) {
+            perceptionCache = new PerceptionCache(getConfig().getLong("vision.shared-cache.max-age", 10) * 1000L);
+            getServer().getPluginManager().registerEvents(perceptionCache, this);
+        }
+
+        // 視線判定（見えないブロックをAIに渡さない。判定は非同期で行う）
+        LineOfSight lineOfSight = getConfig().getBoolean("vision.line-of-sight", false)
+            ? new LineOfSight(chunkSnapshotCache) : null;
+
         // 視覚システムの初期化と起動
         visionUpdateTask = new VisionUpdateTask(
             this,
             brainFileManager,
             botManager,
+            botEntityTracker,
             dataCommandListener,
+            tickBudgetScheduler,
+            metricsRegistry,
+            cycleTracer,
+            perceptionCache,
+            lineOfSight,
+            getConfig().getBoolean("vision.summarize", false),
             visionRadius,
             visionVerticalRange,
             visionIntervalSeconds
@@ -69,20 +209,69 @@ public final class AIminer extends JavaPlugin {
         boolean aiEnabled = getConfig().getBoolean("ai-server.enabled", true);
         if (aiEnabled) {
             String aiServerUrl = getConfig().getString("ai-server.url", "http://localhost:8080");
+            ModelBackend modelBackend = createModelBackend("ai-server.backend", aiServerUrl);
             aiProcessingTask = new AIProcessingTask(
                 this,
                 brainFileManager,
                 botManager,
-                aiServerUrl,
+                metricsRegistry,
+                cycleTracer,
+                modelBackend,
                 aiProcessingIntervalSeconds,
-                aiTimeoutSeconds
+                aiTimeoutSeconds,
+                getConfig().getInt("ai-server.memory-top-k", 8),
+                getConfig().getBoolean("chat.trigger-thinking", true)
             );
+            // 応答を待つ間に状態が古くなりすぎたら取り消す
+            aiProcessingTask.setCycleLimits(
+                getConfig().getInt("ai-server.stale-after-seconds", aiTimeoutSeconds),
+                getConfig().getDouble("ai-server.max-drift-blocks", 32.0)
+            );
+            // LLMとのやり取りを記録（シミュレーションのリプレイサーバーで再生できる）
+            if (getConfig().getBoolean("ai-server.record.enabled", false)) {
+                exchangeRecorder = new ExchangeRecorder(
+                    new File(getDataFolder(), getConfig().getString("ai-server.record.file", "llm-exchanges.jsonl")).toPath(),
+                    getConfig().getLong("ai-server.record.max-file-kb", 4096) * 1024L,
+                    getConfig().getInt("ai-server.record.max-files", 4),
+                    getLogger()
+                );
+                aiProcessingTask.getClient().setRecorder(exchangeRecorder);
+                getLogger().info("Recording LLM exchanges to " + exchangeRecorder.getPath().getFileName());
+            }
+            // 普段の判断は小さいモデル、会話・失敗続き・初めての景色・長い計画は大きいモデルへ
+            if (getConfig().getBoolean("ai-server.tiers.enabled", false)) {
+                configureModelTiers(modelBackend);
+            }
             aiProcessingTask.startProcessingLoop();
-            getLogger().info("AI processing system started (server: " + aiServerUrl + ")");
+            getLogger().info("AI processing system started (server: " + aiServerUrl + ", backend: "
+                + modelBackend.getName() + ")");
+
+            // 古いエピソード記憶の要約（AIサーバーが空いているときだけ実行）
+            if (getConfig().getBoolean("memory.summarize.enabled", false)) {
+                memorySummarizer = new MemorySummarizer(
+                    this,
+                    brainFileManager,
+                    aiProcessingTask,
+                    getConfig().getInt("memory.summarize.min-episodes", 2000),
+                    getConfig().getInt("memory.summarize.batch-size", 50),
+                    getConfig().getInt("memory.summarize.check-interval", 60)
+                );
+                memorySummarizer.startSummaryLoop();
+            }
         } else {
             getLogger().info("AI processing system is disabled in config");
         }
 
+        // 各システムの状態をゲージとして登録し、計測値の定期書き出しを開始
+        registerGauges(lineOfSight);
+        metricsExporter = new MetricsExporter(
+            this,
+            metricsRegistry,
+            new File(getDataFolder(), getConfig().getString("metrics.file", "metrics.prom")).toPath(),
+            getConfig().getInt("metrics.export-interval", 0)
+        );
+        metricsExporter.startExportLoop();
+
         // イベントリスナーの登録
         getServer().getPluginManager().registerEvents(
             new ChatListener(brainFileManager, getLogger()),
@@ -99,7 +288,9 @@ public final class AIminer extends JavaPlugin {
         Bukkit.getScheduler().runTask(this, () -> {
             org.bukkit.command.PluginCommand botCommand = getCommand("bot");
             if (botCommand != null) {
-                BotCommand executor = new BotCommand(botManager, brainFileManager, aiProcessingTask);
+                BotCommand executor = new BotCommand(botManager, brainFileManager, aiProcessingTask,
+                    botEntityTracker, routeNavigator, nativeBotController, controllerBenchmark, commandDispatcher, tickBudgetScheduler,
+                    visionUpdateTask, metricsRegistry, metricsExporter, cycleTracer);
                 botCommand.setExecutor(executor);
                 botCommand.setTabCompleter(executor);
                 getLogger().info("Bot command registered.");
@@ -118,26 +309,183 @@ public final class AIminer extends JavaPlugin {
         if (aiProcessingTask != null) {
             aiProcessingTask.stopProcessingLoop();
         }
+        if (memorySummarizer != null) {
+            memorySummarizer.stopSummaryLoop();
+        }
+        if (exchangeRecorder != null) {
+            exchangeRecorder.close();
+        }
+
+        // 計測値の定期書き出しを停止
+        if (metricsExporter != null) {
+            metricsExporter.stopExportLoop();
+        }
 
         // 視覚更新タスクを停止
         if (visionUpdateTask != null) {
             visionUpdateTask.stopVisionLoop();
         }
 
+        // タスク実行を停止
+        if (taskExecutor != null) {
+            taskExecutor.stopTaskLoop();
+        }
+
+        // メインスレッド処理のスケジューラーを停止
+        if (tickBudgetScheduler != null) {
+            tickBudgetScheduler.stopScheduler();
+        }
+
+        // 経路追従を停止
+        if (routeNavigator != null) {
+            routeNavigator.stopNavigationLoop();
+        }
+
+        // ネイティブ制御を停止（データパック制御に戻す）
+        if (nativeBotController != null) {
+            nativeBotController.stopControlLoop();
+        }
+
+        // キューに残ったコマンドを実行して停止
+        if (commandDispatcher != null) {
+            commandDispatcher.stopDispatchLoop();
+        }
+
         // データコマンドリスナーを解除
         if (dataCommandListener != null) {
             dataCommandListener.unregister();
         }
 
-        // 脳ファイルを保存
+        // 脳ファイルを保存（ジャーナルを書き込み、チェックポイントを作成）
+        if (brainPersistenceTask != null) {
+            brainPersistenceTask.stopPersistenceLoop();
+        }
         if (brainFileManager != null) {
-            brainFileManager.saveBrainFile();
+            brainFileManager.close();
             getLogger().info("Brain file saved.");
         }
 
         getLogger().info("AIminer plugin has been disabled!");
     }
 
+    /**
+     * 各システムの状態をゲージとして登録する（読み出しはメインスレッド）
+     */
+    private void registerGauges(LineOfSight lineOfSight) {
+        metricsRegistry.gauge("aiminer_tick_budget_usage_percent", "Average share of the tick budget used",
+            tickBudgetScheduler::getAverageBudgetUsagePercent);
+        metricsRegistry.gauge("aiminer_tick_peak_seconds", "Longest recent tick spent in scheduled jobs",
+            () -> tickBudgetScheduler.getPeakTickMillis() / 1000.0);
+        metricsRegistry.gauge("aiminer_scheduler_deferrals", "Job steps deferred to a later tick",
+            tickBudgetScheduler::getTotalDeferrals);
+        metricsRegistry.gauge("aiminer_commands_queued", "Commands waiting in the dispatcher",
+            commandDispatcher::getQueuedCount);
+        metricsRegistry.gauge("aiminer_command_time_seconds", "Main-thread time spent running commands",
+            () -> commandDispatcher.getStats().stream()
+                .mapToLong(CommandDispatcher.CommandStats::getTotalNanos).sum() / 1e9);
+        metricsRegistry.gauge("aiminer_controller_tick_seconds", "Average native controller time per tick",
+            () -> nativeBotController.getAverageTickMicros() / 1e6);
+        metricsRegistry.gauge("aiminer_tasks_pending", "Tasks waiting to run",
+            () -> brainFileManager.getAllPendingTasks().size());
+        metricsRegistry.gauge("aiminer_memory_entries", "Keys in the flat memory",
+            brainFileManager::getMemorySize);
+        metricsRegistry.gauge("aiminer_episodes", "Episodes in the episodic memory",
+            brainFileManager::getEpisodeCount);
+        metricsRegistry.gauge("aiminer_chat_messages", "Chat messages held in the history",
+            () -> brainFileManager.getChatHistory().size());
+        metricsRegistry.gauge("aiminer_brain_journal_bytes", "Size of brain.journal",
+            brainFileManager::getJournalSize);
+        if (perceptionCache != null) {
+            metricsRegistry.gauge("aiminer_perception_sections", "Chunk sections held by the shared perception cache",
+                perceptionCache::size);
+            metricsRegistry.gauge("aiminer_perception_builds", "Section summaries built", perceptionCache::getBuilds);
+            metricsRegistry.gauge("aiminer_perception_reuses", "Section summaries reused", perceptionCache::getReuses);
+        }
+        if (lineOfSight != null) {
+            metricsRegistry.gauge("aiminer_line_of_sight_rays", "Rays cast", lineOfSight::getRays);
+            metricsRegistry.gauge("aiminer_line_of_sight_blocked_rays", "Rays stopped by an opaque block",
+                lineOfSight::getBlockedRays);
+        }
+    }
+
+    /**
+     * 設定ファイルからメモリの保持ルールを読み込む
+     */
+    private MemoryRetentionPolicy loadRetentionPolicy() {
+        Map<String, Long> ttlSeconds = new LinkedHashMap<>();
+        ConfigurationSection ttlSection = getConfig().getConfigurationSection("memory.ttl");
+        if (ttlSection != null) {
+            for (String pattern : ttlSection.getKeys(false)) {
+                ttlSeconds.put(pattern, ttlSection.getLong(pattern, -1L));
+            }
+        }
+        return new MemoryRetentionPolicy(
+            ttlSeconds,
+            getConfig().getStringList("memory.protected-keys"),
+            getConfig().getInt("memory.max-entries", 64),
+            MemoryRetentionPolicy.parseEviction(getConfig().getString("memory.eviction", "lru")),
+            getConfig().getInt("memory.max-episodes", 20000)
+        );
+    }
+
+    /**
+     * 小さいモデル（ai-server.url / backend）と大きいモデル（ai-server.tiers.large）の振り分けを設定
+     */
+    private void configureModelTiers(ModelBackend smallBackend) {
+        ModelTier small = new ModelTier(
+            "small",
+            smallBackend,
+            getConfig().getDouble("ai-server.tiers.small.temperature", 0.3),
+            getConfig().getInt("ai-server.tiers.small.max-tokens", 384),
+            getConfig().getLong("ai-server.tiers.small.latency-budget-ms", 15_000L)
+        );
+        ModelBackend largeBackend = createModelBackend("ai-server.tiers.large.backend",
+            getConfig().getString("ai-server.tiers.large.url", "http://127.0.0.1:1235"));
+        ModelTier large = new ModelTier(
+            "large",
+            largeBackend,
+            getConfig().getDouble("ai-server.tiers.large.temperature", 0.3),
+            getConfig().getInt("ai-server.tiers.large.max-tokens", 768),
+            getConfig().getLong("ai-server.tiers.large.latency-budget-ms", 0L)
+        );
+        ModelRouter router = new ModelRouter(
+            getConfig().getBoolean("ai-server.tiers.route.chat", true),
+            getConfig().getInt("ai-server.tiers.route.failures", 2),
+            getConfig().getInt("ai-server.tiers.route.novel-blocks", 3),
+            getConfig().getInt("ai-server.tiers.route.plan-length", 4)
+        );
+        aiProcessingTask.getClient().setTiers(router, small, large);
+        getLogger().info("Model tiers enabled (large: " + largeBackend.getUrl() + ", backend: "
+            + largeBackend.getName() + ")");
+    }
+
+    /**
+     * 設定ファイルからボットが使うLLMサーバーのAPIを選ぶ（不明な種類はOpenAI互換）
+     *
+     * @param path 設定のセクション（ai-server.backend, ai-server.tiers.large.backend）
+     */
+    private ModelBackend createModelBackend(String path, String url) {
+        String type = getConfig().getString(path + ".type", "openai");
+        String model = getConfig().getString(path + ".model", "local-model");
+        switch (type.toLowerCase(Locale.ROOT)) {
+            case "llamacpp":
+                return new LlamaCppBackend(
+                    url,
+                    LlamaCppBackend.Template.of(getConfig().getString(path + ".template", "chatml")),
+                    getConfig().getInt(path + ".slot", -1),
+                    getConfig().getBoolean(path + ".cache-prompt", true),
+                    getConfig().getInt(path + ".n-probs", 0)
+                );
+            case "ollama":
+                return new OllamaBackend(url, model, getConfig().getString(path + ".keep-alive", "30m"));
+            case "openai":
+                return new OpenAICompatibleBackend(url, model);
+            default:
+                getLogger().warning("Unknown " + path + ".type '" + type + "', using openai");
+                return new OpenAICompatibleBackend(url, model);
+        }
+    }
+
     public BrainFileManager getBrainFileManager() {
         return brainFileManager;
     }
@@ -0,0 +1,87 @@
+package plugin.midorin.info.aIminer.ai;
+
+import plugin.midorin.info.aIminer.brain.BrainFileManager;
+import plugin.midorin.info.aIminer.model.Position;
+import plugin.midorin.info.aIminer.model.Task;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes requested by one AI response (applied to the brain on the main thread)
+ */
+public class AIDecision {
+    private String thought;
+    private final Map<String, Object> memoryUpdates = new LinkedHashMap<>();
+    private final List<Task> newTasks = new ArrayList<>();
+    private boolean valid;
+
+    public String getThought() {
+        return thought;
+    }
+
+    public void setThought(String thought) {
+        this.thought = thought;
+    }
+
+    public Map<String, Object> getMemoryUpdates() {
+        return memoryUpdates;
+    }
+
+    /**
+     * New tasks; IDs are assigned when the decision is applied
+     */
+    public List<Task> getNewTasks() {
+        return newTasks;
+    }
+
+    /**
+     * Whether the model's JSON parsed and every task it asked for was usable
+     * A decision holding only the fallback task is not valid (the large model tier is asked instead)
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    public void setValid(boolean valid) {
+        this.valid = valid;
+    }
+
+    /**
+     * Apply memory updates and new tasks to the brain (main thread; shared by AIProcessingTask and the simulation)
+     * Updates to existing memory keys overwrite them; new keys become NOTE episodes,
+     * so the flat memory dumped into every prompt does not keep growing
+     * New tasks get fresh IDs and are added in order
+     */
+    public void applyTo(BrainFileManager brainFileManager) {
+        for (Map.Entry<String, Object> entry : memoryUpdates.entrySet()) {
+            if (brainFileManager.getBrainData().getMemory().getData().containsKey(entry.getKey())) {
+                brainFileManager.updateMemory(entry.getKey(), entry.getValue());
+            } else {
+                brainFileManager.recordEpisode("NOTE", entry.getKey() + ": " + entry.getValue(),
+                    positionOf(entry.getValue()));
+            }
+        }
+        for (Task task : newTasks) {
+            task.setId(brainFileManager.nextTaskId());
+            brainFileManager.addTask(task);
+        }
+        brainFileManager.saveBrainFile();
+    }
+
+    /**
+     * A position stored in memory (a Position, or a map with numeric x/y/z), or null
+     */
+    static Position positionOf(Object value) {
+        if (value instanceof Position position) {
+            return position;
+        }
+        if (value instanceof Map<?, ?> map && map.get("x") instanceof Number x
+                && map.get("y") instanceof Number y && map.get("z") instanceof Number z) {
+            return new Position(x.doubleValue(), y.doubleValue(), z.doubleValue());
+        }
+        return null;
+    }
+}
@@ -5,88 +5,277 @@ import org.bukkit.scheduler.BukkitRunnable;
 import plugin.midorin.info.aIminer.bot.BotManager;
 import plugin.midorin.info.aIminer.brain.BrainFileManager;
 import plugin.midorin.info.aIminer.model.BrainData;
+import plugin.midorin.info.aIminer.model.ChatMessage;
+import plugin.midorin.info.aIminer.model.Episode;
+import plugin.midorin.info.aIminer.model.Position;
+import plugin.midorin.info.aIminer.model.Task;
+import plugin.midorin.info.aIminer.util.BotLog;
+import plugin.midorin.info.aIminer.util.CycleTracer;
+import plugin.midorin.info.aIminer.util.MetricsRegistry;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 
 /**
  * Periodic task to process brain data through AI server
+ * Checks once per second; a cycle runs when the interval has passed, or right away when
+ * someone addresses the bot or a nearby player speaks (optional)
+ * The LLM call does not hold a thread while waiting; it is cancelled on disable, /bot reset, /bot think
+ * or when the bot has moved too far since the prompt was built, and late answers are discarded
  */
 public class AIProcessingTask extends BukkitRunnable {
     private final JavaPlugin plugin;
+    private final BotLog log;
     private final BrainFileManager brainFileManager;
     private final BotManager botManager;
     private final AIServerClient aiClient;
+    private final MetricsRegistry metrics;
+    // Discard reason -> counter, filled on first use (main thread only)
+    private final Map<String, MetricsRegistry.Counter> discards = new HashMap<>();
+    private final CycleTracer tracer;
     private final int processingIntervalSeconds;
+    private final int recallLimit;
+    private final boolean chatTrigger;
+
+    private static final int PROMPT_RELEVANT_CHAT = 10;  // Lines addressed to the bot / from nearby players
+    private static final int PROMPT_RECENT_CHAT = 5;     // Latest lines regardless of who spoke
+    private long lastCycleMillis = 0L;
+    private long seenRelevantChat = 0L;
+    private long staleAfterMillis;
+    private double maxDriftBlocks = 0.0;
+
+    // Cycle waiting for the LLM (set and cleared on the main thread) and the state its prompt was built from
+    private volatile CompletableFuture<?> inFlight;
+    private Position inFlightPosition;
 
     // Processing interval in seconds (longer to allow LLM to complete)
-    // Flag to prevent concurrent processing
-    private boolean isProcessing = false;
+    // Flag to prevent concurrent processing (also taken by summarize)
+    private final AtomicBoolean isProcessing = new AtomicBoolean(false);
 
     public AIProcessingTask(
             JavaPlugin plugin,
             BrainFileManager brainFileManager,
             BotManager botManager,
-            String aiServerUrl,
+            MetricsRegistry metrics,
+            CycleTracer tracer,
+            ModelBackend backend,
             int processingIntervalSeconds,
-            int timeoutSeconds
+            int timeoutSeconds,
+            int recallLimit,
+            boolean chatTrigger
     ) {
         this.plugin = plugin;
+        this.log = new BotLog(plugin.getLogger());
         this.brainFileManager = brainFileManager;
         this.botManager = botManager;
-        this.aiClient = new AIServerClient(aiServerUrl, plugin.getLogger(), timeoutSeconds);
+        this.metrics = metrics;
+        this.tracer = tracer;
+        this.aiClient = new AIServerClient(backend, plugin.getLogger(), metrics, tracer, timeoutSeconds);
         this.processingIntervalSeconds = Math.max(5, processingIntervalSeconds);
+        this.recallLimit = Math.max(0, recallLimit);
+        this.chatTrigger = chatTrigger;
+        this.staleAfterMillis = Math.max(1, timeoutSeconds) * 1000L;
+    }
+
+    /**
+     * Limits on how old the world state behind an answer may get
+     *
+     * @param staleAfterSeconds Deadline of each cycle's requests; answers applied later are discarded
+     * @param maxDriftBlocks Cancel the cycle when the bot moves farther than this from where the prompt saw it (0 = off)
+     */
+    public void setCycleLimits(int staleAfterSeconds, double maxDriftBlocks) {
+        this.staleAfterMillis = Math.max(1, staleAfterSeconds) * 1000L;
+        this.maxDriftBlocks = Math.max(0.0, maxDriftBlocks);
     }
 
     @Override
     public void run() {
+        long now = System.currentTimeMillis();
+        if (inFlight != null && hasDrifted(inFlightPosition)) {
+            cancelInFlight("drift");
+        }
+        boolean due = now - lastCycleMillis >= processingIntervalSeconds * 1000L;
+        // O(1): compare with the count of addressed/nearby messages seen at the last cycle
+        long relevantChat = brainFileManager.getChatHistory().getRelevantSequence();
+        boolean newChat = relevantChat != seenRelevantChat;
+        boolean addressed = chatTrigger && newChat;
+        if (!due && !addressed) {
+            return;
+        }
+
         // Skip if bot is not summoned
         if (!botManager.isBotSummoned()) {
-            // 毎回表示すると煩いので10回に1回だけ表示
-            if (System.currentTimeMillis() % 100000 < 10000) {
-                plugin.getLogger().info("AI processing waiting: Bot not summoned (use /bot start)");
+            if (due) {
+                lastCycleMillis = now;
+                // Once every 10 intervals is enough for a state that lasts until /bot start
+                log.limited(Level.INFO, "ai.waiting", processingIntervalSeconds * 10_000L,
+                    "reason", "bot-not-summoned", "hint", "/bot start");
             }
             return;
         }
 
-        // Skip if already processing
-        if (isProcessing) {
-            plugin.getLogger().warning("AI processing skipped: Previous request still in progress");
+        // Skip if already processing (a chat trigger retries on the next check)
+        if (!isProcessing.compareAndSet(false, true)) {
+            if (due) {
+                lastCycleMillis = now;
+                log.limited(Level.WARNING, "ai.skipped", processingIntervalSeconds * 10_000L,
+                    "reason", "previous-request-in-progress");
+            }
             return;
         }
 
-        plugin.getLogger().info("AI processing cycle triggered (every " + processingIntervalSeconds + "s)");
+        lastCycleMillis = now;
+        seenRelevantChat = relevantChat;
+        log.debug("ai.cycle", "trigger", due ? "interval" : "chat");
+        startCycle(due ? "interval" : "chat", newChat);
+    }
+
+    /**
+     * Collect inputs on the main thread and run the AI request asynchronously
+     * (the caller has taken isProcessing)
+     * The whole cycle is one trace: collect → prompt → HTTP → parse → apply
+     *
+     * @param trigger What started the cycle ("interval", "chat", "command"), recorded on the trace
+     * @param newChat Relevant chat arrived since the last cycle (a signal for the model tier)
+     */
+    private void startCycle(String trigger, boolean newChat) {
+        long traceId = tracer.newTraceId();
+        CycleTracer.Span cycleSpan = tracer.start("ai.cycle", traceId)
+            .arg("trigger", trigger)
+            .arg("visionTrace", tracer.getLatest("vision"));
+
+        // Recall related episodes and copy the brain state on the main thread (neither is thread-safe);
+        // the prompt and the fallback task are built from these copies only
+        CycleTracer.Span collectSpan = tracer.start("ai.collect", traceId);
+        List<Episode> episodes = brainFileManager.recallRelevantEpisodes(recallLimit);
+        List<ChatMessage> chat = brainFileManager.getChatHistory().forPrompt(PROMPT_RELEVANT_CHAT, PROMPT_RECENT_CHAT);
+        BrainData brainData = brainFileManager.snapshot();
+        ModelRouter router = aiClient.getRouter();
+        ModelRouter.Signals signals = router != null
+            ? router.collect(brainData, newChat, brainFileManager.getConsecutiveFailures())
+            : null;
+        collectSpan.arg("episodes", episodes.size()).arg("chat", chat.size()).end();
 
-        // Run AI processing asynchronously to avoid blocking server
-        isProcessing = true;
+        // Build the prompt off the main thread; the request itself is enqueued and holds no thread
+        CompletableFuture<AIDecision> cycle = new CompletableFuture<>();
+        long startMillis = System.currentTimeMillis();
+        Position startPosition = currentPosition();
+        inFlight = cycle;
+        inFlightPosition = startPosition;
+        long deadlineMillis = startMillis + staleAfterMillis;
+        cycle.whenComplete((decision, error) -> isProcessing.set(false));
+        cycle.whenComplete((decision, error) -> onDecision(cycle, decision, cycleSpan, startMillis, startPosition));
         plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
-            try {
-                processWithAI();
-            } finally {
-                isProcessing = false;
+            if (cycle.isDone()) {
+                return;  // Cancelled before the prompt was built
             }
+            log.debug("ai.request", "trace", cycleSpan.getTraceId());
+            CompletableFuture<AIDecision> request = aiClient.decideAsync(brainData, chat,
+                episodes, cycleSpan.getTraceId(), signals, deadlineMillis);
+            cycle.whenComplete((decision, error) -> {
+                if (cycle.isCancelled()) {
+                    request.cancel(false);
+                }
+            });
+            request.whenComplete((decision, error) -> cycle.complete(decision));
         });
     }
 
     /**
-     * Process brain data through AI server
+     * Apply an answer on the main thread, unless it came too late or the bot has moved on
      */
-    private void processWithAI() {
-        plugin.getLogger().info("Starting AI brain processing...");
+    private void onDecision(CompletableFuture<AIDecision> cycle, AIDecision decision, CycleTracer.Span cycleSpan,
+                            long startMillis, Position startPosition) {
+        if (cycle.isCancelled()) {
+            cycleSpan.arg("result", "cancelled").end();
+            return;
+        }
+        if (decision == null) {
+            plugin.getServer().getScheduler().runTask(plugin, () -> clearInFlight(cycle));
+            cycleSpan.arg("result", "failed").end();
+            plugin.getLogger().warning("AI processing failed - brain state not updated");
+            return;
+        }
+
+        // Apply on the main thread so every change goes through the brain journal
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            clearInFlight(cycle);
+            long ageMillis = System.currentTimeMillis() - startMillis;
+            String discard = ageMillis > staleAfterMillis ? "stale" : hasDrifted(startPosition) ? "drift" : null;
+            if (discard != null) {
+                discarded(discard, ageMillis);
+                cycleSpan.arg("result", "discarded").arg("reason", discard).end();
+                return;
+            }
+            applyDecision(decision, cycleSpan.getTraceId());
+            cycleSpan.arg("result", "applied").end();
+            log.debug("ai.applied", "tasks", decision.getNewTasks().size(),
+                "memoryUpdates", decision.getMemoryUpdates().size(), "ageMs", ageMillis);
+        });
+    }
 
-        // Load current brain state
-        BrainData currentBrain = brainFileManager.getBrainData();
+    /**
+     * Apply the decision (see AIDecision.applyTo)
+     * New tasks are linked to the cycle's trace so their execution can be followed
+     */
+    private void applyDecision(AIDecision decision, long traceId) {
+        CycleTracer.Span applySpan = tracer.start("ai.apply", traceId);
+        decision.applyTo(brainFileManager);
+        for (Task task : decision.getNewTasks()) {
+            task.setTraceLink(tracer.linkTask(traceId));
+            applySpan.flowTo(task.getTraceLink());
+        }
+        applySpan.arg("tasks", decision.getNewTasks().size()).end();
+    }
 
-        // Send to AI server
-        BrainData updatedBrain = aiClient.processBrain(currentBrain);
+    /**
+     * Cancel the cycle waiting for the LLM (main thread)
+     *
+     * @param reason Metric label ("disable", "reset", "superseded", "drift")
+     * @return false if no cycle was waiting
+     */
+    public boolean cancelInFlight(String reason) {
+        CompletableFuture<?> cycle = inFlight;
+        if (cycle == null || !cycle.cancel(false)) {
+            return false;
+        }
+        inFlight = null;
+        discarded(reason, -1L);
+        return true;
+    }
 
-        if (updatedBrain == null) {
-            plugin.getLogger().warning("AI processing failed - brain state not updated");
-            return;
+    private void clearInFlight(CompletableFuture<?> cycle) {
+        if (inFlight == cycle) {
+            inFlight = null;
         }
+    }
+
+    private void discarded(String reason, long ageMillis) {
+        discards.computeIfAbsent(reason, key -> metrics.counter("aiminer_ai_cycles_discarded_total",
+            "AI cycles cancelled or whose answer was not applied", "reason", key)).increment();
+        log.info("ai.discarded", "reason", reason, "ageMs", ageMillis);
+    }
 
-        // Update brain file manager with new data
-        brainFileManager.setBrainData(updatedBrain);
-        brainFileManager.saveBrainFile();
+    /**
+     * Whether the bot is farther than maxDriftBlocks from where the prompt saw it
+     */
+    private boolean hasDrifted(Position from) {
+        Position now = currentPosition();
+        if (maxDriftBlocks <= 0.0 || from == null || now == null) {
+            return false;
+        }
+        double dx = now.getX() - from.getX();
+        double dy = now.getY() - from.getY();
+        double dz = now.getZ() - from.getZ();
+        return dx * dx + dy * dy + dz * dz > maxDriftBlocks * maxDriftBlocks;
+    }
 
-        plugin.getLogger().info("AI processing completed and brain state updated");
+    private Position currentPosition() {
+        return AIDecision.positionOf(brainFileManager.getBrainData().getMemory().get("current_position"));
     }
 
     /**
@@ -104,13 +293,12 @@ public class AIProcessingTask extends BukkitRunnable {
             );
         }
 
-        // Start periodic task (every N seconds)
-        long intervalTicks = processingIntervalSeconds * 20L;
-        this.runTaskTimer(plugin, 100L, intervalTicks); // Start after 5 seconds, then every N seconds
+        // Start after 5 seconds, then check every second (cycles still run every N seconds)
+        this.runTaskTimer(plugin, 100L, 20L);
 
         plugin.getLogger().info(String.format(
-                "AI processing task started (interval: %d seconds)",
-                processingIntervalSeconds
+                "AI processing task started (interval: %d seconds, chat trigger: %s)",
+                processingIntervalSeconds, chatTrigger ? "on" : "off"
         ));
     }
 
@@ -119,6 +307,8 @@ public class AIProcessingTask extends BukkitRunnable {
      */
     public void stopProcessingLoop() {
         this.cancel();
+        cancelInFlight("disable");
+        aiClient.shutdown();
         plugin.getLogger().info("AI processing task stopped");
     }
 
@@ -126,19 +316,48 @@ public class AIProcessingTask extends BukkitRunnable {
      * Trigger an immediate AI processing (can be called by command)
      */
     public void triggerImmediateProcessing() {
-        if (isProcessing) {
+        // The new cycle sees the current state, so the one still waiting is no longer needed
+        if (cancelInFlight("superseded")) {
+            plugin.getLogger().info("Cancelled the AI request in progress");
+        }
+        if (!isProcessing.compareAndSet(false, true)) {
             plugin.getLogger().info("AI processing already in progress");
             return;
         }
 
         plugin.getLogger().info("Triggering immediate AI processing...");
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
-            isProcessing = true;
-            try {
-                processWithAI();
-            } finally {
-                isProcessing = false;
+        lastCycleMillis = System.currentTimeMillis();
+        long relevantChat = brainFileManager.getChatHistory().getRelevantSequence();
+        boolean newChat = relevantChat != seenRelevantChat;
+        seenRelevantChat = relevantChat;
+        startCycle("command", newChat);
+    }
+
+    /**
+     * Summarize episodes while no cycle is running (main thread; used by MemorySummarizer)
+     * The request gets the same deadline as a cycle and is the request in flight until it finishes,
+     * so disable, /bot reset and /bot think cancel it like a cycle
+     *
+     * @return Completes with the digest, or null if the request failed; null if a request is already in progress
+     */
+    public CompletableFuture<String> summarize(List<Episode> episodes) {
+        if (!isProcessing.compareAndSet(false, true)) {
+            return null;
+        }
+        CompletableFuture<String> summary = aiClient.summarizeAsync(episodes,
+            System.currentTimeMillis() + staleAfterMillis);
+        inFlight = summary;
+        inFlightPosition = null;
+        summary.whenComplete((digest, error) -> {
+            isProcessing.set(false);
+            if (!summary.isCancelled()) {
+                plugin.getServer().getScheduler().runTask(plugin, () -> clearInFlight(summary));
             }
         });
+        return summary;
+    }
+
+    public AIServerClient getClient() {
+        return aiClient;
     }
 }
@@ -1,40 +1,78 @@
 package plugin.midorin.info.aIminer.ai;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
 import okhttp3.*;
+import okio.Buffer;
+import plugin.midorin.info.aIminer.brain.ChatHistory;
 import plugin.midorin.info.aIminer.model.*;
 import plugin.midorin.info.aIminer.model.VisibleEntity;
+import plugin.midorin.info.aIminer.util.BotLog;
+import plugin.midorin.info.aIminer.util.CycleTracer;
+import plugin.midorin.info.aIminer.util.MetricsRegistry;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
- * HTTP Client for communicating with LM Studio (OpenAI-compatible API)
+ * HTTP Client for communicating with the LLM server
+ * The server's API (OpenAI-compatible, llama.cpp, Ollama) is handled by a ModelBackend
+ * Prompt building and response parsing are package-private for the jmh benchmarks
  */
 public class AIServerClient {
-    private final String apiUrl;
     private final OkHttpClient httpClient;
-    private final Gson gson;
+    private volatile ModelTier primaryTier;     // Every request when tiering is off; the small model when on
+    private volatile ModelTier largeTier;       // null = tiering off
+    private volatile ModelRouter router;
     private final Logger logger;
+    private final BotLog log;
+    private final MetricsRegistry metrics;
+    private final CycleTracer tracer;
+    private volatile ExchangeRecorder recorder;  // null = not recording
+    private final RequestMetrics decideMetrics;
+    private final RequestMetrics summarizeMetrics;
+    private final MetricsRegistry.Counter errorFallbacks;
+    private final MetricsRegistry.Counter invalidFallbacks;
 
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
     private static final int DEFAULT_TIMEOUT_SECONDS = 120; // 2 minutes for local LLM
+    // 低温度で確実な応答、短い応答で高速化
+    private static final double DECIDE_TEMPERATURE = 0.3;
+    private static final int DECIDE_MAX_TOKENS = 512;
+    private static final int MAX_SUMMARY_LINES = 20;        // Block types listed in a summarized prompt
+    private static final DateTimeFormatter EPISODE_TIME_FORMATTER =
+        DateTimeFormatter.ofPattern("MM-dd HH:mm").withZone(ZoneId.systemDefault());
 
-    public AIServerClient(String apiUrl, Logger logger, int timeoutSeconds) {
-        this.apiUrl = apiUrl;
+    /**
+     * Client for an OpenAI-compatible server (LM Studio)
+     */
+    public AIServerClient(String apiUrl, Logger logger, MetricsRegistry metrics, CycleTracer tracer,
+                          int timeoutSeconds) {
+        this(new OpenAICompatibleBackend(apiUrl, "local-model"), logger, metrics, tracer, timeoutSeconds);
+    }
+
+    public AIServerClient(ModelBackend backend, Logger logger, MetricsRegistry metrics, CycleTracer tracer,
+                          int timeoutSeconds) {
         this.logger = logger;
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this.log = new BotLog(logger);
+        this.metrics = metrics;
+        this.tracer = tracer;
+        this.decideMetrics = new RequestMetrics(metrics, "decide");
+        this.summarizeMetrics = new RequestMetrics(metrics, "summarize");
+        this.errorFallbacks = fallbackCounter(metrics, "error");
+        this.invalidFallbacks = fallbackCounter(metrics, "invalid");
 
         int effectiveTimeout = timeoutSeconds > 0 ? timeoutSeconds : DEFAULT_TIMEOUT_SECONDS;
 
@@ -44,106 +82,441 @@ public class AIServerClient {
                 .writeTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(effectiveTimeout, TimeUnit.SECONDS)
                 .build();
+
+        this.primaryTier = new ModelTier("default", backend, DECIDE_TEMPERATURE, DECIDE_MAX_TOKENS, 0L);
+        primaryTier.attach(metrics);
     }
 
     /**
-     * Process brain data through LM Studio
+     * Send routine decisions to a small, fast model and the rest to a large one
+     * Summaries keep using the small tier's backend
+     *
+     * @param router Picks the tier from the cycle's signals
+     */
+    public void setTiers(ModelRouter router, ModelTier small, ModelTier large) {
+        small.attach(metrics);
+        large.attach(metrics);
+        this.router = router;
+        this.primaryTier = small;
+        this.largeTier = large;
+    }
+
+    /**
+     * Router for collecting signals, or null if tiering is off
+     */
+    public ModelRouter getRouter() {
+        return largeTier != null ? router : null;
+    }
+
+    /**
+     * Tiers in use (one when tiering is off), for /bot status
+     */
+    public List<ModelTier> getTiers() {
+        ModelTier large = largeTier;
+        return large != null ? List.of(primaryTier, large) : List.of(primaryTier);
+    }
+
+    /**
+     * Decisions the small tier could not answer (failed, over its budget, or invalid output)
+     */
+    public long getFallbacks() {
+        return errorFallbacks.get() + invalidFallbacks.get();
+    }
+
+    private static MetricsRegistry.Counter fallbackCounter(MetricsRegistry metrics, String reason) {
+        return metrics.counter("aiminer_llm_tier_fallbacks_total", "Decisions handed from the small to the large model",
+                "reason", reason);
+    }
+
+    /**
+     * Record every request/response pair from now on (null to stop)
+     */
+    public void setRecorder(ExchangeRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Ask the LLM server what to do next (the brain itself is not modified)
+     * Blocks the calling thread; the plugin uses decideAsync
      *
      * @param brainData Current brain state
-     * @return Updated brain data with new task, or null if failed
+     * @param chat Chat lines for the prompt: messages to the bot or from nearby players, plus the latest ones
+     * @param episodes Episodes related to the current situation (recalled on the main thread)
+     * @param traceId Cycle the prompt, HTTP and parse spans belong to
+     * @return Memory updates and new tasks, or null if failed
      */
-    public BrainData processBrain(BrainData brainData) {
-        try {
-            logger.info("Sending brain data to LM Studio: " + apiUrl);
+    public AIDecision decide(BrainData brainData, List<ChatMessage> chat, List<Episode> episodes, long traceId) {
+        return decide(brainData, chat, episodes, traceId, null);
+    }
+
+    /**
+     * Blocking decideAsync without a deadline
+     */
+    public AIDecision decide(BrainData brainData, List<ChatMessage> chat, List<Episode> episodes, long traceId,
+                             ModelRouter.Signals signals) {
+        return decideAsync(brainData, chat, episodes, traceId, signals, 0L).join();
+    }
 
+    /**
+     * Ask the model tier the signals call for without blocking
+     * The prompt is built on the calling thread; the HTTP calls are enqueued and the answer is parsed
+     * on OkHttp's dispatcher thread
+     * If the small tier fails, runs over its latency budget or returns output that does not validate,
+     * the same prompt goes to the large tier (unless the deadline has passed)
+     * Cancelling the returned future cancels the HTTP call in flight
+     *
+     * @param signals Collected with getRouter() on the main thread (null = small tier)
+     * @param deadlineMillis Wall-clock time after which no request is running (0 = only the tier budgets)
+     * @return Completes with the decision, or null if every request failed or timed out
+     */
+    public CompletableFuture<AIDecision> decideAsync(BrainData brainData, List<ChatMessage> chat,
+                                                     List<Episode> episodes, long traceId,
+                                                     ModelRouter.Signals signals, long deadlineMillis) {
+        long startNanos = System.nanoTime();
+        ModelTier small = primaryTier;
+        ModelTier large = largeTier;
+        String reason = large != null ? router.largeReason(signals) : null;
+        ModelTier first = reason != null ? large : small;
+        if (large != null) {
+            first.routeCounter(reason != null ? reason : "routine").increment();
+        }
+
+        String systemPrompt;
+        String userMessage;
+        try {
+            CycleTracer.Span promptSpan = tracer.start("ai.prompt", traceId);
             // Build system prompt from rules
-            String systemPrompt = buildSystemPrompt(brainData.getRules());
+            systemPrompt = buildSystemPrompt(brainData.getRules());
 
             // Build user message from current state
-            String userMessage = buildUserMessage(brainData);
-
-            // Create OpenAI-compatible request
-            JsonObject requestJson = new JsonObject();
-            requestJson.addProperty("model", "local-model");
-            requestJson.addProperty("temperature", 0.3); // 低温度で確実な応答
-            requestJson.addProperty("max_tokens", 512); // 短い応答で高速化
-
-            JsonArray messages = new JsonArray();
-
-            JsonObject systemMsg = new JsonObject();
-            systemMsg.addProperty("role", "system");
-            systemMsg.addProperty("content", systemPrompt);
-            messages.add(systemMsg);
-
-            JsonObject userMsg = new JsonObject();
-            userMsg.addProperty("role", "user");
-            userMsg.addProperty("content", userMessage);
-            messages.add(userMsg);
-
-            requestJson.add("messages", messages);
-
-            String jsonBody = gson.toJson(requestJson);
-            logger.fine("Request body: " + jsonBody);
-
-            RequestBody body = RequestBody.create(jsonBody, JSON);
-
-            // Build HTTP request to LM Studio endpoint
-            Request httpRequest = new Request.Builder()
-                    .url(apiUrl + "/v1/chat/completions")
-                    .post(body)
-                    .build();
-
-            // Execute request
-            long startTime = System.currentTimeMillis();
-            try (Response response = httpClient.newCall(httpRequest).execute()) {
-                long responseTime = System.currentTimeMillis() - startTime;
-
-                if (!response.isSuccessful()) {
-                    logger.warning(String.format(
-                            "LM Studio returned error: %d %s",
-                            response.code(),
-                            response.message()
-                    ));
-                    return null;
+            userMessage = buildUserMessage(brainData, chat, episodes);
+            promptSpan.arg("chars", systemPrompt.length() + userMessage.length()).end();
+        } catch (Exception e) {
+            logger.severe("Error processing brain data: " + e.getMessage());
+            e.printStackTrace();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<AIDecision> result = new CompletableFuture<>();
+        AtomicReference<ModelTier> answered = new AtomicReference<>(first);
+        decideWith(first, brainData, chat, systemPrompt, userMessage, traceId, deadlineMillis, result)
+                .thenCompose(decision -> {
+                    if (first == large || large == null || (decision != null && decision.isValid())) {
+                        return CompletableFuture.completedFuture(decision);
+                    }
+                    if (deadlineMillis > 0L && System.currentTimeMillis() >= deadlineMillis) {
+                        log.info("ai.tier-fallback-skipped", "reason", "deadline", "trace", traceId);
+                        return CompletableFuture.completedFuture(decision);
+                    }
+                    String fallback = decision == null ? "error" : "invalid";
+                    (decision == null ? errorFallbacks : invalidFallbacks).increment();
+                    log.info("ai.tier-fallback", "from", first.getName(), "to", large.getName(), "reason", fallback,
+                            "trace", traceId);
+                    answered.set(large);
+                    return decideWith(large, brainData, chat, systemPrompt, userMessage, traceId, deadlineMillis,
+                            result).thenApply(retried -> retried != null ? retried : decision);
+                })
+                .whenComplete((decision, error) -> {
+                    if (error != null) {
+                        logger.severe("Error processing AI response: " + error.getMessage());
+                        result.complete(null);
+                        return;
+                    }
+                    if (decision != null) {
+                        answered.get().recordDecision(startNanos);
+                    }
+                    result.complete(decision);
+                });
+        return result;
+    }
+
+    /**
+     * Send the prompt to one tier and parse the answer
+     *
+     * @param owner Future of the whole decision; cancelling it cancels this request
+     * @return Completes with the decision, or null if the request failed
+     */
+    private CompletableFuture<AIDecision> decideWith(ModelTier tier, BrainData brainData, List<ChatMessage> chat,
+                                                     String systemPrompt, String userMessage, long traceId,
+                                                     long deadlineMillis, CompletableFuture<?> owner) {
+        log.debug("ai.send", "tier", tier.getName(), "backend", tier.getBackend().getName(),
+                "url", tier.getBackend().getUrl(), "trace", traceId);
+        CompletableFuture<String> request = requestCompletionAsync(decideMetrics, traceId, tier, systemPrompt,
+                userMessage, tier.getTemperature(), tier.getMaxTokens(), deadlineMillis);
+        owner.whenComplete((ignored, error) -> {
+            if (owner.isCancelled()) {
+                request.cancel(false);
+            }
+        });
+        return request.handle((aiContent, error) -> {
+            if (error != null) {
+                if (!owner.isCancelled()) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    logger.severe("Failed to communicate with the LLM server (" + tier.getName() + "): "
+                            + cause.getMessage());
                 }
+                return null;
+            }
+            if (aiContent == null) {
+                return null;
+            }
+            log.debug("ai.response", "content", aiContent);
+
+            // Parse AI response into a decision
+            CycleTracer.Span parseSpan = tracer.start("ai.parse", traceId);
+            AIDecision decision = parseAIResponse(brainData, chat, aiContent);
+            parseSpan.arg("tasks", decision.getNewTasks().size())
+                    .arg("memoryUpdates", decision.getMemoryUpdates().size())
+                    .arg("valid", decision.isValid()).end();
+            return decision;
+        });
+    }
+
+    /**
+     * Compress old episodes into a short digest (used by MemorySummarizer through AIProcessingTask)
+     *
+     * @param deadlineMillis Wall-clock time after which the request is given up (0 = only the tier's budget)
+     * @return Completes with the digest text, or null if the request failed or timed out.
+     *         Cancelling it cancels the call
+     */
+    public CompletableFuture<String> summarizeAsync(List<Episode> episodes, long deadlineMillis) {
+        StringBuilder userMessage = new StringBuilder();
+        userMessage.append("以下はMinecraftのボットが過去に経験した出来事です。\n");
+        userMessage.append("後で思い出すために、重要な場所・採取した資源・プレイヤーの依頼を中心に、");
+        userMessage.append("日本語で5行以内に要約してください。要約だけを出力してください。\n\n");
+        for (Episode episode : episodes) {
+            userMessage.append(String.format("- [%s] %s\n",
+                EPISODE_TIME_FORMATTER.format(Instant.ofEpochMilli(episode.getTimestamp())), episode));
+        }
+        CompletableFuture<String> request = requestCompletionAsync(summarizeMetrics, tracer.newTraceId(), primaryTier,
+                "あなたは記憶を整理するアシスタントです。", userMessage.toString(), 0.2, 256, deadlineMillis);
+        CompletableFuture<String> result = request.handle((digest, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                logger.warning("Failed to summarize memory: " + cause.getMessage());
+                return null;
+            }
+            return digest != null && !digest.isBlank() ? digest.trim() : null;
+        });
+        result.whenComplete((digest, error) -> {
+            if (result.isCancelled()) {
+                request.cancel(false);
+            }
+        });
+        return result;
+    }
 
-                // Parse response
-                String responseBody = response.body().string();
-                logger.fine("Response body: " + responseBody);
+    /**
+     * Send one completion request to the model backend (enqueued; no thread waits for the response)
+     * Latency, prompt size, token usage and the server's own timings are recorded per purpose
+     * The call times out at the tier's latency budget or the deadline, whichever comes first
+     *
+     * @param purpose Metrics of the request's purpose ("decide", "summarize")
+     * @param traceId Cycle the HTTP span belongs to
+     * @param tier Model to ask
+     * @param deadlineMillis Wall-clock time the call must finish by (0 = only the tier's budget)
+     * @return Completes with the text of the completion, or null if the server returned an error or no text;
+     *         completes exceptionally if the call failed or timed out. Cancelling it cancels the call
+     */
+    private CompletableFuture<String> requestCompletionAsync(RequestMetrics purpose, long traceId, ModelTier tier,
+                                                             String systemPrompt, String userMessage,
+                                                             double temperature, int maxTokens, long deadlineMillis) {
+        ModelBackend backend = tier.getBackend();
+        long timeoutMillis = tier.getLatencyBudgetMillis();
+        if (deadlineMillis > 0L) {
+            long remaining = deadlineMillis - System.currentTimeMillis();
+            if (remaining <= 0L) {
+                return CompletableFuture.failedFuture(new InterruptedIOException("deadline passed"));
+            }
+            timeoutMillis = timeoutMillis > 0L ? Math.min(timeoutMillis, remaining) : remaining;
+        }
+        purpose.promptChars.record(systemPrompt.length() + userMessage.length());
 
-                JsonObject responseJson = JsonParser.parseString(responseBody).getAsJsonObject();
-                JsonArray choices = responseJson.getAsJsonArray("choices");
+        Request httpRequest = backend.buildRequest(systemPrompt, userMessage, temperature, maxTokens);
+        if (log.isDebug()) {
+            try {
+                Buffer requestBody = new Buffer();
+                httpRequest.body().writeTo(requestBody);
+                log.debug("ai.request-body", "purpose", purpose.name, "backend", backend.getName(),
+                        "body", requestBody.readUtf8());
+            } catch (IOException e) {
+                log.debug("ai.request-body", "purpose", purpose.name, "error", e.getMessage());
+            }
+        }
 
-                if (choices == null || choices.size() == 0) {
-                    logger.warning("No choices in LM Studio response");
-                    return null;
-                }
+        // Execute request
+        long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        CycleTracer.Span httpSpan = tracer.start("ai.http", traceId).arg("purpose", purpose.name).arg("tier", tier.getName());
+        Call call = httpClient.newCall(httpRequest);
+        if (timeoutMillis > 0L) {
+            call.timeout().timeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        CompletableFuture<String> future = new CompletableFuture<>();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call failedCall, IOException e) {
+                // OkHttp cancels the call itself on timeout, so only a cancelled future means cancel()
+                String result = future.isCancelled() ? "cancelled" : e instanceof InterruptedIOException ? "timeout" : "error";
+                finishRequest(purpose, systemPrompt, userMessage, result, 0, null, startTime, httpSpan);
+                future.completeExceptionally(e);
+            }
 
-                String aiContent = choices.get(0).getAsJsonObject()
-                        .getAsJsonObject("message")
-                        .get("content").getAsString();
+            @Override
+            public void onResponse(Call respondedCall, Response response) {
+                String result = "error";
+                ModelBackend.Completion completion = null;
+                try (response) {
+                    long responseTime = System.currentTimeMillis() - startTime;
+                    purpose.requestTimes.recordSince(startNanos);
+
+                    if (!response.isSuccessful()) {
+                        logger.warning(String.format(
+                                "LLM server (%s) returned error: %d %s",
+                                backend.getName(),
+                                response.code(),
+                                response.message()
+                        ));
+                        future.complete(null);
+                        return;
+                    }
 
-                logger.info(String.format("AI processing completed in %dms", responseTime));
-                logger.info("AI Response: " + aiContent);
+                    // Parse response straight from the socket; the body is only kept as a String for debug logging
+                    if (log.isDebug()) {
+                        String responseBody = response.body().string();
+                        log.debug("ai.response-body", "purpose", purpose.name, "body", responseBody);
+                        completion = backend.parseResponse(responseBody);
+                    } else {
+                        completion = backend.parseResponse(response.body().charStream());
+                    }
+                    if (completion.getContent() == null) {
+                        logger.warning("No completion text in " + backend.getName() + " response");
+                        future.complete(null);
+                        return;
+                    }
 
-                // Parse AI response and update brain data
-                return parseAIResponse(brainData, aiContent);
+                    recordUsage(purpose, tier, completion);
+                    if (completion.getCompletionTokens() >= 0) {
+                        httpSpan.arg("completionTokens", completion.getCompletionTokens());
+                    }
+                    log.info("ai.completed", "purpose", purpose.name, "tier", tier.getName(), "ms", responseTime);
+                    result = "ok";
+                    future.complete(completion.getContent());
+                } catch (IOException | RuntimeException e) {
+                    result = future.isCancelled() ? "cancelled" : e instanceof InterruptedIOException ? "timeout" : "error";
+                    future.completeExceptionally(e);
+                } finally {
+                    finishRequest(purpose, systemPrompt, userMessage, result, response.code(), completion, startTime,
+                            httpSpan);
+                }
+            }
+        });
+        future.whenComplete((content, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
             }
+        });
+        return future;
+    }
 
-        } catch (IOException e) {
-            logger.severe("Failed to communicate with LM Studio: " + e.getMessage());
-            return null;
-        } catch (Exception e) {
-            logger.severe("Error processing brain data: " + e.getMessage());
-            e.printStackTrace();
-            return null;
+    /**
+     * Count the request, end its span and hand it to the recorder (cancelled calls are not recorded)
+     */
+    private void finishRequest(RequestMetrics purpose, String systemPrompt, String userMessage, String result, int status,
+                               ModelBackend.Completion completion, long startTime, CycleTracer.Span httpSpan) {
+        purpose.requests(result).increment();
+        httpSpan.arg("result", result).end();
+        ExchangeRecorder recorder = this.recorder;
+        if (recorder != null && !"cancelled".equals(result)) {
+            recorder.record(purpose.name, systemPrompt, userMessage, completion != null ? completion.getContent() : null,
+                    status, System.currentTimeMillis() - startTime,
+                    completion != null ? completion.getPromptTokens() : -1L,
+                    completion != null ? completion.getCompletionTokens() : -1L);
+        }
+    }
+
+    /**
+     * Record token counts and the backend's own timings (each is absent on some servers)
+     */
+    private void recordUsage(RequestMetrics purpose, ModelTier tier, ModelBackend.Completion completion) {
+        if (completion.getPromptTokens() >= 0) {
+            purpose.promptTokens.add(completion.getPromptTokens());
+        }
+        if (completion.getCompletionTokens() >= 0) {
+            purpose.completionTokens.add(completion.getCompletionTokens());
+        }
+        if (completion.getCachedTokens() >= 0) {
+            purpose.cachedTokens.add(completion.getCachedTokens());
+        }
+        for (Map.Entry<String, Long> phase : completion.getPhaseNanos().entrySet()) {
+            tier.phaseTimer(phase.getKey()).record(phase.getValue());
+        }
+        if (!Double.isNaN(completion.getMeanTokenProbability())) {
+            purpose.tokenProbability.record(Math.round(completion.getMeanTokenProbability() * 1000.0));
+        }
+    }
+
+    /**
+     * Metrics of one request purpose, registered once so a request does no registry lookups
+     */
+    private static final class RequestMetrics {
+        final String name;
+        final MetricsRegistry.Histogram promptChars;
+        final MetricsRegistry.Histogram requestTimes;
+        final MetricsRegistry.Counter promptTokens;
+        final MetricsRegistry.Counter completionTokens;
+        final MetricsRegistry.Counter cachedTokens;
+        final MetricsRegistry.Histogram tokenProbability;
+        private final MetricsRegistry.Counter ok;
+        private final MetricsRegistry.Counter error;
+        private final MetricsRegistry.Counter timeout;
+        private final MetricsRegistry.Counter cancelled;
+
+        RequestMetrics(MetricsRegistry metrics, String name) {
+            this.name = name;
+            this.promptChars = metrics.histogram("aiminer_prompt_chars", "Characters in the system and user prompt",
+                    1.0, "purpose", name);
+            this.requestTimes = metrics.timer("aiminer_llm_request_seconds", "LLM request latency", "purpose", name);
+            this.promptTokens = tokens(metrics, name, "prompt");
+            this.completionTokens = tokens(metrics, name, "completion");
+            this.cachedTokens = tokens(metrics, name, "cached");
+            this.tokenProbability = metrics.histogram("aiminer_llm_token_probability",
+                    "Mean probability of the generated tokens", 0.001, "purpose", name);
+            this.ok = requests(metrics, name, "ok");
+            this.error = requests(metrics, name, "error");
+            this.timeout = requests(metrics, name, "timeout");
+            this.cancelled = requests(metrics, name, "cancelled");
+        }
+
+        /**
+         * Request counter for a result ("ok", "error", "timeout", "cancelled")
+         */
+        MetricsRegistry.Counter requests(String result) {
+            return switch (result) {
+                case "ok" -> ok;
+                case "timeout" -> timeout;
+                case "cancelled" -> cancelled;
+                default -> error;
+            };
+        }
+
+        private static MetricsRegistry.Counter tokens(MetricsRegistry metrics, String purpose, String kind) {
+            return metrics.counter("aiminer_llm_tokens_total", "Tokens reported by the LLM server", "purpose", purpose,
+                    "kind", kind);
+        }
+
+        private static MetricsRegistry.Counter requests(MetricsRegistry metrics, String purpose, String result) {
+            return metrics.counter("aiminer_llm_requests_total", "LLM requests by result", "purpose", purpose,
+                    "result", result);
         }
     }
 
     /**
      * Build system prompt from brain rules
      */
-    private String buildSystemPrompt(BrainRules rules) {
+    String buildSystemPrompt(BrainRules rules) {
         StringBuilder prompt = new StringBuilder();
 
         prompt.append("あなたはMinecraftのボットAIです。\n\n");
@@ -205,23 +578,52 @@ public class AIServerClient {
         return prompt.toString();
     }
 
+    /**
+     * Append block counts per type and groups of adjacent blocks (vision.summarize)
+     */
+    private void appendBlockSummary(StringBuilder message, BlockVisionData blocks) {
+        message.append("\n**周囲のブロック（種類ごと、近い順）**:\n");
+        List<BlockSummary> summaries = blocks.getBlockSummaries();
+        for (int i = 0; i < Math.min(MAX_SUMMARY_LINES, summaries.size()); i++) {
+            BlockSummary summary = summaries.get(i);
+            Position nearest = summary.getNearest();
+            message.append(String.format("  - %s x%d 最寄り(%.0f, %.0f, %.0f) 距離:%.1f\n",
+                summary.getBlockType(), summary.getCount(),
+                nearest.getX(), nearest.getY(), nearest.getZ(), summary.getDistance()));
+        }
+        if (summaries.size() > MAX_SUMMARY_LINES) {
+            message.append("  ... (他に").append(summaries.size() - MAX_SUMMARY_LINES).append("種類)\n");
+        }
+
+        List<BlockCluster> clusters = blocks.getBlockClusters();
+        if (clusters != null && !clusters.isEmpty()) {
+            message.append("\n**まとまり（木・鉱脈など）**:\n");
+            for (BlockCluster cluster : clusters) {
+                Position center = cluster.getCenter();
+                message.append(String.format("  - %s x%d (%.0f, %.0f, %.0f)付近 距離:%.1f\n",
+                    cluster.getBlockType(), cluster.getSize(),
+                    center.getX(), center.getY(), center.getZ(), cluster.getDistance()));
+            }
+        }
+    }
+
     /**
      * Build user message from current brain state
      */
-    private String buildUserMessage(BrainData brainData) {
+    String buildUserMessage(BrainData brainData, List<ChatMessage> chatHistory, List<Episode> episodes) {
         StringBuilder message = new StringBuilder();
 
         message.append("## 現在の状態\n\n");
 
         // Vision - Chat
         message.append("### チャット履歴\n");
-        List<ChatMessage> chatHistory = brainData.getVision().getChat();
         if (chatHistory.isEmpty()) {
             message.append("なし\n");
         } else {
             for (ChatMessage chat : chatHistory) {
-                message.append(String.format("[%s] %s: %s\n",
-                    chat.getTimestamp(), chat.getPlayer(), chat.getMessage()));
+                message.append(String.format("[%s] %s: %s%s\n",
+                    ChatHistory.formatTimestamp(chat.getTimestamp()), chat.getPlayer(), chat.getMessage(),
+                    chat.isMention() ? " (あなた宛て)" : ""));
             }
         }
         message.append("\n");
@@ -255,8 +657,10 @@ public class AIServerClient {
                     dir.getYaw(), dir.getPitch()));
             }
 
-            // 周囲のブロック（既にフィルタリング済み）
-            if (blocks.getVisibleBlocks() != null && !blocks.getVisibleBlocks().isEmpty()) {
+            // 周囲のブロック（既にフィルタリング済み）。要約があれば個々のブロックの代わりに使う
+            if (blocks.isSummarized()) {
+                appendBlockSummary(message, blocks);
+            } else if (blocks.getVisibleBlocks() != null && !blocks.getVisibleBlocks().isEmpty()) {
                 message.append("\n**周囲のブロック**:\n");
                 int count = 0;
                 for (VisibleBlock block : blocks.getVisibleBlocks()) {
@@ -328,6 +732,18 @@ public class AIServerClient {
         }
         message.append("\n");
 
+        // Episodic memory (only the entries related to what the bot sees and hears now)
+        message.append("### 関連する記憶\n");
+        if (episodes.isEmpty()) {
+            message.append("なし\n");
+        } else {
+            for (Episode episode : episodes) {
+                message.append(String.format("- [%s] %s\n",
+                    EPISODE_TIME_FORMATTER.format(Instant.ofEpochMilli(episode.getTimestamp())), episode));
+            }
+        }
+        message.append("\n");
+
         // Current tasks
         message.append("### 現在のタスク\n");
         List<Task> tasks = brainData.getTasks();
@@ -346,124 +762,183 @@ public class AIServerClient {
     }
 
     /**
-     * Parse AI response and update brain data
+     * Parse AI response into a decision
+     * The JSON is read in place with a streaming JsonReader: no substring, tree or Map round trip;
+     * parameters and memory values come out as the same Double/String/List/Map values as before
      */
-    private BrainData parseAIResponse(BrainData brainData, String aiContent) {
+    AIDecision parseAIResponse(BrainData brainData, List<ChatMessage> chat, String aiContent) {
+        AIDecision decision = new AIDecision();
         try {
-            // Extract JSON from response (might be wrapped in markdown code blocks)
-            String jsonStr = extractJson(aiContent);
-            if (jsonStr == null) {
+            // Find the JSON in the response (might be wrapped in markdown code blocks)
+            int jsonStart = findJsonStart(aiContent);
+            if (jsonStart < 0) {
                 logger.warning("Could not extract JSON from AI response");
-                return brainData;
+                return decision;
             }
-
-            JsonObject responseObj = JsonParser.parseString(jsonStr).getAsJsonObject();
-
-            // Log thought process
-            if (responseObj.has("thought")) {
-                logger.info("AI Thought: " + responseObj.get("thought").getAsString());
-            }
-
-            // Update memory
-            if (responseObj.has("memory_updates") && !responseObj.get("memory_updates").isJsonNull()) {
-                JsonObject memoryUpdates = responseObj.getAsJsonObject("memory_updates");
-                for (String key : memoryUpdates.keySet()) {
-                    Object value = gson.fromJson(memoryUpdates.get(key), Object.class);
-                    brainData.getMemory().put(key, value);
-                    logger.info("Memory updated: " + key + " = " + value);
-                }
-            }
-
-            // Add new tasks (複数タスク対応)
-            boolean tasksAdded = false;
-
-            // new_tasks（配列）をチェック
-            if (responseObj.has("new_tasks") && responseObj.get("new_tasks").isJsonArray()) {
-                JsonArray tasksArray = responseObj.getAsJsonArray("new_tasks");
-                for (int i = 0; i < tasksArray.size(); i++) {
-                    JsonObject taskObj = tasksArray.get(i).getAsJsonObject();
-                    Task newTask = parseTaskFromJson(taskObj, brainData);
-                    if (newTask != null) {
-                        brainData.getTasks().add(newTask);
-                        logger.info(String.format("New task added: %s (ID: %d) - %s",
-                            newTask.getType(), newTask.getId(), newTask.getReason()));
-                        tasksAdded = true;
+            StringReader source = new StringReader(aiContent);
+            source.skip(jsonStart);
+            JsonReader reader = new JsonReader(source);
+            // Models write single quotes, unquoted names and trailing prose; the reader stops after the object
+            reader.setStrictness(Strictness.LENIENT);
+
+            List<Task> listedTasks = new ArrayList<>();
+            int listedRejected = 0;
+            Task singleTask = null;
+            boolean hasSingleTask = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    // Log thought process
+                    case "thought" -> {
+                        decision.setThought(JsonStreams.nextString(reader));
+                        log.debug("ai.thought", "text", decision.getThought());
+                    }
+                    // Update memory
+                    case "memory_updates" -> {
+                        if (JsonStreams.isObject(reader)) {
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                String key = reader.nextName();
+                                Object value = JsonStreams.nextValue(reader);
+                                decision.getMemoryUpdates().put(key, value);
+                                log.debug("ai.memory-update", "key", key, "value", value);
+                            }
+                            reader.endObject();
+                        }
+                    }
+                    // new_tasks（配列）
+                    case "new_tasks" -> {
+                        if (JsonStreams.isArray(reader)) {
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                Task newTask = readTask(reader);
+                                if (newTask != null) {
+                                    listedTasks.add(newTask);
+                                }
+                                if (newTask == null || !hasRequiredParameters(newTask)) {
+                                    listedRejected++;
+                                }
+                            }
+                            reader.endArray();
+                        }
+                    }
+                    // new_task（単数、後方互換）
+                    case "new_task" -> {
+                        if (JsonStreams.isObject(reader)) {
+                            hasSingleTask = true;
+                            singleTask = readTask(reader);
+                        }
                     }
+                    default -> reader.skipValue();
                 }
             }
-
-            // new_task（単数、後方互換）をチェック
-            if (!tasksAdded && responseObj.has("new_task") && !responseObj.get("new_task").isJsonNull()) {
-                JsonObject taskObj = responseObj.getAsJsonObject("new_task");
-                Task newTask = parseTaskFromJson(taskObj, brainData);
-                if (newTask != null) {
-                    brainData.getTasks().add(newTask);
-                    logger.info(String.format("New task added: %s (ID: %d) - %s",
-                        newTask.getType(), newTask.getId(), newTask.getReason()));
+            reader.endObject();
+
+            // Add new tasks (複数タスク対応; new_task is only used when new_tasks gave nothing)
+            boolean tasksAdded = !listedTasks.isEmpty();
+            int rejected = listedRejected;
+            if (!tasksAdded && hasSingleTask) {
+                if (singleTask != null) {
+                    listedTasks.add(singleTask);
                     tasksAdded = true;
                 }
+                if (singleTask == null || !hasRequiredParameters(singleTask)) {
+                    rejected++;
+                }
+            }
+            for (Task newTask : listedTasks) {
+                decision.getNewTasks().add(newTask);
+                log.debug("ai.new-task", "type", newTask.getType(), "reason", newTask.getReason());
             }
+            decision.setValid(tasksAdded && rejected == 0);
 
             // フォールバック: タスクが追加されなかった場合
             if (!tasksAdded) {
-                Task fallbackTask = createFallbackTask(brainData);
+                Task fallbackTask = createFallbackTask(brainData, chat);
                 if (fallbackTask != null) {
-                    brainData.getTasks().add(fallbackTask);
-                    logger.info(String.format("Fallback task added: %s (ID: %d) - %s",
-                        fallbackTask.getType(), fallbackTask.getId(), fallbackTask.getReason()));
+                    decision.getNewTasks().add(fallbackTask);
+                    log.debug("ai.fallback-task", "type", fallbackTask.getType(), "reason", fallbackTask.getReason());
                 }
             }
 
-            return brainData;
+            return decision;
 
         } catch (Exception e) {
             logger.warning("Failed to parse AI response: " + e.getMessage());
             e.printStackTrace();
-            return brainData;
+            return decision;
         }
     }
 
     /**
-     * JSONオブジェクトからTaskを生成
+     * Read one task object into a Task (the whole object is consumed even if it is rejected)
+     *
+     * @return The task, or null if its type is missing or unknown
      */
-    private Task parseTaskFromJson(JsonObject taskObj, BrainData brainData) {
-        try {
-            Task newTask = new Task();
-            newTask.setId(generateTaskId(brainData));
-
-            String typeStr = taskObj.get("type").getAsString();
-            try {
-                newTask.setType(TaskType.valueOf(typeStr));
-            } catch (IllegalArgumentException e) {
-                logger.warning("Unknown task type: " + typeStr);
-                return null;
-            }
-
-            if (taskObj.has("parameters")) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> params = gson.fromJson(
-                    taskObj.get("parameters"), Map.class);
-                newTask.setParameters(params);
-            }
-
-            if (taskObj.has("reason")) {
-                newTask.setReason(taskObj.get("reason").getAsString());
+    private Task readTask(JsonReader reader) throws IOException {
+        if (!JsonStreams.isObject(reader)) {
+            logger.warning("Failed to parse task: not an object");
+            return null;
+        }
+        Task newTask = new Task();
+        String typeStr = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type" -> typeStr = JsonStreams.nextString(reader);
+                case "parameters" -> {
+                    if (JsonStreams.isObject(reader)) {
+                        newTask.setParameters(JsonStreams.nextObject(reader));
+                    }
+                }
+                case "reason" -> newTask.setReason(JsonStreams.nextString(reader));
+                default -> reader.skipValue();
             }
+        }
+        reader.endObject();
 
-            newTask.setStatus(TaskStatus.PENDING);
-            return newTask;
-        } catch (Exception e) {
-            logger.warning("Failed to parse task: " + e.getMessage());
+        if (typeStr == null) {
+            logger.warning("Failed to parse task: no type");
+            return null;
+        }
+        try {
+            newTask.setType(TaskType.valueOf(typeStr));
+        } catch (IllegalArgumentException e) {
+            logger.warning("Unknown task type: " + typeStr);
             return null;
         }
+        newTask.setStatus(TaskStatus.PENDING);
+        return newTask;
+    }
+
+    /**
+     * Whether the task has the parameters TaskExecutor needs (coordinates, message, key)
+     * A task without them still runs, but defaults to 0,0,0 or does nothing
+     */
+    private static boolean hasRequiredParameters(Task task) {
+        Map<String, Object> params = task.getParameters();
+        if (params == null) {
+            params = Map.of();
+        }
+        return switch (task.getType()) {
+            case MINE_WOOD, MINE_STONE, MOVE_TO -> isInteger(params.get("x")) && isInteger(params.get("y"))
+                    && isInteger(params.get("z"));
+            case CHAT -> params.get("message") instanceof String message && !message.isBlank();
+            case READ_MEMORY -> params.get("key") instanceof String;
+            case GET_ENTITY_POSITION -> params.containsKey("entity_name") || params.containsKey("name");
+            default -> true;
+        };
+    }
+
+    private static boolean isInteger(Object value) {
+        return value instanceof Number || value instanceof String text && text.matches("-?\\d+");
     }
 
-    private Task createFallbackTask(BrainData brainData) {
-        // 1. 直近のチャットがあるなら簡易応答
-        List<ChatMessage> chatHistory = brainData.getVision().getChat();
-        if (!chatHistory.isEmpty() && brainData.getTasks().isEmpty()) {
+    private Task createFallbackTask(BrainData brainData, List<ChatMessage> chatHistory) {
+        // 1. ボット宛て・近くのプレイヤーの発言があるなら簡易応答
+        boolean addressed = chatHistory.stream().anyMatch(ChatMessage::isRelevant);
+        if (addressed && brainData.getTasks().isEmpty()) {
             Task fallbackChat = new Task();
-            fallbackChat.setId(generateTaskId(brainData));
             fallbackChat.setType(TaskType.CHAT);
             Map<String, Object> params = new java.util.HashMap<>();
             params.put("message", "まだ行動指示がなければ周囲を見て動きますね。");
@@ -487,7 +962,6 @@ public class AIServerClient {
                 }
                 if (type.contains("LOG")) {
                     Task mineWood = new Task();
-                    mineWood.setId(generateTaskId(brainData));
                     mineWood.setType(TaskType.MINE_WOOD);
                     Map<String, Object> params = new java.util.HashMap<>();
                     params.put("x", (int) worldPos.getX());
@@ -500,7 +974,6 @@ public class AIServerClient {
                 }
                 if (type.equals("STONE") || type.contains("STONE")) {
                     Task mineStone = new Task();
-                    mineStone.setId(generateTaskId(brainData));
                     mineStone.setType(TaskType.MINE_STONE);
                     Map<String, Object> params = new java.util.HashMap<>();
                     params.put("x", (int) worldPos.getX());
@@ -518,7 +991,6 @@ public class AIServerClient {
         Object posObj = brainData.getMemory().get("current_position");
         if (posObj instanceof Position pos) {
             Task move = new Task();
-            move.setId(generateTaskId(brainData));
             move.setType(TaskType.MOVE_TO);
             Map<String, Object> params = new java.util.HashMap<>();
             int dx = ThreadLocalRandom.current().nextInt(-5, 6);
@@ -534,7 +1006,6 @@ public class AIServerClient {
 
         // 4. それでも何もできなければ位置確認
         Task getPos = new Task();
-        getPos.setId(generateTaskId(brainData));
         getPos.setType(TaskType.GET_POSITION);
         getPos.setParameters(new java.util.HashMap<>());
         getPos.setReason("Fallback: refresh position");
@@ -543,63 +1014,56 @@ public class AIServerClient {
     }
 
     /**
-     * Extract JSON from AI response (handles markdown code blocks)
+     * Where the JSON object in the AI response starts (handles markdown code blocks), or -1
+     * Inside the first ``` block if it holds an object, otherwise the first '{'
      */
-    private String extractJson(String content) {
-        // Try to find JSON in code blocks
-        Pattern codeBlockPattern = Pattern.compile("```(?:json)?\\s*\\n?([\\s\\S]*?)\\n?```");
-        Matcher matcher = codeBlockPattern.matcher(content);
-        if (matcher.find()) {
-            return matcher.group(1).trim();
-        }
-
-        // Try to find raw JSON object
-        Pattern jsonPattern = Pattern.compile("\\{[\\s\\S]*\\}");
-        matcher = jsonPattern.matcher(content);
-        if (matcher.find()) {
-            return matcher.group(0);
+    int findJsonStart(String content) {
+        int fence = content.indexOf("```");
+        if (fence >= 0) {
+            int start = content.indexOf('{', fence + 3);
+            int close = content.indexOf("```", fence + 3);
+            if (start >= 0 && (close < 0 || start < close)) {
+                return start;
+            }
         }
-
-        return null;
+        return content.indexOf('{');
     }
 
     /**
-     * Generate unique task ID
+     * Cancel calls in flight and stop OkHttp's threads (plugin disable)
      */
-    private int generateTaskId(BrainData brainData) {
-        int maxId = 0;
-        for (Task task : brainData.getTasks()) {
-            if (task.getId() > maxId) {
-                maxId = task.getId();
-            }
-        }
-        return maxId + 1;
+    public void shutdown() {
+        httpClient.dispatcher().cancelAll();
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
     }
 
     /**
-     * Check if LM Studio server is healthy
+     * Check if the LLM server of every tier is healthy
      *
-     * @return true if server is responsive
+     * @return true if all servers are responsive
      */
     public boolean checkHealth() {
-        try {
-            // LM Studio uses /v1/models endpoint for health check
-            Request request = new Request.Builder()
-                    .url(apiUrl + "/v1/models")
-                    .get()
-                    .build();
+        boolean healthy = true;
+        for (ModelTier tier : getTiers()) {
+            healthy &= checkHealth(tier.getBackend());
+        }
+        return healthy;
+    }
 
-            try (Response response = httpClient.newCall(request).execute()) {
+    private boolean checkHealth(ModelBackend backend) {
+        try {
+            try (Response response = httpClient.newCall(backend.buildHealthCheck()).execute()) {
                 if (response.isSuccessful()) {
-                    logger.info("LM Studio health check: OK");
+                    logger.info("LLM server health check (" + backend.getName() + "): OK");
                     return true;
                 } else {
-                    logger.warning("LM Studio health check failed: " + response.code());
+                    logger.warning("LLM server health check (" + backend.getName() + ") failed: " + response.code());
                     return false;
                 }
             }
         } catch (IOException e) {
-            logger.warning("Cannot reach LM Studio: " + e.getMessage());
+            logger.warning("Cannot reach LLM server at " + backend.getUrl() + ": " + e.getMessage());
             return false;
         }
     }
@@ -0,0 +1,200 @@
+package plugin.midorin.info.aIminer.ai;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Records every request/response pair sent to the LLM server as one JSON line, for replaying later
+ * (the simulation's replay server serves them back with their original or scaled latency)
+ * The system prompt barely changes between requests, so each file stores it once as a "system" line
+ * and exchanges refer to it by hash:
+ *   {"kind":"system","hash":"…","text":"…"}
+ *   {"kind":"exchange","ts":…,"purpose":"decide","system":"…","user":"…","response":"…",
+ *    "status":200,"latencyMs":…,"promptTokens":…,"completionTokens":…}
+ * Failed requests are recorded without a response (status 0 when no HTTP response arrived)
+ * When the file grows past maxBytes it is rotated to .1, .2, … and the oldest beyond maxFiles is deleted;
+ * every file is readable on its own
+ * Thread-safe (requests run on async threads)
+ */
+public class ExchangeRecorder {
+    private final Path path;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final Logger logger;
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private final Set<String> systemPromptsInFile = new HashSet<>();
+    private BufferedWriter writer;
+    private long fileBytes;
+    private long recorded;
+    private boolean failed;
+    private boolean closed;
+
+    /**
+     * @param maxBytes Rotate the file once it grows past this size
+     * @param maxFiles Rotated files to keep besides the current one
+     */
+    public ExchangeRecorder(Path path, long maxBytes, int maxFiles, Logger logger) {
+        this.path = path;
+        this.maxBytes = Math.max(4096L, maxBytes);
+        this.maxFiles = Math.max(0, maxFiles);
+        this.logger = logger;
+    }
+
+    /**
+     * Record one exchange
+     *
+     * @param response Response content, or null if the request failed
+     * @param status HTTP status (0 if there was no response)
+     * @param promptTokens Token counts from the server's usage object (-1 if not reported)
+     */
+    public synchronized void record(String purpose, String systemPrompt, String userMessage, String response,
+                                    int status, long latencyMillis, long promptTokens, long completionTokens) {
+        // A request still in flight when recording stopped must not reopen the file
+        if (failed || closed) {
+            return;
+        }
+        try {
+            String systemHash = hash(systemPrompt);
+            JsonObject exchange = new JsonObject();
+            exchange.addProperty("kind", "exchange");
+            exchange.addProperty("ts", System.currentTimeMillis());
+            exchange.addProperty("purpose", purpose);
+            exchange.addProperty("system", systemHash);
+            exchange.addProperty("user", userMessage);
+            exchange.addProperty("response", response);
+            exchange.addProperty("status", status);
+            exchange.addProperty("latencyMs", latencyMillis);
+            if (promptTokens >= 0) {
+                exchange.addProperty("promptTokens", promptTokens);
+            }
+            if (completionTokens >= 0) {
+                exchange.addProperty("completionTokens", completionTokens);
+            }
+            String line = gson.toJson(exchange);
+
+            if (writer == null || fileBytes + line.length() > maxBytes) {
+                rotate();
+            }
+            if (systemPromptsInFile.add(systemHash)) {
+                JsonObject system = new JsonObject();
+                system.addProperty("kind", "system");
+                system.addProperty("hash", systemHash);
+                system.addProperty("text", systemPrompt);
+                write(gson.toJson(system));
+            }
+            write(line);
+            writer.flush();
+            recorded++;
+        } catch (IOException e) {
+            // Recording must never break AI processing; stop after the first failure
+            failed = true;
+            logger.warning("Failed to record LLM exchange, recording stopped: " + e.getMessage());
+        }
+    }
+
+    private void write(String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
+        // Close enough for rotation (multi-byte characters make the file slightly larger)
+        fileBytes += line.length() + 1;
+    }
+
+    /**
+     * Start a new file (on the first record the existing file is rotated too, so every run starts fresh)
+     */
+    private void rotate() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        if (Files.exists(path)) {
+            if (maxFiles == 0) {
+                Files.delete(path);
+            } else {
+                Files.deleteIfExists(rotated(path, maxFiles));
+                for (int i = maxFiles - 1; i >= 1; i--) {
+                    Path from = rotated(path, i);
+                    if (Files.exists(from)) {
+                        Files.move(from, rotated(path, i + 1), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                Files.move(path, rotated(path, 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        fileBytes = 0L;
+        systemPromptsInFile.clear();
+    }
+
+    /**
+     * Stop recording (later record calls are ignored)
+     */
+    public synchronized void close() {
+        closed = true;
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close LLM exchange log: " + e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized long getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * The recorded files oldest first (rotated files, then the current one)
+     */
+    public static List<Path> files(Path path) {
+        List<Path> files = new ArrayList<>();
+        for (int i = 1; Files.exists(rotated(path, i)); i++) {
+            files.add(0, rotated(path, i));
+        }
+        if (Files.exists(path)) {
+            files.add(path);
+        }
+        return files;
+    }
+
+    private static Path rotated(Path path, int index) {
+        return path.resolveSibling(path.getFileName() + "." + index);
+    }
+
+    /**
+     * Short hash identifying a prompt (first 8 bytes of SHA-256)
+     */
+    public static String hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
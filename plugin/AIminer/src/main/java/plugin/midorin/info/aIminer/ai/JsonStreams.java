@@ -0,0 +1,119 @@
+package plugin.midorin.info.aIminer.ai;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helpers for reading LLM responses with a streaming JsonReader instead of building a JsonObject tree
+ * Only the values that are used are materialized; everything else is skipped in place
+ */
+final class JsonStreams {
+    private JsonStreams() {
+    }
+
+    /**
+     * String or number as text, or null (other values are skipped)
+     */
+    static String nextString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    /**
+     * Number as a long, or -1 if it is absent or not a number
+     */
+    static long nextLong(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER) {
+            return (long) reader.nextDouble();
+        }
+        reader.skipValue();
+        return -1L;
+    }
+
+    /**
+     * Number as a double, or NaN
+     */
+    static double nextDouble(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER) {
+            return reader.nextDouble();
+        }
+        reader.skipValue();
+        return Double.NaN;
+    }
+
+    /**
+     * Any value as plain Java objects, the same shapes Gson gives for Object.class
+     * (Double, String, Boolean, null, List, Map with insertion order)
+     */
+    static Object nextValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return nextObject(reader);
+            case BEGIN_ARRAY:
+                List<Object> list = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    list.add(nextValue(reader));
+                }
+                reader.endArray();
+                return list;
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return reader.nextDouble();
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    /**
+     * Object as a map (the reader must be at BEGIN_OBJECT)
+     */
+    static Map<String, Object> nextObject(JsonReader reader) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            map.put(reader.nextName(), nextValue(reader));
+        }
+        reader.endObject();
+        return map;
+    }
+
+    /**
+     * Whether the next value is an object; anything else is skipped
+     */
+    static boolean isObject(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+            return true;
+        }
+        reader.skipValue();
+        return false;
+    }
+
+    /**
+     * Whether the next value is an array; anything else is skipped
+     */
+    static boolean isArray(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+            return true;
+        }
+        reader.skipValue();
+        return false;
+    }
+}
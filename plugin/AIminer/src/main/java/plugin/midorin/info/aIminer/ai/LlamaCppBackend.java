@@ -0,0 +1,262 @@
+package plugin.midorin.info.aIminer.ai;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * llama.cpp server's native /completion endpoint
+ * - The chat is rendered into a raw prompt with a fixed template (chatml, llama3 or gemma)
+ * - cache_prompt keeps the KV cache of the unchanged prompt prefix (the system prompt) between requests,
+ *   and pinning the bot to one slot (id_slot) keeps that cache from being taken by another client
+ * - n_probs asks for token probabilities; their mean is reported as a confidence value
+ * Token counts, cached tokens and prompt/generation times are read from the response's "timings"
+ */
+public class LlamaCppBackend implements ModelBackend {
+    private final String baseUrl;
+    private final Template template;
+    private final int slot;
+    private final boolean cachePrompt;
+    private final int nProbs;
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    /**
+     * Chat templates for rendering the system and user messages into one prompt
+     */
+    public enum Template {
+        CHATML("<|im_start|>system\n", "<|im_end|>\n<|im_start|>user\n", "<|im_end|>\n<|im_start|>assistant\n"),
+        LLAMA3("<|begin_of_text|><|start_header_id|>system<|end_header_id|>\n\n",
+            "<|eot_id|><|start_header_id|>user<|end_header_id|>\n\n",
+            "<|eot_id|><|start_header_id|>assistant<|end_header_id|>\n\n"),
+        // Gemma has no system role; the system prompt goes at the start of the user turn
+        GEMMA("<start_of_turn>user\n", "\n\n", "<end_of_turn>\n<start_of_turn>model\n");
+
+        private final String beforeSystem;
+        private final String betweenMessages;
+        private final String afterUser;
+
+        Template(String beforeSystem, String betweenMessages, String afterUser) {
+            this.beforeSystem = beforeSystem;
+            this.betweenMessages = betweenMessages;
+            this.afterUser = afterUser;
+        }
+
+        String render(String systemPrompt, String userMessage) {
+            return beforeSystem + systemPrompt + betweenMessages + userMessage + afterUser;
+        }
+
+        /**
+         * Split a rendered prompt back into the system prompt and user message (used by the replay server)
+         * Gemma's separator also appears inside the system prompt, so its split is cut too early
+         *
+         * @return {system, user}, or null if the prompt was not rendered with this template
+         */
+        public String[] split(String prompt) {
+            if (!prompt.startsWith(beforeSystem) || !prompt.endsWith(afterUser)
+                    || prompt.length() < beforeSystem.length() + afterUser.length()) {
+                return null;
+            }
+            String body = prompt.substring(beforeSystem.length(), prompt.length() - afterUser.length());
+            int between = body.indexOf(betweenMessages);
+            if (between < 0) {
+                return null;
+            }
+            return new String[] {body.substring(0, between), body.substring(between + betweenMessages.length())};
+        }
+
+        /**
+         * Template by config name (chatml if unknown)
+         */
+        public static Template of(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return CHATML;
+            }
+        }
+    }
+
+    /**
+     * @param slot Server slot for this bot (-1 lets the server pick an idle one)
+     * @param nProbs Token probabilities to return per generated token (0 = none)
+     */
+    public LlamaCppBackend(String baseUrl, Template template, int slot, boolean cachePrompt, int nProbs) {
+        this.baseUrl = baseUrl;
+        this.template = template;
+        this.slot = slot;
+        this.cachePrompt = cachePrompt;
+        this.nProbs = Math.max(0, nProbs);
+    }
+
+    @Override
+    public String getName() {
+        return "llamacpp";
+    }
+
+    @Override
+    public String getUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public Request buildRequest(String systemPrompt, String userMessage, double temperature, int maxTokens) {
+        JsonObject requestJson = new JsonObject();
+        requestJson.addProperty("prompt", template.render(systemPrompt, userMessage));
+        requestJson.addProperty("n_predict", maxTokens);
+        requestJson.addProperty("temperature", temperature);
+        requestJson.addProperty("cache_prompt", cachePrompt);
+        if (slot >= 0) {
+            requestJson.addProperty("id_slot", slot);
+        }
+        if (nProbs > 0) {
+            requestJson.addProperty("n_probs", nProbs);
+        }
+        requestJson.addProperty("stream", false);
+
+        return new Request.Builder()
+                .url(baseUrl + "/completion")
+                .post(RequestBody.create(gson.toJson(requestJson), JSON))
+                .build();
+    }
+
+    @Override
+    public Completion parseResponse(Reader body) throws IOException {
+        Completion completion = new Completion(null);
+        JsonReader reader = new JsonReader(body);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "content" -> completion.setContent(JsonStreams.nextString(reader));
+                case "tokens_evaluated" -> completion.setPromptTokens(JsonStreams.nextLong(reader));
+                case "tokens_predicted" -> completion.setCompletionTokens(JsonStreams.nextLong(reader));
+                case "tokens_cached" -> completion.setCachedTokens(JsonStreams.nextLong(reader));
+                case "timings" -> readTimings(reader, completion);
+                case "completion_probabilities" -> {
+                    if (JsonStreams.isArray(reader)) {
+                        completion.setMeanTokenProbability(meanProbability(reader));
+                    }
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return completion;
+    }
+
+    /**
+     * llama.cpp's "timings" object (milliseconds); also returned by its OpenAI-compatible endpoint
+     * cache_n only fills in the cached tokens when the response has no explicit count
+     */
+    static void readTimings(JsonReader reader, Completion completion) throws IOException {
+        if (!JsonStreams.isObject(reader)) {
+            return;
+        }
+        long cacheN = -1L;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "prompt_ms" -> completion.putPhase("prompt", millisToNanos(JsonStreams.nextDouble(reader)));
+                case "predicted_ms" -> completion.putPhase("generation", millisToNanos(JsonStreams.nextDouble(reader)));
+                case "cache_n" -> cacheN = JsonStreams.nextLong(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (completion.getCachedTokens() < 0L) {
+            completion.setCachedTokens(cacheN);
+        }
+    }
+
+    private static long millisToNanos(double millis) {
+        return Double.isNaN(millis) ? -1L : (long) (millis * 1_000_000.0);
+    }
+
+    /**
+     * Mean probability of the generated tokens (the reader is at the array)
+     * Newer servers report each token's "logprob"; older ones list candidates under "probs" with the
+     * generated token's text in "content"
+     */
+    static double meanProbability(JsonReader reader) throws IOException {
+        double sum = 0.0;
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (!JsonStreams.isObject(reader)) {
+                continue;
+            }
+            double logprob = Double.NaN;
+            String text = null;
+            List<String> candidates = new ArrayList<>();
+            List<Double> probabilities = new ArrayList<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "logprob" -> logprob = JsonStreams.nextDouble(reader);
+                    case "content" -> text = JsonStreams.nextString(reader);
+                    case "probs" -> readCandidates(reader, candidates, probabilities);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (!Double.isNaN(logprob)) {
+                sum += Math.exp(logprob);
+                count++;
+            } else if (text != null) {
+                int index = candidates.indexOf(text);
+                if (index >= 0) {
+                    sum += probabilities.get(index);
+                    count++;
+                }
+            }
+        }
+        reader.endArray();
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    /**
+     * Old-format candidates: [{"tok_str": ..., "prob": ...}, ...]
+     */
+    private static void readCandidates(JsonReader reader, List<String> candidates, List<Double> probabilities)
+            throws IOException {
+        if (!JsonStreams.isArray(reader)) {
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (!JsonStreams.isObject(reader)) {
+                continue;
+            }
+            String token = null;
+            double probability = Double.NaN;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "tok_str" -> token = JsonStreams.nextString(reader);
+                    case "prob" -> probability = JsonStreams.nextDouble(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (token != null && !Double.isNaN(probability)) {
+                candidates.add(token);
+                probabilities.add(probability);
+            }
+        }
+        reader.endArray();
+    }
+
+    @Override
+    public Request buildHealthCheck() {
+        return new Request.Builder().url(baseUrl + "/health").get().build();
+    }
+}
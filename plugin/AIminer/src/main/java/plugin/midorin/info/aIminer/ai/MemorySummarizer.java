@@ -0,0 +1,84 @@
+package plugin.midorin.info.aIminer.ai;
+
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import plugin.midorin.info.aIminer.brain.BrainFileManager;
+import plugin.midorin.info.aIminer.model.Episode;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Background job that compresses the oldest episodes into a DIGEST episode
+ * Runs only while the AI server is idle (it takes the same slot as AIProcessingTask and is cancelled with it)
+ */
+public class MemorySummarizer extends BukkitRunnable {
+    private final JavaPlugin plugin;
+    private final BrainFileManager brainFileManager;
+    private final AIProcessingTask aiProcessingTask;
+    private final int minEpisodes;
+    private final int batchSize;
+    private final int checkIntervalSeconds;
+
+    public MemorySummarizer(
+            JavaPlugin plugin,
+            BrainFileManager brainFileManager,
+            AIProcessingTask aiProcessingTask,
+            int minEpisodes,
+            int batchSize,
+            int checkIntervalSeconds
+    ) {
+        this.plugin = plugin;
+        this.brainFileManager = brainFileManager;
+        this.aiProcessingTask = aiProcessingTask;
+        this.minEpisodes = Math.max(1, minEpisodes);
+        this.batchSize = Math.max(2, batchSize);
+        this.checkIntervalSeconds = Math.max(5, checkIntervalSeconds);
+    }
+
+    @Override
+    public void run() {
+        // Only when there is enough old memory and nothing else is talking to the AI server
+        if (brainFileManager.getEpisodeCount() < minEpisodes + batchSize) {
+            return;
+        }
+        List<Episode> batch = brainFileManager.getOldestEpisodes(batchSize);
+        CompletableFuture<String> summary = aiProcessingTask.summarize(batch);
+        if (summary == null) {
+            return;
+        }
+        plugin.getLogger().info("Summarizing " + batch.size() + " old episodes...");
+        // A cancelled summary completes exceptionally and is not applied
+        summary.thenAccept(digest -> {
+            if (digest == null) {
+                plugin.getLogger().warning("Memory summarization failed - episodes kept");
+                return;
+            }
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                brainFileManager.applyDigest(digest, batch);
+                brainFileManager.saveBrainFile();
+                plugin.getLogger().info("Memory digest recorded: " + digest);
+            });
+        });
+    }
+
+    /**
+     * Start the summarization loop
+     */
+    public void startSummaryLoop() {
+        long intervalTicks = checkIntervalSeconds * 20L;
+        this.runTaskTimer(plugin, intervalTicks, intervalTicks);
+        plugin.getLogger().info(String.format(
+                "Memory summarizer started (check: every %ds, batch: %d, keeps at least %d episodes)",
+                checkIntervalSeconds, batchSize, minEpisodes
+        ));
+    }
+
+    /**
+     * Stop the summarization loop
+     */
+    public void stopSummaryLoop() {
+        this.cancel();
+        plugin.getLogger().info("Memory summarizer stopped");
+    }
+}
@@ -0,0 +1,145 @@
+package plugin.midorin.info.aIminer.ai;
+
+import com.google.gson.JsonSyntaxException;
+import okhttp3.MediaType;
+import okhttp3.Request;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The HTTP API of one LLM server: how a chat request is sent and how its answer and timings are read
+ * AIServerClient builds the prompts and handles metrics, tracing and recording; a backend only
+ * translates to and from its server's JSON
+ * Implementations are stateless and used from async threads
+ */
+public interface ModelBackend {
+    MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    /**
+     * Short name used as the "backend" metric label ("openai", "llamacpp", "ollama")
+     */
+    String getName();
+
+    /**
+     * Server base URL (for logs)
+     */
+    String getUrl();
+
+    /**
+     * Request for one completion of a system + user prompt
+     */
+    Request buildRequest(String systemPrompt, String userMessage, double temperature, int maxTokens);
+
+    /**
+     * Read a successful response body as it arrives, with a streaming JsonReader
+     * Fields that are not used are skipped without being materialized
+     *
+     * @return The completion; its content is null if the server returned no text
+     * @throws IOException if reading fails or the body is not JSON
+     */
+    Completion parseResponse(Reader body) throws IOException;
+
+    /**
+     * Read a response body that is already a String (debug logging keeps the whole body)
+     *
+     * @throws JsonSyntaxException if the body is not JSON
+     */
+    default Completion parseResponse(String responseBody) {
+        try {
+            return parseResponse(new StringReader(responseBody));
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Cheap request that succeeds when the server is up
+     */
+    Request buildHealthCheck();
+
+    /**
+     * Answer text plus whatever token counts and timings the server reported (-1 / absent if not)
+     */
+    final class Completion {
+        private String content;
+        private long promptTokens = -1L;
+        private long completionTokens = -1L;
+        private long cachedTokens = -1L;
+        private double meanTokenProbability = Double.NaN;
+        private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+        public Completion(String content) {
+            this.content = content;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public Completion setContent(String content) {
+            this.content = content;
+            return this;
+        }
+
+        public long getPromptTokens() {
+            return promptTokens;
+        }
+
+        public Completion setPromptTokens(long promptTokens) {
+            this.promptTokens = promptTokens;
+            return this;
+        }
+
+        public long getCompletionTokens() {
+            return completionTokens;
+        }
+
+        public Completion setCompletionTokens(long completionTokens) {
+            this.completionTokens = completionTokens;
+            return this;
+        }
+
+        /**
+         * Prompt tokens served from the server's KV cache instead of being evaluated again
+         */
+        public long getCachedTokens() {
+            return cachedTokens;
+        }
+
+        public Completion setCachedTokens(long cachedTokens) {
+            this.cachedTokens = cachedTokens;
+            return this;
+        }
+
+        /**
+         * Mean probability of the generated tokens (NaN unless the backend asked for token probabilities)
+         */
+        public double getMeanTokenProbability() {
+            return meanTokenProbability;
+        }
+
+        public Completion setMeanTokenProbability(double meanTokenProbability) {
+            this.meanTokenProbability = meanTokenProbability;
+            return this;
+        }
+
+        /**
+         * Server-side time per phase ("load", "prompt", "generation", "total"), in nanoseconds
+         */
+        public Map<String, Long> getPhaseNanos() {
+            return Collections.unmodifiableMap(phaseNanos);
+        }
+
+        public Completion putPhase(String phase, long nanos) {
+            if (nanos >= 0L) {
+                phaseNanos.put(phase, nanos);
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package plugin.midorin.info.aIminer.ai;
+
+import plugin.midorin.info.aIminer.model.BlockSummary;
+import plugin.midorin.info.aIminer.model.BlockVisionData;
+import plugin.midorin.info.aIminer.model.BrainData;
+import plugin.midorin.info.aIminer.model.Task;
+import plugin.midorin.info.aIminer.model.TaskStatus;
+import plugin.midorin.info.aIminer.model.VisibleBlock;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides whether a decision needs the large model tier
+ * Routine cycles (walking, mining what is in view) go to the small model; the large one is used when
+ * a player spoke, tasks keep failing, the bot sees block types it has not seen before, or the plan is long
+ */
+public class ModelRouter {
+    private final boolean routeChat;
+    private final int failureThreshold;
+    private final int novelBlockThreshold;
+    private final int planLengthThreshold;
+    // Block types seen so far (main thread only)
+    private final Set<String> seenBlockTypes = new HashSet<>();
+
+    /**
+     * Signals for one cycle, collected on the main thread
+     */
+    public static final class Signals {
+        private final boolean newChat;
+        private final int consecutiveFailures;
+        private final int novelBlockTypes;
+        private final int pendingTasks;
+
+        public Signals(boolean newChat, int consecutiveFailures, int novelBlockTypes, int pendingTasks) {
+            this.newChat = newChat;
+            this.consecutiveFailures = consecutiveFailures;
+            this.novelBlockTypes = novelBlockTypes;
+            this.pendingTasks = pendingTasks;
+        }
+
+        public boolean hasNewChat() {
+            return newChat;
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        public int getNovelBlockTypes() {
+            return novelBlockTypes;
+        }
+
+        public int getPendingTasks() {
+            return pendingTasks;
+        }
+    }
+
+    /**
+     * Each threshold is 0 to turn that signal off
+     *
+     * @param routeChat Use the large model when a player addressed the bot or spoke nearby since the last cycle
+     * @param failureThreshold Tasks failed in a row
+     * @param novelBlockThreshold Block types in view that were never seen before
+     * @param planLengthThreshold Pending tasks
+     */
+    public ModelRouter(boolean routeChat, int failureThreshold, int novelBlockThreshold, int planLengthThreshold) {
+        this.routeChat = routeChat;
+        this.failureThreshold = Math.max(0, failureThreshold);
+        this.novelBlockThreshold = Math.max(0, novelBlockThreshold);
+        this.planLengthThreshold = Math.max(0, planLengthThreshold);
+    }
+
+    /**
+     * Collect the signals for a cycle (main thread; also marks the visible block types as seen)
+     *
+     * @param newChat Relevant chat arrived since the last cycle
+     * @param consecutiveFailures Tasks failed in a row (BrainFileManager)
+     */
+    public Signals collect(BrainData brain, boolean newChat, int consecutiveFailures) {
+        int novel = 0;
+        BlockVisionData blocks = brain.getVision() != null ? brain.getVision().getBlocks() : null;
+        if (blocks != null) {
+            if (blocks.getBlockSummaries() != null) {
+                for (BlockSummary summary : blocks.getBlockSummaries()) {
+                    if (summary.getBlockType() != null && seenBlockTypes.add(summary.getBlockType())) {
+                        novel++;
+                    }
+                }
+            } else if (blocks.getVisibleBlocks() != null) {
+                for (VisibleBlock block : blocks.getVisibleBlocks()) {
+                    if (block.getBlockType() != null && seenBlockTypes.add(block.getBlockType())) {
+                        novel++;
+                    }
+                }
+            }
+        }
+
+        int pending = 0;
+        for (Task task : brain.getTasks()) {
+            if (task.getStatus() == TaskStatus.PENDING) {
+                pending++;
+            }
+        }
+        return new Signals(newChat, consecutiveFailures, novel, pending);
+    }
+
+    /**
+     * Why the large tier should answer, or null if the small one will do
+     *
+     * @return Metric label ("chat", "failures", "novel-blocks", "plan-length")
+     */
+    public String largeReason(Signals signals) {
+        if (signals == null) {
+            return null;
+        }
+        if (routeChat && signals.hasNewChat()) {
+            return "chat";
+        }
+        if (failureThreshold > 0 && signals.getConsecutiveFailures() >= failureThreshold) {
+            return "failures";
+        }
+        if (novelBlockThreshold > 0 && signals.getNovelBlockTypes() >= novelBlockThreshold) {
+            return "novel-blocks";
+        }
+        if (planLengthThreshold > 0 && signals.getPendingTasks() >= planLengthThreshold) {
+            return "plan-length";
+        }
+        return null;
+    }
+}
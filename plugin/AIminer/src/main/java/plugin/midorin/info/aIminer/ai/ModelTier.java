@@ -0,0 +1,104 @@
+package plugin.midorin.info.aIminer.ai;
+
+import plugin.midorin.info.aIminer.util.MetricsRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One model decisions can be sent to: its backend, sampling settings and latency budget
+ * The budget is the call timeout of each request, shortened to the cycle's deadline (0 = only the read timeout)
+ */
+public class ModelTier {
+    private final String name;
+    private final ModelBackend backend;
+    private final double temperature;
+    private final int maxTokens;
+    private final long latencyBudgetMillis;
+    private MetricsRegistry.Histogram decisionTimes;
+    private MetricsRegistry.Counter decisions;
+    private MetricsRegistry metrics;
+    // Label value -> metric, filled on first use (reasons and phases are a handful of fixed strings)
+    private final Map<String, MetricsRegistry.Counter> routes = new ConcurrentHashMap<>();
+    private final Map<String, MetricsRegistry.Histogram> phaseTimes = new ConcurrentHashMap<>();
+
+    /**
+     * @param name Metric label ("default", "small", "large")
+     * @param latencyBudgetMillis Give up on a request after this long (0 = no budget)
+     */
+    public ModelTier(String name, ModelBackend backend, double temperature, int maxTokens, long latencyBudgetMillis) {
+        this.name = name;
+        this.backend = backend;
+        this.temperature = temperature;
+        this.maxTokens = Math.max(16, maxTokens);
+        this.latencyBudgetMillis = Math.max(0L, latencyBudgetMillis);
+    }
+
+    /**
+     * Register this tier's metrics
+     */
+    void attach(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        routes.clear();
+        phaseTimes.clear();
+        this.decisionTimes = metrics.timer("aiminer_llm_decision_seconds",
+            "Time to a decision, including a fallback to the large model", "tier", name);
+        this.decisions = metrics.counter("aiminer_llm_tier_decisions_total", "Decisions answered per model tier",
+            "tier", name);
+    }
+
+    /**
+     * Counter for decisions routed to this tier for the given reason
+     */
+    MetricsRegistry.Counter routeCounter(String reason) {
+        return routes.computeIfAbsent(reason, key -> metrics.counter("aiminer_llm_tier_routes_total",
+            "Decisions routed to each model tier", "tier", name, "reason", key));
+    }
+
+    /**
+     * Timer for one phase reported by this tier's backend (prompt processing, generation, ...)
+     */
+    MetricsRegistry.Histogram phaseTimer(String phase) {
+        return phaseTimes.computeIfAbsent(phase, key -> metrics.timer("aiminer_llm_backend_seconds",
+            "Time per phase as reported by the LLM server", "backend", backend.getName(), "phase", key));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ModelBackend getBackend() {
+        return backend;
+    }
+
+    public double getTemperature() {
+        return temperature;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public long getLatencyBudgetMillis() {
+        return latencyBudgetMillis;
+    }
+
+    /**
+     * Count a decision this tier answered and how long the whole decision took
+     */
+    void recordDecision(long startNanos) {
+        decisions.increment();
+        decisionTimes.recordSince(startNanos);
+    }
+
+    public long getDecisions() {
+        return decisions != null ? decisions.get() : 0L;
+    }
+
+    /**
+     * Mean decision latency in milliseconds
+     */
+    public double getAverageDecisionMillis() {
+        return decisionTimes != null && decisionTimes.getCount() > 0 ? decisionTimes.getMean() * 1000.0 : 0.0;
+    }
+}
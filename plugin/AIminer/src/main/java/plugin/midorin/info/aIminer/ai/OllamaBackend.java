@@ -0,0 +1,103 @@
+package plugin.midorin.info.aIminer.ai;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Ollama's native /api/chat endpoint
+ * keep_alive is sent with every request so the model stays loaded between cycles; Ollama otherwise
+ * unloads it after 5 idle minutes and the next cycle pays the reload (reported as the "load" phase)
+ * Durations in the response are nanoseconds: load, prompt evaluation, generation and total
+ */
+public class OllamaBackend implements ModelBackend {
+    private final String baseUrl;
+    private final String model;
+    private final String keepAlive;
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    /**
+     * @param keepAlive How long the model stays loaded after a request ("30m", "-1" = forever)
+     */
+    public OllamaBackend(String baseUrl, String model, String keepAlive) {
+        this.baseUrl = baseUrl;
+        this.model = model;
+        this.keepAlive = keepAlive;
+    }
+
+    @Override
+    public String getName() {
+        return "ollama";
+    }
+
+    @Override
+    public String getUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public Request buildRequest(String systemPrompt, String userMessage, double temperature, int maxTokens) {
+        JsonObject requestJson = new JsonObject();
+        requestJson.addProperty("model", model);
+        JsonArray messages = new JsonArray();
+        messages.add(OpenAICompatibleBackend.message("system", systemPrompt));
+        messages.add(OpenAICompatibleBackend.message("user", userMessage));
+        requestJson.add("messages", messages);
+        requestJson.addProperty("stream", false);
+        if (keepAlive != null && !keepAlive.isEmpty()) {
+            // A bare number is seconds; Ollama only accepts it as a JSON number
+            if (keepAlive.matches("-?\\d+")) {
+                requestJson.addProperty("keep_alive", Long.parseLong(keepAlive));
+            } else {
+                requestJson.addProperty("keep_alive", keepAlive);
+            }
+        }
+
+        JsonObject options = new JsonObject();
+        options.addProperty("temperature", temperature);
+        options.addProperty("num_predict", maxTokens);
+        requestJson.add("options", options);
+
+        return new Request.Builder()
+                .url(baseUrl + "/api/chat")
+                .post(RequestBody.create(gson.toJson(requestJson), JSON))
+                .build();
+    }
+
+    @Override
+    public Completion parseResponse(Reader body) throws IOException {
+        Completion completion = new Completion(null);
+        JsonReader reader = new JsonReader(body);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "message" -> {
+                    if (JsonStreams.isObject(reader)) {
+                        OpenAICompatibleBackend.readMessageContent(reader, completion);
+                    }
+                }
+                case "prompt_eval_count" -> completion.setPromptTokens(JsonStreams.nextLong(reader));
+                case "eval_count" -> completion.setCompletionTokens(JsonStreams.nextLong(reader));
+                case "load_duration" -> completion.putPhase("load", JsonStreams.nextLong(reader));
+                case "prompt_eval_duration" -> completion.putPhase("prompt", JsonStreams.nextLong(reader));
+                case "eval_duration" -> completion.putPhase("generation", JsonStreams.nextLong(reader));
+                case "total_duration" -> completion.putPhase("total", JsonStreams.nextLong(reader));
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return completion;
+    }
+
+    @Override
+    public Request buildHealthCheck() {
+        return new Request.Builder().url(baseUrl + "/api/tags").get().build();
+    }
+}
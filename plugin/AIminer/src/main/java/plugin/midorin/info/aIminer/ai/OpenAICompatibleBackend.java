@@ -0,0 +1,155 @@
+package plugin.midorin.info.aIminer.ai;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * OpenAI-compatible /v1/chat/completions (LM Studio, vLLM, llama.cpp's /v1 endpoint, ...)
+ * Token counts come from "usage"; llama.cpp also adds its native "timings" object, which is read when present
+ */
+public class OpenAICompatibleBackend implements ModelBackend {
+    private final String baseUrl;
+    private final String model;
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    /**
+     * @param model Model name sent with each request (LM Studio answers with whichever model is loaded)
+     */
+    public OpenAICompatibleBackend(String baseUrl, String model) {
+        this.baseUrl = baseUrl;
+        this.model = model;
+    }
+
+    @Override
+    public String getName() {
+        return "openai";
+    }
+
+    @Override
+    public String getUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public Request buildRequest(String systemPrompt, String userMessage, double temperature, int maxTokens) {
+        JsonObject requestJson = new JsonObject();
+        requestJson.addProperty("model", model);
+        requestJson.addProperty("temperature", temperature);
+        requestJson.addProperty("max_tokens", maxTokens);
+
+        JsonArray messages = new JsonArray();
+        messages.add(message("system", systemPrompt));
+        messages.add(message("user", userMessage));
+        requestJson.add("messages", messages);
+
+        return new Request.Builder()
+                .url(baseUrl + "/v1/chat/completions")
+                .post(RequestBody.create(gson.toJson(requestJson), JSON))
+                .build();
+    }
+
+    static JsonObject message(String role, String content) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", role);
+        message.addProperty("content", content);
+        return message;
+    }
+
+    @Override
+    public Completion parseResponse(Reader body) throws IOException {
+        Completion completion = new Completion(null);
+        JsonReader reader = new JsonReader(body);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "choices" -> readFirstChoice(reader, completion);
+                case "usage" -> readUsage(reader, completion);
+                case "timings" -> LlamaCppBackend.readTimings(reader, completion);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return completion;
+    }
+
+    /**
+     * choices[0].message.content; the other choices are skipped
+     */
+    private static void readFirstChoice(JsonReader reader, Completion completion) throws IOException {
+        if (!JsonStreams.isArray(reader)) {
+            return;
+        }
+        reader.beginArray();
+        if (reader.hasNext() && JsonStreams.isObject(reader)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("message") && JsonStreams.isObject(reader)) {
+                    readMessageContent(reader, completion);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+    }
+
+    /**
+     * "content" of a chat message object (also Ollama's "message")
+     */
+    static void readMessageContent(JsonReader reader, Completion completion) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("content")) {
+                completion.setContent(JsonStreams.nextString(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readUsage(JsonReader reader, Completion completion) throws IOException {
+        if (!JsonStreams.isObject(reader)) {
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "prompt_tokens" -> completion.setPromptTokens(JsonStreams.nextLong(reader));
+                case "completion_tokens" -> completion.setCompletionTokens(JsonStreams.nextLong(reader));
+                case "prompt_tokens_details" -> {
+                    if (JsonStreams.isObject(reader)) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (reader.nextName().equals("cached_tokens")) {
+                                completion.setCachedTokens(JsonStreams.nextLong(reader));
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    @Override
+    public Request buildHealthCheck() {
+        return new Request.Builder().url(baseUrl + "/v1/models").get().build();
+    }
+}
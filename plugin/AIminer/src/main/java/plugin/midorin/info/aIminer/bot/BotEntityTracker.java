@@ -0,0 +1,190 @@
+package plugin.midorin.info.aIminer.bot;
+
+import com.destroystokyo.paper.event.entity.EntityAddToWorldEvent;
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.EntitiesLoadEvent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * ボットを構成するエンティティ（足・見た目・各種マーカー）をUUIDで追跡するクラス
+ * データパックのsummonやチャンク読み込みで追加されたエンティティをイベントで捕捉し、
+ * ワールド内の全エンティティを走査せずにO(1)で参照できるようにする
+ * イベントはメインスレッドで発生するため、メインスレッドからのみ使用する
+ */
+public class BotEntityTracker implements Listener {
+    // データパックで利用しているタグ定義
+    public static final String BOT_FEET_TAG = "test1";      // ゾンビピグリン（実体）
+    public static final String BOT_BODY_TAG = "rider1";     // マネキン（見た目）
+    public static final String MOVE_MARKER_TAG = "aim1";    // 移動先マーカー
+    public static final String WOOD_MARKER_TAG = "aim1o";   // 木掘りマーカー
+    public static final String STONE_MARKER_TAG = "aim1s";  // 石掘りマーカー
+
+    // ベンチマーク用に召喚した追加ボット（追跡対象から除外する）
+    // 足・見た目には本物のボットと別のタグを付け、データパックのセレクタに拾われないようにする
+    public static final String BENCH_TAG = "aiminer_bench";
+    public static final String BENCH_FEET_TAG = "aiminer_bench_feet";
+    public static final String BENCH_BODY_TAG = "aiminer_bench_body";
+
+    // 位置検索の優先順位: 足(piglin) -> 見た目(mannequin) -> マーカー類
+    private static final List<String> TRACKED_TAGS = List.of(
+        BOT_FEET_TAG, BOT_BODY_TAG, MOVE_MARKER_TAG, WOOD_MARKER_TAG, STONE_MARKER_TAG
+    );
+
+    // 追跡中のUUIDが見つからない場合に全走査で探し直す最短間隔
+    private static final long RESCAN_INTERVAL_MILLIS = 30_000L;
+
+    private final Logger logger;
+    private final Map<String, UUID> trackedIds = new HashMap<>();
+    private final Map<String, Entity> handles = new HashMap<>();
+    private long lastRescan = 0L;
+
+    public BotEntityTracker(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * タグに対応するエンティティを取得
+     * キャッシュ済みの参照が無効（チャンクの再読み込み等）ならUUIDから引き直す
+     *
+     * @return エンティティ（見つからない・未読み込みの場合はnull）
+     */
+    public Entity getEntity(String tag) {
+        Entity handle = handles.get(tag);
+        if (handle != null && handle.isValid()) {
+            return handle;
+        }
+        handles.remove(tag);
+
+        UUID id = trackedIds.get(tag);
+        if (id == null) {
+            // 追跡開始前から存在するエンティティに備え、間隔を空けて全走査する
+            if (System.currentTimeMillis() - lastRescan < RESCAN_INTERVAL_MILLIS) {
+                return null;
+            }
+            rescan();
+            id = trackedIds.get(tag);
+            if (id == null) {
+                return null;
+            }
+        }
+
+        Entity entity = Bukkit.getEntity(id);
+        if (entity == null || !entity.isValid()) {
+            return null;
+        }
+        handles.put(tag, entity);
+        return entity;
+    }
+
+    /**
+     * ボットの現在位置を取得（足 -> 見た目 -> マーカーの順に探す）
+     *
+     * @return ボットの位置（見つからない場合はnull）
+     */
+    public Location findBotLocation() {
+        for (String tag : TRACKED_TAGS) {
+            Entity entity = getEntity(tag);
+            if (entity != null) {
+                return entity.getLocation();
+            }
+        }
+        logger.fine("Bot entity not found (tags: test1/rider1/aim1/aim1o/aim1s)");
+        return null;
+    }
+
+    /**
+     * ボット本体（足 or 見た目）のエンティティを取得
+     */
+    public LivingEntity findBotEntity() {
+        if (getEntity(BOT_FEET_TAG) instanceof LivingEntity living) {
+            return living;
+        }
+        if (getEntity(BOT_BODY_TAG) instanceof LivingEntity living) {
+            return living;
+        }
+        return null;
+    }
+
+    /**
+     * 全ワールドを走査して追跡対象を登録し直す（起動時と、UUID未登録時のフォールバック）
+     */
+    public void rescan() {
+        lastRescan = System.currentTimeMillis();
+        for (World world : Bukkit.getWorlds()) {
+            for (Entity entity : world.getEntities()) {
+                track(entity);
+            }
+        }
+        logger.fine("Bot entity rescan complete: " + trackedIds.keySet());
+    }
+
+    /**
+     * 追跡情報をすべて破棄
+     */
+    public void clear() {
+        trackedIds.clear();
+        handles.clear();
+    }
+
+    /**
+     * 追跡中のタグ（/bot status表示用）
+     */
+    public Set<String> getTrackedTags() {
+        return trackedIds.keySet();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityAdd(EntityAddToWorldEvent event) {
+        track(event.getEntity());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityRemove(EntityRemoveFromWorldEvent event) {
+        Entity entity = event.getEntity();
+        for (String tag : TRACKED_TAGS) {
+            if (entity.getUniqueId().equals(trackedIds.get(tag))) {
+                handles.remove(tag);
+                // killされた場合は追跡を終了、アンロードの場合はUUIDを残して再読み込みを待つ
+                if (entity.isDead()) {
+                    trackedIds.remove(tag);
+                }
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        // チャンク再読み込み時に新しいエンティティ参照へ差し替える
+        for (Entity entity : event.getEntities()) {
+            track(entity);
+        }
+    }
+
+    private void track(Entity entity) {
+        Set<String> tags = entity.getScoreboardTags();
+        if (tags.isEmpty() || tags.contains(BENCH_TAG)) {
+            return;
+        }
+        for (String tag : TRACKED_TAGS) {
+            if (tags.contains(tag)) {
+                // 同じタグの新しいエンティティが現れたら置き換える（データパックは古い方をkillする）
+                trackedIds.put(tag, entity.getUniqueId());
+                handles.put(tag, entity);
+            }
+        }
+    }
+}
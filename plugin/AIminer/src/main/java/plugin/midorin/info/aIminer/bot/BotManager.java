@@ -4,6 +4,8 @@ import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
+import plugin.midorin.info.aIminer.util.CommandDispatcher;
+import plugin.midorin.info.aIminer.util.DatapackFunction;
 
 import java.util.logging.Logger;
 
@@ -12,12 +14,14 @@ import java.util.logging.Logger;
  */
 public class BotManager {
     private final JavaPlugin plugin;
+    private final CommandDispatcher commandDispatcher;
     private final Logger logger;
     private boolean botSummoned = false;
     private CommandSender botOwner = null;
 
-    public BotManager(JavaPlugin plugin) {
+    public BotManager(JavaPlugin plugin, CommandDispatcher commandDispatcher) {
         this.plugin = plugin;
+        this.commandDispatcher = commandDispatcher;
         this.logger = plugin.getLogger();
     }
 
@@ -36,17 +40,11 @@ public class BotManager {
         botOwner = sender;
 
         // 見た目召喚（実行者の座標で召喚）
-        boolean success1 = Bukkit.dispatchCommand(
-            sender,
-            "function imuzen127x74:summanekin"
-        );
+        boolean success1 = commandDispatcher.call(sender, DatapackFunction.SUMMANEKIN);
 
         // 少し待ってから足を召喚
         Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            boolean success2 = Bukkit.dispatchCommand(
-                sender,
-                "function imuzen127x74:sumpig"
-            );
+            boolean success2 = commandDispatcher.call(sender, DatapackFunction.SUMPIG);
 
             if (success2) {
                 botSummoned = true;
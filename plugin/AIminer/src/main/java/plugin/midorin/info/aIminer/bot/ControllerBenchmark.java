@@ -0,0 +1,224 @@
+package plugin.midorin.info.aIminer.bot;
+
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * データパック制御とネイティブ制御のMSPTを比較するベンチマーク（/bot bench）
+ * 1体・10体・50体のボットを召喚し、それぞれのモードでtick時間を計測する
+ * 計測用のボットにはBENCH_TAGと専用の足・見た目タグを付け、終了時にすべて削除する
+ * データパック制御の計測中はbench_tick.mcfunctionがbot_tickと同じ処理を計測用のボットに行う
+ */
+public class ControllerBenchmark implements Listener {
+    private static final int[] BOT_COUNTS = {1, 10, 50};
+    private static final long WARMUP_TICKS = 40L;   // 召喚・モード切替後の安定待ち
+    private static final long CLEANUP_TICKS = 20L;  // 削除後、次の計測までの待ち
+    private static final int SPACING = 3;           // 召喚位置の間隔（ブロック）
+    // データパックの "bench task" スコアが1の間、bench_tickが計測用のボットを動かす
+    private static final String BENCH_FLAG_ON = "scoreboard players set bench task 1";
+    private static final String BENCH_FLAG_OFF = "scoreboard players set bench task 0";
+
+    private final JavaPlugin plugin;
+    private final NativeBotController controller;
+    private final List<String> results = new ArrayList<>();
+
+    private boolean running = false;
+    private boolean recording = false;
+    private long sampleCount = 0L;
+    private double totalTickMillis = 0.0;
+    private double maxTickMillis = 0.0;
+
+    public ControllerBenchmark(JavaPlugin plugin, NativeBotController controller) {
+        this.plugin = plugin;
+        this.controller = controller;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * ベンチマークを開始
+     *
+     * @param origin 召喚の基準位置
+     * @param measureSeconds 1条件あたりの計測時間（秒）
+     * @return 開始できた場合true（実行中ならfalse）
+     */
+    public boolean start(CommandSender sender, Location origin, int measureSeconds) {
+        if (running) {
+            return false;
+        }
+        running = true;
+        results.clear();
+
+        List<Step> steps = new ArrayList<>();
+        for (int count : BOT_COUNTS) {
+            steps.add(new Step(count, false));
+            steps.add(new Step(count, true));
+        }
+        boolean originalMode = controller.isNativeMode();
+        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), BENCH_FLAG_ON);
+        runStep(sender, origin.clone(), steps, 0, Math.max(1, measureSeconds) * 20L, originalMode);
+        return true;
+    }
+
+    private void runStep(CommandSender sender, Location origin, List<Step> steps, int index,
+                         long measureTicks, boolean originalMode) {
+        if (index >= steps.size()) {
+            finish(sender, originalMode);
+            return;
+        }
+
+        Step step = steps.get(index);
+        controller.setNativeMode(step.nativeMode);
+        spawnRigs(origin, step.botCount);
+
+        // 召喚されたエンティティは次のtickで取得できる
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            if (step.nativeMode) {
+                registerRigs(origin, step.botCount);
+            }
+            Bukkit.getScheduler().runTaskLater(plugin, () -> {
+                startRecording();
+                Bukkit.getScheduler().runTaskLater(plugin, () -> {
+                    recording = false;
+                    String line = formatResult(step);
+                    results.add(line);
+                    sender.sendMessage("§7" + line);
+                    plugin.getLogger().info("Controller benchmark: " + line);
+
+                    despawnRigs();
+                    Bukkit.getScheduler().runTaskLater(plugin,
+                        () -> runStep(sender, origin, steps, index + 1, measureTicks, originalMode),
+                        CLEANUP_TICKS);
+                }, measureTicks);
+            }, WARMUP_TICKS);
+        });
+    }
+
+    private void finish(CommandSender sender, boolean originalMode) {
+        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), BENCH_FLAG_OFF);
+        controller.setNativeMode(originalMode);
+        running = false;
+        sender.sendMessage("§e=== Controller Benchmark Result ===");
+        for (String line : results) {
+            sender.sendMessage("§7" + line);
+        }
+    }
+
+    /**
+     * 足と見た目の組を格子状に召喚する
+     * データパック制御時はbench_tickの@eセレクタで処理される
+     */
+    private void spawnRigs(Location origin, int count) {
+        int side = (int) Math.ceil(Math.sqrt(count));
+        for (int i = 0; i < count; i++) {
+            int x = origin.getBlockX() + (i % side) * SPACING;
+            int y = origin.getBlockY();
+            int z = origin.getBlockZ() + (i / side) * SPACING;
+            String pairTag = BotEntityTracker.BENCH_TAG + "_" + i;
+            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), String.format(
+                "summon minecraft:zombified_piglin %d %d %d {Tags:[\"%s\",\"two\",\"%s\",\"%s\"],"
+                    + "PersistenceRequired:1b,Silent:1b,Invulnerable:1b,DeathLootTable:\"\"}",
+                x, y, z, BotEntityTracker.BENCH_FEET_TAG, BotEntityTracker.BENCH_TAG, pairTag));
+            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), String.format(
+                "summon mannequin %d %d %d {Tags:[\"%s\",\"two\",\"%s\",\"%s\"]}",
+                x, y, z, BotEntityTracker.BENCH_BODY_TAG, BotEntityTracker.BENCH_TAG, pairTag));
+        }
+    }
+
+    /**
+     * 召喚したボットをネイティブ制御の対象に登録する
+     */
+    private void registerRigs(Location origin, int count) {
+        double range = Math.ceil(Math.sqrt(count)) * SPACING + 8;
+        Map<String, Entity> feetByPair = new HashMap<>();
+        Map<String, Entity> bodyByPair = new HashMap<>();
+        for (Entity entity : origin.getWorld().getNearbyEntities(origin, range, range, range)) {
+            if (!entity.getScoreboardTags().contains(BotEntityTracker.BENCH_TAG)) {
+                continue;
+            }
+            String pairTag = pairTagOf(entity);
+            if (pairTag == null) {
+                continue;
+            }
+            if (entity.getScoreboardTags().contains(BotEntityTracker.BENCH_FEET_TAG)) {
+                feetByPair.put(pairTag, entity);
+            } else {
+                bodyByPair.put(pairTag, entity);
+            }
+        }
+        for (Map.Entry<String, Entity> entry : feetByPair.entrySet()) {
+            controller.addExtraRig(entry.getValue(), bodyByPair.get(entry.getKey()));
+        }
+    }
+
+    private String pairTagOf(Entity entity) {
+        String prefix = BotEntityTracker.BENCH_TAG + "_";
+        for (String tag : entity.getScoreboardTags()) {
+            if (tag.startsWith(prefix)) {
+                return tag;
+            }
+        }
+        return null;
+    }
+
+    private void despawnRigs() {
+        controller.clearExtraRigs();
+        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), "kill @e[tag=" + BotEntityTracker.BENCH_TAG + "]");
+    }
+
+    private void startRecording() {
+        sampleCount = 0L;
+        totalTickMillis = 0.0;
+        maxTickMillis = 0.0;
+        controller.resetStats();
+        recording = true;
+    }
+
+    private String formatResult(Step step) {
+        double average = sampleCount == 0 ? 0.0 : totalTickMillis / sampleCount;
+        String line = String.format("%-8s bots=%-3d mspt avg=%.2fms max=%.2fms (%d ticks)",
+            step.nativeMode ? "native" : "datapack", step.botCount, average, maxTickMillis, sampleCount);
+        if (step.nativeMode) {
+            line += String.format(" controller=%.1fus/tick", controller.getAverageTickMicros());
+        }
+        return line;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onTickEnd(ServerTickEndEvent event) {
+        if (!recording) {
+            return;
+        }
+        double tickMillis = event.getTickDuration();
+        sampleCount++;
+        totalTickMillis += tickMillis;
+        maxTickMillis = Math.max(maxTickMillis, tickMillis);
+    }
+
+    /**
+     * 計測条件（ボット数と制御モード）
+     */
+    private static final class Step {
+        final int botCount;
+        final boolean nativeMode;
+
+        Step(int botCount, boolean nativeMode) {
+            this.botCount = botCount;
+            this.nativeMode = nativeMode;
+        }
+    }
+}
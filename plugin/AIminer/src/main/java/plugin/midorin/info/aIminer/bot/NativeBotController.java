@@ -0,0 +1,339 @@
+package plugin.midorin.info.aIminer.bot;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Mob;
+import org.bukkit.inventory.EntityEquipment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.util.Vector;
+import plugin.midorin.info.aIminer.util.ChunkSnapshotCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * データパックのmain.mcfunction（bot_tick）が毎tick行っているボット制御をPaper APIで行うクラス
+ * - 見た目（rider1）を足（test1）の位置・向きに同期
+ * - 足を移動マーカー（aim1）へ向かわせる
+ * - 採掘の進捗（minepoint）を数え、溜まったら対象ブロックを壊す
+ * エンティティはBotEntityTrackerのキャッシュ済み参照を使うため、@eセレクタの全走査が不要になる
+ * アイテム回収（collect/*）は独自NBTインベントリを扱うためデータパック側に残す
+ */
+public class NativeBotController extends BukkitRunnable {
+    // データパックの "native task" スコアが1の間、bot_tickはスキップされる
+    private static final String NATIVE_FLAG_ON = "scoreboard players set native task 1";
+    private static final String NATIVE_FLAG_OFF = "scoreboard players set native task 0";
+    private static final String NO_COLLISION_TEAM = "daburu";
+
+    private static final double MINING_REACH = 4.5;      // ブロック操作範囲（データパックと同じ）
+    private static final int MINING_CHECK_INTERVAL = 20; // 採掘判定の間隔（tick）
+    private static final int PATHFIND_INTERVAL = 10;     // 移動先の再指定間隔（tick）
+
+    /**
+     * 採掘の種類（データパックのxoak/xstoneに対応）
+     */
+    public enum MiningTarget {
+        WOOD(Material.OAK_LOG, 60, BotEntityTracker.WOOD_MARKER_TAG),
+        STONE(Material.STONE, 23, BotEntityTracker.STONE_MARKER_TAG);
+
+        private final Material material;
+        private final int requiredPoints;
+        private final String markerTag;
+
+        MiningTarget(Material material, int requiredPoints, String markerTag) {
+            this.material = material;
+            this.requiredPoints = requiredPoints;
+            this.markerTag = markerTag;
+        }
+    }
+
+    private final JavaPlugin plugin;
+    private final BotEntityTracker botEntityTracker;
+    private final ChunkSnapshotCache chunkSnapshotCache;
+    private final BotRig primaryRig = new BotRig();
+    private final List<BotRig> extraRigs = new ArrayList<>();  // ベンチマーク用の追加ボット
+
+    private boolean nativeMode;
+    private long tickCount = 0L;
+
+    // 採掘ジョブ（同時に1つのみ。新しいジョブで置き換える）
+    private MiningTarget miningTarget;
+    private Location miningLocation;
+
+    // 計測
+    private long controlledTicks = 0L;
+    private long totalNanos = 0L;
+
+    public NativeBotController(JavaPlugin plugin, BotEntityTracker botEntityTracker,
+                               ChunkSnapshotCache chunkSnapshotCache, boolean nativeMode) {
+        this.plugin = plugin;
+        this.botEntityTracker = botEntityTracker;
+        this.chunkSnapshotCache = chunkSnapshotCache;
+        this.nativeMode = nativeMode;
+    }
+
+    /**
+     * ネイティブ制御の有効・無効を切り替え、データパック側のbot_tickを停止・再開する
+     */
+    public void setNativeMode(boolean nativeMode) {
+        this.nativeMode = nativeMode;
+        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), nativeMode ? NATIVE_FLAG_ON : NATIVE_FLAG_OFF);
+        primaryRig.reset();
+        for (BotRig rig : extraRigs) {
+            rig.reset();
+        }
+        resetStats();
+        plugin.getLogger().info("Bot controller mode: " + (nativeMode ? "native" : "datapack"));
+    }
+
+    public boolean isNativeMode() {
+        return nativeMode;
+    }
+
+    /**
+     * 採掘を開始（データパックのoakset + xoak_on / stoneset + xstone_on に相当）
+     */
+    public void startMining(MiningTarget target, int x, int y, int z) {
+        Entity feet = botEntityTracker.getEntity(BotEntityTracker.BOT_FEET_TAG);
+        World world = feet != null ? feet.getWorld() : Bukkit.getWorlds().get(0);
+        this.miningTarget = target;
+        this.miningLocation = new Location(world, x, y, z);
+        primaryRig.minePoint = 0;
+        placeMiningMarker();
+    }
+
+    /**
+     * 採掘を停止し、採掘マーカーを片付ける（対象を掘り終えた時・リセット時）
+     */
+    public void stopMining() {
+        miningTarget = null;
+        miningLocation = null;
+        primaryRig.minePoint = 0;
+        removeMiningMarkers();
+    }
+
+    @Override
+    public void run() {
+        tickCount++;
+        if (!nativeMode) {
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        Entity feet = botEntityTracker.getEntity(BotEntityTracker.BOT_FEET_TAG);
+        Entity body = botEntityTracker.getEntity(BotEntityTracker.BOT_BODY_TAG);
+        Entity marker = botEntityTracker.getEntity(BotEntityTracker.MOVE_MARKER_TAG);
+
+        if (feet != null) {
+            if (primaryRig.bind(feet, body)) {
+                joinNoCollisionTeam(feet, body);
+            }
+            driveRig(primaryRig, marker);
+            updateMining(primaryRig);
+        }
+        for (BotRig rig : extraRigs) {
+            if (rig.feet != null && rig.feet.isValid()) {
+                driveRig(rig, marker);
+            }
+        }
+
+        totalNanos += System.nanoTime() - start;
+        controlledTicks++;
+    }
+
+    /**
+     * 1体分の毎tick処理（見た目の同期と移動先の指定）
+     */
+    private void driveRig(BotRig rig, Entity marker) {
+        Location feetLocation = rig.feet.getLocation();
+
+        // 見た目を足の位置・向きに合わせる
+        if (rig.body != null && rig.body.isValid()) {
+            rig.body.teleport(feetLocation);
+        }
+
+        // 移動マーカーへ向かう（マーカーが置き直されたら即座に、それ以外は一定間隔で）
+        if (marker != null && rig.feet instanceof Mob mob) {
+            boolean markerChanged = marker != rig.lastMarker;
+            if (markerChanged || tickCount % PATHFIND_INTERVAL == 0) {
+                mob.getPathfinder().moveTo(marker.getLocation());
+                rig.lastMarker = marker;
+            }
+        }
+    }
+
+    /**
+     * 採掘の進捗（データパックのifmine + xoak/xstone に相当）
+     */
+    private void updateMining(BotRig rig) {
+        if (miningTarget == null || miningLocation == null) {
+            rig.minePoint = 0;
+            return;
+        }
+
+        Location feetLocation = rig.feet.getLocation();
+        boolean inReach = feetLocation.getWorld() == miningLocation.getWorld()
+            && feetLocation.distanceSquared(miningLocation) <= MINING_REACH * MINING_REACH;
+
+        // 移動中・範囲外はリセット、静止して範囲内なら加算
+        Vector velocity = rig.feet.getVelocity();
+        boolean moving = (int) (velocity.getX() * 1000) != 0 || (int) (velocity.getZ() * 1000) != 0;
+        if (moving || !inReach) {
+            rig.minePoint = 0;
+        } else {
+            rig.minePoint++;
+        }
+
+        if (tickCount % MINING_CHECK_INTERVAL != 0) {
+            return;
+        }
+
+        // 対象ブロックがもう無ければ（別の手段で壊された等）採掘を終える
+        Block block = miningLocation.getBlock();
+        if (block.getType() != miningTarget.material) {
+            stopMining();
+            return;
+        }
+
+        placeMiningMarker();
+        if (rig.minePoint < miningTarget.requiredPoints) {
+            return;
+        }
+
+        block.breakNaturally(miningTool(rig));
+        chunkSnapshotCache.invalidate(block.getX(), block.getZ());
+        plugin.getLogger().fine("Native controller mined " + miningTarget.material + " at " + block.getLocation());
+        stopMining();
+    }
+
+    /**
+     * 採掘マーカー（aim1o/aim1s）を対象ブロックに置く（既に置かれていれば何もしない）
+     */
+    private void placeMiningMarker() {
+        Entity current = botEntityTracker.getEntity(miningTarget.markerTag);
+        if (current != null && current.getLocation().distanceSquared(miningLocation) < 0.25) {
+            return;
+        }
+        removeMiningMarkers();
+        String command = String.format(
+            "summon armor_stand %d %d %d {Invisible:1b,Invulnerable:1b,Tags:[\"%s\"],NoGravity:1b}",
+            miningLocation.getBlockX(), miningLocation.getBlockY(), miningLocation.getBlockZ(),
+            miningTarget.markerTag);
+        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+    }
+
+    private void removeMiningMarkers() {
+        for (MiningTarget target : MiningTarget.values()) {
+            Entity marker = botEntityTracker.getEntity(target.markerTag);
+            if (marker != null) {
+                marker.remove();
+            }
+        }
+    }
+
+    private ItemStack miningTool(BotRig rig) {
+        if (rig.body instanceof LivingEntity living) {
+            EntityEquipment equipment = living.getEquipment();
+            if (equipment != null && equipment.getItemInMainHand() != null) {
+                return equipment.getItemInMainHand();
+            }
+        }
+        return new ItemStack(Material.WOODEN_PICKAXE);
+    }
+
+    /**
+     * ベンチマーク用の追加ボットを登録
+     */
+    public void addExtraRig(Entity feet, Entity body) {
+        BotRig rig = new BotRig();
+        rig.bind(feet, body);
+        extraRigs.add(rig);
+        joinNoCollisionTeam(feet, body);
+    }
+
+    /**
+     * 足と見た目が押し合わないようチームに入れる（データパックの team join daburu @e[tag=two] に相当）
+     */
+    private void joinNoCollisionTeam(Entity feet, Entity body) {
+        StringBuilder command = new StringBuilder("team join ").append(NO_COLLISION_TEAM)
+            .append(' ').append(feet.getUniqueId());
+        if (body != null) {
+            command.append(' ').append(body.getUniqueId());
+        }
+        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command.toString());
+    }
+
+    public void clearExtraRigs() {
+        extraRigs.clear();
+    }
+
+    /**
+     * ネイティブ制御の1tickあたり平均処理時間（マイクロ秒）
+     */
+    public double getAverageTickMicros() {
+        return controlledTicks == 0 ? 0.0 : totalNanos / 1000.0 / controlledTicks;
+    }
+
+    public void resetStats() {
+        controlledTicks = 0L;
+        totalNanos = 0L;
+    }
+
+    /**
+     * 制御ループを開始（毎tick）
+     */
+    public void startControlLoop() {
+        if (nativeMode) {
+            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), NATIVE_FLAG_ON);
+        }
+        this.runTaskTimer(plugin, 1L, 1L);
+        plugin.getLogger().info("Bot controller started (mode: " + (nativeMode ? "native" : "datapack") + ")");
+    }
+
+    /**
+     * 制御ループを停止し、データパック側の制御に戻す
+     */
+    public void stopControlLoop() {
+        this.cancel();
+        if (nativeMode) {
+            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), NATIVE_FLAG_OFF);
+        }
+        plugin.getLogger().info("Bot controller stopped");
+    }
+
+    /**
+     * 1体分のエンティティ参照と採掘状態
+     */
+    private static final class BotRig {
+        Entity feet;
+        Entity body;
+        Entity lastMarker;
+        int minePoint;
+
+        /**
+         * @return 参照しているエンティティが変わった場合true
+         */
+        boolean bind(Entity feet, Entity body) {
+            boolean changed = this.feet != feet || this.body != body;
+            if (this.feet != feet) {
+                this.lastMarker = null;
+            }
+            this.feet = feet;
+            this.body = body;
+            return changed;
+        }
+
+        void reset() {
+            lastMarker = null;
+            minePoint = 0;
+        }
+    }
+}
@@ -0,0 +1,496 @@
+package plugin.midorin.info.aIminer.brain;
+
+import plugin.midorin.info.aIminer.model.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 脳データのバイナリ形式（brain.bin）の読み書き
+ *
+ * 形式: マジック "AIMB" + バージョン(short) + セクションの並び + 終端(0)
+ * セクション: ID(byte) + 長さ(int) + 内容。未知のIDは長さ分読み飛ばす
+ * 文字列の長さや要素数は可変長整数で書く
+ * メモリとタスクパラメータの値は型タグ付きで保存するため、Positionなどの型が再起動後も保たれる
+ */
+public final class BrainCodec {
+    public static final int MAGIC = 0x41494D42;  // "AIMB"
+    public static final short VERSION = 1;
+
+    // セクションID
+    static final byte SECTION_END = 0;
+    static final byte SECTION_RULES = 1;
+    static final byte SECTION_MEMORY = 2;
+    static final byte SECTION_TASKS = 3;
+    static final byte SECTION_META = 4;   // ジャーナルの適用済みシーケンス番号
+    static final byte SECTION_EPISODES = 5;
+    static final byte SECTION_CHAT = 6;
+
+    // 値の型タグ
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_DOUBLE = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_POSITION = 5;
+    private static final byte TYPE_LIST = 6;
+    private static final byte TYPE_MAP = 7;
+
+    private BrainCodec() {
+    }
+
+    /**
+     * 脳データをバイナリで書き出す
+     */
+    public static void write(BrainData brain, OutputStream out) throws IOException {
+        write(brain, List.of(), List.of(), 0L, out);
+    }
+
+    /**
+     * 脳データ・チャット履歴・エピソード記憶を、どこまでのジャーナルを反映済みかと一緒に書き出す
+     */
+    public static void write(BrainData brain, Collection<ChatMessage> chat, Collection<Episode> episodes,
+                             long journalSequence, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+        DataOutputStream section = new DataOutputStream(buffer);
+
+        section.writeLong(journalSequence);
+        flushSection(data, SECTION_META, buffer);
+
+        writeRules(section, brain.getRules());
+        flushSection(data, SECTION_RULES, buffer);
+
+        writeLength(section, chat.size());
+        for (ChatMessage message : chat) {
+            writeChatMessage(section, message);
+        }
+        flushSection(data, SECTION_CHAT, buffer);
+
+        writeMap(section, brain.getMemory() != null ? brain.getMemory().getData() : null);
+        flushSection(data, SECTION_MEMORY, buffer);
+
+        writeTasks(section, brain.getTasks());
+        flushSection(data, SECTION_TASKS, buffer);
+
+        writeLength(section, episodes.size());
+        for (Episode episode : episodes) {
+            writeEpisode(section, episode);
+        }
+        flushSection(data, SECTION_EPISODES, buffer);
+
+        data.writeByte(SECTION_END);
+        data.flush();
+    }
+
+    /**
+     * バイナリから脳データを読み込む
+     *
+     * @throws IOException 形式が不正・未対応のバージョンの場合
+     */
+    public static BrainData read(InputStream in) throws IOException {
+        return readSnapshot(in).getBrain();
+    }
+
+    /**
+     * バイナリから脳データ・チャット履歴・エピソード記憶・反映済みのジャーナル番号を読み込む
+     */
+    public static Snapshot readSnapshot(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a brain file (bad magic)");
+        }
+        short version = data.readShort();
+        if (version > VERSION) {
+            throw new IOException("Unsupported brain file version: " + version);
+        }
+
+        BrainData brain = new BrainData();
+        List<ChatMessage> chat = new ArrayList<>();
+        List<Episode> episodes = new ArrayList<>();
+        long journalSequence = 0L;
+        while (true) {
+            byte id = data.readByte();
+            if (id == SECTION_END) {
+                break;
+            }
+            int length = data.readInt();
+            switch (id) {
+                case SECTION_RULES -> brain.setRules(readRules(data));
+                case SECTION_MEMORY -> {
+                    Memory memory = new Memory();
+                    memory.setData(readMap(data));
+                    brain.setMemory(memory);
+                }
+                case SECTION_TASKS -> brain.setTasks(readTasks(data));
+                case SECTION_META -> journalSequence = data.readLong();
+                case SECTION_CHAT -> {
+                    int count = readLength(data);
+                    for (int i = 0; i < count; i++) {
+                        chat.add(readChatMessage(data));
+                    }
+                }
+                case SECTION_EPISODES -> {
+                    int count = readLength(data);
+                    for (int i = 0; i < count; i++) {
+                        episodes.add(readEpisode(data));
+                    }
+                }
+                default -> data.skipNBytes(length);  // 新しいバージョンで追加されたセクション
+            }
+        }
+        return new Snapshot(brain, chat, episodes, journalSequence);
+    }
+
+    /**
+     * 読み込んだ脳データとチャット履歴、エピソード記憶、反映済みのジャーナル番号
+     */
+    public static final class Snapshot {
+        private final BrainData brain;
+        private final List<ChatMessage> chat;
+        private final List<Episode> episodes;
+        private final long journalSequence;
+
+        Snapshot(BrainData brain, List<ChatMessage> chat, List<Episode> episodes, long journalSequence) {
+            this.brain = brain;
+            this.chat = chat;
+            this.episodes = episodes;
+            this.journalSequence = journalSequence;
+        }
+
+        public BrainData getBrain() {
+            return brain;
+        }
+
+        /**
+         * チャット履歴（古い順）
+         */
+        public List<ChatMessage> getChat() {
+            return chat;
+        }
+
+        public List<Episode> getEpisodes() {
+            return episodes;
+        }
+
+        public long getJournalSequence() {
+            return journalSequence;
+        }
+    }
+
+    private static void flushSection(DataOutputStream out, byte id, ByteArrayOutputStream buffer) throws IOException {
+        out.writeByte(id);
+        out.writeInt(buffer.size());
+        buffer.writeTo(out);
+        buffer.reset();
+    }
+
+    // ===== ルール =====
+
+    private static void writeRules(DataOutputStream out, BrainRules rules) throws IOException {
+        if (rules == null) {
+            rules = new BrainRules();
+        }
+        writeString(out, rules.getDescription());
+        writeString(out, rules.getVisionRules());
+        writeString(out, rules.getMemoryRules());
+        writeString(out, rules.getTaskRules());
+        writeStringList(out, rules.getAvailableTasks());
+    }
+
+    private static BrainRules readRules(DataInputStream in) throws IOException {
+        BrainRules rules = new BrainRules();
+        rules.setDescription(readString(in));
+        rules.setVisionRules(readString(in));
+        rules.setMemoryRules(readString(in));
+        rules.setTaskRules(readString(in));
+        rules.setAvailableTasks(readStringList(in));
+        return rules;
+    }
+
+    // ===== チャット =====
+
+    static void writeChatMessage(DataOutputStream out, ChatMessage message) throws IOException {
+        out.writeLong(message.getTimestamp());
+        writeString(out, message.getPlayer());
+        writeString(out, message.getMessage());
+        out.writeByte(message.getFlags());
+    }
+
+    static ChatMessage readChatMessage(DataInputStream in) throws IOException {
+        long timestamp = in.readLong();
+        return new ChatMessage(timestamp, readString(in), readString(in), in.readUnsignedByte());
+    }
+
+    // ===== タスク =====
+
+    private static void writeTasks(DataOutputStream out, List<Task> tasks) throws IOException {
+        if (tasks == null) {
+            tasks = List.of();
+        }
+        writeLength(out, tasks.size());
+        for (Task task : tasks) {
+            writeTask(out, task);
+        }
+    }
+
+    private static List<Task> readTasks(DataInputStream in) throws IOException {
+        int size = readLength(in);
+        List<Task> tasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tasks.add(readTask(in));
+        }
+        return tasks;
+    }
+
+    static void writeTask(DataOutputStream out, Task task) throws IOException {
+        out.writeInt(task.getId());
+        writeString(out, task.getType() != null ? task.getType().name() : null);
+        writeMap(out, task.getParameters());
+        writeString(out, task.getReason());
+        writeString(out, task.getStatus() != null ? task.getStatus().name() : null);
+        out.writeLong(task.getCreatedAt());
+    }
+
+    static Task readTask(DataInputStream in) throws IOException {
+        Task task = new Task();
+        task.setId(in.readInt());
+        String type = readString(in);
+        task.setType(type != null ? TaskType.valueOf(type) : null);
+        task.setParameters(readMap(in));
+        task.setReason(readString(in));
+        String status = readString(in);
+        task.setStatus(status != null ? TaskStatus.valueOf(status) : TaskStatus.PENDING);
+        task.setCreatedAt(in.readLong());
+        return task;
+    }
+
+    // ===== エピソード記憶 =====
+
+    static void writeEpisode(DataOutputStream out, Episode episode) throws IOException {
+        writeVarLong(out, episode.getId());
+        out.writeLong(episode.getTimestamp());
+        writeString(out, episode.getType());
+        writeString(out, episode.getText());
+        writePosition(out, episode.getPosition());
+    }
+
+    static Episode readEpisode(DataInputStream in) throws IOException {
+        long id = readVarLong(in);
+        long timestamp = in.readLong();
+        return new Episode(id, timestamp, readString(in), readString(in), readPosition(in));
+    }
+
+    // ===== 型付きの値 =====
+
+    private static void writeMap(DataOutputStream out, Map<String, Object> map) throws IOException {
+        if (map == null) {
+            writeLength(out, -1);
+            return;
+        }
+        writeLength(out, map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, Object> readMap(DataInputStream in) throws IOException {
+        int size = Math.max(0, readLength(in));
+        Map<String, Object> map = new LinkedHashMap<>(Math.max(16, size * 4 / 3 + 1));
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            map.put(key, readValue(in));
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String text) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, text);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TYPE_LONG);
+            long number = ((Number) value).longValue();
+            writeVarLong(out, (number << 1) ^ (number >> 63));  // ZigZag
+        } else if (value instanceof Number number) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(number.doubleValue());
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean(bool);
+        } else if (value instanceof Position position) {
+            out.writeByte(TYPE_POSITION);
+            out.writeDouble(position.getX());
+            out.writeDouble(position.getY());
+            out.writeDouble(position.getZ());
+        } else if (value instanceof List<?> list) {
+            out.writeByte(TYPE_LIST);
+            writeLength(out, list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte(TYPE_MAP);
+            writeLength(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            // 想定外の型は文字列として保存
+            out.writeByte(TYPE_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_LONG: {
+                long raw = readVarLong(in);
+                long value = (raw >>> 1) ^ -(raw & 1);
+                return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? (Object) (int) value : (Object) value;
+            }
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_POSITION:
+                return new Position(in.readDouble(), in.readDouble(), in.readDouble());
+            case TYPE_LIST: {
+                int size = readLength(in);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case TYPE_MAP:
+                return readMap(in);
+            default:
+                throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+    // ===== 基本型 =====
+
+    private static void writePosition(DataOutputStream out, Position position) throws IOException {
+        out.writeBoolean(position != null);
+        if (position != null) {
+            out.writeDouble(position.getX());
+            out.writeDouble(position.getY());
+            out.writeDouble(position.getZ());
+        }
+    }
+
+    private static Position readPosition(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new Position(in.readDouble(), in.readDouble(), in.readDouble());
+    }
+
+    private static void writeStringList(DataOutputStream out, List<String> list) throws IOException {
+        if (list == null) {
+            writeLength(out, -1);
+            return;
+        }
+        writeLength(out, list.size());
+        for (String value : list) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStringList(DataInputStream in) throws IOException {
+        int size = readLength(in);
+        if (size < 0) {
+            return null;
+        }
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+
+    /**
+     * 文字列（長さ + UTF-8、nullは長さ-1）。writeUTFの64KB制限を避ける
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeLength(out, -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeLength(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = readLength(in);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) {
+            throw new IOException("Truncated brain file");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 長さ・要素数（-1 = null）を可変長整数で書く。ほとんどの値は1バイトに収まる
+     */
+    private static void writeLength(DataOutputStream out, int length) throws IOException {
+        writeVarLong(out, length + 1L);
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        long value = readVarLong(in) - 1L;
+        if (value < -1L || value > Integer.MAX_VALUE) {
+            throw new IOException("Invalid length: " + value);
+        }
+        return (int) value;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long result = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
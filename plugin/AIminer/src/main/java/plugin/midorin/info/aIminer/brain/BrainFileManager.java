@@ -2,30 +2,151 @@ package plugin.midorin.info.aIminer.brain;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
 import plugin.midorin.info.aIminer.model.*;
+import plugin.midorin.info.aIminer.util.MetricsRegistry;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * 脳データの保持と保存
+ * 変更は追記型のジャーナル（brain.journal, BrainJournal）に記録し、
+ * 定期的にチェックポイントとして全体をバイナリ形式（brain.bin, BrainCodec）に書き出す
+ * 起動時はbrain.binを読み込んだ後、ジャーナルを再生してクラッシュ直前の状態に戻す
+ * ブロック視覚情報はメモリ上だけで保持し（直近の数回分は履歴として残す）、ディスクには書かない
+ * 人やai-brainツール向けにはJSONを書き出す
+ * 旧形式のbrain.jsonしかない場合は読み込み時にbrain.binへ移行する
+ */
 public class BrainFileManager {
+    // ジャーナルのレコード種類
+    private static final byte OP_CHAT_MESSAGE = 1;
+    private static final byte OP_MEMORY_PUT = 2;
+    private static final byte OP_TASK_ADD = 3;
+    private static final byte OP_TASK_STATUS = 4;
+    private static final byte OP_TASKS_PRUNE = 5;
+    private static final byte OP_EPISODE_ADD = 6;
+    private static final byte OP_MEMORY_REMOVE = 7;
+    private static final byte OP_EPISODES_EVICT = 8;
+
+    private static final int RECALL_RADIUS = 32;        // 場所で思い出す範囲（ブロック）
+    private static final int RECALL_CHAT_MESSAGES = 3;  // 検索に使う直近のチャット件数
+    private static final int DEFAULT_CHAT_HISTORY = 64;
+
     private final Path brainFilePath;
+    private final Path legacyJsonPath;
+    private final Path exportPath;
+    private final BrainJournal journal;
     private final Gson gson;
     private BrainData brainData;
-    private static final int MAX_CHAT_HISTORY = 20;
-    private static final DateTimeFormatter TIME_FORMATTER =
-        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneId.systemDefault());
+    private EpisodicMemoryStore episodicMemory = new EpisodicMemoryStore();
+    private MemoryRetentionPolicy retentionPolicy = MemoryRetentionPolicy.unlimited();
+    private final Map<String, KeyUsage> keyUsage = new HashMap<>();
+    private final ArrayDeque<BlockVisionData> visionHistory = new ArrayDeque<>();
+    private int visionHistorySize = 0;
+    private volatile ChatHistory chatHistory = new ChatHistory(DEFAULT_CHAT_HISTORY);
+    private long chatCursor = 0L;   // ジャーナル・エピソード記憶に反映済みのチャットの通し番号
+
+    // ファイル書き込みを行うスレッド（既定は呼び出し元で実行）
+    private volatile Executor ioExecutor = Runnable::run;
+    private final AtomicBoolean commitScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean checkpointRunning = new AtomicBoolean(false);
+    private volatile long lastCheckpointMillis = System.currentTimeMillis();
+    private volatile long checkpointBytesWritten = 0L;
+    private volatile long checkpointCount = 0L;
+    private long ttlEvictions = 0L;
+    private long capEvictions = 0L;
+    private long episodeEvictions = 0L;
+    private long summaryRuns = 0L;
+    // 起動してからのタスクの結果（種類ごとに 完了数, 失敗数）
+    private final Map<TaskType, long[]> taskOutcomes = new EnumMap<>(TaskType.class);
+    private int consecutiveFailures = 0;
+    private MetricsRegistry metrics = new MetricsRegistry();
+    private MetricsRegistry.Histogram commitTimes;
+    private MetricsRegistry.Histogram checkpointEncodeTimes;
+    private MetricsRegistry.Histogram checkpointWriteTimes;
+    // タスクの種類 → 完了数・失敗数のカウンター（初めて終わったときに登録する）
+    private final Map<TaskType, MetricsRegistry.Counter[]> taskCounters = new EnumMap<>(TaskType.class);
 
     public BrainFileManager(File dataFolder) {
-        this.brainFilePath = new File(dataFolder, "brain.json").toPath();
+        this.brainFilePath = new File(dataFolder, "brain.bin").toPath();
+        this.legacyJsonPath = new File(dataFolder, "brain.json").toPath();
+        this.exportPath = new File(dataFolder, "brain-export.json").toPath();
+        this.journal = new BrainJournal(new File(dataFolder, "brain.journal").toPath());
         this.gson = new GsonBuilder().setPrettyPrinting().create();
         this.brainData = new BrainData();
+        setMetrics(metrics);
+    }
+
+    /**
+     * ファイル書き込み（グループコミット・チェックポイント）を行うスレッドを設定
+     */
+    public void setIoExecutor(Executor ioExecutor) {
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * 保存時間・タスクの結果を記録する先を設定
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        this.commitTimes = saveTimer("commit");
+        this.checkpointEncodeTimes = saveTimer("checkpoint_encode");
+        this.checkpointWriteTimes = saveTimer("checkpoint_write");
+        taskCounters.clear();
+    }
+
+    /**
+     * メモリの保持ルールを設定
+     */
+    public void setRetentionPolicy(MemoryRetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+    }
+
+    /**
+     * チャット履歴の件数と、ボット宛てとみなす名前を設定（loadBrainFileの前に呼ぶ）
+     */
+    public void configureChat(int historySize, Collection<String> mentionNames) {
+        ChatHistory history = new ChatHistory(Math.max(1, historySize));
+        history.setMentionNames(mentionNames);
+        this.chatHistory = history;
+        this.chatCursor = 0L;
+    }
+
+    /**
+     * ブロック視覚情報の履歴として保持する件数（0で履歴なし）
+     */
+    public void setVisionHistorySize(int visionHistorySize) {
+        this.visionHistorySize = Math.max(0, visionHistorySize);
+        while (visionHistory.size() > this.visionHistorySize) {
+            visionHistory.removeFirst();
+        }
+    }
+
+    /**
+     * 直近のブロック視覚情報（古い順、デバッグ・書き出し用）
+     */
+    public List<BlockVisionData> getVisionHistory() {
+        return new ArrayList<>(visionHistory);
     }
 
     /**
@@ -33,73 +154,470 @@ public class BrainFileManager {
      */
     public void initializeBrainFile() {
         this.brainData = new BrainData();
-        saveBrainFile();
+        this.episodicMemory = new EpisodicMemoryStore();
+        this.keyUsage.clear();
+        chatHistory.clear();
+        chatCursor = chatHistory.getSequence();
+        checkpoint();
     }
 
     /**
-     * 脳ファイルを読み込む
+     * 脳ファイルを読み込み、ジャーナルを再生する
      */
     public BrainData loadBrainFile() {
-        if (!Files.exists(brainFilePath)) {
-            initializeBrainFile();
+        long snapshotSequence = 0L;
+        boolean loaded = false;
+        if (Files.exists(brainFilePath)) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(brainFilePath))) {
+                BrainCodec.Snapshot snapshot = BrainCodec.readSnapshot(in);
+                brainData = snapshot.getBrain();
+                for (ChatMessage chatMessage : snapshot.getChat()) {
+                    chatHistory.restore(chatMessage);
+                }
+                for (Episode episode : snapshot.getEpisodes()) {
+                    episodicMemory.add(episode);
+                }
+                snapshotSequence = snapshot.getJournalSequence();
+                loaded = true;
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        try {
+            journal.replay(snapshotSequence, this::replayRecord);
+            journal.open();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        chatCursor = chatHistory.getSequence();
+
+        if (!loaded && Files.exists(legacyJsonPath)) {
+            migrateFromJson();
             return brainData;
         }
 
-        try (Reader reader = new FileReader(brainFilePath.toFile())) {
+        if (!Files.exists(brainFilePath)) {
+            checkpoint();
+        }
+        return brainData;
+    }
+
+    /**
+     * 旧形式のbrain.jsonを読み込み、brain.binに保存し直す（元のファイルは.bakとして残す）
+     */
+    private void migrateFromJson() {
+        try (Reader reader = Files.newBufferedReader(legacyJsonPath, StandardCharsets.UTF_8)) {
             brainData = gson.fromJson(reader, BrainData.class);
-            if (brainData == null) {
-                brainData = new BrainData();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            brainData = null;
+        }
+        if (brainData == null) {
+            brainData = new BrainData();
+            return;
+        }
+
+        // Gsonで読み込んだ座標はMapになっているためPositionに戻す
+        if (brainData.getMemory() != null && brainData.getMemory().getData() != null) {
+            for (Map.Entry<String, Object> entry : brainData.getMemory().getData().entrySet()) {
+                entry.setValue(restorePositions(entry.getValue()));
             }
-            return brainData;
+        }
+
+        checkpoint();
+        try {
+            Files.move(legacyJsonPath, legacyJsonPath.resolveSibling("brain.json.bak"),
+                StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
             e.printStackTrace();
-            brainData = new BrainData();
-            return brainData;
         }
     }
 
     /**
-     * 脳ファイルを保存
+     * {x, y, z}だけを持つMapをPositionに変換する（リストの中も含む）
+     */
+    @SuppressWarnings("unchecked")
+    static Object restorePositions(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            if (map.size() == 3 && map.get("x") instanceof Number x
+                    && map.get("y") instanceof Number y && map.get("z") instanceof Number z) {
+                return new Position(x.doubleValue(), y.doubleValue(), z.doubleValue());
+            }
+            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) map).entrySet()) {
+                entry.setValue(restorePositions(entry.getValue()));
+            }
+            return map;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> elements = (List<Object>) list;
+            for (int i = 0; i < elements.size(); i++) {
+                elements.set(i, restorePositions(elements.get(i)));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 変更をディスクに書き込む（ジャーナルのグループコミットを依頼する）
+     * 変更はジャーナルに記録済みのため、呼び出しが続いても書き込みは1回にまとめられる
      */
     public void saveBrainFile() {
+        if (!commitScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        ioExecutor.execute(() -> {
+            commitScheduled.set(false);
+            long start = System.nanoTime();
+            try {
+                journal.commit();
+                commitTimes.recordSince(start);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * チェックポイントが必要か（前回から一定時間経過、またはジャーナルが一定サイズを超えた）
+     */
+    public boolean needsCheckpoint(long intervalMillis, long maxJournalBytes) {
+        if (checkpointRunning.get()) {
+            return false;
+        }
+        return System.currentTimeMillis() - lastCheckpointMillis >= intervalMillis
+            || journal.size() >= maxJournalBytes;
+    }
+
+    /**
+     * チェックポイントを作成する
+     * メインスレッドではジャーナルの切り替えを予約して脳データをエンコードするだけにし、
+     * ジャーナルの退避・スナップショットの書き込み・古いジャーナルの削除はioExecutorで行う
+     */
+    public void checkpoint() {
+        if (!checkpointRunning.compareAndSet(false, true)) {
+            return;
+        }
+        lastCheckpointMillis = System.currentTimeMillis();
+        long encodeStart = System.nanoTime();
+        byte[] snapshot;
         try {
-            Files.createDirectories(brainFilePath.getParent());
-            try (Writer writer = new FileWriter(brainFilePath.toFile())) {
-                gson.toJson(brainData, writer);
+            // ジャーナルに記録済みのチャットだけをスナップショットに含める
+            drainChat();
+            long sequence = journal.rotate();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+            BrainCodec.write(brainData, chatHistory.snapshot(chatCursor), episodicMemory.getEpisodes(),
+                sequence, buffer);
+            snapshot = buffer.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            checkpointRunning.set(false);
+            return;
+        }
+        checkpointEncodeTimes.recordSince(encodeStart);
+
+        ioExecutor.execute(() -> {
+            long writeStart = System.nanoTime();
+            try {
+                // 切り替え前の変更を書き込んで退避してから、スナップショットを置き換える
+                journal.commit();
+                writeSnapshot(snapshot);
+                journal.deleteRotated();
+                checkpointWriteTimes.recordSince(writeStart);
+                checkpointBytesWritten += snapshot.length;
+                checkpointCount++;
+            } catch (IOException e) {
+                // 退避したジャーナルは残るため、次回起動時に再生される
+                e.printStackTrace();
+            } finally {
+                checkpointRunning.set(false);
+            }
+        });
+    }
+
+    private MetricsRegistry.Histogram saveTimer(String stage) {
+        return metrics.timer("aiminer_brain_save_seconds", "Brain persistence time by stage", "stage", stage);
+    }
+
+    private MetricsRegistry.Counter[] taskCounters(TaskType type) {
+        return new MetricsRegistry.Counter[] {
+            metrics.counter("aiminer_tasks_total", "Finished tasks by type and result",
+                "type", type.name(), "result", "completed"),
+            metrics.counter("aiminer_tasks_total", "Finished tasks by type and result",
+                "type", type.name(), "result", "failed")
+        };
+    }
+
+    /**
+     * スナップショットを書き込む（一時ファイルに書いてから置き換える）
+     */
+    private void writeSnapshot(byte[] snapshot) throws IOException {
+        Files.createDirectories(brainFilePath.getParent());
+        Path tempPath = brainFilePath.resolveSibling("brain.bin.tmp");
+        try (OutputStream out = Files.newOutputStream(tempPath)) {
+            out.write(snapshot);
+        }
+        Files.move(tempPath, brainFilePath,
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 停止時の保存（書き込み中のチェックポイントを待ち、同期的にチェックポイントを作成して閉じる）
+     */
+    public void close() {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (checkpointRunning.get() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
+        }
+        // 停止中は非同期タスクが実行されない場合があるため、以降は同期的に書き込む
+        ioExecutor = Runnable::run;
+        checkpointRunning.set(false);
+        checkpoint();
+        try {
+            journal.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * チャットメッセージを追加
+     * 現在の脳データをJSONで書き出す（人による確認・ai-brainツール用）
+     *
+     * @return 書き出したファイル
+     */
+    public Path exportJson() throws IOException {
+        Files.createDirectories(exportPath.getParent());
+        JsonObject export = gson.toJsonTree(brainData).getAsJsonObject();
+        export.getAsJsonObject("vision").add("chat", gson.toJsonTree(chatHistory.recent(Integer.MAX_VALUE)));
+        export.add("vision_history", gson.toJsonTree(visionHistory));
+        try (Writer writer = Files.newBufferedWriter(exportPath, StandardCharsets.UTF_8)) {
+            gson.toJson(export, writer);
+        }
+        return exportPath;
+    }
+
+    /**
+     * 保存済みの脳ファイルのサイズ（バイト、未保存なら-1）
+     */
+    public long getBrainFileSize() {
+        try {
+            return Files.size(brainFilePath);
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * 現在のジャーナルのサイズ（バイト）
+     */
+    public long getJournalSize() {
+        return journal.size();
+    }
+
+    public long getJournalSequence() {
+        return journal.getSequence();
+    }
+
+    /**
+     * 起動後にディスクへ書き込んだ量（ジャーナル + チェックポイント、バイト）
+     */
+    public long getBytesWritten() {
+        return journal.getBytesWritten() + checkpointBytesWritten;
+    }
+
+    public long getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * プレイヤーの発言を追加（非同期のチャットスレッドから呼ばれる）
+     * ジャーナルとエピソード記憶への反映はメインスレッドのdrainChatで行う
      */
     public void addChatMessage(String player, String message, long timestamp) {
-        String timeStr = TIME_FORMATTER.format(Instant.ofEpochMilli(timestamp));
-        ChatMessage chatMessage = new ChatMessage(timeStr, player, message);
+        chatHistory.publish(player, message, timestamp, true);
+    }
 
-        List<ChatMessage> chatHistory = brainData.getVision().getChat();
-        chatHistory.add(chatMessage);
+    /**
+     * 入退室などのシステムメッセージを追加
+     */
+    public void addSystemMessage(String message, long timestamp) {
+        chatHistory.publish("SYSTEM", message, timestamp, false);
+    }
 
-        // 最新20件のみ保持
-        if (chatHistory.size() > MAX_CHAT_HISTORY) {
-            chatHistory.remove(0);
-        }
+    /**
+     * 前回以降に追加されたチャットをジャーナルとエピソード記憶に反映する（メインスレッド）
+     */
+    public void drainChat() {
+        chatCursor = chatHistory.drain(chatCursor, chatMessage -> {
+            journal.append(OP_CHAT_MESSAGE, out -> BrainCodec.writeChatMessage(out, chatMessage));
+            recordEpisode("CHAT", chatMessage.getPlayer() + ": " + chatMessage.getMessage(), null);
+        });
+    }
+
+    public ChatHistory getChatHistory() {
+        return chatHistory;
     }
 
     /**
-     * ブロック視覚情報を更新
+     * ブロック視覚情報を更新（メモリ上のみ）
+     * 見えているプレイヤーは、チャットが近くからの発言かの判定に使う
      */
     public void updateBlockVision(BlockVisionData blockVisionData) {
         brainData.getVision().setBlocks(blockVisionData);
+        Set<String> nearbyPlayers = new HashSet<>();
+        if (blockVisionData.getNearbyPlayers() != null) {
+            for (VisibleEntity player : blockVisionData.getNearbyPlayers()) {
+                if (player.getName() != null) {
+                    nearbyPlayers.add(player.getName());
+                }
+            }
+        }
+        chatHistory.setNearbyPlayers(nearbyPlayers);
+        if (visionHistorySize > 0) {
+            if (visionHistory.size() >= visionHistorySize) {
+                visionHistory.removeFirst();
+            }
+            visionHistory.addLast(blockVisionData);
+        }
+    }
+
+    /**
+     * 視覚更新1回分の結果をまとめて反映する（VisionUpdateTaskとシミュレーションで共通）
+     *
+     * @param botPosition スキャンしたときのボットの位置
+     * @param inventory 「アイテムID x個数」の一覧（空なら"empty"を入れる。取得できなかった場合はnullで、前回の値を残す）
+     * @param nearbyItems 近くに落ちているアイテムの説明
+     */
+    public void updateSurroundings(BlockVisionData blockVisionData, Position botPosition, List<String> inventory,
+                                   List<String> nearbyItems) {
+        updateBlockVision(blockVisionData);
+        updateMemory("current_position", botPosition);
+        updateMemory("bot_position_source", "vision_scan");
+        if (inventory != null) {
+            updateMemory("inventory", inventory.isEmpty() ? new ArrayList<>(List.of("empty")) : inventory);
+        }
+        updateMemory("nearby_items", nearbyItems);
     }
 
     /**
      * メモリ情報を更新
+     * 別のオブジェクトで内容が同じ値（毎回作り直される座標やインベントリ）はジャーナルに記録しない
      */
     public void updateMemory(String key, Object value) {
+        Object previous = brainData.getMemory().get(key);
         brainData.getMemory().put(key, value);
+        touchKey(key, true);
+        if (previous != value && Objects.equals(previous, value)) {
+            return;
+        }
+        journal.append(OP_MEMORY_PUT, out -> {
+            BrainCodec.writeString(out, key);
+            BrainCodec.writeValue(out, value);
+        });
+    }
+
+    /**
+     * メモリの値を読む（LRU/LFUの利用として数える）
+     */
+    public Object readMemory(String key) {
+        Object value = brainData.getMemory().get(key);
+        if (value != null) {
+            touchKey(key, false);
+        }
+        return value;
+    }
+
+    /**
+     * メモリからキーを削除
+     */
+    public void removeMemory(String key) {
+        keyUsage.remove(key);
+        if (brainData.getMemory().getData().remove(key) != null) {
+            journal.append(OP_MEMORY_REMOVE, out -> BrainCodec.writeString(out, key));
+        }
+    }
+
+    private void touchKey(String key, boolean written) {
+        long now = System.currentTimeMillis();
+        KeyUsage usage = keyUsage.computeIfAbsent(key, k -> new KeyUsage(now));
+        usage.lastUsed = now;
+        usage.uses++;
+        if (written) {
+            usage.lastWritten = now;
+        }
+    }
+
+    /**
+     * 保持ルールを適用する（期限切れ・上限超過のキーと、上限を超えた古いエピソードを削除）
+     * 起動前から残っているキーは、最初に呼ばれた時点で書き込まれたものとして扱う
+     */
+    public void enforceRetention() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> data = brainData.getMemory().getData();
+        List<String> candidates = new ArrayList<>();
+        for (String key : new ArrayList<>(data.keySet())) {
+            KeyUsage usage = keyUsage.computeIfAbsent(key, k -> new KeyUsage(now));
+            long ttl = retentionPolicy.ttlMillisFor(key);
+            if (ttl >= 0 && now - usage.lastWritten > ttl) {
+                removeMemory(key);
+                ttlEvictions++;
+            } else if (!retentionPolicy.isProtected(key)) {
+                candidates.add(key);
+            }
+        }
+
+        int excess = candidates.size() - retentionPolicy.getMaxEntries();
+        if (retentionPolicy.getMaxEntries() > 0 && excess > 0) {
+            Comparator<String> order = retentionPolicy.getEviction() == MemoryRetentionPolicy.Eviction.LFU
+                ? Comparator.comparingLong((String key) -> keyUsage.get(key).uses)
+                    .thenComparingLong(key -> keyUsage.get(key).lastUsed)
+                : Comparator.comparingLong(key -> keyUsage.get(key).lastUsed);
+            candidates.sort(order);
+            for (int i = 0; i < excess; i++) {
+                removeMemory(candidates.get(i));
+                capEvictions++;
+            }
+        }
+
+        int maxEpisodes = retentionPolicy.getMaxEpisodes();
+        if (maxEpisodes > 0 && episodicMemory.size() > maxEpisodes) {
+            List<Episode> oldest = episodicMemory.oldest(episodicMemory.size() - maxEpisodes);
+            evictEpisodesUpTo(oldest.get(oldest.size() - 1).getId());
+        }
+    }
+
+    private void evictEpisodesUpTo(long maxId) {
+        int removed = episodicMemory.removeUpTo(maxId);
+        if (removed > 0) {
+            episodeEvictions += removed;
+            journal.append(OP_EPISODES_EVICT, out -> out.writeLong(maxId));
+        }
+    }
+
+    /**
+     * 古い方からcount件のエピソード（要約用）
+     */
+    public List<Episode> getOldestEpisodes(int count) {
+        return episodicMemory.oldest(count);
+    }
+
+    /**
+     * 要約を記録し、要約したエピソードを削除する
+     *
+     * @param summarized 要約に使ったエピソード（getOldestEpisodesで取得したもの）
+     */
+    public void applyDigest(String digest, List<Episode> summarized) {
+        if (summarized.isEmpty()) {
+            return;
+        }
+        recordEpisode("DIGEST", digest, null);
+        evictEpisodesUpTo(summarized.get(summarized.size() - 1).getId());
+        summaryRuns++;
     }
 
     /**
@@ -107,6 +625,18 @@ public class BrainFileManager {
      */
     public void addTask(Task task) {
         brainData.getTasks().add(task);
+        journal.append(OP_TASK_ADD, out -> BrainCodec.writeTask(out, task));
+    }
+
+    /**
+     * 未使用のタスクIDを取得
+     */
+    public int nextTaskId() {
+        int maxId = 0;
+        for (Task task : brainData.getTasks()) {
+            maxId = Math.max(maxId, task.getId());
+        }
+        return maxId + 1;
     }
 
     /**
@@ -138,23 +668,173 @@ public class BrainFileManager {
      * タスクのステータスを更新
      */
     public void updateTaskStatus(int taskId, TaskStatus status) {
+        Task task = applyTaskStatus(taskId, status);
+        if (task == null) {
+            return;
+        }
+        journal.append(OP_TASK_STATUS, out -> {
+            out.writeInt(taskId);
+            BrainCodec.writeString(out, status.name());
+        });
+
+        // 終わったタスクは出来事として覚えておく
+        if (status == TaskStatus.COMPLETED || status == TaskStatus.FAILED) {
+            if (task.getType() != null) {
+                taskOutcomes.computeIfAbsent(task.getType(), type -> new long[2])[status == TaskStatus.COMPLETED ? 0 : 1]++;
+                consecutiveFailures = status == TaskStatus.COMPLETED ? 0 : consecutiveFailures + 1;
+                taskCounters.computeIfAbsent(task.getType(), this::taskCounters)
+                    [status == TaskStatus.COMPLETED ? 0 : 1].increment();
+            }
+            Position position = positionOf(task.getParameters());
+            String text = task.getType() + " " + status.name().toLowerCase()
+                + (position != null ? " at " + position : "")
+                + (task.getReason() != null ? " - " + task.getReason() : "");
+            recordEpisode("TASK", text, position);
+        }
+    }
+
+    private Task applyTaskStatus(int taskId, TaskStatus status) {
         for (Task task : brainData.getTasks()) {
             if (task.getId() == taskId) {
                 task.setStatus(status);
-                break;
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private static Position positionOf(Map<String, Object> parameters) {
+        if (parameters != null && parameters.get("x") instanceof Number x
+                && parameters.get("y") instanceof Number y && parameters.get("z") instanceof Number z) {
+            return new Position(x.doubleValue(), y.doubleValue(), z.doubleValue());
+        }
+        return null;
+    }
+
+    /**
+     * 出来事をエピソード記憶に記録
+     *
+     * @param type 種類（CHAT, TASK, NOTEなど）
+     * @param position 起きた場所（なければnull）
+     */
+    public void recordEpisode(String type, String text, Position position) {
+        Episode episode = episodicMemory.record(type, text, position, System.currentTimeMillis());
+        journal.append(OP_EPISODE_ADD, out -> BrainCodec.writeEpisode(out, episode));
+    }
+
+    /**
+     * 今見えているもの・直近のチャット・現在位置に関連するエピソードを取り出す（AIへの入力用）
+     */
+    public List<Episode> recallRelevantEpisodes(int limit) {
+        Set<String> keywords = new LinkedHashSet<>();
+        Position center = null;
+
+        BlockVisionData blocks = brainData.getVision().getBlocks();
+        if (blocks != null) {
+            center = blocks.getBotPosition();
+            if (blocks.getVisibleBlocks() != null) {
+                for (VisibleBlock block : blocks.getVisibleBlocks()) {
+                    keywords.addAll(EpisodicMemoryStore.tokenize(block.getBlockType()));
+                }
             }
+            for (List<VisibleEntity> entities : Arrays.asList(blocks.getNearbyItems(), blocks.getNearbyPlayers())) {
+                if (entities != null) {
+                    for (VisibleEntity entity : entities) {
+                        keywords.addAll(EpisodicMemoryStore.tokenize(entity.getName()));
+                    }
+                }
+            }
+        }
+        if (center == null && brainData.getMemory().get("current_position") instanceof Position position) {
+            center = position;
         }
+
+        for (ChatMessage chatMessage : chatHistory.forPrompt(RECALL_CHAT_MESSAGES, RECALL_CHAT_MESSAGES)) {
+            keywords.addAll(EpisodicMemoryStore.tokenize(chatMessage.getPlayer() + " " + chatMessage.getMessage()));
+        }
+
+        return episodicMemory.search(keywords, center, RECALL_RADIUS, limit);
+    }
+
+    public int getEpisodeCount() {
+        return episodicMemory.size();
+    }
+
+    public int getMemorySize() {
+        return brainData.getMemory().getData().size();
+    }
+
+    /**
+     * 保持期間切れ・上限超過で削除したメモリのキー数
+     */
+    public long getMemoryEvictions() {
+        return ttlEvictions + capEvictions;
+    }
+
+    public long getTtlEvictions() {
+        return ttlEvictions;
+    }
+
+    public long getCapEvictions() {
+        return capEvictions;
+    }
+
+    public long getEpisodeEvictions() {
+        return episodeEvictions;
+    }
+
+    public long getSummaryRuns() {
+        return summaryRuns;
+    }
+
+    /**
+     * 起動してからのタスクの結果（種類ごとに 完了数, 失敗数）
+     */
+    public Map<TaskType, long[]> getTaskOutcomes() {
+        Map<TaskType, long[]> copy = new EnumMap<>(TaskType.class);
+        taskOutcomes.forEach((type, counts) -> copy.put(type, counts.clone()));
+        return copy;
+    }
+
+    /**
+     * 直近で続けて失敗したタスクの数（完了したら0に戻る）
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
     }
 
     /**
      * 完了・失敗したタスクを削除
      */
     public void removeCompletedTasks() {
-        brainData.getTasks().removeIf(task ->
+        if (applyRemoveCompletedTasks()) {
+            journal.append(OP_TASKS_PRUNE, out -> { });
+        }
+    }
+
+    private boolean applyRemoveCompletedTasks() {
+        return brainData.getTasks().removeIf(task ->
             task.getStatus() == TaskStatus.COMPLETED ||
             task.getStatus() == TaskStatus.FAILED);
     }
 
+    /**
+     * ジャーナルのレコードを1件適用する（起動時の再生用）
+     */
+    private void replayRecord(byte type, DataInputStream in) throws IOException {
+        switch (type) {
+            case OP_CHAT_MESSAGE -> chatHistory.restore(BrainCodec.readChatMessage(in));
+            case OP_MEMORY_PUT -> brainData.getMemory().put(BrainCodec.readString(in), BrainCodec.readValue(in));
+            case OP_TASK_ADD -> brainData.getTasks().add(BrainCodec.readTask(in));
+            case OP_TASK_STATUS -> applyTaskStatus(in.readInt(), TaskStatus.valueOf(BrainCodec.readString(in)));
+            case OP_EPISODE_ADD -> episodicMemory.add(BrainCodec.readEpisode(in));
+            case OP_MEMORY_REMOVE -> brainData.getMemory().getData().remove(BrainCodec.readString(in));
+            case OP_EPISODES_EVICT -> episodicMemory.removeUpTo(in.readLong());
+            case OP_TASKS_PRUNE -> applyRemoveCompletedTasks();
+            default -> throw new IOException("Unknown journal record type: " + type);
+        }
+    }
+
     /**
      * 現在の脳データを取得
      */
@@ -163,9 +843,43 @@ public class BrainFileManager {
     }
 
     /**
-     * 脳データを設定（AIサーバーからの更新時）
+     * AIのプロンプト用に脳データをコピーする（メインスレッドで呼ぶ）
+     * 非同期スレッドでプロンプトを組み立てる間にメモリやタスクが変更されても影響を受けない
+     * メモリの値と視覚情報は更新のたびに別のオブジェクトに置き換わるため、参照をそのまま持つ
+     */
+    public BrainData snapshot() {
+        Memory memory = new Memory();
+        memory.setData(Collections.unmodifiableMap(new HashMap<>(brainData.getMemory().getData())));
+        List<Task> tasks = new ArrayList<>(brainData.getTasks().size());
+        for (Task task : brainData.getTasks()) {
+            Task copy = new Task(task.getId(), task.getType(), new HashMap<>(task.getParameters()), task.getReason());
+            copy.setStatus(task.getStatus());
+            copy.setCreatedAt(task.getCreatedAt());
+            tasks.add(copy);
+        }
+        return new BrainData(brainData.getRules(), new VisionData(brainData.getVision().getBlocks()), memory,
+            Collections.unmodifiableList(tasks));
+    }
+
+    /**
+     * 脳データを丸ごと置き換える（置き換え後の状態をチェックポイントとして保存する）
      */
     public void setBrainData(BrainData brainData) {
         this.brainData = brainData;
+        checkpoint();
+    }
+
+    /**
+     * メモリのキーの利用状況（保持ルール用、保存はしない）
+     */
+    private static final class KeyUsage {
+        long lastWritten;
+        long lastUsed;
+        long uses;
+
+        KeyUsage(long now) {
+            this.lastWritten = now;
+            this.lastUsed = now;
+        }
     }
 }
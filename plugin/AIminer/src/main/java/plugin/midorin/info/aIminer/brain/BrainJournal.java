@@ -0,0 +1,316 @@
+package plugin.midorin.info.aIminer.brain;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * 脳データの変更を追記するジャーナル（brain.journal）
+ *
+ * レコード: 長さ(int) + シーケンス番号(long) + 種類(byte) + 内容 + CRC32C(int)
+ * 変更はメモリ上のバッファに溜め、commit()でまとめて書き込んでfsyncする（グループコミット）
+ * チェックポイント時はrotate()で切り替えを予約し、次のcommit()で現在のファイルをbrain.journal.oldに退避する
+ * スナップショット（brain.bin）の保存後にdeleteRotated()で削除する
+ * append/rotateはメインスレッド、commitは非同期スレッドから呼ばれる
+ * - lock: バッファとシーケンス番号（メインスレッドが取るのはこちらだけで、fsyncを待たない）
+ * - ioLock: ファイルへの書き込み・fsync・切り替え（commit同士の順序を保つ）
+ */
+public class BrainJournal implements Closeable {
+    private static final int HEADER_SIZE = 4;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * レコードの内容を書き込む処理
+     */
+    public interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * 再生時に1レコードずつ呼ばれる処理
+     */
+    public interface RecordHandler {
+        void handle(byte type, DataInputStream payload) throws IOException;
+    }
+
+    private final Path activePath;
+    private final Path rotatedPath;
+    private final Object lock = new Object();
+    private final Object ioLock = new Object();
+
+    private FileChannel channel;  // ioLockで保護
+    private volatile long fileSize = 0L;
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(4096);
+    // 予約された切り替えで、退避するファイルに書き込む残りの変更（予約がなければnull）
+    private ByteArrayOutputStream rotationTail;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private long sequence;
+
+    // 統計
+    private volatile long bytesWritten = 0L;
+    private volatile long commitCount = 0L;
+    private long recordCount = 0L;
+
+    public BrainJournal(Path activePath) {
+        this.activePath = activePath;
+        this.rotatedPath = activePath.resolveSibling(activePath.getFileName() + ".old");
+    }
+
+    /**
+     * 既存のジャーナルを再生する（退避済みのファイル → 現在のファイルの順）
+     * afterSequence以下のレコード（スナップショットに反映済み）は読み飛ばす
+     * 末尾の壊れたレコード（書き込み途中のクラッシュ）は捨てる
+     *
+     * @return 再生したレコード数
+     */
+    public int replay(long afterSequence, RecordHandler handler) throws IOException {
+        sequence = Math.max(sequence, afterSequence);
+        int replayed = 0;
+        for (Path path : new Path[] {rotatedPath, activePath}) {
+            if (!Files.exists(path)) {
+                continue;
+            }
+            byte[] bytes = Files.readAllBytes(path);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                if (length < 9 || length > MAX_RECORD_SIZE || buffer.remaining() < length + 4) {
+                    truncate(path, start);
+                    break;
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(bytes, buffer.position(), length);
+                long recordSequence = buffer.getLong();
+                byte type = buffer.get();
+                int payloadOffset = buffer.position();
+                int payloadLength = length - 9;
+                buffer.position(payloadOffset + payloadLength);
+                if ((int) crc.getValue() != buffer.getInt()) {
+                    truncate(path, start);
+                    break;
+                }
+                sequence = Math.max(sequence, recordSequence);
+                if (recordSequence <= afterSequence) {
+                    continue;
+                }
+                handler.handle(type, new DataInputStream(
+                    new ByteArrayInputStream(bytes, payloadOffset, payloadLength)));
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    private void truncate(Path path, int validLength) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            file.truncate(validLength);
+        }
+    }
+
+    /**
+     * 書き込み用にジャーナルを開く（再生の後に呼ぶ）
+     */
+    public void open() throws IOException {
+        synchronized (ioLock) {
+            Files.createDirectories(activePath.getParent());
+            openChannel();
+        }
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(activePath,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    /**
+     * 変更を1件追加する（ディスクへの書き込みは次のcommitで行う）
+     *
+     * @return 割り当てたシーケンス番号
+     */
+    public long append(byte type, PayloadWriter writer) {
+        synchronized (lock) {
+            long recordSequence = ++sequence;
+            try {
+                recordBuffer.reset();
+                recordOut.writeLong(recordSequence);
+                recordOut.writeByte(type);
+                writer.write(recordOut);
+                recordOut.flush();
+            } catch (IOException e) {
+                // ByteArrayOutputStreamへの書き込みでは発生しない
+                throw new IllegalStateException(e);
+            }
+            byte[] record = recordBuffer.toByteArray();
+            CRC32C crc = new CRC32C();
+            crc.update(record, 0, record.length);
+
+            DataOutputStream out = new DataOutputStream(pending);
+            try {
+                out.writeInt(record.length);
+                out.write(record);
+                out.writeInt((int) crc.getValue());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            recordCount++;
+            return recordSequence;
+        }
+    }
+
+    /**
+     * 溜まった変更をまとめて書き込み、fsyncする
+     * 切り替えが予約されていれば、先に残りの変更を書き込んでファイルを退避する
+     */
+    public void commit() throws IOException {
+        synchronized (ioLock) {
+            ByteArrayOutputStream tail;
+            byte[] data;
+            synchronized (lock) {
+                if (channel == null) {
+                    return;
+                }
+                // バッファの入れ替えだけをlock内で行い、appendを待たせない
+                tail = rotationTail;
+                rotationTail = null;
+                data = pending.size() > 0 ? pending.toByteArray() : null;
+                pending.reset();
+            }
+            if (tail != null) {
+                try {
+                    switchFile(tail);
+                } catch (IOException e) {
+                    // 退避が終わるまでdeleteRotatedされないよう、次のcommitでやり直す
+                    synchronized (lock) {
+                        if (rotationTail != null) {
+                            tail.writeBytes(rotationTail.toByteArray());
+                        }
+                        rotationTail = tail;
+                        if (data != null) {
+                            ByteArrayOutputStream restored = new ByteArrayOutputStream(data.length + pending.size());
+                            restored.writeBytes(data);
+                            restored.writeBytes(pending.toByteArray());
+                            pending = restored;
+                        }
+                    }
+                    throw e;
+                }
+            }
+            if (data != null) {
+                write(data);
+            }
+        }
+    }
+
+    private void write(byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        fileSize += data.length;
+        bytesWritten += data.length;
+        commitCount++;
+    }
+
+    /**
+     * 退避するファイルに残りの変更を書き込み、brain.journal.oldに移して新しいファイルを開く
+     */
+    private void switchFile(ByteArrayOutputStream tail) throws IOException {
+        if (tail.size() > 0) {
+            write(tail.toByteArray());
+        }
+        channel.close();
+        if (Files.exists(activePath)) {
+            if (Files.exists(rotatedPath)) {
+                // 前回のスナップショット保存が終わっていない場合は追記でつなげる
+                byte[] bytes = Files.readAllBytes(activePath);
+                Files.write(rotatedPath, bytes, StandardOpenOption.APPEND);
+                Files.delete(activePath);
+            } else {
+                Files.move(activePath, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        openChannel();
+    }
+
+    /**
+     * 現在のファイルの切り替えを予約する（書き込み・退避は次のcommitで行う）
+     * メインスレッドではバッファの入れ替えだけを行い、ファイルには触れない
+     *
+     * @return 退避するファイルに含まれる最後のシーケンス番号（スナップショットに記録する）
+     */
+    public long rotate() {
+        synchronized (lock) {
+            if (rotationTail == null) {
+                rotationTail = pending;
+            } else {
+                // 前回の切り替えがまだ終わっていない場合はつなげる
+                rotationTail.writeBytes(pending.toByteArray());
+            }
+            pending = new ByteArrayOutputStream(4096);
+            return sequence;
+        }
+    }
+
+    /**
+     * スナップショットの保存後、退避したファイルを削除する
+     */
+    public void deleteRotated() throws IOException {
+        synchronized (ioLock) {
+            Files.deleteIfExists(rotatedPath);
+        }
+    }
+
+    /**
+     * 現在のファイルの大きさ（バイト、未コミット分を含む）
+     */
+    public long size() {
+        synchronized (lock) {
+            return fileSize + pending.size();
+        }
+    }
+
+    public long getSequence() {
+        synchronized (lock) {
+            return sequence;
+        }
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getCommitCount() {
+        return commitCount;
+    }
+
+    public long getRecordCount() {
+        synchronized (lock) {
+            return recordCount;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (ioLock) {
+            commit();
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+}
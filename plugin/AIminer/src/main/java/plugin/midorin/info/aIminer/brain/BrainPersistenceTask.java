@@ -0,0 +1,58 @@
+package plugin.midorin.info.aIminer.brain;
+
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * 脳データの定期保存
+ * - チャットスレッドで追加された発言をジャーナルとエピソード記憶に反映する
+ * - メモリの保持ルールを適用する（期限切れ・上限超過の削除）
+ * - ジャーナルに溜まった変更をまとめて書き込む（グループコミット）
+ * - 一定時間ごと、またはジャーナルが大きくなったらチェックポイントを作成する
+ * 判定はメインスレッドで行い、書き込みはBrainFileManagerのioExecutorで行う
+ */
+public class BrainPersistenceTask extends BukkitRunnable {
+    private final JavaPlugin plugin;
+    private final BrainFileManager brainFileManager;
+    private final long commitIntervalTicks;
+    private final long checkpointIntervalMillis;
+    private final long checkpointJournalBytes;
+
+    public BrainPersistenceTask(JavaPlugin plugin, BrainFileManager brainFileManager,
+                                long commitIntervalTicks, long checkpointIntervalSeconds, long checkpointJournalKb) {
+        this.plugin = plugin;
+        this.brainFileManager = brainFileManager;
+        this.commitIntervalTicks = Math.max(1L, commitIntervalTicks);
+        this.checkpointIntervalMillis = Math.max(10L, checkpointIntervalSeconds) * 1000L;
+        this.checkpointJournalBytes = Math.max(16L, checkpointJournalKb) * 1024L;
+    }
+
+    @Override
+    public void run() {
+        brainFileManager.drainChat();
+        brainFileManager.enforceRetention();
+        if (brainFileManager.needsCheckpoint(checkpointIntervalMillis, checkpointJournalBytes)) {
+            brainFileManager.checkpoint();
+        } else {
+            brainFileManager.saveBrainFile();
+        }
+    }
+
+    /**
+     * 定期保存を開始
+     */
+    public void startPersistenceLoop() {
+        this.runTaskTimer(plugin, commitIntervalTicks, commitIntervalTicks);
+        plugin.getLogger().info(String.format(
+            "Brain persistence started (commit: every %d ticks, checkpoint: every %ds or %dKB of journal)",
+            commitIntervalTicks, checkpointIntervalMillis / 1000L, checkpointJournalBytes / 1024L));
+    }
+
+    /**
+     * 定期保存を停止（最後の保存はBrainFileManager.close()で行う）
+     */
+    public void stopPersistenceLoop() {
+        this.cancel();
+        plugin.getLogger().info("Brain persistence stopped");
+    }
+}
@@ -0,0 +1,235 @@
+package plugin.midorin.info.aIminer.brain;
+
+import plugin.midorin.info.aIminer.model.ChatMessage;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * チャットの履歴（固定長のリングバッファ）
+ * 非同期のチャットスレッドから追加し、メインスレッド・AI処理スレッドから読むため、ロックは使わない
+ * - 追加: 通し番号をAtomicLongで確保し、その位置に格納する（古いものは上書きされる）
+ * - 読み込み: 格納されている通し番号を確かめ、格納途中・上書き済みのものは飛ばす
+ * ボット宛て・近くのプレイヤーの発言は別のリングにも入れ、プロンプトと思考のきっかけに使う
+ * 時刻はエポックミリ秒のまま持ち、表示するときにだけ整形する
+ */
+public class ChatHistory {
+    private static final DateTimeFormatter TIME_FORMATTER =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final Ring all;
+    private final Ring relevant;
+    private volatile List<String> mentionNames = List.of();   // 小文字
+    private volatile Set<String> nearbyPlayers = Set.of();
+    // これより前の通し番号はclear()済み
+    private volatile long clearedSequence = 0L;
+    private volatile long clearedRelevantSequence = 0L;
+
+    /**
+     * @param capacity 保持する件数（2のべき乗に切り上げる）
+     */
+    public ChatHistory(int capacity) {
+        this.all = new Ring(capacity);
+        this.relevant = new Ring(capacity);
+    }
+
+    /**
+     * ボット宛てとみなす名前（大文字小文字は区別しない）
+     */
+    public void setMentionNames(Collection<String> names) {
+        List<String> lower = new ArrayList<>();
+        for (String name : names) {
+            if (name != null && !name.isBlank()) {
+                lower.add(name.toLowerCase(Locale.ROOT));
+            }
+        }
+        this.mentionNames = List.copyOf(lower);
+    }
+
+    /**
+     * 近くにいるプレイヤー（視覚の更新ごとにメインスレッドから差し替える）
+     */
+    public void setNearbyPlayers(Set<String> players) {
+        this.nearbyPlayers = Set.copyOf(players);
+    }
+
+    /**
+     * 発言を追加する（どのスレッドからでも呼べる）
+     *
+     * @param fromPlayer プレイヤーの発言か（入退室などのシステムメッセージはfalse）
+     */
+    public ChatMessage publish(String player, String message, long timestamp, boolean fromPlayer) {
+        int flags = 0;
+        if (fromPlayer) {
+            String lower = message.toLowerCase(Locale.ROOT);
+            for (String name : mentionNames) {
+                if (lower.contains(name)) {
+                    flags |= ChatMessage.MENTION;
+                    break;
+                }
+            }
+            if (nearbyPlayers.contains(player)) {
+                flags |= ChatMessage.NEARBY;
+            }
+        }
+        ChatMessage chatMessage = new ChatMessage(timestamp, player, message, flags);
+        restore(chatMessage);
+        return chatMessage;
+    }
+
+    /**
+     * 保存済みの発言を追加する（読み込み・ジャーナル再生用）
+     */
+    public void restore(ChatMessage chatMessage) {
+        all.add(chatMessage);
+        if (chatMessage.isRelevant()) {
+            relevant.add(chatMessage);
+        }
+    }
+
+    /**
+     * 直近limit件の発言（古い順）
+     */
+    public List<ChatMessage> recent(int limit) {
+        return all.collect(all.next.get(), limit, clearedSequence);
+    }
+
+    /**
+     * ボット宛て・近くのプレイヤーの直近limit件の発言（古い順）
+     */
+    public List<ChatMessage> recentRelevant(int limit) {
+        return relevant.collect(relevant.next.get(), limit, clearedRelevantSequence);
+    }
+
+    /**
+     * プロンプト用: ボット宛て・近くのプレイヤーの発言と、それ以外の直近の発言を時系列で並べたもの
+     */
+    public List<ChatMessage> forPrompt(int relevantLimit, int recentLimit) {
+        Set<ChatMessage> merged = Collections.newSetFromMap(new IdentityHashMap<>());
+        merged.addAll(recentRelevant(relevantLimit));
+        merged.addAll(recent(recentLimit));
+        List<ChatMessage> result = new ArrayList<>(merged);
+        result.sort((a, b) -> Long.compare(a.getTimestamp(), b.getTimestamp()));
+        return result;
+    }
+
+    /**
+     * 通し番号がuntilSequenceより前の、保持しているすべての発言（古い順、保存用）
+     */
+    public List<ChatMessage> snapshot(long untilSequence) {
+        return all.collect(untilSequence, all.capacity(), clearedSequence);
+    }
+
+    /**
+     * fromSequence以降に追加された発言を順に渡す
+     * 格納途中の発言があればそこで止まり、次回そこから再開する
+     *
+     * @return 次回のfromSequence
+     */
+    public long drain(long fromSequence, Consumer<ChatMessage> consumer) {
+        long end = all.next.get();
+        long sequence = Math.max(fromSequence, end - all.capacity());
+        while (sequence < end) {
+            Entry entry = all.slots.get(all.index(sequence));
+            if (entry == null || entry.sequence < sequence) {
+                break;
+            }
+            if (entry.sequence == sequence) {
+                consumer.accept(entry.message);
+            }
+            // entry.sequence > sequenceなら上書き済み（取りこぼし）
+            sequence++;
+        }
+        return sequence;
+    }
+
+    /**
+     * これまでに追加された発言の数（次の通し番号）
+     */
+    public long getSequence() {
+        return all.next.get();
+    }
+
+    /**
+     * これまでに追加されたボット宛て・近くのプレイヤーの発言の数
+     * 前回見た値と比べるだけで新しい発言があるかを判定できる
+     */
+    public long getRelevantSequence() {
+        return relevant.next.get();
+    }
+
+    public int size() {
+        long count = all.next.get() - clearedSequence;
+        return (int) Math.min(count, all.capacity());
+    }
+
+    /**
+     * 履歴を空にする（通し番号は続きから振る）
+     */
+    public void clear() {
+        clearedSequence = all.next.get();
+        clearedRelevantSequence = relevant.next.get();
+    }
+
+    public static String formatTimestamp(long timestamp) {
+        return TIME_FORMATTER.format(Instant.ofEpochMilli(timestamp));
+    }
+
+    private static final class Entry {
+        final long sequence;
+        final ChatMessage message;
+
+        Entry(long sequence, ChatMessage message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+
+    private static final class Ring {
+        final AtomicReferenceArray<Entry> slots;
+        final AtomicLong next = new AtomicLong();
+        final int mask;
+
+        Ring(int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+            this.slots = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+        }
+
+        int capacity() {
+            return slots.length();
+        }
+
+        int index(long sequence) {
+            return (int) (sequence & mask);
+        }
+
+        void add(ChatMessage message) {
+            long sequence = next.getAndIncrement();
+            slots.set(index(sequence), new Entry(sequence, message));
+        }
+
+        List<ChatMessage> collect(long end, int limit, long floor) {
+            long start = Math.max(floor, end - Math.min(limit, capacity()));
+            List<ChatMessage> result = new ArrayList<>((int) Math.max(0L, end - start));
+            for (long sequence = start; sequence < end; sequence++) {
+                Entry entry = slots.get(index(sequence));
+                if (entry != null && entry.sequence == sequence) {
+                    result.add(entry.message);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package plugin.midorin.info.aIminer.brain;
+
+import plugin.midorin.info.aIminer.model.Episode;
+import plugin.midorin.info.aIminer.model.Position;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * 出来事の記憶（エピソード記憶）
+ * 「いつ・どこで・何があったか」を時系列で保持し、キーワードと場所で関連するものを検索する
+ * - キーワード: 転置インデックス（単語 → エピソード）。日本語は2文字ずつに区切って索引する
+ * - 場所: 16ブロック四方の区画 → エピソード（x/zのみ）
+ * 削除は古い方からのみ行う（件数の上限・要約による圧縮）
+ * 索引にはエピソードの通し番号（slot）を入れ、先頭の通し番号より前は削除済みとして扱う
+ * メインスレッドからのみ使用する
+ */
+public class EpisodicMemoryStore {
+    private static final int CELL_SIZE = 16;
+    private static final float SPATIAL_WEIGHT = 2.0f;   // 検索位置と同じ場所での加点
+    private static final float RECENCY_WEIGHT = 0.5f;   // 最新のエピソードへの加点
+    private static final int MAX_POSTINGS_PER_KEYWORD = 1024;  // 1単語あたり新しい方から見る件数
+
+    private final List<Episode> episodes = new ArrayList<>();
+    private final Map<String, IntList> keywordIndex = new HashMap<>();
+    private final Map<Long, IntList> cellIndex = new HashMap<>();
+    private int firstSlot = 0;   // episodes.get(0)の通し番号
+    private long nextId = 1L;
+
+    // 検索用の作業領域（検索ごとに使った分だけ0に戻す）
+    private float[] scores = new float[1024];
+    private final IntList touched = new IntList();
+
+    /**
+     * 新しいエピソードを記録
+     */
+    public Episode record(String type, String text, Position position, long timestamp) {
+        Episode episode = new Episode(nextId, timestamp, type, text, position);
+        add(episode);
+        return episode;
+    }
+
+    /**
+     * 既存のエピソードを追加（読み込み・ジャーナル再生用）
+     */
+    public void add(Episode episode) {
+        int slot = firstSlot + episodes.size();
+        episodes.add(episode);
+        nextId = Math.max(nextId, episode.getId() + 1);
+
+        for (String token : tokenize(episode.getType() + " " + episode.getText())) {
+            keywordIndex.computeIfAbsent(token, key -> new IntList()).add(slot);
+        }
+        Position position = episode.getPosition();
+        if (position != null) {
+            cellIndex.computeIfAbsent(cellKey(position.getX(), position.getZ()), key -> new IntList()).add(slot);
+        }
+    }
+
+    /**
+     * キーワードと場所に関連するエピソードを検索する
+     * 一致したキーワードの珍しさ（IDF）、検索位置からの近さ、新しさで点数を付け、上位limit件を返す
+     * よく出る単語は新しい方からMAX_POSTINGS_PER_KEYWORD件だけを見るため、件数が増えても検索時間は一定に近い
+     * 該当が少ない場合は最新のエピソードで補う
+     *
+     * @param center 検索位置（nullなら場所は考慮しない）
+     * @param radius 場所の検索半径（ブロック）
+     */
+    public List<Episode> search(Collection<String> keywords, Position center, int radius, int limit) {
+        int size = episodes.size();
+        if (size == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        if (scores.length < size) {
+            scores = Arrays.copyOf(scores, Math.max(size, scores.length * 2));
+        }
+
+        for (String keyword : keywords) {
+            IntList postings = keywordIndex.get(keyword);
+            if (postings == null) {
+                continue;
+            }
+            float idf = (float) Math.log(1.0 + (double) size / postings.size);
+            int oldest = Math.max(0, postings.size - MAX_POSTINGS_PER_KEYWORD);
+            for (int i = postings.size - 1; i >= oldest; i--) {
+                int slot = postings.values[i];
+                if (slot < firstSlot) {
+                    break;
+                }
+                addScore(slot - firstSlot, idf);
+            }
+        }
+
+        if (center != null && radius > 0) {
+            int minCellX = Math.floorDiv((int) Math.floor(center.getX()) - radius, CELL_SIZE);
+            int maxCellX = Math.floorDiv((int) Math.floor(center.getX()) + radius, CELL_SIZE);
+            int minCellZ = Math.floorDiv((int) Math.floor(center.getZ()) - radius, CELL_SIZE);
+            int maxCellZ = Math.floorDiv((int) Math.floor(center.getZ()) + radius, CELL_SIZE);
+            double radiusSq = (double) radius * radius;
+            for (int cx = minCellX; cx <= maxCellX; cx++) {
+                for (int cz = minCellZ; cz <= maxCellZ; cz++) {
+                    IntList cell = cellIndex.get(((long) cx << 32) | (cz & 0xFFFFFFFFL));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < cell.size; i++) {
+                        int slot = cell.values[i] - firstSlot;
+                        if (slot < 0) {
+                            continue;
+                        }
+                        Position position = episodes.get(slot).getPosition();
+                        double dx = position.getX() - center.getX();
+                        double dz = position.getZ() - center.getZ();
+                        double distanceSq = dx * dx + dz * dz;
+                        if (distanceSq <= radiusSq) {
+                            addScore(slot, SPATIAL_WEIGHT * (float) (1.0 - Math.sqrt(distanceSq) / radius));
+                        }
+                    }
+                }
+            }
+        }
+
+        // 上位limit件を最小ヒープで選ぶ
+        PriorityQueue<int[]> top = new PriorityQueue<>(limit + 1,
+            (a, b) -> Float.compare(Float.intBitsToFloat(a[1]), Float.intBitsToFloat(b[1])));
+        for (int i = 0; i < touched.size; i++) {
+            int slot = touched.values[i];
+            float score = scores[slot] + RECENCY_WEIGHT * slot / size;
+            scores[slot] = 0f;
+            if (top.size() < limit) {
+                top.add(new int[] {slot, Float.floatToIntBits(score)});
+            } else if (score > Float.intBitsToFloat(top.peek()[1])) {
+                top.poll();
+                top.add(new int[] {slot, Float.floatToIntBits(score)});
+            }
+        }
+        touched.size = 0;
+
+        // ヒープからは点数の低い順に出てくるため、後ろから詰める
+        Episode[] ranked = new Episode[top.size()];
+        Set<Integer> selected = new HashSet<>();
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            int slot = top.poll()[0];
+            ranked[i] = episodes.get(slot);
+            selected.add(slot);
+        }
+        List<Episode> result = new ArrayList<>(limit);
+        Collections.addAll(result, ranked);
+
+        // 足りない分は最新のエピソードで補う
+        for (int slot = size - 1; slot >= 0 && result.size() < limit; slot--) {
+            if (!selected.contains(slot)) {
+                result.add(episodes.get(slot));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param slot episodesの位置（通し番号ではない）
+     */
+    private void addScore(int slot, float score) {
+        if (score <= 0f) {
+            return;
+        }
+        if (scores[slot] == 0f) {
+            touched.add(slot);
+        }
+        scores[slot] += score;
+    }
+
+    /**
+     * 文章を検索用の単語に分ける
+     * 英数字は小文字の単語（1文字・数字のみは除く）、日本語などは2文字ずつ
+     */
+    public static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int length = lower.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean letter = i < length && Character.isLetterOrDigit(lower.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                addTokens(tokens, lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static void addTokens(Set<String> tokens, String word) {
+        boolean ascii = true;
+        boolean digits = true;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            ascii &= c < 128;
+            digits &= Character.isDigit(c);
+        }
+        if (ascii) {
+            if (word.length() >= 2 && !digits) {
+                tokens.add(word);
+            }
+            return;
+        }
+        if (word.length() == 1) {
+            tokens.add(word);
+            return;
+        }
+        for (int i = 0; i + 1 < word.length(); i++) {
+            tokens.add(word.substring(i, i + 2));
+        }
+    }
+
+    /**
+     * 古い方からcount件のエピソード
+     */
+    public List<Episode> oldest(int count) {
+        return new ArrayList<>(episodes.subList(0, Math.min(count, episodes.size())));
+    }
+
+    /**
+     * ID（記録順）がmaxId以下のエピソードを削除する
+     *
+     * @return 削除した件数
+     */
+    public int removeUpTo(long maxId) {
+        int count = 0;
+        while (count < episodes.size() && episodes.get(count).getId() <= maxId) {
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        episodes.subList(0, count).clear();
+        firstSlot += count;
+        trimIndex(keywordIndex);
+        trimIndex(cellIndex);
+        return count;
+    }
+
+    /**
+     * 索引から削除済みの通し番号を取り除く（各リストは昇順）
+     */
+    private void trimIndex(Map<?, IntList> index) {
+        index.values().removeIf(list -> {
+            int stale = 0;
+            while (stale < list.size && list.values[stale] < firstSlot) {
+                stale++;
+            }
+            if (stale > 0) {
+                System.arraycopy(list.values, stale, list.values, 0, list.size - stale);
+                list.size -= stale;
+            }
+            return list.size == 0;
+        });
+    }
+
+    private static long cellKey(double x, double z) {
+        int cx = Math.floorDiv((int) Math.floor(x), CELL_SIZE);
+        int cz = Math.floorDiv((int) Math.floor(z), CELL_SIZE);
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    public int size() {
+        return episodes.size();
+    }
+
+    /**
+     * すべてのエピソード（古い順）
+     */
+    public List<Episode> getEpisodes() {
+        return Collections.unmodifiableList(episodes);
+    }
+
+    /**
+     * 伸長するint配列（索引のエピソード番号用）
+     */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
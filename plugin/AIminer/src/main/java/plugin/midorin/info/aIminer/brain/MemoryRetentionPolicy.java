@@ -0,0 +1,104 @@
+package plugin.midorin.info.aIminer.brain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * メモリの保持ルール
+ * - キーのパターン（*を使える）ごとの保持期間（最後に書き込まれてからの秒数）
+ * - 保護されていないキーの上限数と、超えたときに消す順番（LRU: 最後に使われた時刻 / LFU: 使われた回数）
+ * - エピソード記憶の上限件数（古い方から消す）
+ */
+public class MemoryRetentionPolicy {
+    /**
+     * 上限を超えたときに消すキーの選び方
+     */
+    public enum Eviction {
+        LRU,
+        LFU
+    }
+
+    private final Map<Pattern, Long> ttlMillis;
+    private final Set<String> protectedKeys;
+    private final int maxEntries;
+    private final Eviction eviction;
+    private final int maxEpisodes;
+
+    /**
+     * @param ttlSeconds キーのパターン → 保持期間（秒）。先に書いたものが優先される
+     * @param maxEntries 保護されていないキーの上限（0以下で無制限）
+     * @param maxEpisodes エピソード記憶の上限（0以下で無制限）
+     */
+    public MemoryRetentionPolicy(Map<String, Long> ttlSeconds, Collection<String> protectedKeys,
+                                 int maxEntries, Eviction eviction, int maxEpisodes) {
+        this.ttlMillis = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : ttlSeconds.entrySet()) {
+            this.ttlMillis.put(globToPattern(entry.getKey()), entry.getValue() * 1000L);
+        }
+        this.protectedKeys = new HashSet<>(protectedKeys);
+        this.maxEntries = maxEntries;
+        this.eviction = eviction;
+        this.maxEpisodes = maxEpisodes;
+    }
+
+    /**
+     * 何も消さないルール
+     */
+    public static MemoryRetentionPolicy unlimited() {
+        return new MemoryRetentionPolicy(Map.of(), List.of(), 0, Eviction.LRU, 0);
+    }
+
+    /**
+     * 設定値（"lru" / "lfu"）から消す順番を取得
+     */
+    public static Eviction parseEviction(String value) {
+        try {
+            return Eviction.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return Eviction.LRU;
+        }
+    }
+
+    /**
+     * キーの保持期間（ミリ秒、該当するルールがなければ-1）
+     */
+    public long ttlMillisFor(String key) {
+        for (Map.Entry<Pattern, Long> entry : ttlMillis.entrySet()) {
+            if (entry.getKey().matcher(key).matches()) {
+                return entry.getValue();
+            }
+        }
+        return -1L;
+    }
+
+    public boolean isProtected(String key) {
+        return protectedKeys.contains(key);
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public Eviction getEviction() {
+        return eviction;
+    }
+
+    public int getMaxEpisodes() {
+        return maxEpisodes;
+    }
+
+    private static Pattern globToPattern(String glob) {
+        List<String> parts = new ArrayList<>();
+        for (String part : glob.split("\\*", -1)) {
+            parts.add(Pattern.quote(part));
+        }
+        return Pattern.compile(String.join(".*", parts));
+    }
+}
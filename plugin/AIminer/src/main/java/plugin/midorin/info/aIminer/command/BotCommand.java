@@ -1,15 +1,30 @@
 package plugin.midorin.info.aIminer.command;
 
+import org.bukkit.Location;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
+import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import plugin.midorin.info.aIminer.ai.AIProcessingTask;
+import plugin.midorin.info.aIminer.ai.ModelTier;
+import plugin.midorin.info.aIminer.bot.BotEntityTracker;
 import plugin.midorin.info.aIminer.bot.BotManager;
+import plugin.midorin.info.aIminer.bot.ControllerBenchmark;
+import plugin.midorin.info.aIminer.bot.NativeBotController;
 import plugin.midorin.info.aIminer.brain.BrainFileManager;
+import plugin.midorin.info.aIminer.brain.ChatHistory;
 import plugin.midorin.info.aIminer.model.*;
+import plugin.midorin.info.aIminer.navigation.RouteNavigator;
+import plugin.midorin.info.aIminer.util.CommandDispatcher;
+import plugin.midorin.info.aIminer.util.CycleTracer;
+import plugin.midorin.info.aIminer.util.MetricsExporter;
+import plugin.midorin.info.aIminer.util.MetricsRegistry;
+import plugin.midorin.info.aIminer.util.TickBudgetScheduler;
+import plugin.midorin.info.aIminer.vision.LineOfSight;
+import plugin.midorin.info.aIminer.vision.VisionUpdateTask;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -23,11 +38,36 @@ public class BotCommand implements CommandExecutor, TabCompleter {
     private final BotManager botManager;
     private final BrainFileManager brainFileManager;
     private final AIProcessingTask aiProcessingTask;
-
-    public BotCommand(BotManager botManager, BrainFileManager brainFileManager, AIProcessingTask aiProcessingTask) {
+    private final BotEntityTracker botEntityTracker;
+    private final RouteNavigator routeNavigator;  // 経路探索が無効の場合はnull
+    private final NativeBotController nativeBotController;
+    private final ControllerBenchmark controllerBenchmark;
+    private final CommandDispatcher commandDispatcher;
+    private final TickBudgetScheduler tickBudgetScheduler;
+    private final VisionUpdateTask visionUpdateTask;
+    private final MetricsRegistry metricsRegistry;
+    private final MetricsExporter metricsExporter;
+    private final CycleTracer cycleTracer;
+
+    public BotCommand(BotManager botManager, BrainFileManager brainFileManager, AIProcessingTask aiProcessingTask,
+                      BotEntityTracker botEntityTracker, RouteNavigator routeNavigator,
+                      NativeBotController nativeBotController,
+                      ControllerBenchmark controllerBenchmark, CommandDispatcher commandDispatcher,
+                      TickBudgetScheduler tickBudgetScheduler, VisionUpdateTask visionUpdateTask,
+                      MetricsRegistry metricsRegistry, MetricsExporter metricsExporter, CycleTracer cycleTracer) {
         this.botManager = botManager;
         this.brainFileManager = brainFileManager;
         this.aiProcessingTask = aiProcessingTask;
+        this.botEntityTracker = botEntityTracker;
+        this.routeNavigator = routeNavigator;
+        this.nativeBotController = nativeBotController;
+        this.controllerBenchmark = controllerBenchmark;
+        this.commandDispatcher = commandDispatcher;
+        this.tickBudgetScheduler = tickBudgetScheduler;
+        this.visionUpdateTask = visionUpdateTask;
+        this.metricsRegistry = metricsRegistry;
+        this.metricsExporter = metricsExporter;
+        this.cycleTracer = cycleTracer;
     }
 
     @Override
@@ -44,6 +84,10 @@ public class BotCommand implements CommandExecutor, TabCompleter {
             sender.sendMessage("§a/bot chat §7- チャット履歴を表示");
             sender.sendMessage("§a/bot reset §7- ボットをリセット");
             sender.sendMessage("§a/bot test §7- テストタスクを追加");
+            sender.sendMessage("§a/bot bench [秒] §7- 制御モード別のMSPTを計測");
+            sender.sendMessage("§a/bot export §7- 脳データをJSONで書き出す");
+            sender.sendMessage("§a/bot metrics [export] §7- 計測値を表示（exportでPrometheus形式のファイルに書き出す）");
+            sender.sendMessage("§a/bot trace [clear] §7- サイクルのトレースをChromeのトレース形式で書き出す");
             return true;
         }
 
@@ -75,6 +119,18 @@ public class BotCommand implements CommandExecutor, TabCompleter {
             case "test":
                 return handleTest(sender, args);
 
+            case "bench":
+                return handleBench(sender, args);
+
+            case "export":
+                return handleExport(sender);
+
+            case "metrics":
+                return handleMetrics(sender, args);
+
+            case "trace":
+                return handleTrace(sender, args);
+
             default:
                 sender.sendMessage("§cUnknown subcommand. Use /bot for help.");
                 return true;
@@ -131,6 +187,81 @@ public class BotCommand implements CommandExecutor, TabCompleter {
 
         // AI処理状態
         sender.sendMessage("§7AI Processing: " + (aiProcessingTask != null ? "§aEnabled" : "§cDisabled"));
+        if (aiProcessingTask != null) {
+            // モデルごとの判断の割合と平均時間（大きいモデルへの切り替えを含む）
+            List<ModelTier> tiers = aiProcessingTask.getClient().getTiers();
+            long decisions = tiers.stream().mapToLong(ModelTier::getDecisions).sum();
+            StringBuilder line = new StringBuilder("§7Decisions: §e" + decisions);
+            for (ModelTier tier : tiers) {
+                line.append(String.format("§7, %s %.0f%% (avg %.1fs)", tier.getName(),
+                        decisions > 0 ? tier.getDecisions() * 100.0 / decisions : 0.0,
+                        tier.getAverageDecisionMillis() / 1000.0));
+            }
+            if (tiers.size() > 1) {
+                line.append("§7, fallbacks ").append(aiProcessingTask.getClient().getFallbacks());
+            }
+            sender.sendMessage(line.toString());
+        }
+
+        // ボット制御モード
+        if (nativeBotController.isNativeMode()) {
+            sender.sendMessage(String.format("§7Controller: §anative §7(%.1fus/tick)",
+                    nativeBotController.getAverageTickMicros()));
+        } else {
+            sender.sendMessage("§7Controller: §edatapack");
+        }
+
+        // メインスレッド処理の予算
+        sender.sendMessage(String.format("§7Tick Budget: §e%.0f%%§7 of %.1fms (peak %.2fms), deferred %d, high-MSPT ticks %d",
+                tickBudgetScheduler.getAverageBudgetUsagePercent(), tickBudgetScheduler.getBudgetMillis(),
+                tickBudgetScheduler.getPeakTickMillis(), tickBudgetScheduler.getTotalDeferrals(),
+                tickBudgetScheduler.getHighMsptTicks()));
+        for (TickBudgetScheduler.JobStats job : tickBudgetScheduler.getJobStats()) {
+            sender.sendMessage(String.format("  §7%s: %s§7, %d cycles, avg %.0fus/step, max %.0fus, deferred %d",
+                    job.getName(), job.isActive() ? "§arunning" : "§7idle", job.getCycles(),
+                    job.getAverageStepMicros(), job.getMaxStepMicros(), job.getDeferrals()));
+        }
+
+        // 視覚（スキャンはメインスレッド、視線判定は非同期）
+        LineOfSight lineOfSight = visionUpdateTask.getLineOfSight();
+        if (lineOfSight != null) {
+            long rays = lineOfSight.getRays();
+            sender.sendMessage(String.format("§7Vision: §e%d§7 scans, avg %.2fms scan + %.2fms line-of-sight (async), %d rays, %.0f%% blocked",
+                    visionUpdateTask.getScans(), visionUpdateTask.getAverageScanMillis(),
+                    visionUpdateTask.getAverageLineOfSightMillis(), rays,
+                    rays > 0 ? lineOfSight.getBlockedRays() * 100.0 / rays : 0.0));
+        } else {
+            sender.sendMessage(String.format("§7Vision: §e%d§7 scans, avg %.2fms scan, line-of-sight off",
+                    visionUpdateTask.getScans(), visionUpdateTask.getAverageScanMillis()));
+        }
+
+        // タスクの失敗率（起動してから）
+        Map<TaskType, long[]> outcomes = brainFileManager.getTaskOutcomes();
+        if (!outcomes.isEmpty()) {
+            long completed = 0L;
+            long failed = 0L;
+            for (long[] counts : outcomes.values()) {
+                completed += counts[0];
+                failed += counts[1];
+            }
+            sender.sendMessage(String.format("§7Task Results: §a%d§7 completed, §c%d§7 failed (%.0f%% failure)",
+                    completed, failed, failed * 100.0 / (completed + failed)));
+            for (Map.Entry<TaskType, long[]> entry : outcomes.entrySet()) {
+                long[] counts = entry.getValue();
+                sender.sendMessage(String.format("  §7%s: %d/%d failed",
+                        entry.getKey(), counts[1], counts[0] + counts[1]));
+            }
+        }
+
+        // コマンド実行時間（合計の多い順に上位3件）
+        List<CommandDispatcher.CommandStats> dispatchStats = commandDispatcher.getStats();
+        sender.sendMessage("§7Commands: §e" + commandDispatcher.getQueuedCount() + " queued");
+        for (int i = 0; i < Math.min(3, dispatchStats.size()); i++) {
+            CommandDispatcher.CommandStats stats = dispatchStats.get(i);
+            sender.sendMessage(String.format("  §7%s: §e%d§7 calls, avg %.0fus, max %.0fus, %d failed",
+                    stats.getName(), stats.getCount(), stats.getAverageMicros(),
+                    stats.getMaxMicros(), stats.getFailures()));
+        }
 
         return true;
     }
@@ -154,8 +285,9 @@ public class BotCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage("§6[Memory] §7" + memorySize + " entries");
 
         // チャット履歴
-        int chatSize = brain.getVision().getChat().size();
-        sender.sendMessage("§6[Chat History] §7" + chatSize + " messages");
+        ChatHistory chatHistory = brainFileManager.getChatHistory();
+        sender.sendMessage(String.format("§6[Chat History] §7%d messages (%d addressed or nearby since start)",
+            chatHistory.size(), chatHistory.getRelevantSequence()));
 
         // タスク
         int taskSize = brain.getTasks().size();
@@ -172,6 +304,17 @@ public class BotCommand implements CommandExecutor, TabCompleter {
         }
         sender.sendMessage(taskTypes.toString());
 
+        // 保存ファイル
+        sender.sendMessage("§6[Episodes] §7" + brainFileManager.getEpisodeCount() + " episodes");
+        sender.sendMessage(String.format("§6[Retention] §7memory %d keys, evicted %d (ttl %d, cap %d), episodes evicted %d, summaries %d",
+            brainFileManager.getMemorySize(), brainFileManager.getMemoryEvictions(),
+            brainFileManager.getTtlEvictions(), brainFileManager.getCapEvictions(),
+            brainFileManager.getEpisodeEvictions(), brainFileManager.getSummaryRuns()));
+        sender.sendMessage("§6[File] §7brain.bin " + brainFileManager.getBrainFileSize() + " bytes");
+        sender.sendMessage(String.format("§6[Journal] §7%d bytes (seq %d), written since start: %d bytes, checkpoints: %d",
+            brainFileManager.getJournalSize(), brainFileManager.getJournalSequence(),
+            brainFileManager.getBytesWritten(), brainFileManager.getCheckpointCount()));
+
         return true;
     }
 
@@ -263,8 +406,8 @@ public class BotCommand implements CommandExecutor, TabCompleter {
      * /bot chat - チャット履歴表示
      */
     private boolean handleChat(CommandSender sender) {
-        BrainData brain = brainFileManager.getBrainData();
-        List<ChatMessage> chatHistory = brain.getVision().getChat();
+        ChatHistory history = brainFileManager.getChatHistory();
+        List<ChatMessage> chatHistory = history.recent(10);
 
         sender.sendMessage("§e=== Chat History ===");
 
@@ -273,16 +416,15 @@ public class BotCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        // 最新10件を表示
-        int start = Math.max(0, chatHistory.size() - 10);
-        for (int i = start; i < chatHistory.size(); i++) {
-            ChatMessage msg = chatHistory.get(i);
-            sender.sendMessage(String.format("§7[%s] §e%s§7: %s",
-                    msg.getTimestamp(), msg.getPlayer(), msg.getMessage()));
+        // 最新10件を表示（ボット宛て・近くのプレイヤーの発言は*付き）
+        for (ChatMessage msg : chatHistory) {
+            sender.sendMessage(String.format("§7[%s] %s§e%s§7: %s",
+                    ChatHistory.formatTimestamp(msg.getTimestamp()), msg.isRelevant() ? "§b*" : "",
+                    msg.getPlayer(), msg.getMessage()));
         }
 
-        if (chatHistory.size() > 10) {
-            sender.sendMessage("§7... and " + (chatHistory.size() - 10) + " more messages");
+        if (history.size() > 10) {
+            sender.sendMessage("§7... and " + (history.size() - 10) + " more messages");
         }
 
         return true;
@@ -292,6 +434,17 @@ public class BotCommand implements CommandExecutor, TabCompleter {
      * /bot reset - リセット
      */
     private boolean handleReset(CommandSender sender) {
+        // 古い状態で考えた応答が、リセット後の脳に書き込まれないようにする
+        if (aiProcessingTask != null) {
+            aiProcessingTask.cancelInFlight("reset");
+        }
+        // 経路追従の完了通知が、リセット後に同じIDを振られた別のタスクを更新しないようにする
+        if (routeNavigator != null) {
+            routeNavigator.cancelRoute();
+        }
+        if (nativeBotController != null) {
+            nativeBotController.stopMining();
+        }
         botManager.resetBot();
         brainFileManager.initializeBrainFile();
         sender.sendMessage("§aBot and brain file reset successfully.");
@@ -348,6 +501,106 @@ public class BotCommand implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    /**
+     * /bot export - 脳データをJSONで書き出す
+     */
+    private boolean handleExport(CommandSender sender) {
+        try {
+            java.nio.file.Path path = brainFileManager.exportJson();
+            sender.sendMessage("§aBrain exported to " + path.getFileName());
+        } catch (java.io.IOException e) {
+            sender.sendMessage("§cFailed to export brain: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * /bot metrics - 計測値の表示・書き出し
+     */
+    private boolean handleMetrics(CommandSender sender, String[] args) {
+        if (args.length >= 2 && args[1].equalsIgnoreCase("export")) {
+            metricsExporter.export();
+            sender.sendMessage("§aMetrics exported to " + metricsExporter.getPath().getFileName());
+            return true;
+        }
+
+        sender.sendMessage("§e=== Metrics ===");
+        for (MetricsRegistry.Metric metric : metricsRegistry.getMetrics()) {
+            String name = "§7" + metric.getName() + metric.getLabels() + ": ";
+            if (metric instanceof MetricsRegistry.Histogram histogram) {
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                // 時間はミリ秒で表示
+                double scale = metric.getName().endsWith("_seconds") ? 1000.0 : 1.0;
+                String unit = scale > 1.0 ? "ms" : "";
+                sender.sendMessage(String.format("%s§e%d§7 samples, p50 %.2f%s, p99 %.2f%s, max %.2f%s",
+                        name, histogram.getCount(), histogram.getQuantile(0.5) * scale, unit,
+                        histogram.getQuantile(0.99) * scale, unit, histogram.getMax() * scale, unit));
+            } else if (metric instanceof MetricsRegistry.Counter counter) {
+                sender.sendMessage(name + "§e" + counter.get());
+            } else if (metric instanceof MetricsRegistry.Gauge gauge) {
+                double value = gauge.get();
+                sender.sendMessage(name + "§e" + (value == Math.rint(value)
+                        ? String.valueOf((long) value) : String.format("%.3f", value)));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * /bot trace - トレースの書き出し（trace.json、chrome://tracingやPerfettoで開く）
+     */
+    private boolean handleTrace(CommandSender sender, String[] args) {
+        if (!cycleTracer.isEnabled()) {
+            sender.sendMessage("§eTracing is disabled (trace.enabled in config.yml).");
+            return true;
+        }
+        if (args.length >= 2 && args[1].equalsIgnoreCase("clear")) {
+            cycleTracer.clear();
+            sender.sendMessage("§aTrace buffer cleared.");
+            return true;
+        }
+
+        try {
+            int spans = cycleTracer.size();
+            java.nio.file.Path path = cycleTracer.exportChromeTrace();
+            sender.sendMessage("§aTrace exported to " + path.getFileName() + " (" + spans + " spans)");
+        } catch (java.io.IOException e) {
+            sender.sendMessage("§cFailed to export trace: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * /bot bench - データパック制御とネイティブ制御のMSPT比較
+     */
+    private boolean handleBench(CommandSender sender, String[] args) {
+        int seconds = 10;
+        if (args.length >= 2) {
+            try {
+                seconds = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage("§cUsage: /bot bench [seconds]");
+                return true;
+            }
+        }
+
+        // プレイヤーの位置、なければボットの位置で計測する
+        Location origin = sender instanceof Player player ? player.getLocation() : botEntityTracker.findBotLocation();
+        if (origin == null) {
+            sender.sendMessage("§cRun this command as a player or start the bot first.");
+            return true;
+        }
+
+        if (!controllerBenchmark.start(sender, origin, seconds)) {
+            sender.sendMessage("§eBenchmark is already running.");
+            return true;
+        }
+        sender.sendMessage("§aController benchmark started (1/10/50 bots, " + seconds + "s each).");
+        return true;
+    }
+
     @Override
     public @Nullable List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command,
                                                   @NotNull String alias, @NotNull String[] args) {
@@ -363,6 +616,14 @@ public class BotCommand implements CommandExecutor, TabCompleter {
             completions.add("chat");
             completions.add("reset");
             completions.add("test");
+            completions.add("bench");
+            completions.add("export");
+            completions.add("metrics");
+            completions.add("trace");
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("metrics")) {
+            completions.add("export");
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("trace")) {
+            completions.add("clear");
         } else if (args.length == 2 && args[0].equalsIgnoreCase("test")) {
             completions.add("chat");
             completions.add("move_to");
@@ -2,22 +2,30 @@ package plugin.midorin.info.aIminer.executor;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
-import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 import org.bukkit.plugin.java.JavaPlugin;
+import plugin.midorin.info.aIminer.bot.BotEntityTracker;
 import plugin.midorin.info.aIminer.bot.BotManager;
+import plugin.midorin.info.aIminer.bot.NativeBotController;
 import plugin.midorin.info.aIminer.brain.BrainFileManager;
 import plugin.midorin.info.aIminer.model.Task;
 import plugin.midorin.info.aIminer.model.TaskStatus;
+import plugin.midorin.info.aIminer.model.TaskType;
 import plugin.midorin.info.aIminer.model.Position;
+import plugin.midorin.info.aIminer.navigation.RouteNavigator;
 
-import org.bukkit.entity.Entity;
-import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
 import plugin.midorin.info.aIminer.listener.DataCommandListener;
+import plugin.midorin.info.aIminer.util.BotLog;
+import plugin.midorin.info.aIminer.util.CommandDispatcher;
 import plugin.midorin.info.aIminer.util.CommandResultCapture;
+import plugin.midorin.info.aIminer.util.CycleTracer;
+import plugin.midorin.info.aIminer.util.DatapackFunction;
+import plugin.midorin.info.aIminer.util.TickBudgetScheduler;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -26,100 +34,285 @@ import java.util.stream.Collectors;
  * タスクを実行するクラス
  * brain.jsonのtasksセクションを監視し、PENDINGタスクをマルチタスク的に実行
  * 失敗したタスクはスキップして次のタスクを試行
+ * 1サイクルのタスクはTickBudgetSchedulerで複数tickに分けて実行される
  */
-public class TaskExecutor {
+public class TaskExecutor implements TickBudgetScheduler.BudgetedTask {
+    public static final String JOB_NAME = "tasks";
+
     private final JavaPlugin plugin;
     private final BrainFileManager brainFileManager;
     private final BotManager botManager;
+    private final BotEntityTracker botEntityTracker;
     private final DataCommandListener dataCommandListener;
+    private final RouteNavigator routeNavigator;  // 経路探索が無効の場合はnull
+    private final NativeBotController nativeBotController;
+    private final CommandDispatcher commandDispatcher;
+    private final TickBudgetScheduler scheduler;
+    private final CycleTracer tracer;
     private final Logger logger;
+    private final BotLog log;
     private int taskId = -1;
 
-    // データパックのネームスペース（必要に応じて変更）
-    private static final String DATAPACK_NS = "imuzen127x74";
-
-    // データパックタグ（VisionScannerと揃える）
-    private static final String BOT_FEET_TAG = "test1";
-    private static final String BOT_BODY_TAG = "rider1";
-    private static final String MOVE_MARKER_TAG = "aim1";
-    private static final String WOOD_MARKER_TAG = "aim1o";
-    private static final String STONE_MARKER_TAG = "aim1s";
+    // 実行中のサイクル
+    private final Deque<Task> cycleTasks = new ArrayDeque<>();
+    private List<Task> cyclePendingTasks;
+    private int cycleProcessed = 0;
+    private int cycleSucceeded = 0;
+    // インベントリ取得コマンドを実行し、次のtick以降に結果を受け取るタスク
+    private Task inventoryTask;
+    private CycleTracer.Span inventorySpan;
+    private long inventoryRequest;  // 0なら未実行（他の取得待ちがあり、次のtickにやり直す）
 
     // マルチタスク設定
     private static final int MAX_TASKS_PER_CYCLE = 3;  // 1サイクルで処理する最大タスク数
     private static final int MAX_RETRY_COUNT = 2;       // タスクの最大リトライ回数
+    private static final int CYCLE_LOG_EVERY = 20;      // サイクル完了のログを何回に1回出すか
 
-    public TaskExecutor(JavaPlugin plugin, BrainFileManager brainFileManager, BotManager botManager, DataCommandListener dataCommandListener) {
+    public TaskExecutor(JavaPlugin plugin, BrainFileManager brainFileManager, BotManager botManager,
+                        BotEntityTracker botEntityTracker, DataCommandListener dataCommandListener,
+                        RouteNavigator routeNavigator, NativeBotController nativeBotController,
+                        CommandDispatcher commandDispatcher, TickBudgetScheduler scheduler, CycleTracer tracer) {
         this.plugin = plugin;
         this.brainFileManager = brainFileManager;
         this.botManager = botManager;
+        this.botEntityTracker = botEntityTracker;
         this.dataCommandListener = dataCommandListener;
+        this.routeNavigator = routeNavigator;
+        this.nativeBotController = nativeBotController;
+        this.commandDispatcher = commandDispatcher;
+        this.scheduler = scheduler;
+        this.tracer = tracer;
         this.logger = plugin.getLogger();
+        this.log = new BotLog(logger);
     }
 
     /**
      * タスク実行ループを開始（20tick = 1秒ごとにチェック）
+     * タスクはTickBudgetSchedulerの予算内で1つずつ実行される
      */
     public void startTaskLoop() {
-        Bukkit.getScheduler().runTaskTimer(plugin, () -> {
-            processMultipleTasks();
-        }, 0L, 20L); // 0tick後に開始、20tickごとに実行
+        scheduler.register(JOB_NAME, this, 20L, 0L); // 0tick後に開始、20tickごとに実行
     }
 
     /**
-     * 複数のPENDINGタスクをマルチタスク的に処理
+     * タスク実行ループを停止
+     */
+    public void stopTaskLoop() {
+        scheduler.unregister(JOB_NAME);
+    }
+
+    /**
+     * PENDINGタスクから今回のサイクルで処理するものを選ぶ
+     */
+    @Override
+    public boolean begin() {
+        cycleTasks.clear();
+        inventoryTask = null;
+        inventorySpan = null;
+        inventoryRequest = 0L;
+        cyclePendingTasks = brainFileManager.getAllPendingTasks();
+
+        if (cyclePendingTasks.isEmpty()) {
+            return false;
+        }
+
+        boolean moveHandled = false;
+        for (Task task : cyclePendingTasks) {
+            if (cycleTasks.size() >= MAX_TASKS_PER_CYCLE) {
+                break; // 1サイクルの上限に達した
+            }
+
+            // 経路探索が有効な場合、移動タスクは1つずつ経路追従で実行する
+            if (task.getType() == TaskType.MOVE_TO && routeNavigator != null) {
+                if (!moveHandled && !routeNavigator.isBusy()) {
+                    cycleTasks.add(nextMoveTask(cyclePendingTasks));
+                }
+                moveHandled = true;
+                continue;
+            }
+            cycleTasks.add(task);
+        }
+
+        cycleProcessed = 0;
+        cycleSucceeded = 0;
+        return true;
+    }
+
+    /**
+     * 選んだタスクを1つ実行し、最後に完了・失敗タスクを片付ける
      * 失敗したタスクはスキップして次のタスクを試行
+     * インベントリ取得はコマンドの実行と結果の受け取りを別のtickに分け、メインスレッドを待たせない
      */
-    private void processMultipleTasks() {
-        List<Task> pendingTasks = brainFileManager.getAllPendingTasks();
+    @Override
+    public TickBudgetScheduler.Step step() {
+        if (inventoryTask != null) {
+            return stepInventory();
+        }
 
-        if (pendingTasks.isEmpty()) {
-            return;
+        Task task = cycleTasks.poll();
+        if (task == null) {
+            finishCycle();
+            return TickBudgetScheduler.Step.DONE;
+        }
+
+        if (task.getType() == TaskType.MOVE_TO && routeNavigator != null) {
+            startNavigation(task);
+            cycleProcessed++;
+            return TickBudgetScheduler.Step.CONTINUE;
+        }
+
+        log.debug("task.start", "type", task.getType(), "id", task.getId());
+
+        // タスクをIN_PROGRESSに変更
+        brainFileManager.updateTaskStatus(task.getId(), TaskStatus.IN_PROGRESS);
+        CycleTracer.Span span = startTaskSpan(task);
+
+        // インベントリ取得コマンドを実行（結果は次のtick以降）
+        if (task.getType() == TaskType.GET_INVENTORY) {
+            inventoryTask = task;
+            inventorySpan = span;
+            inventoryRequest = dataCommandListener.request(DataCommandListener.Query.INVENTORY, BotEntityTracker.BOT_FEET_TAG);
+            return TickBudgetScheduler.Step.NEXT_TICK;
+        }
+
+        // タスクタイプに応じて実行
+        boolean success = false;
+        try {
+            success = executeTask(task);
+        } catch (Exception e) {
+            logger.warning("Task execution error: " + e.getMessage());
+            success = false;
+        }
+        finishTask(task, span, success);
+        return TickBudgetScheduler.Step.CONTINUE;
+    }
+
+    /**
+     * インベントリ取得の結果を受け取る
+     * 結果が来なかった場合は空のインベントリとして記録せず、タスクを失敗にする
+     */
+    private TickBudgetScheduler.Step stepInventory() {
+        if (inventoryRequest == 0L) {
+            inventoryRequest = dataCommandListener.request(DataCommandListener.Query.INVENTORY, BotEntityTracker.BOT_FEET_TAG);
+            return TickBudgetScheduler.Step.NEXT_TICK;
+        }
+        DataCommandListener.Capture capture = dataCommandListener.collect(inventoryRequest);
+        if (capture.isWaiting()) {
+            return TickBudgetScheduler.Step.NEXT_TICK;
         }
 
-        int processedCount = 0;
-        int successCount = 0;
+        Task waiting = inventoryTask;
+        CycleTracer.Span span = inventorySpan;
+        inventoryTask = null;
+        inventorySpan = null;
+        inventoryRequest = 0L;
+        if (!capture.isReceived()) {
+            log.warning("task.inventory-no-data", "id", waiting.getId());
+            finishTask(waiting, span, false);
+        } else {
+            finishTask(waiting, span, storeInventory(capture.getInventory()));
+        }
+        return TickBudgetScheduler.Step.CONTINUE;
+    }
+
+    /**
+     * 実行結果をタスクの状態に反映
+     */
+    private void finishTask(Task task, CycleTracer.Span span, boolean success) {
+        if (success) {
+            brainFileManager.updateTaskStatus(task.getId(), TaskStatus.COMPLETED);
+            log.debug("task.completed", "type", task.getType(), "id", task.getId());
+            cycleSucceeded++;
+        } else {
+            // 失敗してもFAILEDにして次へ進む
+            brainFileManager.updateTaskStatus(task.getId(), TaskStatus.FAILED);
+            logger.warning("Task failed, moving to next: " + task.getId());
+        }
+        span.arg("result", success ? "completed" : "failed").end();
+
+        cycleProcessed++;
+    }
+
+    private void finishCycle() {
+        // 完了・失敗タスクを削除
+        brainFileManager.removeCompletedTasks();
+
+        if (cycleProcessed > 0) {
+            brainFileManager.saveBrainFile();
+            log.sampled("task.cycle", CYCLE_LOG_EVERY, "processed", cycleProcessed, "succeeded", cycleSucceeded);
+        }
+        cyclePendingTasks = null;
+    }
 
+    /**
+     * 保留中の移動タスクを巡回順に並べ、最初に向かうものを選ぶ
+     */
+    private Task nextMoveTask(List<Task> pendingTasks) {
+        List<Task> moveTasks = new ArrayList<>();
+        List<int[]> targets = new ArrayList<>();
         for (Task task : pendingTasks) {
-            if (processedCount >= MAX_TASKS_PER_CYCLE) {
-                break; // 1サイクルの上限に達した
+            if (task.getType() == TaskType.MOVE_TO) {
+                moveTasks.add(task);
+                targets.add(targetOf(task));
             }
+        }
+        return moveTasks.get(moveTasks.size() > 1 ? routeNavigator.orderTargets(targets)[0] : 0);
+    }
 
-            logger.info("Executing task: " + task.getType() + " (ID: " + task.getId() + ")");
+    /**
+     * 移動タスクの目標への経路追従を開始
+     * 完了・失敗はRouteNavigatorのコールバックで反映する
+     */
+    private void startNavigation(Task task) {
+        int[] target = targetOf(task);
 
-            // タスクをIN_PROGRESSに変更
-            brainFileManager.updateTaskStatus(task.getId(), TaskStatus.IN_PROGRESS);
+        CommandSender executor = getTaskExecutor();
+        if (executor == null) {
+            logger.warning("No valid command executor available");
+            brainFileManager.updateTaskStatus(task.getId(), TaskStatus.FAILED);
+            return;
+        }
 
-            // タスクタイプに応じて実行
-            boolean success = false;
-            try {
-                success = executeTask(task);
-            } catch (Exception e) {
-                logger.warning("Task execution error: " + e.getMessage());
-                success = false;
-            }
+        log.debug("task.start", "type", TaskType.MOVE_TO, "id", task.getId());
+        brainFileManager.updateTaskStatus(task.getId(), TaskStatus.IN_PROGRESS);
+        CycleTracer.Span span = startTaskSpan(task);
 
+        boolean started = routeNavigator.navigate(executor, target[0], target[1], target[2], success -> {
+            brainFileManager.updateTaskStatus(task.getId(), success ? TaskStatus.COMPLETED : TaskStatus.FAILED);
+            span.arg("result", success ? "completed" : "failed").end();
             if (success) {
-                brainFileManager.updateTaskStatus(task.getId(), TaskStatus.COMPLETED);
-                logger.info("Task completed: " + task.getId());
-                successCount++;
+                log.debug("task.completed", "type", TaskType.MOVE_TO, "id", task.getId());
             } else {
-                // 失敗してもFAILEDにして次へ進む
-                brainFileManager.updateTaskStatus(task.getId(), TaskStatus.FAILED);
                 logger.warning("Task failed, moving to next: " + task.getId());
             }
-
-            processedCount++;
+            brainFileManager.removeCompletedTasks();
+            brainFileManager.saveBrainFile();
+        });
+        if (!started) {
+            // 別の経路を追従中（サイクルの開始後に始まった）
+            brainFileManager.updateTaskStatus(task.getId(), TaskStatus.FAILED);
+            span.arg("result", "failed").end();
+            logger.warning("Route navigator is busy, task failed: " + task.getId());
         }
+    }
 
-        // 完了・失敗タスクを削除
-        brainFileManager.removeCompletedTasks();
+    private int[] targetOf(Task task) {
+        return new int[] {
+            getIntParameter(task.getParameters(), "x"),
+            getIntParameter(task.getParameters(), "y"),
+            getIntParameter(task.getParameters(), "z")
+        };
+    }
 
-        if (processedCount > 0) {
-            brainFileManager.saveBrainFile();
-            logger.info(String.format("Task cycle complete: %d processed, %d succeeded",
-                processedCount, successCount));
-        }
+    /**
+     * タスクの実行スパンを開始（AIが計画したタスクなら、そのサイクルのトレースに入れる）
+     */
+    private CycleTracer.Span startTaskSpan(Task task) {
+        long link = task.getTraceLink();
+        return tracer.start("task." + String.valueOf(task.getType()).toLowerCase(), tracer.traceOfLink(link))
+            .arg("task", task.getId())
+            .arg("queuedMs", tracer.millisSinceLinked(link))
+            .flowFrom(link);
     }
 
     /**
@@ -140,9 +333,6 @@ public class TaskExecutor {
                 case CHAT:
                     return executeChat(task);
 
-                case GET_INVENTORY:
-                    return executeGetInventory(task);
-
                 case GET_POSITION:
                     return executeGetPosition(task);
 
@@ -174,19 +364,18 @@ public class TaskExecutor {
         int y = getIntParameter(task.getParameters(), "y");
         int z = getIntParameter(task.getParameters(), "z");
 
-        String setCommand = String.format("function %s:oakset {x:%d, y:%d, z:%d}", DATAPACK_NS, x, y, z);
-        String onCommand = String.format("function %s:xoak_on", DATAPACK_NS);
+        // ネイティブ制御中はデータパックを経由せずに採掘を開始
+        if (nativeBotController != null && nativeBotController.isNativeMode()) {
+            nativeBotController.startMining(NativeBotController.MiningTarget.WOOD, x, y, z);
+            return true;
+        }
 
-        logger.info("Executing as CONSOLE: " + setCommand);
-        boolean setOk = Bukkit.dispatchCommand(Bukkit.getConsoleSender(), setCommand);
-        if (!setOk) {
+        if (!commandDispatcher.call(Bukkit.getConsoleSender(), DatapackFunction.OAKSET, x, y, z)) {
             logger.warning("Failed to set oak target position");
             return false;
         }
 
-        logger.info("Executing as CONSOLE: " + onCommand);
-        boolean onOk = Bukkit.dispatchCommand(Bukkit.getConsoleSender(), onCommand);
-        if (!onOk) {
+        if (!commandDispatcher.call(Bukkit.getConsoleSender(), DatapackFunction.XOAK_ON)) {
             logger.warning("Failed to enable oak continuous mining");
             return false;
         }
@@ -202,19 +391,18 @@ public class TaskExecutor {
         int y = getIntParameter(task.getParameters(), "y");
         int z = getIntParameter(task.getParameters(), "z");
 
-        String setCommand = String.format("function %s:stoneset {x:%d, y:%d, z:%d}", DATAPACK_NS, x, y, z);
-        String onCommand = String.format("function %s:xstone_on", DATAPACK_NS);
+        // ネイティブ制御中はデータパックを経由せずに採掘を開始
+        if (nativeBotController != null && nativeBotController.isNativeMode()) {
+            nativeBotController.startMining(NativeBotController.MiningTarget.STONE, x, y, z);
+            return true;
+        }
 
-        logger.info("Executing as CONSOLE: " + setCommand);
-        boolean setOk = Bukkit.dispatchCommand(Bukkit.getConsoleSender(), setCommand);
-        if (!setOk) {
+        if (!commandDispatcher.call(Bukkit.getConsoleSender(), DatapackFunction.STONESET, x, y, z)) {
             logger.warning("Failed to set stone target position");
             return false;
         }
 
-        logger.info("Executing as CONSOLE: " + onCommand);
-        boolean onOk = Bukkit.dispatchCommand(Bukkit.getConsoleSender(), onCommand);
-        if (!onOk) {
+        if (!commandDispatcher.call(Bukkit.getConsoleSender(), DatapackFunction.XSTONE_ON)) {
             logger.warning("Failed to enable stone continuous mining");
             return false;
         }
@@ -236,10 +424,7 @@ public class TaskExecutor {
             return false;
         }
 
-        String command = String.format("function %s:xaim {x:%d, y:%d, z:%d}", DATAPACK_NS, x, y, z);
-
-        logger.info("Executing as " + executor.getName() + ": " + command);
-        return Bukkit.dispatchCommand(executor, command);
+        return commandDispatcher.call(executor, DatapackFunction.XAIM, x, y, z);
     }
 
     /**
@@ -289,21 +474,14 @@ public class TaskExecutor {
     private boolean executeChat(Task task) {
         String message = (String) task.getParameters().get("message");
 
-        String command = "say [Bot] " + message;
-
-        logger.info("Executing: " + command);
-        return Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+        return commandDispatcher.dispatch(Bukkit.getConsoleSender(), "say [Bot] " + message);
     }
 
     /**
-     * インベントリ取得タスク
-     * /data get entity コマンドを使用してインベントリを取得
+     * インベントリ取得タスクの結果を保存
+     * /data get entity コマンドの結果（前のtickで実行）を受け取る
      */
-    private boolean executeGetInventory(Task task) {
-        // コマンド経由でインベントリを取得
-        List<CommandResultCapture.InventoryItem> items =
-            dataCommandListener.captureInventory(BOT_FEET_TAG);
-
+    private boolean storeInventory(List<CommandResultCapture.InventoryItem> items) {
         List<String> inventory;
         if (items.isEmpty()) {
             inventory = new ArrayList<>();
@@ -316,7 +494,7 @@ public class TaskExecutor {
 
         brainFileManager.updateMemory("inventory_state", inventory);
         brainFileManager.saveBrainFile();
-        logger.info("Inventory captured via command: " + inventory);
+        log.debug("task.inventory", "items", inventory);
         return true;
     }
 
@@ -333,7 +511,7 @@ public class TaskExecutor {
         Position pos = new Position(loc.getX(), loc.getY(), loc.getZ());
         brainFileManager.updateMemory("current_position", pos);
         brainFileManager.saveBrainFile();
-        logger.info(String.format("Bot position stored: (%.1f, %.1f, %.1f)", pos.getX(), pos.getY(), pos.getZ()));
+        log.debug("task.position", "x", pos.getX(), "y", pos.getY(), "z", pos.getZ());
         return true;
     }
 
@@ -360,8 +538,8 @@ public class TaskExecutor {
         brainFileManager.saveBrainFile();
 
         String command = String.format("say [Bot] %s is at (%.1f, %.1f, %.1f)", name, pos.getX(), pos.getY(), pos.getZ());
-        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
-        logger.info("Stored entity position for " + name);
+        commandDispatcher.enqueue(Bukkit.getConsoleSender(), command);
+        log.debug("task.entity-position", "name", name);
         return true;
     }
 
@@ -376,11 +554,11 @@ public class TaskExecutor {
         }
 
         String key = (String) keyObj;
-        Object value = brainFileManager.getBrainData().getMemory().get(key);
+        Object value = brainFileManager.readMemory(key);
         String valueStr = value != null ? value.toString() : "null";
         String command = String.format("say [Bot memory] %s = %s", key, valueStr);
-        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
-        logger.info("Memory read for key '" + key + "'");
+        commandDispatcher.enqueue(Bukkit.getConsoleSender(), command);
+        log.debug("task.read-memory", "key", key);
         return true;
     }
 
@@ -388,70 +566,14 @@ public class TaskExecutor {
      * 待機タスク
      */
     private boolean executeWait(Task task) {
-        logger.info("Waiting...");
+        log.debug("task.wait");
         return true;
     }
 
-    private LivingEntity findBotEntity() {
-        CommandSender owner = botManager.getBotOwner();
-        World world = null;
-        if (owner instanceof Player player && player.isOnline()) {
-            world = player.getWorld();
-        } else {
-            world = Bukkit.getWorlds().stream().findFirst().orElse(null);
-        }
-        if (world == null) {
-            return null;
-        }
-        Entity entity = findFirstEntityByTag(world, BOT_FEET_TAG);
-        if (entity instanceof LivingEntity living) {
-            return living;
-        }
-        entity = findFirstEntityByTag(world, BOT_BODY_TAG);
-        if (entity instanceof LivingEntity living) {
-            return living;
-        }
-        return null;
-    }
-
+    /**
+     * ボットの現在位置を取得（見つからない場合はnull）
+     */
     private Location findBotLocation() {
-        CommandSender owner = botManager.getBotOwner();
-        World world = null;
-        if (owner instanceof Player player && player.isOnline()) {
-            world = player.getWorld();
-        } else {
-            world = Bukkit.getWorlds().stream().findFirst().orElse(null);
-        }
-        if (world == null) {
-            return null;
-        }
-
-        Location loc = findFirstByTag(world, BOT_FEET_TAG);
-        if (loc != null) return loc;
-        loc = findFirstByTag(world, BOT_BODY_TAG);
-        if (loc != null) return loc;
-        loc = findFirstByTag(world, MOVE_MARKER_TAG);
-        if (loc != null) return loc;
-        loc = findFirstByTag(world, WOOD_MARKER_TAG);
-        if (loc != null) return loc;
-        return findFirstByTag(world, STONE_MARKER_TAG);
-    }
-
-    private Location findFirstByTag(org.bukkit.World world, String tag) {
-        for (Entity entity : world.getEntities()) {
-            if (entity.getScoreboardTags().contains(tag)) {
-                return entity.getLocation();
-            }
-        }
-        return null;
-    }
-
-    private Entity findFirstEntityByTag(org.bukkit.World world, String tag) {
-        for (Entity entity : world.getEntities()) {
-            if (entity.getScoreboardTags().contains(tag)) {
-                return entity;
-            }
-        }
-        return null;
+        return botEntityTracker.findBotLocation();
     }
 }
@@ -1,11 +1,12 @@
 package plugin.midorin.info.aIminer.listener;
 
+import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
+import plugin.midorin.info.aIminer.util.CommandDispatcher;
 import plugin.midorin.info.aIminer.util.CommandResultCapture;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -13,26 +14,105 @@ import java.util.logging.Logger;
 /**
  * data getコマンドの結果をキャプチャするリスナー
  * サーバーログからNBTデータを抽出
+ * 結果の行にはどのコマンドの結果かが書かれないため、取得待ちのコマンドは常に1つだけにする
+ * - request: コマンドを実行してIDを返す（他の取得待ちがあれば実行せず0。次のtickにやり直す）
+ * - collect: IDの結果を受け取る（まだ来ていなければWAITING、一定回数待っても来なければNO_DATA）
+ * 結果として解析できない行は無視し、取得待ちのまま残す
  */
 public class DataCommandListener {
-    private final JavaPlugin plugin;
-    private final ConcurrentLinkedQueue<String> inventoryResults = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<String> itemPosResults = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<String> itemTypeResults = new ConcurrentLinkedQueue<>();
+    private static final String ENTITY_DATA_MARKER = "has the following entity data:";
+    // 対象がなかったときのエラー（待たずにNO_DATAにする）
+    private static final String[] NOT_FOUND_MARKERS = {"No entity was found", "Found no elements matching"};
+    // 結果を待つ回数（collect・他からのrequestのたびに1回、ほぼ1tickに1回）
+    private static final int MAX_WAIT = 5;
+
+    /**
+     * 取得する内容と、実行するコマンド（%sはボットのタグ）
+     */
+    public enum Query {
+        // カスタムNBTのdata.Inventoryにアクセス
+        INVENTORY("data get entity @e[tag=%s,limit=1] data.Inventory"),
+        ITEM_POS("execute as @e[tag=%s,limit=1] run data get entity @n[type=item] Pos"),
+        ITEM_TYPE("execute as @e[tag=%s,limit=1] run data get entity @n[type=item] Item");
+
+        private final String command;
+
+        Query(String command) {
+            this.command = command;
+        }
+    }
+
+    /**
+     * 1回のコマンドの取得結果
+     */
+    public static final class Capture {
+        private static final Capture WAITING = new Capture(true, null);
+        private static final Capture NO_DATA = new Capture(false, null);
 
-    private volatile boolean capturingInventory = false;
-    private volatile boolean capturingItemPos = false;
-    private volatile boolean capturingItemType = false;
+        private final boolean waiting;
+        private final Object value;
 
-    // 最新のキャプチャ結果
-    private volatile List<CommandResultCapture.InventoryItem> lastInventory = new ArrayList<>();
-    private volatile double[] lastItemPos = null;
-    private volatile CommandResultCapture.InventoryItem lastItemType = null;
+        private Capture(boolean waiting, Object value) {
+            this.waiting = waiting;
+            this.value = value;
+        }
+
+        /**
+         * 結果がまだ来ていない（次のtickにもう一度collectする）
+         */
+        public boolean isWaiting() {
+            return waiting;
+        }
+
+        /**
+         * 結果を受け取れたか（falseなら対象がない・時間切れで、データなし）
+         */
+        public boolean isReceived() {
+            return value != null;
+        }
+
+        /**
+         * INVENTORYの結果（空のインベントリなら空のリスト、データなしならnull）
+         */
+        @SuppressWarnings("unchecked")
+        public List<CommandResultCapture.InventoryItem> getInventory() {
+            return value instanceof List<?> ? new ArrayList<>((List<CommandResultCapture.InventoryItem>) value) : null;
+        }
+
+        /**
+         * ITEM_POSの結果（データなしならnull）
+         */
+        public double[] getPosition() {
+            return value instanceof double[] position ? position : null;
+        }
+
+        /**
+         * ITEM_TYPEの結果（データなしならnull）
+         */
+        public CommandResultCapture.InventoryItem getItem() {
+            return value instanceof CommandResultCapture.InventoryItem item ? item : null;
+        }
+    }
+
+    private final JavaPlugin plugin;
+    private final CommandDispatcher commandDispatcher;
+
+    // 取得待ちのコマンド（thisのロックで保護。openQueryはログの事前判定用にロックなしでも読む）
+    private volatile Query openQuery;
+    private long openId;
+    private long nextId = 1L;
+    private int waited;
+    private boolean done;
+    private Object result;
 
     private Handler logHandler;
 
-    public DataCommandListener(JavaPlugin plugin) {
+    /**
+     * @param commandDispatcher data getコマンドの実行先（実行回数・時間を他のコマンドと一緒に記録する）
+     */
+    public DataCommandListener(JavaPlugin plugin, CommandDispatcher commandDispatcher) {
         this.plugin = plugin;
+        this.commandDispatcher = commandDispatcher;
     }
 
     /**
@@ -44,13 +124,12 @@ public class DataCommandListener {
         logHandler = new Handler() {
             @Override
             public void publish(LogRecord record) {
-                if (record == null || record.getMessage() == null) return;
+                // サーバーの全ログがここを通るため、取得待ちのコマンドがなければ中身を見ない
+                if (!isCapturing() || record == null) return;
 
                 String message = record.getMessage();
-
-                // "has the following entity data:" を含むログをキャプチャ
-                if (message.contains("has the following entity data:")) {
-                    processDataCommandResult(message);
+                if (message != null) {
+                    processLogLine(message);
                 }
             }
 
@@ -65,6 +144,13 @@ public class DataCommandListener {
         plugin.getLogger().info("DataCommandListener registered");
     }
 
+    /**
+     * data getコマンドの結果を待っているか
+     */
+    boolean isCapturing() {
+        return openQuery != null;
+    }
+
     /**
      * ログハンドラを解除
      */
@@ -76,139 +162,74 @@ public class DataCommandListener {
     }
 
     /**
-     * data getコマンドの結果を処理
+     * 取得待ちのコマンドの結果かどうかを見て記録する
      */
-    private void processDataCommandResult(String message) {
-        // インベントリキャプチャ中
-        if (capturingInventory) {
-            List<CommandResultCapture.InventoryItem> items =
-                CommandResultCapture.parseInventoryFromLog(message);
-            if (!items.isEmpty()) {
-                lastInventory = items;
-                inventoryResults.offer(message);
-            }
-            capturingInventory = false;
+    private synchronized void processLogLine(String message) {
+        Query query = openQuery;
+        if (query == null || done) {
+            return;
         }
-
-        // アイテム座標キャプチャ中
-        if (capturingItemPos) {
-            double[] pos = CommandResultCapture.parsePositionFromLog(message);
-            if (pos != null) {
-                lastItemPos = pos;
-                itemPosResults.offer(message);
+        int marker = message.indexOf(ENTITY_DATA_MARKER);
+        if (marker < 0) {
+            for (String notFound : NOT_FOUND_MARKERS) {
+                if (message.contains(notFound)) {
+                    done = true;
+                    return;
+                }
             }
-            capturingItemPos = false;
+            return;
         }
-
-        // アイテムタイプキャプチャ中
-        if (capturingItemType) {
-            CommandResultCapture.InventoryItem item =
-                CommandResultCapture.parseItemFromLog(message);
-            if (item != null) {
-                lastItemType = item;
-                itemTypeResults.offer(message);
+        String data = message.substring(marker + ENTITY_DATA_MARKER.length()).trim();
+        Object parsed = switch (query) {
+            case INVENTORY -> {
+                List<CommandResultCapture.InventoryItem> items = CommandResultCapture.parseInventoryFromLog(data);
+                yield !items.isEmpty() || data.equals("[]") ? items : null;
             }
-            capturingItemType = false;
-        }
-    }
-
-    /**
-     * インベントリ取得コマンドを実行し、結果を待つ
-     * カスタムNBT: data.Inventory にアクセス
-     */
-    public List<CommandResultCapture.InventoryItem> captureInventory(String botTag) {
-        lastInventory = new ArrayList<>();
-        capturingInventory = true;
-
-        // カスタムNBTのdata.Inventoryにアクセス
-        String command = String.format("data get entity @e[tag=%s,limit=1] data.Inventory", botTag);
-        org.bukkit.Bukkit.dispatchCommand(
-            org.bukkit.Bukkit.getConsoleSender(), command
-        );
-
-        // 少し待ってから結果を返す（同期的な待機は避けたいが、簡易実装）
-        try {
-            Thread.sleep(50);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-
-        capturingInventory = false;
-        return new ArrayList<>(lastInventory);
-    }
-
-    /**
-     * 近くのアイテムの座標を取得
-     */
-    public double[] captureNearbyItemPos(String botTag) {
-        lastItemPos = null;
-        capturingItemPos = true;
-
-        String command = String.format(
-            "execute as @e[tag=%s,limit=1] run data get entity @n[type=item] Pos", botTag
-        );
-        org.bukkit.Bukkit.dispatchCommand(
-            org.bukkit.Bukkit.getConsoleSender(), command
-        );
-
-        try {
-            Thread.sleep(50);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            case ITEM_POS -> CommandResultCapture.parsePositionFromLog(data);
+            case ITEM_TYPE -> CommandResultCapture.parseItemFromLog(data);
+        };
+        if (parsed != null) {
+            result = parsed;
+            done = true;
         }
-
-        capturingItemPos = false;
-        return lastItemPos;
     }
 
     /**
-     * 近くのアイテムのタイプを取得
+     * コマンドを実行する（結果は次のtick以降にcollectで受け取る）
+     *
+     * @return 取得のID。他のコマンドの結果を待っている場合は実行せず0
      */
-    public CommandResultCapture.InventoryItem captureNearbyItemType(String botTag) {
-        lastItemType = null;
-        capturingItemType = true;
-
-        String command = String.format(
-            "execute as @e[tag=%s,limit=1] run data get entity @n[type=item] Item", botTag
-        );
-        org.bukkit.Bukkit.dispatchCommand(
-            org.bukkit.Bukkit.getConsoleSender(), command
-        );
-
-        try {
-            Thread.sleep(50);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    public synchronized long request(Query query, String botTag) {
+        if (openQuery != null) {
+            // 受け取られないまま残った取得は、待つ回数を使い切ったら捨てる
+            if (++waited <= MAX_WAIT) {
+                return 0L;
+            }
+            openQuery = null;
         }
-
-        capturingItemType = false;
-        return lastItemType;
+        long id = nextId++;
+        openId = id;
+        waited = 0;
+        done = false;
+        result = null;
+        openQuery = query;
+        commandDispatcher.dispatch(Bukkit.getConsoleSender(), String.format(query.command, botTag));
+        return id;
     }
 
     /**
-     * 近くのアイテム情報（座標とタイプ）を取得
+     * requestした結果を受け取る（受け取れたか、データなしと決まったら取得待ちを終える）
      */
-    public CommandResultCapture.NearbyItem captureNearbyItem(String botTag) {
-        double[] pos = captureNearbyItemPos(botTag);
-        if (pos == null) {
-            return null;
+    public synchronized Capture collect(long id) {
+        if (openQuery == null || openId != id) {
+            return Capture.NO_DATA;
         }
-
-        CommandResultCapture.InventoryItem item = captureNearbyItemType(botTag);
-        if (item == null) {
-            return null;
+        if (!done && ++waited <= MAX_WAIT) {
+            return Capture.WAITING;
         }
-
-        return new CommandResultCapture.NearbyItem(
-            item.getItemId(), item.getCount(),
-            pos[0], pos[1], pos[2]
-        );
-    }
-
-    /**
-     * 最後に取得したインベントリを返す
-     */
-    public List<CommandResultCapture.InventoryItem> getLastInventory() {
-        return new ArrayList<>(lastInventory);
+        Object value = result;
+        openQuery = null;
+        result = null;
+        return value != null ? new Capture(false, value) : Capture.NO_DATA;
     }
 }
@@ -25,7 +25,7 @@ public class PlayerActivityListener implements Listener {
     public void onJoin(PlayerJoinEvent event) {
         String player = event.getPlayer().getName();
         long timestamp = System.currentTimeMillis();
-        brainManager.addChatMessage("SYSTEM", player + " joined the world", timestamp);
+        brainManager.addSystemMessage(player + " joined the world", timestamp);
         logger.fine("Join captured for " + player);
     }
 
@@ -33,7 +33,7 @@ public class PlayerActivityListener implements Listener {
     public void onQuit(PlayerQuitEvent event) {
         String player = event.getPlayer().getName();
         long timestamp = System.currentTimeMillis();
-        brainManager.addChatMessage("SYSTEM", player + " left the world", timestamp);
+        brainManager.addSystemMessage(player + " left the world", timestamp);
         logger.fine("Quit captured for " + player);
     }
 }
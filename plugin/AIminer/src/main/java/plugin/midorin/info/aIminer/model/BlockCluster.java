@@ -0,0 +1,64 @@
+package plugin.midorin.info.aIminer.model;
+
+/**
+ * 隣り合った同じ種類のブロックのまとまり（木1本、鉱脈1つなど）
+ */
+public class BlockCluster {
+    private String blockType;
+    private int size;
+    private Position center;      // ワールド座標（ブロックの平均位置）
+    private Position nearest;     // まとまりの中で一番近いブロック（ワールド座標）
+    private double distance;
+
+    public BlockCluster() {
+    }
+
+    public BlockCluster(String blockType, int size, Position center, Position nearest, double distance) {
+        this.blockType = blockType;
+        this.size = size;
+        this.center = center;
+        this.nearest = nearest;
+        this.distance = distance;
+    }
+
+    // Getters and Setters
+    public String getBlockType() {
+        return blockType;
+    }
+
+    public void setBlockType(String blockType) {
+        this.blockType = blockType;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public Position getCenter() {
+        return center;
+    }
+
+    public void setCenter(Position center) {
+        this.center = center;
+    }
+
+    public Position getNearest() {
+        return nearest;
+    }
+
+    public void setNearest(Position nearest) {
+        this.nearest = nearest;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public void setDistance(double distance) {
+        this.distance = distance;
+    }
+}
@@ -0,0 +1,54 @@
+package plugin.midorin.info.aIminer.model;
+
+/**
+ * 視界内のブロックの種類ごとの集計（個数と一番近いもの）
+ */
+public class BlockSummary {
+    private String blockType;
+    private int count;
+    private Position nearest;     // ワールド座標
+    private double distance;      // 一番近いものまでの距離
+
+    public BlockSummary() {
+    }
+
+    public BlockSummary(String blockType, int count, Position nearest, double distance) {
+        this.blockType = blockType;
+        this.count = count;
+        this.nearest = nearest;
+        this.distance = distance;
+    }
+
+    // Getters and Setters
+    public String getBlockType() {
+        return blockType;
+    }
+
+    public void setBlockType(String blockType) {
+        this.blockType = blockType;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public Position getNearest() {
+        return nearest;
+    }
+
+    public void setNearest(Position nearest) {
+        this.nearest = nearest;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public void setDistance(double distance) {
+        this.distance = distance;
+    }
+}
@@ -10,6 +10,8 @@ public class BlockVisionData {
     private List<VisibleEntity> nearbyItems;      // ドロップアイテム
     private List<VisibleEntity> nearbyPlayers;    // 近くのプレイヤー
     private Position botPosition;                  // ボットの現在位置
+    private List<BlockSummary> blockSummaries;     // 種類ごとの集計（要約を使う場合のみ）
+    private List<BlockCluster> blockClusters;      // 同じ種類のまとまり（要約を使う場合のみ）
 
     public BlockVisionData() {
         this.viewDistance = 10;
@@ -77,4 +79,27 @@ public class BlockVisionData {
     public void setBotPosition(Position botPosition) {
         this.botPosition = botPosition;
     }
+
+    public List<BlockSummary> getBlockSummaries() {
+        return blockSummaries;
+    }
+
+    public void setBlockSummaries(List<BlockSummary> blockSummaries) {
+        this.blockSummaries = blockSummaries;
+    }
+
+    public List<BlockCluster> getBlockClusters() {
+        return blockClusters;
+    }
+
+    public void setBlockClusters(List<BlockCluster> blockClusters) {
+        this.blockClusters = blockClusters;
+    }
+
+    /**
+     * 要約（種類ごとの集計）があるか
+     */
+    public boolean isSummarized() {
+        return blockSummaries != null && !blockSummaries.isEmpty();
+    }
 }
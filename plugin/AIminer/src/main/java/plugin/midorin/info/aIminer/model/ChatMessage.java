@@ -1,25 +1,30 @@
 package plugin.midorin.info.aIminer.model;
 
 public class ChatMessage {
-    private String timestamp;
+    public static final int MENTION = 1;   // ボット宛ての発言
+    public static final int NEARBY = 2;    // 近くにいるプレイヤーの発言
+
+    private long timestamp;   // エポックミリ秒（表示するときに整形する）
     private String player;
     private String message;
+    private int flags;
 
     public ChatMessage() {
     }
 
-    public ChatMessage(String timestamp, String player, String message) {
+    public ChatMessage(long timestamp, String player, String message, int flags) {
         this.timestamp = timestamp;
         this.player = player;
         this.message = message;
+        this.flags = flags;
     }
 
     // Getters and Setters
-    public String getTimestamp() {
+    public long getTimestamp() {
         return timestamp;
     }
 
-    public void setTimestamp(String timestamp) {
+    public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
 
@@ -38,4 +43,23 @@ public class ChatMessage {
     public void setMessage(String message) {
         this.message = message;
     }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public void setFlags(int flags) {
+        this.flags = flags;
+    }
+
+    public boolean isMention() {
+        return (flags & MENTION) != 0;
+    }
+
+    /**
+     * ボット宛て、または近くのプレイヤーの発言か
+     */
+    public boolean isRelevant() {
+        return (flags & (MENTION | NEARBY)) != 0;
+    }
 }
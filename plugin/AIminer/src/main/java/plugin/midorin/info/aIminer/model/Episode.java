@@ -0,0 +1,66 @@
+package plugin.midorin.info.aIminer.model;
+
+public class Episode {
+    private long id;
+    private long timestamp;
+    private String type;
+    private String text;
+    private Position position;
+
+    public Episode() {
+    }
+
+    public Episode(long id, long timestamp, String type, String text, Position position) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.text = text;
+        this.position = position;
+    }
+
+    // Getters and Setters
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public Position getPosition() {
+        return position;
+    }
+
+    public void setPosition(Position position) {
+        this.position = position;
+    }
+
+    @Override
+    public String toString() {
+        return type + ": " + text + (position != null ? " " + position : "");
+    }
+}
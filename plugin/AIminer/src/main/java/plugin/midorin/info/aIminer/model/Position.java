@@ -39,6 +39,20 @@ public class Position {
         this.z = z;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Position other)) return false;
+        return Double.compare(x, other.x) == 0
+            && Double.compare(y, other.y) == 0
+            && Double.compare(z, other.z) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return java.util.Objects.hash(x, y, z);
+    }
+
     @Override
     public String toString() {
         return String.format("(%.1f, %.1f, %.1f)", x, y, z);
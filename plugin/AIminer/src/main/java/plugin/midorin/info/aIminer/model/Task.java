@@ -10,6 +10,8 @@ public class Task {
     private String reason;
     private TaskStatus status;
     private long createdAt;
+    // Plan link in the cycle tracer (not saved; 0 = not planned by a traced cycle)
+    private transient long traceLink;
 
     public Task() {
         this.parameters = new HashMap<>();
@@ -74,4 +76,12 @@ public class Task {
     public void setCreatedAt(long createdAt) {
         this.createdAt = createdAt;
     }
+
+    public long getTraceLink() {
+        return traceLink;
+    }
+
+    public void setTraceLink(long traceLink) {
+        this.traceLink = traceLink;
+    }
 }
@@ -0,0 +1,362 @@
+package plugin.midorin.info.aIminer.navigation;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import plugin.midorin.info.aIminer.util.ChunkSnapshotCache;
+import plugin.midorin.info.aIminer.util.CommandDispatcher;
+import plugin.midorin.info.aIminer.util.DatapackFunction;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * MOVE_TOタスクの経路追従を行うクラス
+ * チャンクスナップショットから歩行可能性グリッドを非同期で構築してA*で経路を求め、
+ * 中継地点ごとに移動マーカー（aim1）を置き直してボットを誘導する
+ */
+public class RouteNavigator extends BukkitRunnable {
+    private static final int HORIZONTAL_MARGIN = 8;     // 経路探索範囲の水平方向の余白
+    private static final int VERTICAL_MARGIN = 6;       // 経路探索範囲の上下方向の余白
+    private static final double ARRIVAL_RADIUS = 1.5;   // 中継地点に到着したとみなす距離
+    private static final double TARGET_RADIUS = 3.0;    // 最終目標に到着したとみなす距離
+    private static final int STALL_CHECKS = 10;         // 進まない状態が続いたら再探索（チェック回数）
+    private static final int MAX_REPLANS = 2;           // 詰まった時の再探索回数
+    private static final int MAX_SEGMENTS = 8;          // 探索範囲外の目標へ区間分割して進む最大回数
+    private static final long CHECK_INTERVAL_TICKS = 10L;
+
+    private final JavaPlugin plugin;
+    private final ChunkSnapshotCache snapshotCache;
+    private final CommandDispatcher commandDispatcher;
+    private final Supplier<Location> botLocation;
+    private final RoutePlanner planner;
+    private final int gridRadius;
+    private final int waypointSpacing;
+    private final long routeTimeoutMillis;
+
+    // メインスレッドからのみ操作する
+    private Route activeRoute;
+
+    public RouteNavigator(
+        JavaPlugin plugin,
+        ChunkSnapshotCache snapshotCache,
+        CommandDispatcher commandDispatcher,
+        Supplier<Location> botLocation,
+        int gridRadius,
+        int waypointSpacing,
+        int maxSearchNodes,
+        int routeTimeoutSeconds
+    ) {
+        this.plugin = plugin;
+        this.snapshotCache = snapshotCache;
+        this.commandDispatcher = commandDispatcher;
+        this.botLocation = botLocation;
+        this.planner = new RoutePlanner(maxSearchNodes);
+        this.gridRadius = Math.max(16, gridRadius);
+        this.waypointSpacing = Math.max(2, waypointSpacing);
+        this.routeTimeoutMillis = Math.max(5, routeTimeoutSeconds) * 1000L;
+    }
+
+    /**
+     * 経路追従中かどうか
+     */
+    public boolean isBusy() {
+        return activeRoute != null;
+    }
+
+    /**
+     * 目標座標への移動を開始する（メインスレッド専用）
+     *
+     * @param onFinish 到着・失敗時に呼ばれるコールバック（メインスレッド）
+     * @return 開始できた場合true（既に移動中ならfalse）
+     */
+    public boolean navigate(CommandSender executor, int x, int y, int z, Consumer<Boolean> onFinish) {
+        if (activeRoute != null) {
+            return false;
+        }
+        activeRoute = new Route(executor, x, y, z, onFinish);
+        planRoute(activeRoute);
+        return true;
+    }
+
+    /**
+     * 現在の経路追従を中止する
+     */
+    public void cancelRoute() {
+        if (activeRoute != null) {
+            finish(activeRoute, false);
+        }
+    }
+
+    /**
+     * 複数の移動目標を、ボットの現在位置から回る順に並べる
+     *
+     * @return targetsのインデックスを訪問順に並べた配列
+     */
+    public int[] orderTargets(List<int[]> targets) {
+        Location loc = botLocation.get();
+        if (loc == null) {
+            int[] identity = new int[targets.size()];
+            for (int i = 0; i < identity.length; i++) {
+                identity[i] = i;
+            }
+            return identity;
+        }
+        int[] start = {loc.getBlockX(), loc.getBlockY(), loc.getBlockZ()};
+        return planner.orderTargets(start, targets);
+    }
+
+    /**
+     * 現在位置から目標までの経路を探索（グリッド構築と探索は非同期）
+     */
+    private void planRoute(Route route) {
+        Location loc = botLocation.get();
+        if (loc == null || loc.getWorld() == null) {
+            // ボット位置が不明な場合は従来通り目標に直接マーカーを置く
+            plugin.getLogger().fine("Bot location unknown, placing move marker directly");
+            finish(route, placeMarker(route.executor, route.targetX, route.targetY, route.targetZ));
+            return;
+        }
+
+        World world = loc.getWorld();
+        int sx = loc.getBlockX();
+        int sy = loc.getBlockY();
+        int sz = loc.getBlockZ();
+
+        // 探索範囲（開始地点からgridRadius以内に制限）
+        int minX = Math.max(Math.min(sx, route.targetX) - HORIZONTAL_MARGIN, sx - gridRadius);
+        int maxX = Math.min(Math.max(sx, route.targetX) + HORIZONTAL_MARGIN, sx + gridRadius);
+        int minZ = Math.max(Math.min(sz, route.targetZ) - HORIZONTAL_MARGIN, sz - gridRadius);
+        int maxZ = Math.min(Math.max(sz, route.targetZ) + HORIZONTAL_MARGIN, sz + gridRadius);
+        int minY = Math.max(Math.min(sy, route.targetY) - VERTICAL_MARGIN, world.getMinHeight());
+        int maxY = Math.min(Math.max(sy, route.targetY) + VERTICAL_MARGIN, world.getMaxHeight() - 1);
+
+        List<ChunkSnapshot> snapshots = snapshotCache.capture(world, minX, minZ, maxX, maxZ);
+        route.planning = true;
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            long startTime = System.nanoTime();
+            WalkabilityGrid grid = buildGrid(snapshots, minX, minY, minZ, maxX, maxY, maxZ);
+            List<int[]> path = planner.findPath(grid, sx, sy, sz, route.targetX, route.targetY, route.targetZ);
+            List<int[]> waypoints = planner.toWaypoints(path, waypointSpacing);
+            long elapsedMicros = (System.nanoTime() - startTime) / 1000L;
+
+            Bukkit.getScheduler().runTask(plugin, () -> applyPlan(route, waypoints, elapsedMicros));
+        });
+    }
+
+    private void applyPlan(Route route, List<int[]> waypoints, long elapsedMicros) {
+        if (route != activeRoute) {
+            return;  // 探索中にキャンセルされた
+        }
+        route.planning = false;
+        route.segments++;
+
+        if (waypoints.isEmpty()) {
+            plugin.getLogger().info(String.format(
+                "No route found to (%d, %d, %d) in %dus, placing move marker directly",
+                route.targetX, route.targetY, route.targetZ, elapsedMicros));
+            finish(route, placeMarker(route.executor, route.targetX, route.targetY, route.targetZ));
+            return;
+        }
+
+        route.waypoints.clear();
+        route.waypoints.addAll(waypoints);
+        plugin.getLogger().info(String.format(
+            "Route planned to (%d, %d, %d): %d waypoints in %dus",
+            route.targetX, route.targetY, route.targetZ, waypoints.size(), elapsedMicros));
+        advance(route);
+    }
+
+    @Override
+    public void run() {
+        Route route = activeRoute;
+        if (route == null || route.planning) {
+            return;
+        }
+
+        if (System.currentTimeMillis() - route.startedAt > routeTimeoutMillis) {
+            plugin.getLogger().warning("Route timed out before reaching target");
+            finish(route, false);
+            return;
+        }
+
+        Location loc = botLocation.get();
+        if (loc == null || route.current == null) {
+            return;
+        }
+
+        double distance = horizontalDistance(loc, route.current);
+        if (distance <= ARRIVAL_RADIUS && Math.abs(loc.getY() - route.current[1]) < 2.5) {
+            advance(route);
+            return;
+        }
+
+        // 進捗チェック（詰まっていたら現在位置から再探索）
+        if (distance < route.bestDistance - 0.5) {
+            route.bestDistance = distance;
+            route.stalledChecks = 0;
+        } else if (++route.stalledChecks >= STALL_CHECKS) {
+            if (route.replans >= MAX_REPLANS) {
+                plugin.getLogger().warning("Bot is stuck, giving up route");
+                finish(route, false);
+                return;
+            }
+            route.replans++;
+            plugin.getLogger().info("Bot is stuck, replanning route (" + route.replans + "/" + MAX_REPLANS + ")");
+            planRoute(route);
+        }
+    }
+
+    /**
+     * 次の中継地点へマーカーを移す
+     */
+    private void advance(Route route) {
+        int[] next = route.waypoints.pollFirst();
+        if (next == null) {
+            Location loc = botLocation.get();
+            boolean reached = loc != null && horizontalDistance(loc, route.target()) <= TARGET_RADIUS;
+            if (reached || route.segments >= MAX_SEGMENTS) {
+                finish(route, reached);
+            } else {
+                // 探索範囲外の目標：到達した地点から次の区間を探索
+                planRoute(route);
+            }
+            return;
+        }
+
+        route.current = next;
+        route.bestDistance = Double.MAX_VALUE;
+        route.stalledChecks = 0;
+        if (!placeMarker(route.executor, next[0], next[1], next[2])) {
+            finish(route, false);
+        }
+    }
+
+    private boolean placeMarker(CommandSender executor, int x, int y, int z) {
+        return commandDispatcher.call(executor, DatapackFunction.XAIM, x, y, z);
+    }
+
+    private void finish(Route route, boolean success) {
+        if (route != activeRoute) {
+            return;
+        }
+        activeRoute = null;
+        route.onFinish.accept(success);
+    }
+
+    private double horizontalDistance(Location loc, int[] point) {
+        double dx = loc.getX() - (point[0] + 0.5);
+        double dz = loc.getZ() - (point[2] + 0.5);
+        return Math.sqrt(dx * dx + dz * dz);
+    }
+
+    /**
+     * スナップショットから歩行可能性グリッドを構築（非同期スレッドで実行可能）
+     */
+    static WalkabilityGrid buildGrid(List<ChunkSnapshot> snapshots,
+                                     int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        WalkabilityGrid grid = new WalkabilityGrid(minX, minY, minZ,
+            maxX - minX + 1, maxY - minY + 1, maxZ - minZ + 1);
+        grid.fill(WalkabilityGrid.BLOCKED);  // 読み込まれていないチャンクは通れない扱い
+
+        for (ChunkSnapshot snapshot : snapshots) {
+            int chunkMinX = snapshot.getX() << 4;
+            int chunkMinZ = snapshot.getZ() << 4;
+            int fromX = Math.max(minX, chunkMinX);
+            int toX = Math.min(maxX, chunkMinX + 15);
+            int fromZ = Math.max(minZ, chunkMinZ);
+            int toZ = Math.min(maxZ, chunkMinZ + 15);
+
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = fromZ; z <= toZ; z++) {
+                    for (int x = fromX; x <= toX; x++) {
+                        Material material = snapshot.getBlockType(x - chunkMinX, y, z - chunkMinZ);
+                        grid.setLocal(x - minX, y - minY, z - minZ, classify(material));
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * ブロックの種類を歩行可能性の分類に変換
+     */
+    static byte classify(Material material) {
+        switch (material) {
+            case LAVA:
+            case FIRE:
+            case SOUL_FIRE:
+            case CACTUS:
+            case MAGMA_BLOCK:
+            case SWEET_BERRY_BUSH:
+            case POWDER_SNOW:
+            case COBWEB:
+                return WalkabilityGrid.BLOCKED;
+            case WATER:
+                return WalkabilityGrid.LIQUID;
+            default:
+                return material.isSolid() ? WalkabilityGrid.SOLID : WalkabilityGrid.PASSABLE;
+        }
+    }
+
+    /**
+     * 経路追従ループを開始
+     */
+    public void startNavigationLoop() {
+        this.runTaskTimer(plugin, CHECK_INTERVAL_TICKS, CHECK_INTERVAL_TICKS);
+        plugin.getLogger().info(String.format(
+            "Route navigator started (grid radius: %d, waypoint spacing: %d)",
+            gridRadius, waypointSpacing
+        ));
+    }
+
+    /**
+     * 経路追従ループを停止
+     */
+    public void stopNavigationLoop() {
+        cancelRoute();
+        this.cancel();
+        plugin.getLogger().info("Route navigator stopped");
+    }
+
+    /**
+     * 追従中の経路
+     */
+    private static final class Route {
+        final CommandSender executor;
+        final int targetX;
+        final int targetY;
+        final int targetZ;
+        final Consumer<Boolean> onFinish;
+        final long startedAt = System.currentTimeMillis();
+        final Deque<int[]> waypoints = new ArrayDeque<>();
+        int[] current;
+        boolean planning;
+        double bestDistance = Double.MAX_VALUE;
+        int stalledChecks;
+        int replans;
+        int segments;
+
+        Route(CommandSender executor, int targetX, int targetY, int targetZ, Consumer<Boolean> onFinish) {
+            this.executor = executor;
+            this.targetX = targetX;
+            this.targetY = targetY;
+            this.targetZ = targetZ;
+            this.onFinish = onFinish;
+        }
+
+        int[] target() {
+            return new int[] {targetX, targetY, targetZ};
+        }
+    }
+}
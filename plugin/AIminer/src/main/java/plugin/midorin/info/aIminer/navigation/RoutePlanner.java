@@ -0,0 +1,274 @@
+package plugin.midorin.info.aIminer.navigation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 歩行可能性グリッド上のA*経路探索と、複数目標の巡回順序の最適化
+ * Bukkit APIに依存しないため、非同期スレッドやベンチマークから直接呼び出せる
+ */
+public class RoutePlanner {
+    private static final double STEP_UP_COST = 0.5;   // 1段登るときの追加コスト
+    private static final double DROP_COST = 0.2;      // 1段降りるごとの追加コスト
+    private static final double LIQUID_COST = 2.0;    // 水中を進むときの追加コスト
+    private static final int MAX_DROP = 3;            // 落下ダメージを受けない高さ
+    private static final int GOAL_SEARCH_RADIUS = 3;  // 目標に立てない場合の代替マス探索範囲
+    private static final int MAX_TWO_OPT_PASSES = 20;
+
+    private static final int[][] DIRECTIONS = {
+        {1, 0}, {-1, 0}, {0, 1}, {0, -1},
+        {1, 1}, {1, -1}, {-1, 1}, {-1, -1}
+    };
+
+    private final int maxExpandedNodes;
+
+    public RoutePlanner(int maxExpandedNodes) {
+        this.maxExpandedNodes = Math.max(100, maxExpandedNodes);
+    }
+
+    /**
+     * A*で経路を探索する
+     * 目標に届かない場合（探索上限・グリッド外・到達不能）は、目標に最も近づけた地点までの経路を返す
+     *
+     * @return 開始点を含む座標列 {x, y, z}。開始地点から1歩も進めない場合はnull
+     */
+    public List<int[]> findPath(WalkabilityGrid grid, int sx, int sy, int sz, int tx, int ty, int tz) {
+        int start = grid.nearestStandable(sx, sy, sz, 2);
+        if (start < 0) {
+            return null;
+        }
+        int goal = grid.nearestStandable(tx, ty, tz, GOAL_SEARCH_RADIUS);
+
+        // 目標に立てるマスがあればそこを、なければ元の目標座標を目指す
+        double goalX = goal >= 0 ? grid.xOf(goal) : tx;
+        double goalY = goal >= 0 ? grid.yOf(goal) : ty;
+        double goalZ = goal >= 0 ? grid.zOf(goal) : tz;
+
+        Map<Integer, Node> nodes = new HashMap<>();
+        PriorityQueue<Node> open = new PriorityQueue<>((a, b) -> Double.compare(a.f, b.f));
+
+        Node startNode = new Node(start, 0.0, heuristic(grid, start, goalX, goalY, goalZ), null);
+        nodes.put(start, startNode);
+        open.add(startNode);
+
+        Node best = startNode;
+        int expanded = 0;
+
+        while (!open.isEmpty() && expanded < maxExpandedNodes) {
+            Node current = open.poll();
+            if (current.closed || nodes.get(current.index) != current) {
+                continue;  // 古いエントリ
+            }
+            current.closed = true;
+            expanded++;
+
+            if (current.index == goal) {
+                return reconstruct(grid, current);
+            }
+
+            double h = current.f - current.g;
+            double bestH = best.f - best.g;
+            if (h < bestH || (h == bestH && current.g < best.g)) {
+                best = current;
+            }
+
+            int x = grid.xOf(current.index);
+            int y = grid.yOf(current.index);
+            int z = grid.zOf(current.index);
+
+            for (int[] dir : DIRECTIONS) {
+                int nx = x + dir[0];
+                int nz = z + dir[1];
+                boolean diagonal = dir[0] != 0 && dir[1] != 0;
+                double base = diagonal ? Math.sqrt(2.0) : 1.0;
+
+                // 斜め移動は角をすり抜けないよう両隣が空いている場合のみ
+                if (diagonal && !(clearColumn(grid, x + dir[0], y, z) && clearColumn(grid, x, y, z + dir[1]))) {
+                    continue;
+                }
+
+                if (grid.isStandable(nx, y, nz)) {
+                    relax(grid, nodes, open, current, grid.index(nx, y, nz), base, goalX, goalY, goalZ);
+                } else if (grid.isStandable(nx, y + 1, nz) && grid.isPassable(x, y + 2, z)) {
+                    // 1段登る
+                    relax(grid, nodes, open, current, grid.index(nx, y + 1, nz), base + STEP_UP_COST, goalX, goalY, goalZ);
+                } else if (clearColumn(grid, nx, y, nz)) {
+                    // 降りられる場所を探す
+                    for (int d = 1; d <= MAX_DROP; d++) {
+                        int ny = y - d;
+                        if (grid.isStandable(nx, ny, nz)) {
+                            relax(grid, nodes, open, current, grid.index(nx, ny, nz), base + DROP_COST * d, goalX, goalY, goalZ);
+                            break;
+                        }
+                        if (!grid.isPassable(nx, ny, nz)) {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (best == startNode) {
+            return null;
+        }
+        return reconstruct(grid, best);
+    }
+
+    private void relax(WalkabilityGrid grid, Map<Integer, Node> nodes, PriorityQueue<Node> open,
+                       Node from, int index, double stepCost,
+                       double goalX, double goalY, double goalZ) {
+        if (grid.get(grid.xOf(index), grid.yOf(index), grid.zOf(index)) == WalkabilityGrid.LIQUID) {
+            stepCost += LIQUID_COST;
+        }
+        double g = from.g + stepCost;
+        Node existing = nodes.get(index);
+        if (existing != null && (existing.closed || existing.g <= g)) {
+            return;
+        }
+        Node next = new Node(index, g, g + heuristic(grid, index, goalX, goalY, goalZ), from);
+        nodes.put(index, next);
+        open.add(next);
+    }
+
+    private boolean clearColumn(WalkabilityGrid grid, int x, int y, int z) {
+        return grid.isPassable(x, y, z) && grid.isPassable(x, y + 1, z);
+    }
+
+    private double heuristic(WalkabilityGrid grid, int index, double gx, double gy, double gz) {
+        double dx = grid.xOf(index) - gx;
+        double dy = grid.yOf(index) - gy;
+        double dz = grid.zOf(index) - gz;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private List<int[]> reconstruct(WalkabilityGrid grid, Node end) {
+        List<int[]> path = new ArrayList<>();
+        for (Node node = end; node != null; node = node.parent) {
+            path.add(new int[] {grid.xOf(node.index), grid.yOf(node.index), grid.zOf(node.index)});
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * 経路を中継地点に間引く
+     * 水平方向の進行方向が変わる地点と、maxSpacingブロックごとの地点、終点を残す
+     * （段差の昇り降りはボット自身のAIに任せる）
+     */
+    public List<int[]> toWaypoints(List<int[]> path, int maxSpacing) {
+        List<int[]> waypoints = new ArrayList<>();
+        if (path == null || path.size() < 2) {
+            return waypoints;
+        }
+        int spacing = Math.max(1, maxSpacing);
+        int sinceLast = 0;
+        for (int i = 1; i < path.size(); i++) {
+            sinceLast++;
+            int[] point = path.get(i);
+            boolean isLast = i == path.size() - 1;
+            boolean turns = !isLast && !sameDirection(path.get(i - 1), point, path.get(i + 1));
+            if (isLast || turns || sinceLast >= spacing) {
+                waypoints.add(point);
+                sinceLast = 0;
+            }
+        }
+        return waypoints;
+    }
+
+    private boolean sameDirection(int[] a, int[] b, int[] c) {
+        return b[0] - a[0] == c[0] - b[0]
+            && b[2] - a[2] == c[2] - b[2];
+    }
+
+    /**
+     * 複数の目標を回る順序を決める（最近傍法で初期解を作り、2-optで改善）
+     * 開始地点は固定、終点は自由な開路として扱う
+     *
+     * @return targetsのインデックスを訪問順に並べた配列
+     */
+    public int[] orderTargets(int[] start, List<int[]> targets) {
+        int n = targets.size();
+        int[] order = new int[n];
+        if (n == 0) {
+            return order;
+        }
+
+        // 最近傍法
+        boolean[] used = new boolean[n];
+        int[] current = start;
+        for (int i = 0; i < n; i++) {
+            int nearest = -1;
+            double nearestDist = Double.MAX_VALUE;
+            for (int j = 0; j < n; j++) {
+                if (used[j]) {
+                    continue;
+                }
+                double d = distance(current, targets.get(j));
+                if (d < nearestDist) {
+                    nearestDist = d;
+                    nearest = j;
+                }
+            }
+            used[nearest] = true;
+            order[i] = nearest;
+            current = targets.get(nearest);
+        }
+
+        // 2-opt（区間[i, j]を反転して総距離が縮むなら採用）
+        boolean improved = true;
+        for (int pass = 0; improved && pass < MAX_TWO_OPT_PASSES; pass++) {
+            improved = false;
+            for (int i = 0; i < n - 1; i++) {
+                int[] before = i == 0 ? start : targets.get(order[i - 1]);
+                for (int j = i + 1; j < n; j++) {
+                    int[] first = targets.get(order[i]);
+                    int[] last = targets.get(order[j]);
+                    double delta = distance(before, last) - distance(before, first);
+                    if (j + 1 < n) {
+                        int[] after = targets.get(order[j + 1]);
+                        delta += distance(first, after) - distance(last, after);
+                    }
+                    if (delta < -1e-9) {
+                        reverse(order, i, j);
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    private void reverse(int[] order, int from, int to) {
+        while (from < to) {
+            int tmp = order[from];
+            order[from++] = order[to];
+            order[to--] = tmp;
+        }
+    }
+
+    private double distance(int[] a, int[] b) {
+        double dx = a[0] - b[0];
+        double dy = a[1] - b[1];
+        double dz = a[2] - b[2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private static final class Node {
+        final int index;
+        final double g;
+        final double f;
+        final Node parent;
+        boolean closed;
+
+        Node(int index, double g, double f, Node parent) {
+            this.index = index;
+            this.g = g;
+            this.f = f;
+            this.parent = parent;
+        }
+    }
+}
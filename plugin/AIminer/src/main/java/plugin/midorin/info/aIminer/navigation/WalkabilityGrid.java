@@ -0,0 +1,170 @@
+package plugin.midorin.info.aIminer.navigation;
+
+import java.util.Arrays;
+
+/**
+ * 経路探索用の歩行可能性グリッド
+ * ブロックごとに1バイトの分類だけを保持し、Bukkit APIには依存しない（非同期スレッドで使用可能）
+ */
+public final class WalkabilityGrid {
+    public static final byte PASSABLE = 0;  // 空気・草など通り抜けられる
+    public static final byte SOLID = 1;     // 上に立てる
+    public static final byte LIQUID = 2;    // 水（通れるが遅い）
+    public static final byte BLOCKED = 3;   // 溶岩・サボテンなど近寄らない
+
+    private final int originX;
+    private final int originY;
+    private final int originZ;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final byte[] cells;
+
+    public WalkabilityGrid(int originX, int originY, int originZ, int sizeX, int sizeY, int sizeZ) {
+        if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) {
+            throw new IllegalArgumentException("Grid size must be positive");
+        }
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.cells = new byte[sizeX * sizeY * sizeZ];
+    }
+
+    /**
+     * ワールド座標がグリッド内かどうか
+     */
+    public boolean contains(int x, int y, int z) {
+        int lx = x - originX;
+        int ly = y - originY;
+        int lz = z - originZ;
+        return lx >= 0 && lx < sizeX && ly >= 0 && ly < sizeY && lz >= 0 && lz < sizeZ;
+    }
+
+    /**
+     * ワールド座標をセル番号に変換（範囲外は-1）
+     */
+    public int index(int x, int y, int z) {
+        if (!contains(x, y, z)) {
+            return -1;
+        }
+        return ((y - originY) * sizeZ + (z - originZ)) * sizeX + (x - originX);
+    }
+
+    public int xOf(int index) {
+        return index % sizeX + originX;
+    }
+
+    public int yOf(int index) {
+        return index / (sizeX * sizeZ) + originY;
+    }
+
+    public int zOf(int index) {
+        return (index / sizeX) % sizeZ + originZ;
+    }
+
+    /**
+     * セルの分類を取得（グリッド外はBLOCKED扱い）
+     */
+    public byte get(int x, int y, int z) {
+        int index = index(x, y, z);
+        return index < 0 ? BLOCKED : cells[index];
+    }
+
+    public void set(int x, int y, int z, byte type) {
+        int index = index(x, y, z);
+        if (index >= 0) {
+            cells[index] = type;
+        }
+    }
+
+    /**
+     * ローカル座標（原点からのオフセット）で直接書き込む（グリッド構築用）
+     */
+    public void setLocal(int lx, int ly, int lz, byte type) {
+        cells[(ly * sizeZ + lz) * sizeX + lx] = type;
+    }
+
+    /**
+     * 全セルを同じ分類で埋める（読み込まれていないチャンクをBLOCKEDにしておく用途）
+     */
+    public void fill(byte type) {
+        Arrays.fill(cells, type);
+    }
+
+    /**
+     * 体が通れるか（足元・頭の両方で使う）
+     */
+    public boolean isPassable(int x, int y, int z) {
+        byte type = get(x, y, z);
+        return type == PASSABLE || type == LIQUID;
+    }
+
+    /**
+     * その座標に立てるか（足と頭が通れて、足元が固体 or 水中）
+     */
+    public boolean isStandable(int x, int y, int z) {
+        if (!isPassable(x, y, z) || !isPassable(x, y + 1, z)) {
+            return false;
+        }
+        return get(x, y - 1, z) == SOLID || get(x, y, z) == LIQUID;
+    }
+
+    /**
+     * 指定座標の近くで立てる場所を探す（木や石の座標が目標の場合に隣接マスを返す）
+     *
+     * @return 立てるセル番号、見つからなければ-1
+     */
+    public int nearestStandable(int x, int y, int z, int radius) {
+        if (isStandable(x, y, z)) {
+            return index(x, y, z);
+        }
+        int best = -1;
+        int bestDist = Integer.MAX_VALUE;
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                for (int dx = -radius; dx <= radius; dx++) {
+                    int dist = dx * dx + dy * dy * 2 + dz * dz;  // 高さの違いは少し重く見る
+                    if (dist >= bestDist) {
+                        continue;
+                    }
+                    if (isStandable(x + dx, y + dy, z + dz)) {
+                        best = index(x + dx, y + dy, z + dz);
+                        bestDist = dist;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    public int getOriginZ() {
+        return originZ;
+    }
+
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    public int getSizeZ() {
+        return sizeZ;
+    }
+
+    public int getCellCount() {
+        return cells.length;
+    }
+}
@@ -0,0 +1,147 @@
+package plugin.midorin.info.aIminer.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * サイクルの中から使うログ（レベルの確認・件数の間引き・同じメッセージの抑制をまとめたもの）
+ * 出力は「イベント名 key=value ...」の1行にそろえる（値に空白などがあれば""で囲む）
+ * - debug: デバッグモード（ロガーのレベルがFINE以下。config.ymlのdebug）のときだけ[debug]付きのINFOで出す
+ *   （Paperのコンソールには INFO 以上しか出ないため）
+ * - sampled: サイクルごとの出来事をN回に1回だけ出す（デバッグモードでは毎回）
+ * - limited: 同じイベントを一定時間に1回だけ出し、抑えた回数を次の出力に付ける
+ * どれも出力しないときはレベルを確認するだけで、メッセージを組み立てない
+ * どのスレッドから呼んでもよい
+ */
+public final class BotLog {
+    private final Logger logger;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public BotLog(Logger logger) {
+        this.logger = logger;
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * デバッグモードか（debugの出力を組み立てる前の確認に使う）
+     */
+    public boolean isDebug() {
+        return logger.isLoggable(Level.FINE);
+    }
+
+    /**
+     * @param fields キーと値を交互に並べたもの
+     */
+    public void info(String event, Object... fields) {
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info(format(event, fields));
+        }
+    }
+
+    public void warning(String event, Object... fields) {
+        if (logger.isLoggable(Level.WARNING)) {
+            logger.warning(format(event, fields));
+        }
+    }
+
+    /**
+     * デバッグモードのときだけ出す
+     */
+    public void debug(String event, Object... fields) {
+        if (isDebug()) {
+            logger.info("[debug] " + format(event, fields));
+        }
+    }
+
+    /**
+     * イベントごとにevery回に1回だけINFOで出す（最初の1回は必ず出す）
+     */
+    public void sampled(String event, int every, Object... fields) {
+        if (!logger.isLoggable(Level.INFO)) {
+            return;
+        }
+        if (isDebug() || every <= 1) {
+            logger.info(format(event, fields));
+            return;
+        }
+        if (counter(event).count.getAndIncrement() % every == 0) {
+            logger.info(format(event, fields) + " sampled=1/" + every);
+        }
+    }
+
+    /**
+     * イベントごとにintervalMillisに1回だけ出す（抑えた回数はsuppressed=Nとして次の出力に付ける）
+     */
+    public void limited(Level level, String event, long intervalMillis, Object... fields) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        Counter counter = counter(event);
+        long suppressed;
+        synchronized (counter) {
+            long now = System.currentTimeMillis();
+            if (counter.lastMillis != 0L && now - counter.lastMillis < intervalMillis) {
+                counter.suppressed++;
+                return;
+            }
+            counter.lastMillis = now;
+            suppressed = counter.suppressed;
+            counter.suppressed = 0L;
+        }
+        String message = format(event, fields);
+        logger.log(level, suppressed > 0L ? message + " suppressed=" + suppressed : message);
+    }
+
+    private Counter counter(String event) {
+        return counters.computeIfAbsent(event, key -> new Counter());
+    }
+
+    /**
+     * 「イベント名 key=value ...」を組み立てる
+     */
+    static String format(String event, Object... fields) {
+        StringBuilder builder = new StringBuilder(event.length() + fields.length * 12).append(event);
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            builder.append(' ').append(fields[i]).append('=');
+            appendValue(builder, String.valueOf(fields[i + 1]));
+        }
+        return builder.toString();
+    }
+
+    private static void appendValue(StringBuilder builder, String value) {
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ' ' || c == '"' || c == '=' || c < 0x20;
+        }
+        if (!quote) {
+            builder.append(value);
+            return;
+        }
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    private static final class Counter {
+        final AtomicLong count = new AtomicLong();
+        long lastMillis;   // 以下はCounterのロックで保護
+        long suppressed;
+    }
+}
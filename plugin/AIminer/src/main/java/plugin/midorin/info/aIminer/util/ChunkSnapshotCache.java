@@ -0,0 +1,111 @@
+package plugin.midorin.info.aIminer.util;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * チャンクスナップショットのキャッシュ
+ * スナップショットの取得はメインスレッドで行い、読み取りは非同期スレッドから安全に行える
+ * ブロックの変更イベントで該当チャンクを破棄し、一定時間経過したものは取り直す
+ */
+public class ChunkSnapshotCache implements Listener {
+    private final Map<Long, CachedSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final long maxAgeMillis;
+
+    public ChunkSnapshotCache(long maxAgeMillis) {
+        this.maxAgeMillis = Math.max(0L, maxAgeMillis);
+    }
+
+    /**
+     * 指定範囲（ブロック座標）を覆うチャンクのスナップショットを取得（メインスレッド専用）
+     * 読み込まれていないチャンクは含まれない
+     */
+    public List<ChunkSnapshot> capture(World world, int minX, int minZ, int maxX, int maxZ) {
+        List<ChunkSnapshot> result = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        UUID worldId = world.getUID();
+
+        for (int cx = minX >> 4; cx <= maxX >> 4; cx++) {
+            for (int cz = minZ >> 4; cz <= maxZ >> 4; cz++) {
+                if (!world.isChunkLoaded(cx, cz)) {
+                    continue;
+                }
+                long key = chunkKey(cx, cz);
+                CachedSnapshot cached = snapshots.get(key);
+                if (cached == null || !cached.worldId.equals(worldId) || now - cached.capturedAt > maxAgeMillis) {
+                    Chunk chunk = world.getChunkAt(cx, cz);
+                    cached = new CachedSnapshot(worldId, chunk.getChunkSnapshot(false, false, false), now);
+                    snapshots.put(key, cached);
+                }
+                result.add(cached.snapshot);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * ブロック座標を含むチャンクのスナップショットを破棄
+     * イベントが発生しない変更（データパックのfill等）を行った場合に呼び出す
+     */
+    public void invalidate(int blockX, int blockZ) {
+        snapshots.remove(chunkKey(blockX >> 4, blockZ >> 4));
+    }
+
+    public void clear() {
+        snapshots.clear();
+    }
+
+    public int size() {
+        return snapshots.size();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        Chunk chunk = event.getChunk();
+        snapshots.remove(chunkKey(chunk.getX(), chunk.getZ()));
+    }
+
+    private void invalidate(Block block) {
+        invalidate(block.getX(), block.getZ());
+    }
+
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xffffffffL);
+    }
+
+    private static final class CachedSnapshot {
+        final UUID worldId;
+        final ChunkSnapshot snapshot;
+        final long capturedAt;
+
+        CachedSnapshot(UUID worldId, ChunkSnapshot snapshot, long capturedAt) {
+            this.worldId = worldId;
+            this.snapshot = snapshot;
+            this.capturedAt = capturedAt;
+        }
+    }
+}
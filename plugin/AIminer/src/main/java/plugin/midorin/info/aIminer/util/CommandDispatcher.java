@@ -0,0 +1,224 @@
+package plugin.midorin.info.aIminer.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * コマンド実行を一か所にまとめるクラス
+ * - データパック関数はDatapackFunctionの組み立て済みコマンドで呼び出す（String.formatの解析を省く）
+ * - それ以外のコマンドは文字列のまま実行する
+ * - 結果を使わないコマンドはキューに溜め、1tickあたりの上限までまとめて実行する
+ * - コマンドごとの実行回数・実行時間・失敗回数を記録する
+ * メインスレッドからのみ使用する
+ */
+public class CommandDispatcher extends BukkitRunnable {
+    private static final String DATAPACK_NAME_HINT = "manekinwalk";
+    private static final long FAILURE_LOG_INTERVAL_MS = 10_000L;  // 失敗のログを出す間隔
+
+    private final JavaPlugin plugin;
+    private final Logger logger;
+    private final BotLog log;
+    private final int maxCommandsPerTick;
+    private final Queue<QueuedCommand> queue = new ArrayDeque<>();
+    private final Map<String, CommandStats> stats = new HashMap<>();
+
+    public CommandDispatcher(JavaPlugin plugin, int maxCommandsPerTick) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.log = new BotLog(logger);
+        this.maxCommandsPerTick = Math.max(1, maxCommandsPerTick);
+    }
+
+    /**
+     * データパック関数を即座に実行
+     */
+    public boolean call(CommandSender sender, DatapackFunction function) {
+        if (function.isPositional()) {
+            throw new IllegalArgumentException(function + " requires x, y, z");
+        }
+        return execute(sender, function.getName(), function.command());
+    }
+
+    /**
+     * 座標引数付きのデータパック関数を即座に実行
+     */
+    public boolean call(CommandSender sender, DatapackFunction function, int x, int y, int z) {
+        if (!function.isPositional()) {
+            throw new IllegalArgumentException(function + " takes no arguments");
+        }
+        return execute(sender, function.getName(), function.command(x, y, z));
+    }
+
+    /**
+     * 任意のコマンド文字列を即座に実行（データパック関数以外用）
+     */
+    public boolean dispatch(CommandSender sender, String command) {
+        return execute(sender, statsKey(command), command);
+    }
+
+    /**
+     * 結果を使わないコマンドをキューに追加（次のtick以降にまとめて実行）
+     */
+    public void enqueue(CommandSender sender, String command) {
+        queue.add(new QueuedCommand(sender, command));
+    }
+
+    @Override
+    public void run() {
+        for (int i = 0; i < maxCommandsPerTick && !queue.isEmpty(); i++) {
+            QueuedCommand queued = queue.poll();
+            execute(queued.sender, statsKey(queued.command), queued.command);
+        }
+    }
+
+    private boolean execute(CommandSender sender, String key, String command) {
+        CommandSender executor = sender != null ? sender : Bukkit.getConsoleSender();
+        log.debug("command.dispatch", "sender", executor.getName(), "command", command);
+
+        long start = System.nanoTime();
+        boolean success;
+        try {
+            success = Bukkit.dispatchCommand(executor, command);
+        } catch (RuntimeException e) {
+            log.limited(Level.WARNING, "command.failed", FAILURE_LOG_INTERVAL_MS, "command", command, "error", e.getMessage());
+            success = false;
+        }
+        stats.computeIfAbsent(key, CommandStats::new).record(System.nanoTime() - start, success);
+        return success;
+    }
+
+    /**
+     * データパックが有効か確認する（無効なら警告だけ出す。関数の呼び出しはそのまま失敗として記録される）
+     */
+    private void checkDatapack() {
+        try {
+            boolean found = Bukkit.getDatapackManager().getEnabledPacks().stream()
+                .anyMatch(pack -> pack.getName().toLowerCase(Locale.ROOT).contains(DATAPACK_NAME_HINT));
+            if (!found) {
+                logger.warning("Datapack '" + DATAPACK_NAME_HINT + "' is not enabled; bot functions may fail");
+            }
+        } catch (RuntimeException | LinkageError e) {
+            // DatapackManagerが使えない環境では確認を省略する
+            logger.fine("Datapack check unavailable: " + e.getMessage());
+        }
+    }
+
+    private String statsKey(String command) {
+        int space = command.indexOf(' ');
+        String head = space < 0 ? command : command.substring(0, space);
+        if (head.equals("function") && space >= 0) {
+            int end = command.indexOf(' ', space + 1);
+            String target = end < 0 ? command.substring(space + 1) : command.substring(space + 1, end);
+            int colon = target.indexOf(':');
+            return colon < 0 ? target : target.substring(colon + 1);
+        }
+        return head;
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * 合計実行時間の長い順に統計を返す
+     */
+    public List<CommandStats> getStats() {
+        List<CommandStats> list = new ArrayList<>(stats.values());
+        list.sort(Comparator.comparingLong(CommandStats::getTotalNanos).reversed());
+        return list;
+    }
+
+    public void resetStats() {
+        stats.clear();
+    }
+
+    /**
+     * キュー処理ループを開始（毎tick）
+     */
+    public void startDispatchLoop() {
+        checkDatapack();
+        this.runTaskTimer(plugin, 1L, 1L);
+    }
+
+    /**
+     * キュー処理ループを停止（残りのコマンドはその場で実行する）
+     */
+    public void stopDispatchLoop() {
+        this.cancel();
+        while (!queue.isEmpty()) {
+            QueuedCommand queued = queue.poll();
+            execute(queued.sender, statsKey(queued.command), queued.command);
+        }
+    }
+
+    private static final class QueuedCommand {
+        final CommandSender sender;
+        final String command;
+
+        QueuedCommand(CommandSender sender, String command) {
+            this.sender = sender;
+            this.command = command;
+        }
+    }
+
+    /**
+     * コマンド1種類ごとの実行統計
+     */
+    public static final class CommandStats {
+        private final String name;
+        private long count;
+        private long failures;
+        private long totalNanos;
+        private long maxNanos;
+
+        CommandStats(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos, boolean success) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            if (!success) {
+                failures++;
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public double getAverageMicros() {
+            return count == 0 ? 0.0 : totalNanos / 1000.0 / count;
+        }
+
+        public double getMaxMicros() {
+            return maxNanos / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package plugin.midorin.info.aIminer.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 知覚 → 思考 → 行動の1サイクルを区間（スパン）単位で記録するトレーサー
+ * - 視覚更新・AI処理のサイクルごとにトレースIDを振り、各段階のスパンにIDを付ける
+ * - AIが計画したタスクには計画時にリンクIDを振ってトレースに結び付け、実行されたスパンと矢印（flow）でつなぐ
+ *   （タスクIDは消えたタスクの番号が使い回されるため、リンク・矢印のIDには使わない）
+ * 終わったスパンは固定長のリングバッファに入れ（古いものから上書き）、
+ * Chromeのトレース形式（chrome://tracing・Perfetto）のJSONで書き出す
+ * スパンはどのスレッドからでも開始・終了できる
+ */
+public class CycleTracer {
+    private static final int MAX_TASK_LINKS = 1024;
+    private static final Span NOOP = new Span(null, "", 0L);
+
+    private final boolean enabled;
+    private final Path exportPath;
+    private final Span[] ring;
+    private final long originNanos = System.nanoTime();
+    private final long originEpochMicros = System.currentTimeMillis() * 1000L;
+    private long written = 0L;   // これまでに入れたスパンの数（ringのロックで保護）
+    private long nextTraceId = 1L;
+    private long nextLinkId = 1L;   // taskLinksのロックで保護
+    // リンクID → 計画したトレース（古いものから捨てる）
+    private final Map<Long, TaskLink> taskLinks = new LinkedHashMap<>(64, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TaskLink> eldest) {
+            return size() > MAX_TASK_LINKS;
+        }
+    };
+    private final Map<String, Long> latestTraces = new ConcurrentHashMap<>();
+
+    /**
+     * @param capacity 保持するスパンの数
+     * @param exportPath exportChromeTraceの書き出し先
+     */
+    public CycleTracer(boolean enabled, int capacity, Path exportPath) {
+        this.enabled = enabled;
+        this.exportPath = exportPath;
+        this.ring = new Span[enabled ? Math.max(16, capacity) : 0];
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 新しいサイクルのトレースIDを振る（無効なら0）
+     */
+    public synchronized long newTraceId() {
+        return enabled ? nextTraceId++ : 0L;
+    }
+
+    /**
+     * スパンを開始する（呼び出したスレッドのスパンとして記録する）
+     * 無効な場合は何もしないスパンを返す
+     */
+    public Span start(String name, long traceId) {
+        return enabled ? new Span(this, name, traceId) : NOOP;
+    }
+
+    /**
+     * 種類ごとに直近で終わったサイクルのトレースIDを記録する（"vision"など）
+     * 後の段階のスパンから、どの知覚を元にしたかを参照するために使う
+     */
+    public void setLatest(String key, long traceId) {
+        if (enabled) {
+            latestTraces.put(key, traceId);
+        }
+    }
+
+    public long getLatest(String key) {
+        return latestTraces.getOrDefault(key, 0L);
+    }
+
+    /**
+     * 計画したタスクをトレースに結び付ける
+     *
+     * @return 新しいリンクID（単調増加。タスクに持たせ、矢印のIDにも使う。無効なら0）
+     */
+    public long linkTask(long traceId) {
+        if (!enabled) {
+            return 0L;
+        }
+        synchronized (taskLinks) {
+            long linkId = nextLinkId++;
+            taskLinks.put(linkId, new TaskLink(traceId, System.nanoTime()));
+            return linkId;
+        }
+    }
+
+    /**
+     * リンクしたトレースのID（分からなければ0）
+     */
+    public long traceOfLink(long linkId) {
+        synchronized (taskLinks) {
+            TaskLink link = taskLinks.get(linkId);
+            return link != null ? link.traceId : 0L;
+        }
+    }
+
+    /**
+     * リンクしてからの経過時間（ミリ秒、分からなければ-1）
+     */
+    public double millisSinceLinked(long linkId) {
+        synchronized (taskLinks) {
+            TaskLink link = taskLinks.get(linkId);
+            return link != null ? (System.nanoTime() - link.linkedNanos) / 1_000_000.0 : -1.0;
+        }
+    }
+
+    private void record(Span span) {
+        synchronized (ring) {
+            ring[(int) (written % ring.length)] = span;
+            written++;
+        }
+    }
+
+    /**
+     * 保持しているスパン（古い順）
+     */
+    public List<Span> snapshot() {
+        synchronized (ring) {
+            int count = (int) Math.min(written, ring.length);
+            List<Span> spans = new ArrayList<>(count);
+            for (long i = written - count; i < written; i++) {
+                spans.add(ring[(int) (i % ring.length)]);
+            }
+            return spans;
+        }
+    }
+
+    public int size() {
+        synchronized (ring) {
+            return (int) Math.min(written, ring.length);
+        }
+    }
+
+    public void clear() {
+        synchronized (ring) {
+            Arrays.fill(ring, null);
+            written = 0L;
+        }
+    }
+
+    /**
+     * Chromeのトレース形式に変換する（スレッドごとに行を分け、計画からタスクへ矢印を引く）
+     */
+    public JsonObject toChromeTrace() {
+        List<Span> spans = snapshot();
+        JsonArray events = new JsonArray();
+        Map<String, Integer> threadIds = new HashMap<>();
+        for (Span span : spans) {
+            Integer tid = threadIds.get(span.thread);
+            if (tid == null) {
+                tid = threadIds.size() + 1;
+                threadIds.put(span.thread, tid);
+                JsonObject metadata = new JsonObject();
+                metadata.addProperty("name", "thread_name");
+                metadata.addProperty("ph", "M");
+                metadata.addProperty("pid", 1);
+                metadata.addProperty("tid", tid);
+                JsonObject args = new JsonObject();
+                args.addProperty("name", span.thread);
+                metadata.add("args", args);
+                events.add(metadata);
+            }
+
+            JsonObject event = new JsonObject();
+            event.addProperty("name", span.name);
+            event.addProperty("cat", category(span.name));
+            event.addProperty("ph", "X");
+            event.addProperty("ts", micros(span.startNanos));
+            event.addProperty("dur", Math.max(0.001, (span.endNanos - span.startNanos) / 1000.0));
+            event.addProperty("pid", 1);
+            event.addProperty("tid", tid);
+            JsonObject args = new JsonObject();
+            args.addProperty("trace", span.traceId);
+            for (Map.Entry<String, Object> arg : span.args.entrySet()) {
+                Object value = arg.getValue();
+                if (value instanceof Number number) {
+                    args.addProperty(arg.getKey(), number);
+                } else if (value instanceof Boolean bool) {
+                    args.addProperty(arg.getKey(), bool);
+                } else {
+                    args.addProperty(arg.getKey(), String.valueOf(value));
+                }
+            }
+            event.add("args", args);
+            events.add(event);
+
+            // 計画 → タスクの矢印（開始は計画スパンの終わり、終了はタスクスパンの始まり）
+            for (long linkId : span.flowsOut) {
+                events.add(flowEvent("s", linkId, micros(span.endNanos) - 0.001, tid));
+            }
+            if (span.flowIn != 0L) {
+                JsonObject finish = flowEvent("f", span.flowIn, micros(span.startNanos), tid);
+                finish.addProperty("bp", "e");
+                events.add(finish);
+            }
+        }
+
+        JsonObject trace = new JsonObject();
+        trace.add("traceEvents", events);
+        trace.addProperty("displayTimeUnit", "ms");
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("origin-epoch-micros", originEpochMicros);
+        trace.add("otherData", metadata);
+        return trace;
+    }
+
+    /**
+     * Chromeのトレース形式でファイルに書き出す（一時ファイルに書いてから置き換える）
+     *
+     * @return 書き出したファイル
+     */
+    public Path exportChromeTrace() throws IOException {
+        JsonObject trace = toChromeTrace();
+        Files.createDirectories(exportPath.toAbsolutePath().getParent());
+        Path tempPath = exportPath.resolveSibling(exportPath.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            new Gson().toJson(trace, writer);
+        }
+        Files.move(tempPath, exportPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return exportPath;
+    }
+
+    private double micros(long nanos) {
+        return (nanos - originNanos) / 1000.0;
+    }
+
+    private static String category(String name) {
+        int dot = name.indexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static JsonObject flowEvent(String phase, long linkId, double ts, int tid) {
+        JsonObject event = new JsonObject();
+        event.addProperty("name", "plan");
+        event.addProperty("cat", "flow");
+        event.addProperty("ph", phase);
+        event.addProperty("id", linkId);
+        event.addProperty("ts", ts);
+        event.addProperty("pid", 1);
+        event.addProperty("tid", tid);
+        return event;
+    }
+
+    private static final class TaskLink {
+        final long traceId;
+        final long linkedNanos;
+
+        TaskLink(long traceId, long linkedNanos) {
+            this.traceId = traceId;
+            this.linkedNanos = linkedNanos;
+        }
+    }
+
+    /**
+     * 1つの区間（end()で記録される。開始したスレッド以外から終了してもよい）
+     */
+    public static final class Span {
+        private final CycleTracer tracer;
+        private final String name;
+        private final long traceId;
+        private final String thread;
+        private final long startNanos;
+        private long endNanos;
+        private final Map<String, Object> args = new LinkedHashMap<>();
+        private final List<Long> flowsOut = new ArrayList<>();
+        private long flowIn;
+
+        Span(CycleTracer tracer, String name, long traceId) {
+            this.tracer = tracer;
+            this.name = name;
+            this.traceId = traceId;
+            this.thread = Thread.currentThread().getName();
+            this.startNanos = System.nanoTime();
+        }
+
+        public long getTraceId() {
+            return traceId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getDurationMillis() {
+            return (endNanos - startNanos) / 1_000_000.0;
+        }
+
+        /**
+         * 付加情報（数値・真偽値・文字列）
+         */
+        public Span arg(String key, Object value) {
+            if (tracer != null) {
+                args.put(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * このスパンで計画したタスクのリンクID（タスク側はflowFromで受ける）
+         */
+        public Span flowTo(long linkId) {
+            if (tracer != null && linkId != 0L) {
+                flowsOut.add(linkId);
+            }
+            return this;
+        }
+
+        /**
+         * このスパンが実行したタスクのリンクID（計画したスパンからの矢印を受ける。0なら矢印なし）
+         */
+        public Span flowFrom(long linkId) {
+            if (tracer != null) {
+                flowIn = linkId;
+            }
+            return this;
+        }
+
+        public void end() {
+            if (tracer == null || endNanos != 0L) {
+                return;
+            }
+            endNanos = System.nanoTime();
+            tracer.record(this);
+        }
+    }
+}
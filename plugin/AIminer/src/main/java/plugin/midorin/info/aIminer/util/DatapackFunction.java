@@ -0,0 +1,55 @@
+package plugin.midorin.info.aIminer.util;
+
+/**
+ * プラグインから呼び出すデータパック関数の一覧
+ * コマンド文字列の固定部分（"function imuzen127x74:xxx"）を起動時に一度だけ組み立てておく
+ */
+public enum DatapackFunction {
+    SUMMANEKIN("summanekin", false),
+    SUMPIG("sumpig", false),
+    OAKSET("oakset", true),
+    XOAK_ON("xoak_on", false),
+    STONESET("stoneset", true),
+    XSTONE_ON("xstone_on", false),
+    XAIM("xaim", true);
+
+    public static final String NAMESPACE = "imuzen127x74";
+
+    private final String name;
+    private final boolean positional;  // マクロ引数 {x, y, z} を取るかどうか
+    private final String command;
+
+    DatapackFunction(String name, boolean positional) {
+        this.name = name;
+        this.positional = positional;
+        this.command = "function " + NAMESPACE + ":" + name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isPositional() {
+        return positional;
+    }
+
+    /**
+     * 引数なしのコマンド文字列
+     */
+    public String command() {
+        return command;
+    }
+
+    /**
+     * 座標をマクロ引数（NBTコンパウンド）として付けたコマンド文字列
+     */
+    public String command(int x, int y, int z) {
+        return new StringBuilder(command.length() + 32)
+            .append(command)
+            .append(" {x:").append(x)
+            .append(",y:").append(y)
+            .append(",z:").append(z)
+            .append('}')
+            .toString();
+    }
+}
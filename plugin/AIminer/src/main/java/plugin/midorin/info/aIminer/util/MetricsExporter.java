@@ -0,0 +1,75 @@
+package plugin.midorin.info.aIminer.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * 計測値をPrometheusのテキスト形式でファイルに書き出す
+ * テキストはメインスレッドで作り（ゲージがメインスレッドの状態を読むため）、書き込みは非同期で行う
+ * 定期的に書き出せば、node_exporterのtextfile collectorなどから読める
+ */
+public class MetricsExporter extends BukkitRunnable {
+    private final JavaPlugin plugin;
+    private final MetricsRegistry metrics;
+    private final Path path;
+    private final int intervalSeconds;
+
+    /**
+     * @param intervalSeconds 定期書き出しの間隔（0で定期書き出しなし）
+     */
+    public MetricsExporter(JavaPlugin plugin, MetricsRegistry metrics, Path path, int intervalSeconds) {
+        this.plugin = plugin;
+        this.metrics = metrics;
+        this.path = path;
+        this.intervalSeconds = Math.max(0, intervalSeconds);
+    }
+
+    @Override
+    public void run() {
+        export();
+    }
+
+    /**
+     * 現在の計測値を書き出す（メインスレッドから呼ぶ）
+     */
+    public void export() {
+        String text = metrics.toPrometheusText();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                MetricsRegistry.writeFile(path, text);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to write metrics: " + e.getMessage());
+            }
+        });
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * 定期書き出しを開始
+     */
+    public void startExportLoop() {
+        if (intervalSeconds == 0) {
+            return;
+        }
+        long intervalTicks = intervalSeconds * 20L;
+        this.runTaskTimer(plugin, intervalTicks, intervalTicks);
+        plugin.getLogger().info(String.format("Metrics export started (every %d seconds to %s)",
+            intervalSeconds, path.getFileName()));
+    }
+
+    /**
+     * 定期書き出しを停止
+     */
+    public void stopExportLoop() {
+        if (intervalSeconds > 0) {
+            this.cancel();
+        }
+    }
+}
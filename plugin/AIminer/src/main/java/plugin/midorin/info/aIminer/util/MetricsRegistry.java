@@ -0,0 +1,377 @@
+package plugin.midorin.info.aIminer.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * プラグイン内の計測値（カウンター・ゲージ・ヒストグラム）の登録先
+ * 名前とラベルの組ごとに1つの計測値を持ち、同じ組で取得すると同じものを返す
+ * （呼び出し側は取得した計測値をフィールドに持っておき、記録のたびに引かない）
+ * 記録はどのスレッドからでも行える。ゲージはメインスレッドの状態を読むため、
+ * 一覧・書き出し（toPrometheusText）はメインスレッドから呼ぶ
+ */
+public class MetricsRegistry {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    // 名前 → ラベル → 計測値（登録順）
+    private final Map<String, Map<String, Metric>> families = new LinkedHashMap<>();
+
+    /**
+     * 単調増加するカウンター
+     *
+     * @param labels ラベル名と値を交互に並べたもの
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return register(name, labels, () -> new Counter(name, help, labels), Counter.class);
+    }
+
+    /**
+     * 読み出すたびにvalueを呼ぶゲージ（同じ組で登録し直すと置き換える）
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        synchronized (families) {
+            Map<String, Metric> family = family(name, Gauge.class);
+            family.put(labelText(labels), new Gauge(name, help, labels, value));
+        }
+    }
+
+    /**
+     * 値の分布を記録するヒストグラム
+     *
+     * @param unit 記録した値を書き出すときに掛ける倍率
+     */
+    public Histogram histogram(String name, String help, double unit, String... labels) {
+        return register(name, labels, () -> new Histogram(name, help, labels, unit), Histogram.class);
+    }
+
+    /**
+     * ナノ秒で記録し、秒で書き出すヒストグラム
+     */
+    public Histogram timer(String name, String help, String... labels) {
+        return histogram(name, help, 1e-9, labels);
+    }
+
+    private <T extends Metric> T register(String name, String[] labels, Supplier<T> factory,
+                                          Class<T> type) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs: " + name);
+        }
+        synchronized (families) {
+            Metric metric = family(name, type).computeIfAbsent(labelText(labels), key -> factory.get());
+            return type.cast(metric);
+        }
+    }
+
+    private Map<String, Metric> family(String name, Class<? extends Metric> type) {
+        Map<String, Metric> family = families.computeIfAbsent(name, key -> new LinkedHashMap<>());
+        for (Metric metric : family.values()) {
+            if (!type.isInstance(metric)) {
+                throw new IllegalArgumentException("Metric " + name + " is already registered as "
+                    + metric.getClass().getSimpleName());
+            }
+        }
+        return family;
+    }
+
+    /**
+     * 登録されているすべての計測値（登録順、同じ名前のものは続けて並ぶ）
+     */
+    public List<Metric> getMetrics() {
+        List<Metric> metrics = new ArrayList<>();
+        synchronized (families) {
+            for (Map<String, Metric> family : families.values()) {
+                metrics.addAll(family.values());
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Prometheusのテキスト形式で書き出す（ヒストグラムはsummaryとして分位点を出す）
+     */
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        String currentName = null;
+        for (Metric metric : getMetrics()) {
+            if (!metric.name.equals(currentName)) {
+                currentName = metric.name;
+                out.append("# HELP ").append(metric.name).append(' ')
+                    .append(metric.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+                out.append("# TYPE ").append(metric.name).append(' ').append(metric.prometheusType()).append('\n');
+            }
+            metric.appendSamples(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * テキストをファイルに書き込む（一時ファイルに書いてから置き換える）
+     * ファイルへの書き込みだけなので、メインスレッドで作ったテキストを非同期で書いてよい
+     */
+    public static void writeFile(Path path, String text) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            writer.write(text);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String labelText(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"").append(labels[i + 1].replace("\\", "\\\\")
+                .replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        return text.append('}').toString();
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * 計測値の共通部分
+     */
+    public abstract static class Metric {
+        private final String name;
+        private final String help;
+        private final String labels;
+
+        Metric(String name, String help, String[] labels) {
+            this.name = name;
+            this.help = help;
+            this.labels = labelText(labels);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHelp() {
+            return help;
+        }
+
+        /**
+         * {name="value",...} の形式（ラベルがなければ空文字列）
+         */
+        public String getLabels() {
+            return labels;
+        }
+
+        abstract String prometheusType();
+
+        abstract void appendSamples(StringBuilder out);
+    }
+
+    /**
+     * カウンター
+     */
+    public static final class Counter extends Metric {
+        private final LongAdder value = new LongAdder();
+
+        Counter(String name, String help, String[] labels) {
+            super(name, help, labels);
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            if (amount > 0) {
+                value.add(amount);
+            }
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        String prometheusType() {
+            return "counter";
+        }
+
+        @Override
+        void appendSamples(StringBuilder out) {
+            out.append(getName()).append(getLabels()).append(' ').append(get()).append('\n');
+        }
+    }
+
+    /**
+     * ゲージ（読み出すときに値を取得する）
+     */
+    public static final class Gauge extends Metric {
+        private final DoubleSupplier value;
+
+        Gauge(String name, String help, String[] labels, DoubleSupplier value) {
+            super(name, help, labels);
+            this.value = value;
+        }
+
+        public double get() {
+            try {
+                return value.getAsDouble();
+            } catch (RuntimeException e) {
+                return Double.NaN;
+            }
+        }
+
+        @Override
+        String prometheusType() {
+            return "gauge";
+        }
+
+        @Override
+        void appendSamples(StringBuilder out) {
+            out.append(getName()).append(getLabels()).append(' ').append(format(get())).append('\n');
+        }
+    }
+
+    /**
+     * ヒストグラム（HdrHistogramと同じ考え方の対数線形バケット）
+     * 2のべき乗の区間ごとに16個のバケットを持つため、分位点の誤差は値の約6%以内
+     * 負の値は0として記録する
+     */
+    public static final class Histogram extends Metric {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+        private final double unit;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name, String help, String[] labels, double unit) {
+            super(name, help, labels);
+            this.unit = unit;
+        }
+
+        public void record(long value) {
+            long v = Math.max(0L, value);
+            counts.incrementAndGet(bucket(v));
+            count.increment();
+            sum.add(v);
+            max.accumulateAndGet(v, Math::max);
+        }
+
+        /**
+         * System.nanoTime()で取った開始時刻からの経過時間を記録する
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * 書き出し単位での合計・平均・最大
+         */
+        public double getSum() {
+            return sum.sum() * unit;
+        }
+
+        public double getMean() {
+            long n = getCount();
+            return n > 0 ? getSum() / n : 0.0;
+        }
+
+        public double getMax() {
+            return max.get() * unit;
+        }
+
+        /**
+         * 書き出し単位での分位点（記録がなければ0）
+         *
+         * @param quantile 0.0〜1.0
+         */
+        public double getQuantile(double quantile) {
+            long n = getCount();
+            if (n == 0) {
+                return 0.0;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(quantile * n));
+            long seen = 0L;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    // バケットの中央（最大値は超えない）
+                    return Math.min(lowerBound(i) + (bucketWidth(i) - 1) / 2.0, max.get()) * unit;
+                }
+            }
+            return getMax();
+        }
+
+        private static int bucket(long value) {
+            if (value < SUB_BUCKETS * 2) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+        }
+
+        private static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS * 2) {
+                return bucket;
+            }
+            int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+            return (long) (bucket - (shift << SUB_BUCKET_BITS)) << shift;
+        }
+
+        private static long bucketWidth(int bucket) {
+            return bucket < SUB_BUCKETS * 2 ? 1L : 1L << ((bucket >>> SUB_BUCKET_BITS) - 1);
+        }
+
+        @Override
+        String prometheusType() {
+            return "summary";
+        }
+
+        @Override
+        void appendSamples(StringBuilder out) {
+            String labels = getLabels();
+            for (double quantile : QUANTILES) {
+                String quantileLabel = "quantile=\"" + quantile + "\"";
+                out.append(getName())
+                    .append(labels.isEmpty() ? "{" + quantileLabel + "}"
+                        : labels.substring(0, labels.length() - 1) + "," + quantileLabel + "}")
+                    .append(' ').append(format(getQuantile(quantile))).append('\n');
+            }
+            out.append(getName()).append("_sum").append(labels).append(' ').append(format(getSum())).append('\n');
+            out.append(getName()).append("_count").append(labels).append(' ').append(getCount()).append('\n');
+        }
+    }
+}
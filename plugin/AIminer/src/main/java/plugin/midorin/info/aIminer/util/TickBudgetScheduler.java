@@ -0,0 +1,333 @@
+package plugin.midorin.info.aIminer.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AIminerのメインスレッド処理をtickごとの時間予算内に収めるスケジューラー
+ * 登録されたジョブは周期ごとに開始され、小さなステップに分けてラウンドロビンで実行される
+ * - 1tickで使う時間が予算（既定2ms）を超えたら残りは次のtickに回す
+ * - サーバーのMSPTが高い間は実行を見送る（長く待たされたジョブだけ1ステップ進める）
+ * メインスレッドからのみ使用する
+ */
+public class TickBudgetScheduler extends BukkitRunnable {
+    private static final int STATS_WINDOW_TICKS = 100;  // 使用率の平均を取るtick数
+
+    /**
+     * 1ステップの実行結果
+     */
+    public enum Step {
+        DONE,       // この周期の処理は完了
+        CONTINUE,   // 続きがある（予算が残っていれば同じtickで続ける）
+        NEXT_TICK   // 続きがあるが次のtickまで待つ（コマンド結果の待機など）
+    }
+
+    /**
+     * スケジューラーで実行する処理
+     */
+    public interface BudgetedTask {
+        /**
+         * 周期が来たときに呼ばれる
+         *
+         * @return この周期で処理する作業がある場合true
+         */
+        boolean begin();
+
+        /**
+         * 作業を1ステップ進める（1回の呼び出しは短時間で終わること）
+         */
+        Step step();
+    }
+
+    private final JavaPlugin plugin;
+    private final MetricsRegistry metrics;
+    private final long budgetNanos;
+    private final double msptThreshold;
+    private final int maxDeferTicks;
+    private final List<Job> jobs = new ArrayList<>();
+
+    private long currentTick = 0L;
+    private int cursor = 0;
+
+    // 統計
+    private final long[] usedNanosWindow = new long[STATS_WINDOW_TICKS];
+    private long totalDeferrals = 0L;
+    private long highMsptTicks = 0L;
+    private long overBudgetTicks = 0L;
+
+    public TickBudgetScheduler(JavaPlugin plugin, MetricsRegistry metrics, double budgetMillis, double msptThreshold,
+                               int maxDeferTicks) {
+        this.plugin = plugin;
+        this.metrics = metrics;
+        this.budgetNanos = (long) (Math.max(0.1, budgetMillis) * 1_000_000L);
+        this.msptThreshold = msptThreshold;
+        this.maxDeferTicks = Math.max(1, maxDeferTicks);
+    }
+
+    /**
+     * ジョブを登録
+     *
+     * @param intervalTicks 周期（tick）。前の周期が終わっていなければ次の周期は始まらない
+     * @param initialDelayTicks 最初の周期までの待ち（tick）
+     */
+    public void register(String name, BudgetedTask task, long intervalTicks, long initialDelayTicks) {
+        unregister(name);
+        jobs.add(new Job(name, task, Math.max(1L, intervalTicks), currentTick + Math.max(0L, initialDelayTicks),
+            metrics.timer("aiminer_main_thread_step_seconds", "Main-thread time per scheduler step", "job", name)));
+    }
+
+    public void unregister(String name) {
+        jobs.removeIf(job -> job.name.equals(name));
+        cursor = 0;
+    }
+
+    /**
+     * 登録済みジョブの周期を待たずに、次のtickで開始させる
+     */
+    public void triggerNow(String name) {
+        for (Job job : jobs) {
+            if (job.name.equals(name) && !job.active) {
+                job.nextDueTick = currentTick;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        currentTick++;
+
+        // 周期が来たジョブを開始
+        for (Job job : jobs) {
+            if (!job.active && currentTick >= job.nextDueTick) {
+                job.nextDueTick = currentTick + job.intervalTicks;
+                if (job.task.begin()) {
+                    job.active = true;
+                    job.waitingSince = currentTick;
+                    job.cycles++;
+                }
+            }
+            job.yielded = false;
+        }
+
+        boolean highMspt = msptThreshold > 0 && Bukkit.getAverageTickTime() > msptThreshold;
+        if (highMspt) {
+            highMsptTicks++;
+        }
+
+        long tickStart = System.nanoTime();
+        long used = 0L;
+        int size = jobs.size();
+        boolean progressed = true;
+
+        // 予算が尽きるまで、実行可能なジョブを1ステップずつ順番に進める
+        while (progressed && size > 0) {
+            progressed = false;
+            for (int i = 0; i < size; i++) {
+                Job job = jobs.get((cursor + i) % size);
+                if (!job.active || job.yielded) {
+                    continue;
+                }
+                boolean starving = currentTick - job.waitingSince >= maxDeferTicks;
+                if ((highMspt || used >= budgetNanos) && !starving) {
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                Step result;
+                try {
+                    result = job.task.step();
+                } catch (RuntimeException e) {
+                    plugin.getLogger().warning("Scheduled job '" + job.name + "' failed: " + e.getMessage());
+                    result = Step.DONE;
+                }
+                long elapsed = System.nanoTime() - start;
+                used += elapsed;
+                job.record(elapsed);
+                job.steppedTick = currentTick;
+                job.waitingSince = currentTick;
+                progressed = true;
+
+                if (result == Step.DONE) {
+                    job.active = false;
+                } else if (result == Step.NEXT_TICK) {
+                    job.yielded = true;
+                }
+            }
+            cursor = size == 0 ? 0 : (cursor + 1) % size;
+        }
+
+        // 実行できずに持ち越したジョブを数える
+        for (Job job : jobs) {
+            if (job.active && !job.yielded && job.steppedTick != currentTick) {
+                job.deferrals++;
+                totalDeferrals++;
+            }
+        }
+
+        long tickUsed = System.nanoTime() - tickStart;
+        usedNanosWindow[(int) (currentTick % STATS_WINDOW_TICKS)] = tickUsed;
+        if (tickUsed > budgetNanos) {
+            overBudgetTicks++;
+        }
+    }
+
+    /**
+     * 直近のtickで使った時間の予算に対する平均割合（%）
+     */
+    public double getAverageBudgetUsagePercent() {
+        int samples = (int) Math.min(currentTick, STATS_WINDOW_TICKS);
+        if (samples == 0) {
+            return 0.0;
+        }
+        long total = 0L;
+        for (int i = 0; i < samples; i++) {
+            total += usedNanosWindow[i];
+        }
+        return total * 100.0 / samples / budgetNanos;
+    }
+
+    /**
+     * 直近のtickで使った最大時間（ミリ秒）
+     */
+    public double getPeakTickMillis() {
+        long peak = 0L;
+        for (long nanos : usedNanosWindow) {
+            peak = Math.max(peak, nanos);
+        }
+        return peak / 1_000_000.0;
+    }
+
+    public double getBudgetMillis() {
+        return budgetNanos / 1_000_000.0;
+    }
+
+    public long getTotalDeferrals() {
+        return totalDeferrals;
+    }
+
+    public long getHighMsptTicks() {
+        return highMsptTicks;
+    }
+
+    public long getOverBudgetTicks() {
+        return overBudgetTicks;
+    }
+
+    /**
+     * ジョブごとの統計（/bot status表示用）
+     */
+    public List<JobStats> getJobStats() {
+        List<JobStats> stats = new ArrayList<>();
+        for (Job job : jobs) {
+            stats.add(new JobStats(job.name, job.active, job.cycles, job.steps,
+                job.totalNanos, job.maxNanos, job.deferrals));
+        }
+        return stats;
+    }
+
+    /**
+     * スケジューラーを開始（毎tick）
+     */
+    public void startScheduler() {
+        this.runTaskTimer(plugin, 1L, 1L);
+        plugin.getLogger().info(String.format("Tick budget scheduler started (budget: %.1fms/tick, mspt limit: %.0fms)",
+            getBudgetMillis(), msptThreshold));
+    }
+
+    /**
+     * スケジューラーを停止
+     */
+    public void stopScheduler() {
+        this.cancel();
+        plugin.getLogger().info("Tick budget scheduler stopped");
+    }
+
+    private static final class Job {
+        final String name;
+        final BudgetedTask task;
+        final long intervalTicks;
+        final MetricsRegistry.Histogram stepTimes;
+        long nextDueTick;
+        boolean active;
+        boolean yielded;
+        long waitingSince;
+        long steppedTick = -1L;
+
+        long cycles;
+        long steps;
+        long totalNanos;
+        long maxNanos;
+        long deferrals;
+
+        Job(String name, BudgetedTask task, long intervalTicks, long nextDueTick, MetricsRegistry.Histogram stepTimes) {
+            this.name = name;
+            this.task = task;
+            this.intervalTicks = intervalTicks;
+            this.nextDueTick = nextDueTick;
+            this.stepTimes = stepTimes;
+        }
+
+        void record(long nanos) {
+            stepTimes.record(nanos);
+            steps++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+    }
+
+    /**
+     * ジョブの統計
+     */
+    public static final class JobStats {
+        private final String name;
+        private final boolean active;
+        private final long cycles;
+        private final long steps;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long deferrals;
+
+        JobStats(String name, boolean active, long cycles, long steps,
+                 long totalNanos, long maxNanos, long deferrals) {
+            this.name = name;
+            this.active = active;
+            this.cycles = cycles;
+            this.steps = steps;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.deferrals = deferrals;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public long getCycles() {
+            return cycles;
+        }
+
+        public long getSteps() {
+            return steps;
+        }
+
+        public long getDeferrals() {
+            return deferrals;
+        }
+
+        public double getAverageStepMicros() {
+            return steps == 0 ? 0.0 : totalNanos / 1000.0 / steps;
+        }
+
+        public double getMaxStepMicros() {
+            return maxNanos / 1000.0;
+        }
+    }
+}
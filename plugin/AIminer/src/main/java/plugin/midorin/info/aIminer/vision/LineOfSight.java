@@ -0,0 +1,219 @@
+package plugin.midorin.info.aIminer.vision;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import plugin.midorin.info.aIminer.util.ChunkSnapshotCache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 視線判定
+ * ボットの目の位置からブロックの中心までをボクセルDDAでたどり、途中に光を通さないブロックがあれば見えないとする
+ * （見えるブロックは必ず空気などに面しているため、掘りに行ける）
+ * 6方向すべてを光を通さないブロックに囲まれたブロックは、レイを飛ばさずに見えないとする
+ * ワールドはチャンクスナップショットから読むため、判定は非同期スレッドで行える
+ * 光を通すかどうかはセクション（16x16x16）ごとのビット列にしてキャッシュし、スナップショットが取り直されるまで使い回す
+ * （視界から外れたチャンクの分はprepareで捨てる）
+ * prepareはメインスレッド、isVisibleは非同期スレッドから呼ぶ（1回の視覚更新につき1スレッド）
+ */
+public class LineOfSight {
+    public static final double EYE_HEIGHT = 1.62;
+
+    private final ChunkSnapshotCache snapshotCache;
+    // チャンク → セクションごとの「光を通さない」ビット列（4096ビット）
+    private final Map<Long, ChunkOpacity> chunks = new HashMap<>();
+    private int minY;
+    private int maxY;
+    // 直前に引いたセクション（レイは同じセクションを続けて通るため）
+    private long lastChunkKey;
+    private int lastSectionIndex = -1;
+    private long[] lastBits;
+
+    // 統計（非同期スレッドで更新し、コマンドから読む）
+    private volatile long enclosed = 0L;      // レイを飛ばさずに見えないとしたブロック
+    private volatile long rays = 0L;
+    private volatile long blockedRays = 0L;
+    private volatile long sectionsBuilt = 0L;
+
+    public LineOfSight(ChunkSnapshotCache snapshotCache) {
+        this.snapshotCache = snapshotCache;
+    }
+
+    /**
+     * 判定に使うチャンクスナップショットを用意する（メインスレッド）
+     */
+    public void prepare(World world, int centerX, int centerZ, int radius) {
+        int worldMinY = world.getMinHeight();
+        int worldMaxY = world.getMaxHeight();
+        if (worldMinY != minY || worldMaxY != maxY) {
+            chunks.clear();
+            minY = worldMinY;
+            maxY = worldMaxY;
+        }
+        // 判定範囲は目の位置からスキャン半径 + 1（囲まれているかの確認で隣のブロックまで見る）
+        List<ChunkSnapshot> snapshots = snapshotCache.capture(world,
+            centerX - radius - 1, centerZ - radius - 1, centerX + radius + 1, centerZ + radius + 1);
+        Map<Long, ChunkOpacity> captured = new HashMap<>();
+        for (ChunkSnapshot snapshot : snapshots) {
+            long key = ChunkSnapshotCache.chunkKey(snapshot.getX(), snapshot.getZ());
+            ChunkOpacity previous = chunks.get(key);
+            // 同じスナップショットなら作ったビット列を使い回す
+            captured.put(key, previous != null && previous.snapshot == snapshot
+                ? previous : new ChunkOpacity(snapshot, (maxY - minY + 15) >> 4));
+        }
+        chunks.clear();
+        chunks.putAll(captured);
+        lastSectionIndex = -1;
+    }
+
+    /**
+     * 目の位置からブロック(x, y, z)が見えるか
+     * 読み込まれていないチャンクは空気として扱う
+     */
+    public boolean isVisible(double eyeX, double eyeY, double eyeZ, int targetX, int targetY, int targetZ) {
+        if (isEnclosed(targetX, targetY, targetZ)) {
+            enclosed++;
+            return false;
+        }
+        rays++;
+        double dirX = targetX + 0.5 - eyeX;
+        double dirY = targetY + 0.5 - eyeY;
+        double dirZ = targetZ + 0.5 - eyeZ;
+
+        int x = (int) Math.floor(eyeX);
+        int y = (int) Math.floor(eyeY);
+        int z = (int) Math.floor(eyeZ);
+        int stepX = dirX > 0 ? 1 : -1;
+        int stepY = dirY > 0 ? 1 : -1;
+        int stepZ = dirZ > 0 ? 1 : -1;
+        // 次の境界までのtと、1マス進むのに必要なt（t=1で目標の中心）
+        double deltaX = dirX != 0 ? Math.abs(1.0 / dirX) : Double.POSITIVE_INFINITY;
+        double deltaY = dirY != 0 ? Math.abs(1.0 / dirY) : Double.POSITIVE_INFINITY;
+        double deltaZ = dirZ != 0 ? Math.abs(1.0 / dirZ) : Double.POSITIVE_INFINITY;
+        double maxX = deltaX * (stepX > 0 ? x + 1 - eyeX : eyeX - x);
+        double maxY = deltaY * (stepY > 0 ? y + 1 - eyeY : eyeY - y);
+        double maxZ = deltaZ * (stepZ > 0 ? z + 1 - eyeZ : eyeZ - z);
+
+        while (x != targetX || y != targetY || z != targetZ) {
+            if (maxX < maxY && maxX < maxZ) {
+                x += stepX;
+                maxX += deltaX;
+            } else if (maxY < maxZ) {
+                y += stepY;
+                maxY += deltaY;
+            } else {
+                z += stepZ;
+                maxZ += deltaZ;
+            }
+            if (x == targetX && y == targetY && z == targetZ) {
+                return true;
+            }
+            if (isOpaque(x, y, z)) {
+                blockedRays++;
+                return false;
+            }
+            // 浮動小数点の誤差で目標を通り過ぎた場合
+            if (maxX > 1.0 + deltaX && maxY > 1.0 + deltaY && maxZ > 1.0 + deltaZ) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * ブロック(x, y, z)が光を通すブロック（空気など）に1面でも接しているか
+     */
+    public boolean isExposed(int x, int y, int z) {
+        return !isEnclosed(x, y, z);
+    }
+
+    private boolean isEnclosed(int x, int y, int z) {
+        return isOpaque(x + 1, y, z) && isOpaque(x - 1, y, z)
+            && isOpaque(x, y + 1, z) && isOpaque(x, y - 1, z)
+            && isOpaque(x, y, z + 1) && isOpaque(x, y, z - 1);
+    }
+
+    private boolean isOpaque(int x, int y, int z) {
+        if (y < minY || y >= maxY) {
+            return false;
+        }
+        long chunkKey = ChunkSnapshotCache.chunkKey(x >> 4, z >> 4);
+        int sectionIndex = (y - minY) >> 4;
+        long[] bits;
+        if (chunkKey == lastChunkKey && sectionIndex == lastSectionIndex) {
+            bits = lastBits;
+        } else {
+            bits = sectionBits(chunkKey, sectionIndex);
+            lastChunkKey = chunkKey;
+            lastSectionIndex = sectionIndex;
+            lastBits = bits;
+        }
+        if (bits == null) {
+            return false;
+        }
+        int index = ((y - minY) & 15) << 8 | (z & 15) << 4 | (x & 15);
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * セクションのビット列（チャンクが読み込まれていなければnull）
+     */
+    private long[] sectionBits(long chunkKey, int sectionIndex) {
+        ChunkOpacity chunk = chunks.get(chunkKey);
+        if (chunk == null) {
+            return null;
+        }
+        long[] bits = chunk.sections[sectionIndex];
+        if (bits == null) {
+            bits = buildSection(chunk.snapshot, minY + (sectionIndex << 4));
+            chunk.sections[sectionIndex] = bits;
+        }
+        return bits;
+    }
+
+    private long[] buildSection(ChunkSnapshot snapshot, int baseY) {
+        sectionsBuilt++;
+        long[] bits = new long[64];
+        for (int dy = 0; dy < 16; dy++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    Material material = snapshot.getBlockType(x, baseY + dy, z);
+                    if (material.isOccluding()) {
+                        int index = dy << 8 | z << 4 | x;
+                        bits[index >>> 6] |= 1L << index;
+                    }
+                }
+            }
+        }
+        return bits;
+    }
+
+    public long getEnclosed() {
+        return enclosed;
+    }
+
+    public long getRays() {
+        return rays;
+    }
+
+    public long getBlockedRays() {
+        return blockedRays;
+    }
+
+    public long getSectionsBuilt() {
+        return sectionsBuilt;
+    }
+
+    private static final class ChunkOpacity {
+        final ChunkSnapshot snapshot;
+        final long[][] sections;
+
+        ChunkOpacity(ChunkSnapshot snapshot, int sectionCount) {
+            this.snapshot = snapshot;
+            this.sections = new long[sectionCount][];
+        }
+    }
+}
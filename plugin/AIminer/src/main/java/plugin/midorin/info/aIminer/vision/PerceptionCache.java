@@ -0,0 +1,319 @@
+package plugin.midorin.info.aIminer.vision;
+
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 複数のボットで共有するブロック知覚のキャッシュ（チャンクセクション = 16x16x16ブロック単位）
+ * 最初にスキャンしたボットがセクション内の無視しないブロック（重要ブロック・通常ブロック）の位置と種類を記録し、
+ * 以降は近くのどのボットのスキャンでも再利用する
+ * - 参照カウント: 各ボットはLeaseで視界に入っているセクションを持ち、誰も持たなくなったセクションは捨てる
+ * - 無効化: ブロックの破壊・設置・爆発イベントでセクションを作り直す
+ *   データパックのコマンドによる変更（ボットの採掘など）はイベントが出ないため、一定時間で作り直す
+ * メインスレッドからのみ使用する
+ */
+public class PerceptionCache implements Listener {
+    private static final int LOCAL_BITS = 12;                 // セクション内の位置（x, y, z 各4ビット）
+    private static final Material[] MATERIALS = Material.values();
+
+    /**
+     * ブロックの種類の読み取り（通常はWorld::getType）
+     */
+    public interface BlockTypeReader {
+        Material getType(int x, int y, int z);
+    }
+
+    private final Map<UUID, Map<Long, Section>> worlds = new HashMap<>();
+    private final long maxAgeMillis;
+    private int[] buildImportant = new int[256];
+    private int[] buildNormal = new int[4096];
+
+    // 統計
+    private long builds = 0L;
+    private long reuses = 0L;
+    private long blocksRead = 0L;
+    private long invalidations = 0L;
+
+    public PerceptionCache(long maxAgeMillis) {
+        this.maxAgeMillis = Math.max(0L, maxAgeMillis);
+    }
+
+    /**
+     * ボット1体分の参照（視界に入っているセクションの集合）
+     */
+    public Lease newLease() {
+        return new Lease();
+    }
+
+    /**
+     * セクションの要約を取得する（なければ・古ければreaderで読み取って作る）
+     * Lease.hold()で参照していないセクションは、作った要約を保持しない
+     *
+     * @param sectionX チャンク座標（ブロック座標 >> 4）
+     */
+    public Summary summary(UUID worldId, int sectionX, int sectionY, int sectionZ, BlockTypeReader reader) {
+        Map<Long, Section> sections = worlds.get(worldId);
+        Section section = sections != null ? sections.get(sectionKey(sectionX, sectionY, sectionZ)) : null;
+        long now = System.currentTimeMillis();
+        if (section != null && section.summary != null && now - section.summary.builtAt <= maxAgeMillis) {
+            reuses++;
+            return section.summary;
+        }
+        Summary summary = build(sectionX << 4, sectionY << 4, sectionZ << 4, reader, now);
+        builds++;
+        if (section != null) {
+            section.summary = summary;
+        }
+        return summary;
+    }
+
+    private Summary build(int baseX, int baseY, int baseZ, BlockTypeReader reader, long now) {
+        int importantCount = 0;
+        int normalCount = 0;
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    Material material = reader.getType(baseX + x, baseY + y, baseZ + z);
+                    if (VisionScanner.IGNORED_BLOCKS.contains(material)) {
+                        continue;
+                    }
+                    int entry = (material.ordinal() << LOCAL_BITS) | (x << 8) | (y << 4) | z;
+                    if (VisionScanner.IMPORTANT_BLOCKS.contains(material)) {
+                        if (importantCount == buildImportant.length) {
+                            buildImportant = Arrays.copyOf(buildImportant, importantCount * 2);
+                        }
+                        buildImportant[importantCount++] = entry;
+                    } else {
+                        buildNormal[normalCount++] = entry;
+                    }
+                }
+            }
+        }
+        blocksRead += 4096;
+        return new Summary(Arrays.copyOf(buildImportant, importantCount), Arrays.copyOf(buildNormal, normalCount), now);
+    }
+
+    /**
+     * ブロック座標を含むセクションの要約を破棄（次のスキャンで作り直す）
+     * イベントが発生しない変更を行った場合にも呼び出せる
+     */
+    public void invalidate(UUID worldId, int blockX, int blockY, int blockZ) {
+        Map<Long, Section> sections = worlds.get(worldId);
+        if (sections == null) {
+            return;
+        }
+        Section section = sections.get(sectionKey(blockX >> 4, blockY >> 4, blockZ >> 4));
+        if (section != null && section.summary != null) {
+            section.summary = null;
+            invalidations++;
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        for (Block block : event.blockList()) {
+            invalidate(block);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        for (Block block : event.blockList()) {
+            invalidate(block);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        Chunk chunk = event.getChunk();
+        Map<Long, Section> sections = worlds.get(chunk.getWorld().getUID());
+        if (sections == null) {
+            return;
+        }
+        for (Map.Entry<Long, Section> entry : sections.entrySet()) {
+            long key = entry.getKey();
+            if (sectionX(key) == chunk.getX() && sectionZ(key) == chunk.getZ()) {
+                entry.getValue().summary = null;
+            }
+        }
+    }
+
+    private void invalidate(Block block) {
+        invalidate(block.getWorld().getUID(), block.getX(), block.getY(), block.getZ());
+    }
+
+    /**
+     * 参照されているセクションの数
+     */
+    public int size() {
+        int count = 0;
+        for (Map<Long, Section> sections : worlds.values()) {
+            count += sections.size();
+        }
+        return count;
+    }
+
+    public long getBuilds() {
+        return builds;
+    }
+
+    public long getReuses() {
+        return reuses;
+    }
+
+    /**
+     * 要約を作るために読み取ったブロック数
+     */
+    public long getBlocksRead() {
+        return blocksRead;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    static long sectionKey(int sectionX, int sectionY, int sectionZ) {
+        return ((long) (sectionX & 0x3FFFFFF) << 38) | ((long) (sectionZ & 0x3FFFFFF) << 12) | (sectionY & 0xFFF);
+    }
+
+    private static int sectionX(long key) {
+        return (int) (key >> 38);
+    }
+
+    private static int sectionZ(long key) {
+        return (int) (key << 26 >> 38);
+    }
+
+    /**
+     * 1セクション分の要約（作成後は変更しない）
+     * 各要素: Materialの序数 << 12 | セクション内のx << 8 | y << 4 | z
+     */
+    public static final class Summary {
+        private final int[] important;
+        private final int[] normal;
+        private final long builtAt;
+
+        Summary(int[] important, int[] normal, long builtAt) {
+            this.important = important;
+            this.normal = normal;
+            this.builtAt = builtAt;
+        }
+
+        public int importantCount() {
+            return important.length;
+        }
+
+        public int normalCount() {
+            return normal.length;
+        }
+
+        public int[] important() {
+            return important;
+        }
+
+        public int[] normal() {
+            return normal;
+        }
+
+        public static Material material(int entry) {
+            return MATERIALS[entry >>> LOCAL_BITS];
+        }
+
+        public static int localX(int entry) {
+            return (entry >>> 8) & 0xF;
+        }
+
+        public static int localY(int entry) {
+            return (entry >>> 4) & 0xF;
+        }
+
+        public static int localZ(int entry) {
+            return entry & 0xF;
+        }
+    }
+
+    private static final class Section {
+        int references;
+        Summary summary;
+    }
+
+    /**
+     * ボット1体が参照しているセクション
+     */
+    public final class Lease {
+        private UUID worldId;
+        private Set<Long> held = new HashSet<>();
+
+        /**
+         * 参照するセクションを入れ替える（新しく入ったものを参照し、外れたものを手放す）
+         */
+        public void hold(UUID worldId, Set<Long> sectionKeys) {
+            if (!worldId.equals(this.worldId)) {
+                release();
+                this.worldId = worldId;
+            }
+            Map<Long, Section> sections = worlds.computeIfAbsent(worldId, id -> new HashMap<>());
+            for (Long key : sectionKeys) {
+                if (!held.contains(key)) {
+                    sections.computeIfAbsent(key, k -> new Section()).references++;
+                }
+            }
+            for (Long key : held) {
+                if (!sectionKeys.contains(key)) {
+                    releaseSection(sections, key);
+                }
+            }
+            held = new HashSet<>(sectionKeys);
+        }
+
+        /**
+         * すべてのセクションを手放す（ボットの停止時）
+         */
+        public void release() {
+            Map<Long, Section> sections = worldId != null ? worlds.get(worldId) : null;
+            if (sections != null) {
+                for (Long key : held) {
+                    releaseSection(sections, key);
+                }
+                if (sections.isEmpty()) {
+                    worlds.remove(worldId);
+                }
+            }
+            held = new HashSet<>();
+            worldId = null;
+        }
+
+        private void releaseSection(Map<Long, Section> sections, Long key) {
+            Section section = sections.get(key);
+            if (section != null && --section.references <= 0) {
+                sections.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package plugin.midorin.info.aIminer.vision;
+
+import org.bukkit.Material;
+import plugin.midorin.info.aIminer.model.BlockCluster;
+import plugin.midorin.info.aIminer.model.BlockSummary;
+import plugin.midorin.info.aIminer.model.Position;
+import plugin.midorin.info.aIminer.model.VisibleBlock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * 1回のブロックスキャン結果を配列で持つ作業領域（スキャンごとに使い回す）
+ * ブロック1個ごとにVisibleBlock・Positionを作らず、相対座標（int1個に詰める）・種類（Materialの序数）・
+ * 距離の2乗を配列に入れる。近い順の選別も配列上で行い、
+ * AIに渡す分だけをtoVisibleBlocksでモデルクラスに変換する
+ * メインスレッドから使用する（toVisibleBlocksは、次のresetまでなら別のスレッドから呼んでもよい）
+ */
+public class VisionFrame {
+    private static final Material[] MATERIALS = Material.values();
+    private static final int COORD_BITS = 10;
+    private static final int COORD_MASK = (1 << COORD_BITS) - 1;
+    private static final int COORD_BIAS = 1 << (COORD_BITS - 1);   // 相対座標 -512〜511
+
+    private int originX;
+    private int originY;
+    private int originZ;
+    private int size;
+    private int[] packed = new int[1024];        // 相対座標 x | y | z（各10ビット）
+    private short[] materials = new short[1024];
+    private int[] distanceSquared = new int[1024];
+    private boolean[] important = new boolean[1024];
+    private long[] order = new long[1024];        // 選別用（距離の2乗 << 32 | 番号）
+
+    // 要約用の作業領域
+    private int[] parent = new int[1024];         // まとまり（Union-Find）の親。含めないブロックは-1
+    private int[] clusterSize = new int[1024];
+    private int[] clusterNearest = new int[1024];
+    private long[] clusterSum = new long[1024 * 3];
+    private int[] slotKeys = new int[2048];       // 相対座標 → 番号（オープンアドレス法）
+    private int[] slotValues = new int[2048];
+    private final int[] typeCount = new int[MATERIALS.length];
+    private final int[] typeNearest = new int[MATERIALS.length];
+
+    /**
+     * 新しいスキャンを始める（前回の内容は捨てる）
+     */
+    public void reset(int originX, int originY, int originZ) {
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.size = 0;
+    }
+
+    /**
+     * ブロックを1個追加する
+     *
+     * @param dx 中心からの相対座標（-512〜511）
+     */
+    public void add(int dx, int dy, int dz, Material material, boolean importantBlock) {
+        if (size == packed.length) {
+            grow();
+        }
+        packed[size] = ((dx + COORD_BIAS) << (COORD_BITS * 2)) | ((dy + COORD_BIAS) << COORD_BITS) | (dz + COORD_BIAS);
+        materials[size] = (short) material.ordinal();
+        distanceSquared[size] = dx * dx + dy * dy + dz * dz;
+        important[size] = importantBlock;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = packed.length * 2;
+        packed = Arrays.copyOf(packed, capacity);
+        materials = Arrays.copyOf(materials, capacity);
+        distanceSquared = Arrays.copyOf(distanceSquared, capacity);
+        important = Arrays.copyOf(important, capacity);
+        order = Arrays.copyOf(order, capacity);
+    }
+
+    private void ensureSummaryCapacity() {
+        if (parent.length < size) {
+            int capacity = packed.length;
+            parent = new int[capacity];
+            clusterSize = new int[capacity];
+            clusterNearest = new int[capacity];
+            clusterSum = new long[capacity * 3];
+        }
+        int slots = Integer.highestOneBit(Math.max(2, size) * 2 - 1) * 2;
+        if (slotKeys.length < slots) {
+            slotKeys = new int[slots];
+            slotValues = new int[slots];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    public int getOriginZ() {
+        return originZ;
+    }
+
+    public int getDx(int index) {
+        return ((packed[index] >>> (COORD_BITS * 2)) & COORD_MASK) - COORD_BIAS;
+    }
+
+    public int getDy(int index) {
+        return ((packed[index] >>> COORD_BITS) & COORD_MASK) - COORD_BIAS;
+    }
+
+    public int getDz(int index) {
+        return (packed[index] & COORD_MASK) - COORD_BIAS;
+    }
+
+    public Material getMaterial(int index) {
+        return MATERIALS[materials[index]];
+    }
+
+    public float getDistance(int index) {
+        return (float) Math.sqrt(distanceSquared[index]);
+    }
+
+    /**
+     * 重要ブロックを近い順にimportantLimit件、続けて通常ブロックを近い順にnormalLimit件、モデルクラスに変換する
+     * 同じ距離ならスキャン順
+     */
+    public List<VisibleBlock> toVisibleBlocks(int importantLimit, int normalLimit) {
+        return toVisibleBlocks(importantLimit, normalLimit, index -> true);
+    }
+
+    /**
+     * toVisibleBlocksと同じだが、visibleを満たすブロックだけを選ぶ
+     * visibleは近い順に、件数が埋まるまでしか呼ばない（視線判定など重い条件向け）
+     *
+     * @param visible ブロックの番号を受け取る条件
+     */
+    public List<VisibleBlock> toVisibleBlocks(int importantLimit, int normalLimit, IntPredicate visible) {
+        List<VisibleBlock> result = new ArrayList<>(importantLimit + normalLimit);
+        select(true, importantLimit, visible, result);
+        select(false, normalLimit, visible, result);
+        return result;
+    }
+
+    private void select(boolean importantBlocks, int limit, IntPredicate visible, List<VisibleBlock> result) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (important[i] == importantBlocks) {
+                order[count++] = ((long) distanceSquared[i] << 32) | i;
+            }
+        }
+        Arrays.sort(order, 0, count);
+        int selected = 0;
+        for (int k = 0; k < count && selected < limit; k++) {
+            int index = (int) order[k];
+            if (visible.test(index)) {
+                result.add(toVisibleBlock(index));
+                selected++;
+            }
+        }
+    }
+
+    /**
+     * ブロックを種類ごとに集計し（個数・一番近いもの）、隣り合った同じ種類のブロックをまとまりにする
+     * まとまりは面で接するブロックをUnion-Findでつなぐ（1回の走査で隣を引き、同じ種類ならつなぐ）
+     * 結果はどちらも近い順
+     *
+     * @param include 集計に含めるブロックの番号の条件
+     * @param minClusterSize これより小さいまとまりは返さない
+     * @param clusterLimit 返すまとまりの最大数
+     */
+    public void summarize(IntPredicate include, int minClusterSize, int clusterLimit,
+                          List<BlockSummary> summaries, List<BlockCluster> clusters) {
+        ensureSummaryCapacity();
+        int slotMask = slotKeys.length - 1;
+        Arrays.fill(slotKeys, 0, slotKeys.length, -1);
+        for (int i = 0; i < size; i++) {
+            if (!include.test(i)) {
+                parent[i] = -1;
+                continue;
+            }
+            parent[i] = i;
+            int slot = mix(packed[i]) & slotMask;
+            while (slotKeys[slot] != -1) {
+                slot = (slot + 1) & slotMask;
+            }
+            slotKeys[slot] = packed[i];
+            slotValues[slot] = i;
+        }
+
+        // 正の向きの隣（x+1, y+1, z+1）とつなげば、すべての隣り合う組を1回ずつ見る
+        for (int i = 0; i < size; i++) {
+            if (parent[i] < 0) {
+                continue;
+            }
+            if (getDx(i) < COORD_BIAS - 1) {
+                union(i, find(packed[i] + (1 << (COORD_BITS * 2)), slotMask));
+            }
+            if (getDy(i) < COORD_BIAS - 1) {
+                union(i, find(packed[i] + (1 << COORD_BITS), slotMask));
+            }
+            if (getDz(i) < COORD_BIAS - 1) {
+                union(i, find(packed[i] + 1, slotMask));
+            }
+        }
+
+        // 種類ごと・まとまりごとに集計
+        for (int i = 0; i < size; i++) {
+            if (parent[i] == i) {
+                clusterSize[i] = 0;
+                clusterNearest[i] = i;
+                clusterSum[i * 3] = 0L;
+                clusterSum[i * 3 + 1] = 0L;
+                clusterSum[i * 3 + 2] = 0L;
+            }
+        }
+        List<Integer> types = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (parent[i] < 0) {
+                continue;
+            }
+            int root = root(i);
+            clusterSize[root]++;
+            clusterSum[root * 3] += getDx(i);
+            clusterSum[root * 3 + 1] += getDy(i);
+            clusterSum[root * 3 + 2] += getDz(i);
+            if (distanceSquared[i] < distanceSquared[clusterNearest[root]]) {
+                clusterNearest[root] = i;
+            }
+            int type = materials[i];
+            if (typeCount[type]++ == 0) {
+                typeNearest[type] = i;
+                types.add(type);
+            } else if (distanceSquared[i] < distanceSquared[typeNearest[type]]) {
+                typeNearest[type] = i;
+            }
+        }
+        for (int type : types) {
+            int nearest = typeNearest[type];
+            summaries.add(new BlockSummary(MATERIALS[type].toString(), typeCount[type],
+                worldPosition(nearest), roundedDistance(nearest)));
+            typeCount[type] = 0;
+        }
+        summaries.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+
+        int clusterCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (parent[i] == i && clusterSize[i] >= minClusterSize) {
+                order[clusterCount++] = ((long) distanceSquared[clusterNearest[i]] << 32) | i;
+            }
+        }
+        Arrays.sort(order, 0, clusterCount);
+        for (int k = 0; k < Math.min(clusterLimit, clusterCount); k++) {
+            int root = (int) order[k];
+            int count = clusterSize[root];
+            Position center = new Position(
+                originX + Math.round((double) clusterSum[root * 3] / count),
+                originY + Math.round((double) clusterSum[root * 3 + 1] / count),
+                originZ + Math.round((double) clusterSum[root * 3 + 2] / count));
+            int nearest = clusterNearest[root];
+            clusters.add(new BlockCluster(getMaterial(root).toString(), count, center,
+                worldPosition(nearest), roundedDistance(nearest)));
+        }
+    }
+
+    private int find(int key, int slotMask) {
+        int slot = mix(key) & slotMask;
+        while (slotKeys[slot] != -1) {
+            if (slotKeys[slot] == key) {
+                return slotValues[slot];
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    private void union(int a, int b) {
+        if (b < 0 || materials[a] != materials[b]) {
+            return;
+        }
+        int rootA = root(a);
+        int rootB = root(b);
+        if (rootA != rootB) {
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    private int root(int index) {
+        while (parent[index] != index) {
+            parent[index] = parent[parent[index]];   // 経路を半分に縮める
+            index = parent[index];
+        }
+        return index;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Position worldPosition(int index) {
+        return new Position(originX + getDx(index), originY + getDy(index), originZ + getDz(index));
+    }
+
+    private double roundedDistance(int index) {
+        return Math.round(Math.sqrt(distanceSquared[index]) * 100.0) / 100.0;
+    }
+
+    private VisibleBlock toVisibleBlock(int index) {
+        int dx = getDx(index);
+        int dy = getDy(index);
+        int dz = getDz(index);
+        return new VisibleBlock(
+            new Position(dx, dy, dz),
+            worldPosition(index),
+            getMaterial(index).toString(),
+            roundedDistance(index)
+        );
+    }
+}
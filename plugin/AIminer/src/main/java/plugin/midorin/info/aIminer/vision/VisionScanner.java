@@ -3,42 +3,45 @@ package plugin.midorin.info.aIminer.vision;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
-import org.bukkit.block.Block;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Item;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.java.JavaPlugin;
+import plugin.midorin.info.aIminer.model.BlockCluster;
+import plugin.midorin.info.aIminer.model.BlockSummary;
 import plugin.midorin.info.aIminer.model.BlockVisionData;
 import plugin.midorin.info.aIminer.model.Position;
 import plugin.midorin.info.aIminer.model.ViewDirection;
 import plugin.midorin.info.aIminer.model.VisibleBlock;
 import plugin.midorin.info.aIminer.model.VisibleEntity;
+import plugin.midorin.info.aIminer.util.BotLog;
 
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
+import java.util.function.IntPredicate;
 
 /**
  * ボットの視覚システム - 周囲のブロック、アイテム、プレイヤーをスキャンする
  */
 public class VisionScanner {
     private final JavaPlugin plugin;
+    private final BotLog log;
     private static final int DEFAULT_SCAN_RADIUS = 10;
     private static final int MAX_IMPORTANT_BLOCKS = 30;  // 重要ブロックの最大数
     private static final int MAX_NORMAL_BLOCKS = 20;     // 通常ブロックの最大数
-
-    // データパックで利用しているタグ定義
-    private static final String BOT_FEET_TAG = "test1";      // ゾンビピグリン（実体）
-    private static final String BOT_BODY_TAG = "rider1";     // マネキン（見た目）
-    private static final String MOVE_MARKER_TAG = "aim1";    // 移動先マーカー
-    private static final String WOOD_MARKER_TAG = "aim1o";   // 木掘りマーカー
-    private static final String STONE_MARKER_TAG = "aim1s";  // 石掘りマーカー
+    private static final int MAX_SCAN_RADIUS = 511;      // VisionFrameに入る相対座標の上限
+    private static final int MIN_CLUSTER_SIZE = 2;       // 要約で報告するまとまりの最小ブロック数
+    private static final int MAX_CLUSTERS = 8;           // 要約で報告するまとまりの最大数
+    private static final int SCAN_LOG_EVERY = 12;        // スキャン結果のログを何回に1回出すか
 
     // スキャンから除外するブロック（情報価値が低い）
-    private static final Set<Material> IGNORED_BLOCKS = EnumSet.of(
+    static final Set<Material> IGNORED_BLOCKS = EnumSet.of(
         Material.AIR,
         Material.CAVE_AIR,
         Material.VOID_AIR,
@@ -52,7 +55,7 @@ public class VisionScanner {
     );
 
     // 重要なブロック（優先的に報告）
-    private static final Set<Material> IMPORTANT_BLOCKS = EnumSet.of(
+    static final Set<Material> IMPORTANT_BLOCKS = EnumSet.of(
         // 木材系
         Material.OAK_LOG, Material.SPRUCE_LOG, Material.BIRCH_LOG,
         Material.JUNGLE_LOG, Material.ACACIA_LOG, Material.DARK_OAK_LOG,
@@ -72,14 +75,49 @@ public class VisionScanner {
     );
 
     private final int verticalScanRange; // 上下のスキャン範囲
+    private final VisionFrame frame = new VisionFrame();  // スキャンごとに使い回す
+    private final PerceptionCache perceptionCache;        // 共有キャッシュ（使わない場合はnull）
+    private final PerceptionCache.Lease perceptionLease;
+    private final LineOfSight lineOfSight;                // 視線判定（使わない場合はnull）
+    private final boolean summarize;                      // 種類ごとの集計・まとまりも作るか
+    // 最後のスキャンでの目の位置（視線判定の始点）
+    private double eyeX;
+    private double eyeY;
+    private double eyeZ;
 
     public VisionScanner(JavaPlugin plugin) {
-        this(plugin, 5);
+        this(plugin, 5, null, null, false);
     }
 
-    public VisionScanner(JavaPlugin plugin, int verticalScanRange) {
+    public VisionScanner(JavaPlugin plugin, int verticalScanRange, PerceptionCache perceptionCache,
+                         LineOfSight lineOfSight, boolean summarize) {
         this.plugin = plugin;
+        this.log = new BotLog(plugin.getLogger());
         this.verticalScanRange = Math.max(1, verticalScanRange);
+        this.perceptionCache = perceptionCache;
+        this.perceptionLease = perceptionCache != null ? perceptionCache.newLease() : null;
+        this.lineOfSight = lineOfSight;
+        this.summarize = summarize;
+    }
+
+    /**
+     * 視線判定を使うか（使う場合、scanSurroundingsの結果のブロック・要約は空で、selectVisibleBlocksで作る）
+     */
+    public boolean hasLineOfSight() {
+        return lineOfSight != null;
+    }
+
+    public LineOfSight getLineOfSight() {
+        return lineOfSight;
+    }
+
+    /**
+     * 共有キャッシュで参照しているセクションを手放す（視覚更新の停止時）
+     */
+    public void releasePerception() {
+        if (perceptionLease != null) {
+            perceptionLease.release();
+        }
     }
 
     /**
@@ -113,7 +151,22 @@ public class VisionScanner {
         visionData.setViewDirection(viewDirection);
 
         // 周囲のブロックをスキャン（フィルタリング・優先度付き）
-        List<VisibleBlock> visibleBlocks = scanBlocks(botLocation, scanRadius);
+        // 視線判定を使う場合は候補を集めるだけで、選別はselectVisibleBlocksで行う
+        collectBlocks(botLocation, scanRadius);
+        List<VisibleBlock> visibleBlocks;
+        if (lineOfSight != null) {
+            eyeX = botLocation.getX();
+            eyeY = botLocation.getY() + LineOfSight.EYE_HEIGHT;
+            eyeZ = botLocation.getZ();
+            lineOfSight.prepare(botLocation.getWorld(), botLocation.getBlockX(), botLocation.getBlockZ(),
+                Math.min(scanRadius, MAX_SCAN_RADIUS));
+            visibleBlocks = new ArrayList<>();
+        } else {
+            visibleBlocks = frame.toVisibleBlocks(MAX_IMPORTANT_BLOCKS, MAX_NORMAL_BLOCKS);
+            if (summarize) {
+                summarizeBlocks(visionData, index -> true);
+            }
+        }
         visionData.setVisibleBlocks(visibleBlocks);
 
         // 周囲のドロップアイテムをスキャン
@@ -124,10 +177,9 @@ public class VisionScanner {
         List<VisibleEntity> nearbyPlayers = scanPlayers(botLocation, scanRadius);
         visionData.setNearbyPlayers(nearbyPlayers);
 
-        plugin.getLogger().info(String.format(
-            "Vision scan completed: %d blocks, %d items, %d players (radius: %d)",
-            visibleBlocks.size(), nearbyItems.size(), nearbyPlayers.size(), scanRadius
-        ));
+        log.sampled("vision.scan", SCAN_LOG_EVERY,
+            "blocks", lineOfSight != null ? frame.size() : visibleBlocks.size(),
+            "items", nearbyItems.size(), "players", nearbyPlayers.size(), "radius", scanRadius);
 
         return visionData;
     }
@@ -140,82 +192,127 @@ public class VisionScanner {
     }
 
     /**
-     * 指定位置の周囲のブロックをスキャン（フィルタリング・優先度付き）
+     * 直前のスキャンの候補から、目の位置から見えるブロックを近い順に選んでtargetに入れる（埋もれた鉱石などを除く）
+     * 要約を作る場合、集計には空気などに面したブロックだけを含める
+     * 非同期スレッドから呼べる。次のscanSurroundingsより前に呼び、targetは呼び終わるまで他から触らないこと
      */
-    private List<VisibleBlock> scanBlocks(Location center, int radius) {
-        List<VisibleBlock> importantBlocks = new ArrayList<>();
-        List<VisibleBlock> normalBlocks = new ArrayList<>();
+    public void selectVisibleBlocks(BlockVisionData target) {
+        int originX = frame.getOriginX();
+        int originY = frame.getOriginY();
+        int originZ = frame.getOriginZ();
+        target.setVisibleBlocks(frame.toVisibleBlocks(MAX_IMPORTANT_BLOCKS, MAX_NORMAL_BLOCKS, index -> lineOfSight.isVisible(
+            eyeX, eyeY, eyeZ,
+            originX + frame.getDx(index), originY + frame.getDy(index), originZ + frame.getDz(index))));
+        if (summarize) {
+            summarizeBlocks(target, index -> lineOfSight.isExposed(
+                originX + frame.getDx(index), originY + frame.getDy(index), originZ + frame.getDz(index)));
+        }
+    }
+
+    /**
+     * 候補を種類ごとに集計し、同じ種類のまとまりを作る（プロンプトで個々のブロックの代わりに使う）
+     */
+    private void summarizeBlocks(BlockVisionData target, IntPredicate include) {
+        List<BlockSummary> summaries = new ArrayList<>();
+        List<BlockCluster> clusters = new ArrayList<>();
+        frame.summarize(include, MIN_CLUSTER_SIZE, MAX_CLUSTERS, summaries, clusters);
+        target.setBlockSummaries(summaries);
+        target.setBlockClusters(clusters);
+    }
+
+    /**
+     * 指定位置の周囲のブロックをスキャンし、候補を使い回すVisionFrameに入れる
+     * AIに渡す分だけ、選別時にVisibleBlockに変換する
+     */
+    private void collectBlocks(Location center, int radius) {
         World world = center.getWorld();
+        radius = Math.min(radius, MAX_SCAN_RADIUS);
+        int vertical = Math.min(verticalScanRange, MAX_SCAN_RADIUS);
+        int radiusSquared = radius * radius;
 
         int centerX = center.getBlockX();
         int centerY = center.getBlockY();
         int centerZ = center.getBlockZ();
+        frame.reset(centerX, centerY, centerZ);
+
+        if (perceptionCache != null) {
+            collectFromCache(world, centerX, centerY, centerZ, radius, vertical);
+            return;
+        }
 
         // 立方体領域をスキャン
         for (int x = -radius; x <= radius; x++) {
-            for (int y = -verticalScanRange; y <= verticalScanRange; y++) {
+            for (int y = -vertical; y <= vertical; y++) {
                 for (int z = -radius; z <= radius; z++) {
-                    Block block = world.getBlockAt(centerX + x, centerY + y, centerZ + z);
-                    Material material = block.getType();
-
-                    // 無視するブロックはスキップ
-                    if (IGNORED_BLOCKS.contains(material)) {
+                    // スキャン範囲外はスキップ（球体に近づける）
+                    if (x * x + y * y + z * z > radiusSquared) {
                         continue;
                     }
 
-                    // 距離計算
-                    double distance = Math.sqrt(x * x + y * y + z * z);
+                    // Blockを作らずに種類だけ取得
+                    Material material = world.getType(centerX + x, centerY + y, centerZ + z);
 
-                    // スキャン範囲外はスキップ（球体に近づける）
-                    if (distance > radius) {
+                    // 無視するブロックはスキップ
+                    if (IGNORED_BLOCKS.contains(material)) {
                         continue;
                     }
 
-                    // VisibleBlockオブジェクト作成
-                    Position relativePos = new Position(x, y, z);
-                    Position worldPos = new Position(
-                        centerX + x,
-                        centerY + y,
-                        centerZ + z
-                    );
-
-                    VisibleBlock visibleBlock = new VisibleBlock(
-                        relativePos,
-                        worldPos,
-                        material.toString(),
-                        Math.round(distance * 100.0) / 100.0
-                    );
-
                     // 重要ブロックと通常ブロックを分けて管理
-                    if (IMPORTANT_BLOCKS.contains(material)) {
-                        importantBlocks.add(visibleBlock);
-                    } else {
-                        normalBlocks.add(visibleBlock);
-                    }
+                    frame.add(x, y, z, material, IMPORTANT_BLOCKS.contains(material));
                 }
             }
         }
+        // 距離順の選別（重要ブロック優先、最大30件 + 通常ブロック最大20件）は呼び出し側で行う
+    }
 
-        // 距離でソート（近い順）
-        importantBlocks.sort(Comparator.comparingDouble(VisibleBlock::getDistance));
-        normalBlocks.sort(Comparator.comparingDouble(VisibleBlock::getDistance));
-
-        // 結果を結合（重要ブロック優先、制限付き）
-        List<VisibleBlock> result = new ArrayList<>();
-
-        // 重要ブロックは最大30件
-        int importantCount = Math.min(importantBlocks.size(), MAX_IMPORTANT_BLOCKS);
-        for (int i = 0; i < importantCount; i++) {
-            result.add(importantBlocks.get(i));
+    /**
+     * 共有キャッシュのセクション要約から候補を集める（要約がないセクションだけワールドから読む）
+     */
+    private void collectFromCache(World world, int centerX, int centerY, int centerZ, int radius, int vertical) {
+        UUID worldId = world.getUID();
+        int minSectionX = (centerX - radius) >> 4;
+        int maxSectionX = (centerX + radius) >> 4;
+        int minSectionY = (centerY - vertical) >> 4;
+        int maxSectionY = (centerY + vertical) >> 4;
+        int minSectionZ = (centerZ - radius) >> 4;
+        int maxSectionZ = (centerZ + radius) >> 4;
+
+        Set<Long> sectionKeys = new HashSet<>();
+        for (int sx = minSectionX; sx <= maxSectionX; sx++) {
+            for (int sy = minSectionY; sy <= maxSectionY; sy++) {
+                for (int sz = minSectionZ; sz <= maxSectionZ; sz++) {
+                    sectionKeys.add(PerceptionCache.sectionKey(sx, sy, sz));
+                }
+            }
         }
-
-        // 通常ブロックは最大20件（STONEなど）
-        int normalCount = Math.min(normalBlocks.size(), MAX_NORMAL_BLOCKS);
-        for (int i = 0; i < normalCount; i++) {
-            result.add(normalBlocks.get(i));
+        perceptionLease.hold(worldId, sectionKeys);
+
+        for (int sx = minSectionX; sx <= maxSectionX; sx++) {
+            for (int sy = minSectionY; sy <= maxSectionY; sy++) {
+                for (int sz = minSectionZ; sz <= maxSectionZ; sz++) {
+                    PerceptionCache.Summary summary = perceptionCache.summary(worldId, sx, sy, sz, world::getType);
+                    int offsetX = (sx << 4) - centerX;
+                    int offsetY = (sy << 4) - centerY;
+                    int offsetZ = (sz << 4) - centerZ;
+                    addEntries(summary.important(), true, offsetX, offsetY, offsetZ, radius, vertical);
+                    addEntries(summary.normal(), false, offsetX, offsetY, offsetZ, radius, vertical);
+                }
+            }
         }
+    }
 
-        return result;
+    private void addEntries(int[] entries, boolean important, int offsetX, int offsetY, int offsetZ,
+                            int radius, int vertical) {
+        int radiusSquared = radius * radius;
+        for (int entry : entries) {
+            int x = offsetX + PerceptionCache.Summary.localX(entry);
+            int y = offsetY + PerceptionCache.Summary.localY(entry);
+            int z = offsetZ + PerceptionCache.Summary.localZ(entry);
+            if (Math.abs(y) > vertical || x * x + y * y + z * z > radiusSquared) {
+                continue;
+            }
+            frame.add(x, y, z, PerceptionCache.Summary.material(entry), important);
+        }
     }
 
     /**
@@ -300,56 +397,6 @@ public class VisionScanner {
         return scanSurroundings(player.getLocation(), scanRadius);
     }
 
-    /**
-     * マネキン（ボット）エンティティを検索して位置を取得
-     *
-     * @param world スキャン対象のワールド
-     * @return ボットの位置（見つからない場合はnull）
-     */
-    public Location findBotLocation(World world) {
-        if (world == null) {
-            return null;
-        }
-
-        // 優先順位: 足(piglin) -> 見た目(armor stand) -> マーカー類
-        Location loc = findFirstByTag(world, BOT_FEET_TAG);
-        if (loc != null) {
-            return loc;
-        }
-
-        loc = findFirstByTag(world, BOT_BODY_TAG);
-        if (loc != null) {
-            return loc;
-        }
-
-        loc = findFirstByTag(world, MOVE_MARKER_TAG);
-        if (loc != null) {
-            return loc;
-        }
-
-        loc = findFirstByTag(world, WOOD_MARKER_TAG);
-        if (loc != null) {
-            return loc;
-        }
-
-        loc = findFirstByTag(world, STONE_MARKER_TAG);
-        if (loc != null) {
-            return loc;
-        }
-
-        plugin.getLogger().fine("Bot entity not found in world (tags: test1/rider1/aim1/aim1o/aim1s)");
-        return null;
-    }
-
-    private Location findFirstByTag(World world, String tag) {
-        for (Entity entity : world.getEntities()) {
-            if (entity.getScoreboardTags().contains(tag)) {
-                return entity.getLocation();
-            }
-        }
-        return null;
-    }
-
     /**
      * 重要なブロックタイプのフィルタリング（オプション）
      * AIの判断に必要な鉱石、木材、ランドマークなどを優先的に記録
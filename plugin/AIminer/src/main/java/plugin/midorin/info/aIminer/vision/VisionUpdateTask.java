@@ -2,100 +2,289 @@ package plugin.midorin.info.aIminer.vision;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
-import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.scheduler.BukkitRunnable;
+import plugin.midorin.info.aIminer.bot.BotEntityTracker;
 import plugin.midorin.info.aIminer.bot.BotManager;
 import plugin.midorin.info.aIminer.brain.BrainFileManager;
 import plugin.midorin.info.aIminer.listener.DataCommandListener;
 import plugin.midorin.info.aIminer.model.BlockVisionData;
 import plugin.midorin.info.aIminer.model.Position;
 import plugin.midorin.info.aIminer.model.VisibleEntity;
+import plugin.midorin.info.aIminer.util.BotLog;
 import plugin.midorin.info.aIminer.util.CommandResultCapture;
+import plugin.midorin.info.aIminer.util.CycleTracer;
+import plugin.midorin.info.aIminer.util.MetricsRegistry;
+import plugin.midorin.info.aIminer.util.TickBudgetScheduler;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
 
 /**
  * 定期的にボットの視覚情報を更新するタスク
+ * TickBudgetSchedulerに登録し、スキャン・コマンド結果の取得・保存を数tickに分けて実行する
+ * 視線判定を使う場合は、スキャン後の選別を非同期で行い、保存の前に結果を待つ
  */
-public class VisionUpdateTask extends BukkitRunnable {
+public class VisionUpdateTask implements TickBudgetScheduler.BudgetedTask {
+    public static final String JOB_NAME = "vision";
+    private static final long SKIP_LOG_INTERVAL_MS = 60_000L;  // スキップした理由のログを出す間隔
+
+    /**
+     * 1回の視覚更新の段階
+     */
+    private enum Phase { SCAN, ITEM_POS, ITEM_TYPE, INVENTORY, STORE, SAVE }
+
     private final JavaPlugin plugin;
+    private final BotLog log;
     private final BrainFileManager brainFileManager;
     private final BotManager botManager;
+    private final BotEntityTracker botEntityTracker;
     private final DataCommandListener dataCommandListener;
     private final VisionScanner visionScanner;
+    private final TickBudgetScheduler scheduler;
+    private final CycleTracer tracer;
 
     // 視覚更新の間隔（秒）
     private final int updateIntervalSeconds;
     private final int scanRadius;
 
-    // ボットのタグ
-    private static final String BOT_FEET_TAG = "test1";
+    // 実行中の視覚更新の状態
+    private Phase phase = Phase.SCAN;
+    private Location scanLocation;
+    private BlockVisionData visionData;
+    private double[] nearbyItemPos;
+    private List<VisibleEntity> nearbyItemsFromCommand = new ArrayList<>();
+    private List<CommandResultCapture.InventoryItem> inventoryItems;  // 取得できなかった場合はnull
+    private long captureId = 0L;              // 結果待ちのdata getコマンド（0なら未実行）
+    private boolean selectingBlocks = false;   // 視線判定の結果待ち
+    private CycleTracer.Span cycleSpan;
+
+    // 計測（スキャンはメインスレッド、視線判定は非同期スレッドでの時間）
+    private long scans = 0L;
+    private long scanNanos = 0L;
+    private long lineOfSightRuns = 0L;
+    private long lineOfSightNanos = 0L;
+    private final MetricsRegistry.Histogram scanTimes;
+    private final MetricsRegistry.Histogram lineOfSightTimes;
 
     public VisionUpdateTask(
         JavaPlugin plugin,
         BrainFileManager brainFileManager,
         BotManager botManager,
+        BotEntityTracker botEntityTracker,
         DataCommandListener dataCommandListener,
+        TickBudgetScheduler scheduler,
+        MetricsRegistry metrics,
+        CycleTracer tracer,
+        PerceptionCache perceptionCache,
+        LineOfSight lineOfSight,
+        boolean summarize,
         int scanRadius,
         int verticalScanRange,
         int updateIntervalSeconds
     ) {
         this.plugin = plugin;
+        this.log = new BotLog(plugin.getLogger());
         this.brainFileManager = brainFileManager;
         this.botManager = botManager;
+        this.botEntityTracker = botEntityTracker;
         this.dataCommandListener = dataCommandListener;
+        this.scheduler = scheduler;
+        this.tracer = tracer;
         this.scanRadius = scanRadius;
         this.updateIntervalSeconds = updateIntervalSeconds;
-        this.visionScanner = new VisionScanner(plugin, verticalScanRange);
+        this.visionScanner = new VisionScanner(plugin, verticalScanRange, perceptionCache, lineOfSight, summarize);
+        this.scanTimes = metrics.timer("aiminer_vision_scan_seconds", "Block scan time on the main thread");
+        this.lineOfSightTimes = metrics.timer("aiminer_vision_line_of_sight_seconds",
+            "Line-of-sight selection time off the main thread");
     }
 
     @Override
-    public void run() {
+    public boolean begin() {
         // ボットが召喚されていない場合はスキップ
         if (!botManager.isBotSummoned()) {
-            return;
+            return false;
+        }
+        // 前回の視線判定が終わっていなければ、候補の作業領域を使っているので待つ
+        if (selectingBlocks) {
+            return false;
+        }
+        phase = Phase.SCAN;
+        captureId = 0L;
+        return true;
+    }
+
+    /**
+     * 視覚更新を段階ごとに進める
+     * コマンド結果の取得は実行と受け取りを別のtickに分け、メインスレッドを待たせない
+     */
+    @Override
+    public TickBudgetScheduler.Step step() {
+        switch (phase) {
+            case SCAN:
+                scanLocation = resolveScanLocation();
+                if (scanLocation == null) {
+                    return TickBudgetScheduler.Step.DONE;
+                }
+                cycleSpan = tracer.start("vision.cycle", tracer.newTraceId());
+                // 視覚情報をスキャン
+                CycleTracer.Span scanSpan = tracer.start("vision.scan", cycleSpan.getTraceId());
+                long scanStart = System.nanoTime();
+                visionData = visionScanner.scanSurroundings(scanLocation, scanRadius);
+                long scanElapsed = System.nanoTime() - scanStart;
+                scanSpan.arg("blocks", visionData.getVisibleBlocks().size()).end();
+                scanNanos += scanElapsed;
+                scanTimes.record(scanElapsed);
+                scans++;
+                if (visionScanner.hasLineOfSight()) {
+                    selectVisibleBlocks(visionData);
+                }
+                nearbyItemsFromCommand = new ArrayList<>();
+                inventoryItems = null;
+                phase = Phase.ITEM_POS;
+                return TickBudgetScheduler.Step.CONTINUE;
+
+            case ITEM_POS: {
+                // コマンド経由で近くのアイテムエンティティを取得（結果は次のtick以降）
+                DataCommandListener.Capture capture = capture(DataCommandListener.Query.ITEM_POS);
+                if (capture == null) {
+                    return TickBudgetScheduler.Step.NEXT_TICK;
+                }
+                nearbyItemPos = capture.getPosition();
+                phase = nearbyItemPos != null ? Phase.ITEM_TYPE : Phase.INVENTORY;
+                return TickBudgetScheduler.Step.CONTINUE;
+            }
+
+            case ITEM_TYPE: {
+                DataCommandListener.Capture capture = capture(DataCommandListener.Query.ITEM_TYPE);
+                if (capture == null) {
+                    return TickBudgetScheduler.Step.NEXT_TICK;
+                }
+                collectNearbyItem(capture.getItem());
+                phase = Phase.INVENTORY;
+                return TickBudgetScheduler.Step.CONTINUE;
+            }
+
+            case INVENTORY: {
+                // インベントリを自動取得（結果は次のtick以降）
+                DataCommandListener.Capture capture = capture(DataCommandListener.Query.INVENTORY);
+                if (capture == null) {
+                    return TickBudgetScheduler.Step.NEXT_TICK;
+                }
+                inventoryItems = capture.getInventory();
+                phase = Phase.STORE;
+                return TickBudgetScheduler.Step.CONTINUE;
+            }
+
+            case STORE:
+                if (selectingBlocks) {
+                    return TickBudgetScheduler.Step.NEXT_TICK;
+                }
+                CycleTracer.Span storeSpan = tracer.start("vision.store", cycleSpan.getTraceId());
+                store();
+                storeSpan.end();
+                phase = Phase.SAVE;
+                return TickBudgetScheduler.Step.CONTINUE;
+
+            case SAVE:
+            default:
+                brainFileManager.saveBrainFile();
+                cycleSpan.end();
+                tracer.setLatest("vision", cycleSpan.getTraceId());
+                log.debug("vision.updated", "blocks", visionData.getVisibleBlocks().size(),
+                    "x", scanLocation.getBlockX(), "y", scanLocation.getBlockY(), "z", scanLocation.getBlockZ());
+                return TickBudgetScheduler.Step.DONE;
+        }
+    }
+
+    /**
+     * data getコマンドを実行し、次のtick以降に結果を受け取る
+     * 他の取得待ちがあって実行できなかった場合は次のtickにやり直す
+     *
+     * @return 取得結果。まだ結果が来ていなければnull
+     */
+    private DataCommandListener.Capture capture(DataCommandListener.Query query) {
+        if (captureId == 0L) {
+            captureId = dataCommandListener.request(query, BotEntityTracker.BOT_FEET_TAG);
+            return null;
         }
+        DataCommandListener.Capture capture = dataCommandListener.collect(captureId);
+        if (capture.isWaiting()) {
+            return null;
+        }
+        captureId = 0L;
+        return capture;
+    }
+
+    /**
+     * 見えるブロックの選別（視線判定）を非同期で行う
+     * visionDataは選別が終わるまで（STOREまで）脳ファイルに入れないため、非同期スレッドから書き込んでよい
+     */
+    private void selectVisibleBlocks(BlockVisionData target) {
+        selectingBlocks = true;
+        long traceId = cycleSpan.getTraceId();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            CycleTracer.Span span = tracer.start("vision.line_of_sight", traceId);
+            long startTime = System.nanoTime();
+            try {
+                visionScanner.selectVisibleBlocks(target);
+            } catch (RuntimeException e) {
+                plugin.getLogger().warning("Line-of-sight selection failed: " + e.getMessage());
+                target.setVisibleBlocks(new ArrayList<>());
+            }
+            long elapsedNanos = System.nanoTime() - startTime;
+            lineOfSightTimes.record(elapsedNanos);
+            span.arg("blocks", target.getVisibleBlocks().size()).end();
 
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                lineOfSightNanos += elapsedNanos;
+                lineOfSightRuns++;
+                selectingBlocks = false;
+            });
+        });
+    }
+
+    /**
+     * スキャンの中心位置を決める（ボットが見つからなければオーナーの位置）
+     */
+    private Location resolveScanLocation() {
         // ボットのオーナーを取得
         CommandSender owner = botManager.getBotOwner();
         if (owner == null) {
-            plugin.getLogger().warning("Bot owner not found, skipping vision update");
-            return;
+            log.limited(Level.WARNING, "vision.skipped", SKIP_LOG_INTERVAL_MS, "reason", "owner-not-found");
+            return null;
         }
 
-        Location scanLocation = null;
-
         // プレイヤーの場合は位置を取得
         if (owner instanceof Player) {
             Player player = (Player) owner;
             if (!player.isOnline()) {
-                plugin.getLogger().warning("Bot owner is offline, skipping vision update");
-                return;
+                log.limited(Level.WARNING, "vision.skipped", SKIP_LOG_INTERVAL_MS, "reason", "owner-offline");
+                return null;
             }
 
-            // まずボットエンティティの位置を探す
-            scanLocation = visionScanner.findBotLocation(player.getWorld());
+            // まずボットエンティティの位置を探す（UUIDで追跡済みのエンティティを参照）
+            Location location = botEntityTracker.findBotLocation();
 
             // ボットエンティティが見つからない場合はプレイヤー位置を使用
-            if (scanLocation == null) {
-                scanLocation = player.getLocation();
-                plugin.getLogger().fine("Using player location for vision scan (bot entity not found)");
+            if (location == null) {
+                location = player.getLocation();
+                log.debug("vision.player-location", "reason", "bot-entity-not-found");
             }
-        } else {
-            // コンソールからの実行の場合はスキップ
-            plugin.getLogger().warning("Bot owner is not a player, skipping vision update");
-            return;
+            return location;
         }
 
-        // 視覚情報をスキャン
-        BlockVisionData visionData = visionScanner.scanSurroundings(scanLocation, scanRadius);
+        // コンソールからの実行の場合はスキップ
+        log.limited(Level.WARNING, "vision.skipped", SKIP_LOG_INTERVAL_MS, "reason", "owner-not-player");
+        return null;
+    }
 
-        // コマンド経由で近くのアイテムエンティティを取得
-        List<VisibleEntity> nearbyItemsFromCommand = captureNearbyItems();
+    /**
+     * スキャン結果とコマンドで取得した情報を脳ファイルに反映
+     */
+    private void store() {
         if (!nearbyItemsFromCommand.isEmpty()) {
             List<VisibleEntity> existingItems = visionData.getNearbyItems();
             if (existingItems == null) {
@@ -105,98 +294,89 @@ public class VisionUpdateTask extends BukkitRunnable {
             visionData.setNearbyItems(existingItems);
         }
 
-        // Brain Fileに保存
-        brainFileManager.updateBlockVision(visionData);
-
-        // ボット位置をMemoryに保存
         Position botPosition = new Position(
             (int) scanLocation.getX(),
             (int) scanLocation.getY(),
             (int) scanLocation.getZ()
         );
-        brainFileManager.updateMemory("current_position", botPosition);
-        brainFileManager.updateMemory("bot_position_source", "vision_scan");
-
-        // インベントリを自動取得してMemoryに保存
-        captureAndStoreInventory();
 
-        // 近くのアイテム情報もMemoryに保存
-        if (!nearbyItemsFromCommand.isEmpty()) {
-            List<String> itemInfo = new ArrayList<>();
-            for (VisibleEntity item : nearbyItemsFromCommand) {
-                itemInfo.add(String.format("%s x%d at (%.1f, %.1f, %.1f)",
-                    item.getName(), item.getCount(),
-                    item.getWorldPosition().getX(),
-                    item.getWorldPosition().getY(),
-                    item.getWorldPosition().getZ()));
+        // インベントリを取得できなかった場合は空と記録せず、前回の値を残す
+        List<String> inventory = null;
+        if (inventoryItems != null) {
+            inventory = new ArrayList<>();
+            for (CommandResultCapture.InventoryItem item : inventoryItems) {
+                inventory.add(item.getItemId() + " x" + item.getCount());
             }
-            brainFileManager.updateMemory("nearby_items", itemInfo);
-        } else {
-            brainFileManager.updateMemory("nearby_items", new ArrayList<>());
+            log.debug("vision.inventory", "items", inventory);
         }
 
-        brainFileManager.saveBrainFile();
+        List<String> itemInfo = new ArrayList<>();
+        for (VisibleEntity item : nearbyItemsFromCommand) {
+            itemInfo.add(String.format("%s x%d at (%.1f, %.1f, %.1f)",
+                item.getName(), item.getCount(),
+                item.getWorldPosition().getX(),
+                item.getWorldPosition().getY(),
+                item.getWorldPosition().getZ()));
+        }
 
-        plugin.getLogger().fine(String.format(
-            "Vision updated: %d blocks at location (%.1f, %.1f, %.1f)",
-            visionData.getVisibleBlocks().size(),
-            scanLocation.getX(),
-            scanLocation.getY(),
-            scanLocation.getZ()
-        ));
+        // Brain Fileに保存（視覚・ボット位置・インベントリ・近くのアイテム）
+        brainFileManager.updateSurroundings(visionData, botPosition, inventory, itemInfo);
     }
 
     /**
-     * インベントリを自動取得してMemoryに保存
+     * コマンドで取得した近くのアイテムを記録
      */
-    private void captureAndStoreInventory() {
-        List<CommandResultCapture.InventoryItem> items =
-            dataCommandListener.captureInventory(BOT_FEET_TAG);
-
-        List<String> inventory = new ArrayList<>();
-        if (items.isEmpty()) {
-            inventory.add("empty");
-        } else {
-            for (CommandResultCapture.InventoryItem item : items) {
-                inventory.add(item.getItemId() + " x" + item.getCount());
-            }
+    private void collectNearbyItem(CommandResultCapture.InventoryItem item) {
+        if (item == null || nearbyItemPos == null) {
+            return;
         }
-        brainFileManager.updateMemory("inventory", inventory);
-        plugin.getLogger().fine("Inventory auto-captured: " + inventory);
+        CommandResultCapture.NearbyItem nearbyItem = new CommandResultCapture.NearbyItem(
+            item.getItemId(), item.getCount(),
+            nearbyItemPos[0], nearbyItemPos[1], nearbyItemPos[2]
+        );
+        VisibleEntity entity = new VisibleEntity(
+            new Position(nearbyItem.getX(), nearbyItem.getY(), nearbyItem.getZ()),
+            "ITEM",
+            nearbyItem.getItemId().toUpperCase(),
+            nearbyItem.getCount(),
+            0.0 // 距離は後で計算可能
+        );
+        nearbyItemsFromCommand.add(entity);
+        log.debug("vision.nearby-item", "item", nearbyItem);
     }
 
     /**
-     * コマンド経由で近くのアイテムエンティティを取得
+     * 1回のスキャンにかかったメインスレッドの時間の平均（ミリ秒）
      */
-    private List<VisibleEntity> captureNearbyItems() {
-        List<VisibleEntity> items = new ArrayList<>();
-
-        // @n[type=item] を使用して最も近いアイテムを取得
-        CommandResultCapture.NearbyItem nearbyItem =
-            dataCommandListener.captureNearbyItem(BOT_FEET_TAG);
-
-        if (nearbyItem != null) {
-            VisibleEntity entity = new VisibleEntity(
-                new Position(nearbyItem.getX(), nearbyItem.getY(), nearbyItem.getZ()),
-                "ITEM",
-                nearbyItem.getItemId().toUpperCase(),
-                nearbyItem.getCount(),
-                0.0 // 距離は後で計算可能
-            );
-            items.add(entity);
-            plugin.getLogger().info("Nearby item detected via command: " + nearbyItem);
-        }
+    public double getAverageScanMillis() {
+        return scans > 0 ? scanNanos / 1_000_000.0 / scans : 0.0;
+    }
 
-        return items;
+    /**
+     * 1回の視線判定にかかった非同期スレッドの時間の平均（ミリ秒）
+     */
+    public double getAverageLineOfSightMillis() {
+        return lineOfSightRuns > 0 ? lineOfSightNanos / 1_000_000.0 / lineOfSightRuns : 0.0;
+    }
+
+    public long getScans() {
+        return scans;
+    }
+
+    /**
+     * 視線判定（使わない場合はnull）
+     */
+    public LineOfSight getLineOfSight() {
+        return visionScanner.getLineOfSight();
     }
 
     /**
      * 視覚更新タスクを開始
      */
     public void startVisionLoop() {
-        // 5秒ごとに実行（20tick = 1秒）
+        // 5秒ごとに実行（20tick = 1秒）。各段階はスケジューラーの予算内で実行される
         long intervalTicks = updateIntervalSeconds * 20L;
-        this.runTaskTimer(plugin, 20L, intervalTicks); // 1秒後に開始、その後指定秒ごと
+        scheduler.register(JOB_NAME, this, intervalTicks, 20L); // 1秒後に開始、その後指定秒ごと
         plugin.getLogger().info(String.format(
             "Vision update task started (interval: %d seconds, radius: %d blocks)",
             updateIntervalSeconds, scanRadius
@@ -207,7 +387,8 @@ public class VisionUpdateTask extends BukkitRunnable {
      * 視覚更新タスクを停止
      */
     public void stopVisionLoop() {
-        this.cancel();
+        scheduler.unregister(JOB_NAME);
+        visionScanner.releasePerception();
         plugin.getLogger().info("Vision update task stopped");
     }
 }
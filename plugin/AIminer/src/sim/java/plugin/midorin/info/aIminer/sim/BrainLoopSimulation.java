@@ -0,0 +1,342 @@
+package plugin.midorin.info.aIminer.sim;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import org.bukkit.Location;
+import org.bukkit.plugin.java.JavaPlugin;
+import plugin.midorin.info.aIminer.ai.AIDecision;
+import plugin.midorin.info.aIminer.ai.AIServerClient;
+import plugin.midorin.info.aIminer.ai.ExchangeRecorder;
+import plugin.midorin.info.aIminer.ai.ModelRouter;
+import plugin.midorin.info.aIminer.ai.ModelTier;
+import plugin.midorin.info.aIminer.ai.OpenAICompatibleBackend;
+import plugin.midorin.info.aIminer.bot.BotEntityTracker;
+import plugin.midorin.info.aIminer.bot.BotManager;
+import plugin.midorin.info.aIminer.brain.BrainFileManager;
+import plugin.midorin.info.aIminer.brain.BrainPersistenceTask;
+import plugin.midorin.info.aIminer.executor.TaskExecutor;
+import plugin.midorin.info.aIminer.listener.DataCommandListener;
+import plugin.midorin.info.aIminer.model.BlockVisionData;
+import plugin.midorin.info.aIminer.model.BrainData;
+import plugin.midorin.info.aIminer.model.Position;
+import plugin.midorin.info.aIminer.model.TaskType;
+import plugin.midorin.info.aIminer.util.CommandDispatcher;
+import plugin.midorin.info.aIminer.util.CycleTracer;
+import plugin.midorin.info.aIminer.util.MetricsRegistry;
+import plugin.midorin.info.aIminer.util.TickBudgetScheduler;
+import plugin.midorin.info.aIminer.vision.VisionScanner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * サーバーなしで脳のループ（視覚 → 思考 → タスク実行）を早回しで動かすシミュレーション
+ * BrainFileManager・AIServerClient（プロンプト組み立て・HTTP・応答の解析）・TaskExecutor・VisionScannerは本物を使い、
+ * ワールド・ボット・モデルだけを差し替える（SimWorld・SimBot・StubModelServer）
+ * 時間は仮想のtickで進め、プラグインと同じ間隔で各段階を呼ぶ（Bukkitのスケジューラーは使わない）
+ * - 毎tick: ボットの移動・採掘
+ * - 20tickごと: タスク実行の1サイクル、脳ファイルのコミット
+ * - vision-interval秒ごと: 視覚スキャンと脳ファイルへの反映
+ * - think-interval秒ごと: モデルに問い合わせ、応答時間が経ってから（仮想時間）結果を反映
+ *   （記録されたやり取りを返す場合はその応答時間 × latency-scale、それ以外はllm-latency-ms）
+ * 結果として、実時間あたりの判断数・タスク数と、仮想時間1時間あたりの採掘ブロック数を出す
+ *
+ * 引数は key=value の形式:
+ *   hours=1 policy=scripted|replay|recorded seed=1 world-size=256
+ *   replay=会話ログのディレクトリ（policy=replay） file=ExchangeRecorderの記録（policy=recorded） latency-scale=1.0
+ *   think-interval=10 vision-interval=5 llm-latency-ms=1500 scan-radius=10 out=結果のJSON verbose=false
+ *   record=やり取りを記録するファイル（同じ種・設定で policy=recorded にすれば、プロンプトの変化を一致数で比べられる）
+ *   tiers=false 小さいモデルと大きいモデルの振り分け（どちらも同じスタブに送り、応答時間だけを
+ *   small-latency-ms=800 / large-latency-ms=6000 で分ける） route-failures=2 route-novel-blocks=3 route-plan-length=4
+ */
+public final class BrainLoopSimulation {
+    private static final int TICKS_PER_SECOND = 20;
+    private static final int TICKS_PER_HOUR = TICKS_PER_SECOND * 3600;
+    private static final int RECALL_LIMIT = 8;
+    private static final int PROMPT_RELEVANT_CHAT = 10;
+    private static final int PROMPT_RECENT_CHAT = 5;
+
+    private final Map<String, String> options;
+    private final SimWorld world;
+    private final SimBot bot;
+    private final SimEnvironment environment;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final CycleTracer tracer = new CycleTracer(false, 0, null);
+    private final BrainFileManager brainFileManager;
+    private final BrainPersistenceTask persistence;
+    private final TaskExecutor taskExecutor;
+    private final VisionScanner visionScanner;
+    private final int scanRadius;
+
+    // 結果
+    private long decisions;
+    private long failedDecisions;
+    private long decisionLatencyMillis;  // 仮想時間での応答時間の合計
+    private long visionScans;
+    private long visionNanos;
+    private long thinkNanos;
+    private long taskNanos;
+    private long botNanos;
+
+    private BrainLoopSimulation(Map<String, String> options) {
+        this.options = options;
+        this.world = new SimWorld(intOption("world-size", 256), longOption("seed", 1L));
+        this.bot = new SimBot(world, 0, 0);
+        this.environment = SimEnvironment.create(world, bot,
+            Boolean.parseBoolean(options.getOrDefault("verbose", "false")) ? Level.INFO : Level.SEVERE);
+        JavaPlugin plugin = environment.getPlugin();
+
+        this.brainFileManager = new BrainFileManager(environment.getDataFolder());
+        brainFileManager.setMetrics(metrics);
+        brainFileManager.loadBrainFile();
+        this.persistence = new BrainPersistenceTask(plugin, brainFileManager, 20L, 300L, 1024L);
+
+        CommandDispatcher commandDispatcher = new CommandDispatcher(plugin, 8);
+        BotManager botManager = new BotManager(plugin, commandDispatcher);
+        TickBudgetScheduler scheduler = new TickBudgetScheduler(plugin, metrics, 2.0, 45.0, 100);
+        this.taskExecutor = new TaskExecutor(plugin, brainFileManager, botManager,
+            new BotEntityTracker(plugin.getLogger()), new DataCommandListener(plugin, commandDispatcher), null, null,
+            commandDispatcher, scheduler, tracer);
+        this.visionScanner = new VisionScanner(plugin, 5, null, null, false);
+        this.scanRadius = intOption("scan-radius", 10);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Arguments must be key=value: " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+
+        BrainLoopSimulation simulation = new BrainLoopSimulation(options);
+        ModelPolicy policy = switch (options.getOrDefault("policy", "scripted")) {
+            case "scripted" -> new ScriptedPolicy(simulation.longOption("seed", 1L));
+            case "replay" -> ReplayPolicy.load(Path.of(options.getOrDefault("replay", "conversation-logs")));
+            case "recorded" -> RecordedExchangePolicy.load(Path.of(options.getOrDefault("file", "llm-exchanges.jsonl")),
+                "decide");
+            default -> throw new IllegalArgumentException("Unknown policy: " + options.get("policy"));
+        };
+        // 応答時間は仮想時間で待つため、サーバーはすぐに返す
+        StubModelServer modelServer = new StubModelServer(policy, 0.0);
+        modelServer.start();
+        try {
+            JsonObject result = simulation.run(modelServer);
+            if (policy instanceof RecordedExchangePolicy recorded) {
+                result.addProperty("recordedExchanges", recorded.size());
+                result.addProperty("promptMatches", recorded.getMatched());
+            }
+            String json = new GsonBuilder().setPrettyPrinting().create().toJson(result);
+            if (options.containsKey("out")) {
+                Path out = Path.of(options.get("out"));
+                Files.createDirectories(out.toAbsolutePath().getParent());
+                Files.writeString(out, json, StandardCharsets.UTF_8);
+            }
+            System.out.println(json);
+        } finally {
+            modelServer.stop();
+            simulation.brainFileManager.close();
+        }
+        // OkHttpのスレッドが残っていても終了する
+        System.exit(0);
+    }
+
+    private JsonObject run(StubModelServer modelServer) {
+        AIServerClient aiClient = new AIServerClient(modelServer.getUrl(), environment.getLogger(), metrics, tracer, 30);
+        ExchangeRecorder recorder = options.containsKey("record")
+            ? new ExchangeRecorder(Path.of(options.get("record")), 64L << 20, 4, environment.getLogger()) : null;
+        aiClient.setRecorder(recorder);
+        ModelRouter router = null;
+        if (Boolean.parseBoolean(options.getOrDefault("tiers", "false"))) {
+            router = new ModelRouter(true, intOption("route-failures", 2), intOption("route-novel-blocks", 3),
+                intOption("route-plan-length", 4));
+            aiClient.setTiers(router,
+                new ModelTier("small", new OpenAICompatibleBackend(modelServer.getUrl(), "small"), 0.3, 384, 0L),
+                new ModelTier("large", new OpenAICompatibleBackend(modelServer.getUrl(), "large"), 0.3, 768, 0L));
+        }
+        int smallLatencyMillis = intOption("small-latency-ms", 800);
+        int largeLatencyMillis = intOption("large-latency-ms", 6000);
+        double hours = Double.parseDouble(options.getOrDefault("hours", "1"));
+        long totalTicks = Math.round(hours * TICKS_PER_HOUR);
+        int thinkTicks = intOption("think-interval", 10) * TICKS_PER_SECOND;
+        int visionTicks = intOption("vision-interval", 5) * TICKS_PER_SECOND;
+        int defaultLatencyMillis = intOption("llm-latency-ms", 1500);
+        double latencyScale = Double.parseDouble(options.getOrDefault("latency-scale", "1.0"));
+
+        AIDecision pending = null;
+        long applyAt = 0L;
+        long nextThink = 0L;
+        long startNanos = System.nanoTime();
+        for (long tick = 0; tick < totalTicks; tick++) {
+            long stageStart = System.nanoTime();
+            bot.tick();
+            botNanos += System.nanoTime() - stageStart;
+
+            if (tick % visionTicks == 0) {
+                stageStart = System.nanoTime();
+                updateVision();
+                visionNanos += System.nanoTime() - stageStart;
+            }
+
+            // 問い合わせは送った時点の脳で行い、結果はモデルの応答時間が経ってから反映する
+            if (pending != null && tick >= applyAt) {
+                stageStart = System.nanoTime();
+                pending.applyTo(brainFileManager);
+                thinkNanos += System.nanoTime() - stageStart;
+                pending = null;
+            }
+            if (pending == null && tick >= nextThink) {
+                stageStart = System.nanoTime();
+                // シミュレーションにはプレイヤーがいないので、会話の合図は立たない
+                // プラグインと同じく、プロンプトは脳データのコピーから組み立てる
+                BrainData brainData = brainFileManager.snapshot();
+                ModelRouter.Signals signals = router != null
+                    ? router.collect(brainData, false, brainFileManager.getConsecutiveFailures())
+                    : null;
+                long smallBefore = router != null ? aiClient.getTiers().get(0).getDecisions() : 0L;
+                long fallbacksBefore = aiClient.getFallbacks();
+                pending = aiClient.decide(brainData,
+                    brainFileManager.getChatHistory().forPrompt(PROMPT_RELEVANT_CHAT, PROMPT_RECENT_CHAT),
+                    brainFileManager.recallRelevantEpisodes(RECALL_LIMIT), tracer.newTraceId(), signals);
+                thinkNanos += System.nanoTime() - stageStart;
+                decisions++;
+                if (pending == null) {
+                    failedDecisions++;
+                }
+                long recordedLatency = modelServer.getLastLatencyMillis();
+                long latencyMillis;
+                if (recordedLatency >= 0) {
+                    latencyMillis = Math.round(recordedLatency * latencyScale);
+                } else if (router != null) {
+                    // 小さいモデルで済んだか、大きいモデルに回したか（小さいモデルからの切り替えは両方の時間）
+                    boolean answeredSmall = aiClient.getTiers().get(0).getDecisions() > smallBefore;
+                    boolean fellBack = aiClient.getFallbacks() > fallbacksBefore;
+                    latencyMillis = answeredSmall ? smallLatencyMillis
+                        : largeLatencyMillis + (fellBack ? smallLatencyMillis : 0);
+                } else {
+                    latencyMillis = defaultLatencyMillis;
+                }
+                decisionLatencyMillis += latencyMillis;
+                applyAt = tick + latencyMillis / 50L;
+                nextThink = tick + thinkTicks;
+            }
+
+            if (tick % TICKS_PER_SECOND == 0) {
+                stageStart = System.nanoTime();
+                if (taskExecutor.begin()) {
+                    while (taskExecutor.step() != TickBudgetScheduler.Step.DONE) {
+                        // 1サイクルを最後まで進める
+                    }
+                }
+                persistence.run();
+                taskNanos += System.nanoTime() - stageStart;
+            }
+        }
+        double wallSeconds = (System.nanoTime() - startNanos) / 1e9;
+        if (recorder != null) {
+            recorder.close();
+        }
+        return report(modelServer, aiClient, hours, totalTicks, wallSeconds);
+    }
+
+    /**
+     * 視覚スキャンの結果とボットの位置・インベントリを脳ファイルに反映（VisionUpdateTaskと同じメソッドを使う）
+     */
+    private void updateVision() {
+        Location location = new Location(environment.getWorld(), bot.getX(), bot.getY(), bot.getZ());
+        BlockVisionData visionData = visionScanner.scanSurroundings(location, scanRadius);
+        List<String> inventory = new ArrayList<>();
+        bot.getInventory().forEach((item, count) -> inventory.add(item + " x" + count));
+        brainFileManager.updateSurroundings(visionData,
+            new Position((int) bot.getX(), (int) bot.getY(), (int) bot.getZ()), inventory, new ArrayList<>());
+        visionScans++;
+    }
+
+    private JsonObject report(StubModelServer modelServer, AIServerClient aiClient, double hours, long totalTicks, double wallSeconds) {
+        long completed = 0L;
+        long failed = 0L;
+        JsonObject tasksByType = new JsonObject();
+        for (Map.Entry<TaskType, long[]> entry : brainFileManager.getTaskOutcomes().entrySet()) {
+            completed += entry.getValue()[0];
+            failed += entry.getValue()[1];
+            JsonObject outcome = new JsonObject();
+            outcome.addProperty("completed", entry.getValue()[0]);
+            outcome.addProperty("failed", entry.getValue()[1]);
+            tasksByType.add(entry.getKey().name(), outcome);
+        }
+        MetricsRegistry.Histogram llm = metrics.timer("aiminer_llm_request_seconds", "LLM request latency",
+            "purpose", "decide");
+
+        JsonObject result = new JsonObject();
+        result.addProperty("policy", options.getOrDefault("policy", "scripted"));
+        result.addProperty("seed", longOption("seed", 1L));
+        result.addProperty("simulatedHours", hours);
+        result.addProperty("ticks", totalTicks);
+        result.addProperty("wallSeconds", round(wallSeconds));
+        result.addProperty("speedup", round(hours * 3600 / wallSeconds));
+        result.addProperty("decisions", decisions);
+        result.addProperty("failedDecisions", failedDecisions);
+        result.addProperty("meanDecisionLatencyMs", round((double) decisionLatencyMillis / Math.max(1L, decisions)));
+        JsonObject tiers = new JsonObject();
+        long answered = 0L;
+        for (ModelTier tier : aiClient.getTiers()) {
+            answered += tier.getDecisions();
+        }
+        for (ModelTier tier : aiClient.getTiers()) {
+            tiers.addProperty(tier.getName() + "Share", round((double) tier.getDecisions() / Math.max(1L, answered)));
+        }
+        tiers.addProperty("fallbacks", aiClient.getFallbacks());
+        result.add("tiers", tiers);
+        result.addProperty("decisionsPerSecond", round(decisions / wallSeconds));
+        result.addProperty("tasksExecuted", completed + failed);
+        result.addProperty("tasksFailed", failed);
+        result.addProperty("tasksPerSecond", round((completed + failed) / wallSeconds));
+        result.add("tasksByType", tasksByType);
+        result.addProperty("blocksMined", bot.getBlocksMined());
+        result.addProperty("blocksMinedPerSimulatedHour", round(bot.getBlocksMined() / hours));
+        result.addProperty("chatMessages", bot.getChatMessages());
+        result.addProperty("unknownCommands", bot.getUnknownCommands());
+        result.addProperty("movingShare", round((double) bot.getTicksMoving() / totalTicks));
+        result.addProperty("miningShare", round((double) bot.getTicksMining() / totalTicks));
+        result.addProperty("visionScans", visionScans);
+        result.addProperty("llmRequests", modelServer.getRequests());
+        result.addProperty("llmMeanPromptChars", modelServer.getRequests() > 0
+            ? modelServer.getPromptChars() / modelServer.getRequests() : 0L);
+        result.addProperty("llmRoundTripP50Ms", round(llm.getQuantile(0.5) * 1000.0));
+        result.addProperty("llmRoundTripP99Ms", round(llm.getQuantile(0.99) * 1000.0));
+
+        // 段階ごとの実時間（1回あたりのミリ秒）
+        JsonObject wall = new JsonObject();
+        wall.addProperty("visionMs", perCall(visionNanos, visionScans));
+        wall.addProperty("thinkMs", perCall(thinkNanos, decisions));
+        wall.addProperty("taskCycleMs", perCall(taskNanos, totalTicks / TICKS_PER_SECOND));
+        wall.addProperty("botTickUs", round(botNanos / 1000.0 / Math.max(1L, totalTicks)));
+        result.add("wallPerCall", wall);
+        return result;
+    }
+
+    private static double perCall(long nanos, long calls) {
+        return round(nanos / 1_000_000.0 / Math.max(1L, calls));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000.0) / 1000.0;
+    }
+
+    private int intOption(String key, int defaultValue) {
+        return options.containsKey(key) ? Integer.parseInt(options.get(key)) : defaultValue;
+    }
+
+    private long longOption(String key, long defaultValue) {
+        return options.containsKey(key) ? Long.parseLong(options.get(key)) : defaultValue;
+    }
+}
@@ -0,0 +1,53 @@
+package plugin.midorin.info.aIminer.sim;
+
+/**
+ * スタブのモデルサーバーが返す応答を決める
+ */
+public interface ModelPolicy {
+    /**
+     * @param systemPrompt システムプロンプト
+     * @param userMessage AIServerClientが組み立てたユーザーメッセージ（現在の状態）
+     * @return モデルの応答
+     */
+    Reply respond(String systemPrompt, String userMessage);
+
+    /**
+     * 応答本文（AIServerClientが解析するJSON）と、分かっていれば応答時間・トークン数（不明なら-1）
+     */
+    final class Reply {
+        private final String content;
+        private final long latencyMillis;
+        private final long promptTokens;
+        private final long completionTokens;
+
+        public Reply(String content, long latencyMillis, long promptTokens, long completionTokens) {
+            this.content = content;
+            this.latencyMillis = latencyMillis;
+            this.promptTokens = promptTokens;
+            this.completionTokens = completionTokens;
+        }
+
+        /**
+         * 応答本文だけの応答（応答時間・トークン数は不明）
+         */
+        public static Reply of(String content) {
+            return new Reply(content, -1L, -1L, -1L);
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public long getPromptTokens() {
+            return promptTokens;
+        }
+
+        public long getCompletionTokens() {
+            return completionTokens;
+        }
+    }
+}
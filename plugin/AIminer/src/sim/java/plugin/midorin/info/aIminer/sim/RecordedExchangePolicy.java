@@ -0,0 +1,136 @@
+package plugin.midorin.info.aIminer.sim;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import plugin.midorin.info.aIminer.ai.ExchangeRecorder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ExchangeRecorderが記録したやり取りを、記録された応答時間・トークン数とともに返す
+ * 同じプロンプト（システム + ユーザー）の記録があればそれを返し、なければ記録順に返す
+ * （プロンプトの組み立てを変えた後でも再生でき、一致した割合で変化の大きさが分かる）
+ * 記録を最後まで返したら最初に戻る
+ */
+public class RecordedExchangePolicy implements ModelPolicy {
+    private final List<Exchange> exchanges;
+    private final Map<String, Deque<Exchange>> byPrompt = new HashMap<>();
+    private int next;
+    private long matched;
+    private long unmatched;
+
+    private RecordedExchangePolicy(List<Exchange> exchanges) {
+        this.exchanges = exchanges;
+        for (Exchange exchange : exchanges) {
+            byPrompt.computeIfAbsent(exchange.promptKey, key -> new ArrayDeque<>()).add(exchange);
+        }
+    }
+
+    /**
+     * 記録ファイル（ローテーションされた .1, .2, … も古い順に読む）から読み込む
+     *
+     * @param purpose この用途のやり取りだけを使う（nullならすべて）
+     * @throws IllegalArgumentException やり取りが1つも見つからない場合
+     */
+    public static RecordedExchangePolicy load(Path path, String purpose) throws IOException {
+        List<Path> files = ExchangeRecorder.files(path);
+        List<Exchange> exchanges = new ArrayList<>();
+        for (Path file : files) {
+            Map<String, String> systemPrompts = new HashMap<>();
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    JsonObject record = JsonParser.parseString(line).getAsJsonObject();
+                    String kind = record.get("kind").getAsString();
+                    if (kind.equals("system")) {
+                        systemPrompts.put(record.get("hash").getAsString(), record.get("text").getAsString());
+                    } else if (kind.equals("exchange")
+                            && (purpose == null || purpose.equals(record.get("purpose").getAsString()))) {
+                        String systemPrompt = systemPrompts.getOrDefault(record.get("system").getAsString(), "");
+                        exchanges.add(new Exchange(promptKey(systemPrompt, record.get("user").getAsString()),
+                            string(record.get("response")), record.get("latencyMs").getAsLong(),
+                            number(record.get("promptTokens")), number(record.get("completionTokens"))));
+                    }
+                }
+            }
+        }
+        if (exchanges.isEmpty()) {
+            throw new IllegalArgumentException("No recorded exchanges in " + path);
+        }
+        return new RecordedExchangePolicy(exchanges);
+    }
+
+    public int size() {
+        return exchanges.size();
+    }
+
+    /**
+     * プロンプトが記録と一致した回数
+     */
+    public synchronized long getMatched() {
+        return matched;
+    }
+
+    public synchronized long getUnmatched() {
+        return unmatched;
+    }
+
+    @Override
+    public synchronized Reply respond(String systemPrompt, String userMessage) {
+        Exchange exchange;
+        Deque<Exchange> candidates = byPrompt.get(promptKey(systemPrompt, userMessage));
+        if (candidates != null) {
+            // 同じプロンプトが何度も記録されていれば順番に返す
+            exchange = candidates.poll();
+            candidates.add(exchange);
+            matched++;
+        } else {
+            exchange = exchanges.get(next);
+            next = (next + 1) % exchanges.size();
+            unmatched++;
+        }
+        return new Reply(exchange.response, exchange.latencyMillis, exchange.promptTokens, exchange.completionTokens);
+    }
+
+    private static String promptKey(String systemPrompt, String userMessage) {
+        return ExchangeRecorder.hash(systemPrompt + "\n" + userMessage);
+    }
+
+    private static String string(JsonElement element) {
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static long number(JsonElement element) {
+        return element == null || element.isJsonNull() ? -1L : element.getAsLong();
+    }
+
+    private static final class Exchange {
+        final String promptKey;
+        final String response;
+        final long latencyMillis;
+        final long promptTokens;
+        final long completionTokens;
+
+        Exchange(String promptKey, String response, long latencyMillis, long promptTokens, long completionTokens) {
+            this.promptKey = promptKey;
+            this.response = response;
+            this.latencyMillis = latencyMillis;
+            this.promptTokens = promptTokens;
+            this.completionTokens = completionTokens;
+        }
+    }
+}
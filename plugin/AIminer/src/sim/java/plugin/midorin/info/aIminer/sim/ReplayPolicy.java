@@ -0,0 +1,69 @@
+package plugin.midorin.info.aIminer.sim;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 記録されたモデルの応答を順番に返す（最後まで返したら最初に戻る）
+ * 会話ログ（*.md）の ```json ブロックのうち、new_tasks / new_task を含むものを応答として使う
+ * プロンプトの内容は見ないため、座標はワールドと合わないことがある（解析・実行の負荷を見るためのもの）
+ */
+public class ReplayPolicy implements ModelPolicy {
+    private static final Pattern JSON_BLOCK = Pattern.compile("```json\\s*\\n(.*?)```", Pattern.DOTALL);
+
+    private final List<String> responses;
+    private int next;
+
+    private ReplayPolicy(List<String> responses) {
+        this.responses = responses;
+    }
+
+    /**
+     * ファイル・ディレクトリ（直下の*.md）から応答を集める
+     *
+     * @throws IllegalArgumentException 応答が1つも見つからない場合
+     */
+    public static ReplayPolicy load(Path source) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(source)) {
+            try (Stream<Path> stream = Files.list(source)) {
+                stream.filter(path -> path.getFileName().toString().endsWith(".md")).sorted().forEach(files::add);
+            }
+        } else {
+            files.add(source);
+        }
+
+        List<String> responses = new ArrayList<>();
+        for (Path file : files) {
+            Matcher matcher = JSON_BLOCK.matcher(Files.readString(file, StandardCharsets.UTF_8));
+            while (matcher.find()) {
+                String json = matcher.group(1).trim();
+                if (json.contains("\"new_tasks\"") || json.contains("\"new_task\"")) {
+                    responses.add(json);
+                }
+            }
+        }
+        if (responses.isEmpty()) {
+            throw new IllegalArgumentException("No recorded responses with new_tasks in " + source);
+        }
+        return new ReplayPolicy(responses);
+    }
+
+    public int size() {
+        return responses.size();
+    }
+
+    @Override
+    public synchronized Reply respond(String systemPrompt, String userMessage) {
+        String response = responses.get(next);
+        next = (next + 1) % responses.size();
+        return Reply.of(response);
+    }
+}
@@ -0,0 +1,48 @@
+package plugin.midorin.info.aIminer.sim;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 記録したLLMとのやり取りを返すHTTPサーバー（GPUなしで本物のサーバー・プラグインを動かす）
+ * プラグインのai-server.urlをこのサーバーに向ければ、記録された応答を記録された応答時間で受け取れる
+ * （backend.typeはopenai・llamacpp・ollamaのどれでもよい）
+ *
+ * 引数は key=value の形式:
+ *   file=記録ファイル（必須） port=1234 latency-scale=1.0（0で待たない） purpose=decide（省略ですべて）
+ */
+public final class ReplayServer {
+    private ReplayServer() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Arguments must be key=value: " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        if (!options.containsKey("file")) {
+            throw new IllegalArgumentException("file=<recorded exchanges> is required");
+        }
+
+        RecordedExchangePolicy policy = RecordedExchangePolicy.load(Path.of(options.get("file")),
+            options.get("purpose"));
+        StubModelServer server = new StubModelServer(policy,
+            Double.parseDouble(options.getOrDefault("latency-scale", "1.0")));
+        server.start(Integer.parseInt(options.getOrDefault("port", "1234")));
+        System.out.printf("Replaying %d exchanges at %s (latency x%s)%n", policy.size(), server.getUrl(),
+            options.getOrDefault("latency-scale", "1.0"));
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            System.out.printf("Served %d requests (%d matched a recorded prompt)%n",
+                server.getRequests(), policy.getMatched());
+        }));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,128 @@
+package plugin.midorin.info.aIminer.sim;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * プロンプトの「周囲のブロック」だけを見て決まった手順で行動するモデルの代わり
+ * - 樫の原木があれば一番近いものを掘る（MINE_WOOD）
+ * - なければ一番近い石を掘る（MINE_STONE）
+ * - どちらもなければ近くのランダムな地点へ移動する（MOVE_TO）
+ * 同じ目標はMAX_ATTEMPTS回までしか選ばない（届かない高さの原木などで止まらないように）
+ * 数回に1回、状況報告のCHATを足す
+ */
+public class ScriptedPolicy implements ModelPolicy {
+    private static final Pattern BLOCK_LINE = Pattern.compile(
+        "^\\s*- ([A-Z_]+) \\((-?\\d+), (-?\\d+), (-?\\d+)\\) 距離:([\\d.]+)$", Pattern.MULTILINE);
+    private static final Pattern POSITION_LINE = Pattern.compile(
+        "現在位置\\S*?:\\s*x=(-?[\\d.]+), y=(-?[\\d.]+), z=(-?[\\d.]+)");
+    private static final int MAX_ATTEMPTS = 2;
+    private static final int CHAT_EVERY = 6;
+    private static final int EXPLORE_RANGE = 12;
+
+    private final Gson gson = new Gson();
+    private final Random random;
+    private final Map<String, Integer> attempts = new HashMap<>();
+    private int decisions;
+
+    public ScriptedPolicy(long seed) {
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public synchronized Reply respond(String systemPrompt, String userMessage) {
+        decisions++;
+        List<Map<String, Object>> tasks = new ArrayList<>();
+        String thought;
+
+        int[] log = nearest(userMessage, "OAK_LOG");
+        int[] stone = log == null ? nearest(userMessage, "STONE") : null;
+        if (log != null) {
+            tasks.add(task("MINE_WOOD", log, "一番近い原木"));
+            thought = "原木が見えるので掘る";
+        } else if (stone != null) {
+            tasks.add(task("MINE_STONE", stone, "一番近い石"));
+            thought = "原木がないので石を掘る";
+        } else {
+            int[] position = position(userMessage);
+            int[] target = {
+                position[0] + random.nextInt(EXPLORE_RANGE * 2 + 1) - EXPLORE_RANGE,
+                position[1],
+                position[2] + random.nextInt(EXPLORE_RANGE * 2 + 1) - EXPLORE_RANGE
+            };
+            tasks.add(task("MOVE_TO", target, "探索"));
+            thought = "掘れるものがないので移動する";
+        }
+        if (decisions % CHAT_EVERY == 0) {
+            Map<String, Object> chat = new LinkedHashMap<>();
+            chat.put("type", "CHAT");
+            chat.put("parameters", Map.of("message", thought));
+            chat.put("reason", "状況報告");
+            tasks.add(chat);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("thought", thought);
+        response.put("memory_updates", Map.of());
+        response.put("new_tasks", tasks);
+        return Reply.of(gson.toJson(response));
+    }
+
+    /**
+     * 指定した種類のブロックのうち、まだ選び尽くしていない一番近いもの（なければnull）
+     */
+    private int[] nearest(String userMessage, String blockType) {
+        Matcher matcher = BLOCK_LINE.matcher(userMessage);
+        int[] best = null;
+        double bestDistance = Double.MAX_VALUE;
+        while (matcher.find()) {
+            if (!matcher.group(1).equals(blockType)) {
+                continue;
+            }
+            int[] position = {
+                Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4))
+            };
+            double distance = Double.parseDouble(matcher.group(5));
+            if (distance < bestDistance && attempts.getOrDefault(key(position), 0) < MAX_ATTEMPTS) {
+                best = position;
+                bestDistance = distance;
+            }
+        }
+        if (best != null) {
+            attempts.merge(key(best), 1, Integer::sum);
+        }
+        return best;
+    }
+
+    private static int[] position(String userMessage) {
+        Matcher matcher = POSITION_LINE.matcher(userMessage);
+        if (!matcher.find()) {
+            return new int[] {0, 64, 0};
+        }
+        return new int[] {
+            (int) Math.floor(Double.parseDouble(matcher.group(1))),
+            (int) Math.floor(Double.parseDouble(matcher.group(2))),
+            (int) Math.floor(Double.parseDouble(matcher.group(3)))
+        };
+    }
+
+    private static Map<String, Object> task(String type, int[] position, String reason) {
+        Map<String, Object> task = new LinkedHashMap<>();
+        task.put("type", type);
+        task.put("parameters", Map.of("x", position[0], "y", position[1], "z", position[2]));
+        task.put("reason", reason);
+        return task;
+    }
+
+    private static String key(int[] position) {
+        return position[0] + "," + position[1] + "," + position[2];
+    }
+}
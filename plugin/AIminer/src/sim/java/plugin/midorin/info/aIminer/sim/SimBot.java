@@ -0,0 +1,250 @@
+package plugin.midorin.info.aIminer.sim;
+
+import org.bukkit.Material;
+import org.bukkit.command.CommandSender;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * シミュレーション用のボット（データパックの動きを1tickずつ再現する）
+ * - xaim: 目標の1ブロック手前まで歩く
+ * - oakset / stoneset + xoak_on / xstone_on: 目標まで歩き、4.5ブロック以内で立ち止まっている間に採掘を進める
+ *   （樫の原木は60tick、石は23tick。目標のブロックが樫の原木・石でなければ何も掘れない）
+ * - say: チャットの回数を数えるだけ
+ * 移動は障害物を無視して直線で歩き、高さは地面に合わせる
+ */
+public class SimBot {
+    private static final String FUNCTION_PREFIX = "function imuzen127x74:";
+    private static final Pattern ARGUMENTS = Pattern.compile("\\{x:(-?\\d+),y:(-?\\d+),z:(-?\\d+)}");
+    private static final double WALK_SPEED = 0.2159;  // ブロック/tick（歩き 4.317ブロック/秒）
+    private static final double REACH = 4.5;
+    private static final double MINING_STOP_DISTANCE = 3.0;
+    private static final double AIM_STOP_DISTANCE = 1.0;
+    private static final int OAK_TICKS = 60;
+    private static final int STONE_TICKS = 23;
+
+    private enum Goal { NONE, AIM, OAK, STONE }
+
+    private final SimWorld world;
+    private double x;
+    private double y;
+    private double z;
+
+    private Goal goal = Goal.NONE;
+    private int[] aimTarget;
+    private int[] oakTarget;
+    private int[] stoneTarget;
+    private boolean oakOn;
+    private boolean stoneOn;
+    private int minepoint;
+
+    private final Map<String, Integer> inventory = new LinkedHashMap<>();
+    private long blocksMined;
+    private long ticksMoving;
+    private long ticksMining;
+    private long chatMessages;
+    private long unknownCommands;
+
+    public SimBot(SimWorld world, int spawnX, int spawnZ) {
+        this.world = world;
+        this.x = spawnX + 0.5;
+        this.z = spawnZ + 0.5;
+        this.y = world.groundY(spawnX, spawnZ);
+    }
+
+    /**
+     * サーバーに送られたコマンドを解釈する
+     *
+     * @return コマンドが成功したか（知らないコマンドは失敗）
+     */
+    public boolean dispatch(CommandSender sender, String command) {
+        if (command.startsWith("say ")) {
+            chatMessages++;
+            return true;
+        }
+        if (!command.startsWith(FUNCTION_PREFIX)) {
+            unknownCommands++;
+            return false;
+        }
+        int space = command.indexOf(' ', FUNCTION_PREFIX.length());
+        String name = command.substring(FUNCTION_PREFIX.length(), space < 0 ? command.length() : space);
+        int[] position = null;
+        if (space >= 0) {
+            Matcher matcher = ARGUMENTS.matcher(command.substring(space + 1));
+            if (!matcher.matches()) {
+                unknownCommands++;
+                return false;
+            }
+            position = new int[] {
+                Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3))
+            };
+        }
+
+        // 座標を取る関数（xaim, oakset, stoneset）とそれ以外で引数の有無が合わなければ失敗
+        if ((name.equals("xaim") || name.endsWith("set")) != (position != null)) {
+            unknownCommands++;
+            return false;
+        }
+
+        switch (name) {
+            case "xaim" -> {
+                aimTarget = position;
+                goal = Goal.AIM;
+            }
+            case "oakset" -> oakTarget = position;
+            case "stoneset" -> stoneTarget = position;
+            case "xoak_on" -> {
+                oakOn = true;
+                goal = Goal.OAK;
+            }
+            case "xstone_on" -> {
+                stoneOn = true;
+                goal = Goal.STONE;
+            }
+            case "xoak_off" -> oakOn = false;
+            case "xstone_off" -> stoneOn = false;
+            case "summanekin", "sumpig" -> {
+                // 召喚済みとして扱う
+            }
+            default -> {
+                unknownCommands++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 1tick進める（移動 → 採掘）
+     */
+    public void tick() {
+        boolean moved = walk();
+        if (moved) {
+            ticksMoving++;
+        }
+        mine(moved);
+    }
+
+    private boolean walk() {
+        int[] target;
+        double stopDistance;
+        switch (goal) {
+            case AIM -> {
+                target = aimTarget;
+                stopDistance = AIM_STOP_DISTANCE;
+            }
+            case OAK -> {
+                target = oakOn && isBlock(oakTarget, Material.OAK_LOG) ? oakTarget : null;
+                stopDistance = MINING_STOP_DISTANCE;
+            }
+            case STONE -> {
+                target = stoneOn && isBlock(stoneTarget, Material.STONE) ? stoneTarget : null;
+                stopDistance = MINING_STOP_DISTANCE;
+            }
+            default -> {
+                return false;
+            }
+        }
+        if (target == null) {
+            goal = Goal.NONE;
+            return false;
+        }
+
+        double dx = target[0] + 0.5 - x;
+        double dz = target[2] + 0.5 - z;
+        double distance = Math.sqrt(dx * dx + dz * dz);
+        if (distance <= stopDistance) {
+            if (goal == Goal.AIM) {
+                goal = Goal.NONE;
+            }
+            return false;
+        }
+        double step = Math.min(WALK_SPEED, distance - stopDistance);
+        x = world.clamp(x + dx / distance * step);
+        z = world.clamp(z + dz / distance * step);
+        y = world.groundY((int) Math.floor(x), (int) Math.floor(z));
+        return true;
+    }
+
+    private void mine(boolean moved) {
+        boolean nearOak = oakOn && withinReach(oakTarget);
+        boolean nearStone = stoneOn && withinReach(stoneTarget);
+        // 歩いている間・目標から離れている間は採掘が進まない
+        if (moved || !nearOak && !nearStone) {
+            minepoint = 0;
+            return;
+        }
+        minepoint++;
+        ticksMining++;
+        if (nearOak && minepoint >= OAK_TICKS && isBlock(oakTarget, Material.OAK_LOG)) {
+            breakBlock(oakTarget, "minecraft:oak_log");
+            minepoint -= OAK_TICKS;
+        } else if (nearStone && minepoint >= STONE_TICKS && isBlock(stoneTarget, Material.STONE)) {
+            breakBlock(stoneTarget, "minecraft:cobblestone");
+            minepoint -= STONE_TICKS;
+        }
+    }
+
+    private void breakBlock(int[] target, String item) {
+        world.set(target[0], target[1], target[2], Material.AIR);
+        inventory.merge(item, 1, Integer::sum);
+        blocksMined++;
+    }
+
+    private boolean withinReach(int[] target) {
+        if (target == null) {
+            return false;
+        }
+        double dx = target[0] + 0.5 - x;
+        double dy = target[1] + 0.5 - y;
+        double dz = target[2] + 0.5 - z;
+        return dx * dx + dy * dy + dz * dz <= REACH * REACH;
+    }
+
+    private boolean isBlock(int[] target, Material material) {
+        return target != null && world.getType(target[0], target[1], target[2]) == material;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    /**
+     * アイテムID → 個数（取得順）
+     */
+    public Map<String, Integer> getInventory() {
+        return Collections.unmodifiableMap(inventory);
+    }
+
+    public long getBlocksMined() {
+        return blocksMined;
+    }
+
+    public long getTicksMoving() {
+        return ticksMoving;
+    }
+
+    public long getTicksMining() {
+        return ticksMining;
+    }
+
+    public long getChatMessages() {
+        return chatMessages;
+    }
+
+    public long getUnknownCommands() {
+        return unknownCommands;
+    }
+}
@@ -0,0 +1,173 @@
+package plugin.midorin.info.aIminer.sim;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * シミュレーション用のBukkit環境（サーバーなしで動かす）
+ * - Server: コマンドはSimBotに渡す（データパック関数とsayだけを解釈する）
+ * - オンラインのプレイヤー: ボットのオーナー1人（移動タスクのコマンド実行者になる）
+ * - ワールド: SimWorldのブロックをgetTypeで返す
+ * 1つのJVMで1回だけ作れる（Bukkit.setServerは1回しか呼べないため）
+ */
+public final class SimEnvironment {
+    private final Logger logger;
+    private final JavaPlugin plugin;
+    private final World world;
+    private final File dataFolder;
+
+    private SimEnvironment(Logger logger, JavaPlugin plugin, World world, File dataFolder) {
+        this.logger = logger;
+        this.plugin = plugin;
+        this.world = world;
+        this.dataFolder = dataFolder;
+    }
+
+    /**
+     * 環境を作り、Serverを差し替える
+     *
+     * @param logLevel プラグインのログの出力レベル
+     */
+    @SuppressWarnings("deprecation")   // テスト用のコンストラクタ
+    public static SimEnvironment create(SimWorld simWorld, SimBot bot, Level logLevel) {
+        if (Bukkit.getServer() != null) {
+            throw new IllegalStateException("Bukkit server is already set");
+        }
+        Logger logger = Logger.getLogger("AIminer-sim");
+        logger.setLevel(logLevel);
+        ConsoleCommandSender console = console();
+        Player owner = owner();
+        Server server = proxy(Server.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getLogger" -> logger;
+            case "getConsoleSender" -> console;
+            case "dispatchCommand" -> bot.dispatch((CommandSender) args[0], (String) args[1]);
+            case "getOnlinePlayers" -> List.of(owner);
+            case "getWorlds" -> List.of();
+            case "isPrimaryThread" -> true;
+            case "getName", "getVersion", "getBukkitVersion" -> "sim";
+            default -> defaultValue(method.getReturnType(), proxy, method.getName(), args);
+        });
+        Bukkit.setServer(server);
+
+        File dataFolder = tempDirectory("aiminer-sim");
+        JavaPlugin plugin = new SimPlugin(new JavaPluginLoader(server), dataFolder);
+        plugin.getLogger().setLevel(logLevel);
+        return new SimEnvironment(logger, plugin, world(simWorld), dataFolder);
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
+
+    public JavaPlugin getPlugin() {
+        return plugin;
+    }
+
+    /**
+     * SimWorldを読むワールド（ブロックの種類だけを返す）
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * 脳ファイルなどを置く作業ディレクトリ（JVM終了時に消す）
+     */
+    public File getDataFolder() {
+        return dataFolder;
+    }
+
+    private static World world(SimWorld simWorld) {
+        UUID worldId = UUID.randomUUID();
+        return proxy(World.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getType" -> args.length == 3 && args[0] instanceof Integer
+                ? simWorld.getType((int) args[0], (int) args[1], (int) args[2]) : Material.AIR;
+            case "getUID" -> worldId;
+            case "getName" -> "sim";
+            case "getMinHeight" -> SimWorld.MIN_Y;
+            case "getMaxHeight" -> SimWorld.MAX_Y;
+            case "getNearbyEntities", "getEntities", "getPlayers" -> List.of();
+            case "isChunkLoaded" -> false;
+            default -> defaultValue(method.getReturnType(), proxy, method.getName(), args);
+        });
+    }
+
+    private static ConsoleCommandSender console() {
+        return proxy(ConsoleCommandSender.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getName" -> "CONSOLE";
+            case "isOp", "hasPermission" -> true;
+            default -> defaultValue(method.getReturnType(), proxy, method.getName(), args);
+        });
+    }
+
+    private static Player owner() {
+        return proxy(Player.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getName" -> "sim-owner";
+            case "isOnline", "isOp", "hasPermission" -> true;
+            default -> defaultValue(method.getReturnType(), proxy, method.getName(), args);
+        });
+    }
+
+    private static File tempDirectory(String prefix) {
+        try {
+            File directory = Files.createTempDirectory(prefix).toFile();
+            directory.deleteOnExit();
+            return directory;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(SimEnvironment.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private static Object defaultValue(Class<?> type, Object proxy, String name, Object[] args) {
+        switch (name) {
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return args[0] == proxy;
+            case "toString":
+                return "sim";
+            default:
+                break;
+        }
+        // プリミティブは0（falseなど）を返す
+        if (type.isPrimitive() && type != void.class) {
+            return Array.get(Array.newInstance(type, 1), 0);
+        }
+        return null;
+    }
+
+    /**
+     * テスト用コンストラクタで作るプラグイン（プラグインのクラスローダーを経由しない）
+     */
+    @SuppressWarnings({"deprecation", "removal"})
+    private static final class SimPlugin extends JavaPlugin {
+        SimPlugin(JavaPluginLoader loader, File dataFolder) {
+            super(loader, new PluginDescriptionFile("AIminer", "sim", SimPlugin.class.getName()),
+                dataFolder, new File(dataFolder, "AIminer.jar"));
+        }
+    }
+}
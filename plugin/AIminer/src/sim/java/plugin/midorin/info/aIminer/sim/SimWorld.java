@@ -0,0 +1,168 @@
+package plugin.midorin.info.aIminer.sim;
+
+import org.bukkit.Material;
+
+import java.util.Random;
+
+/**
+ * シミュレーション用のメモリ上のワールド（正方形の範囲、y = MIN_Y〜MAX_Y - 1）
+ * 地表はy=64前後のなだらかな起伏で、高いところは石が露出している。地表にはところどころ樫の木が生える
+ * 範囲外は、地下なら石、それ以外は空気として扱う
+ * ブロックはパレットの番号（1バイト）で持つ
+ */
+public class SimWorld {
+    public static final int MIN_Y = 32;
+    public static final int MAX_Y = 96;
+    private static final int HEIGHT = MAX_Y - MIN_Y;
+
+    private static final Material[] PALETTE = {
+        Material.AIR, Material.GRASS_BLOCK, Material.DIRT, Material.STONE,
+        Material.COAL_ORE, Material.IRON_ORE, Material.OAK_LOG, Material.OAK_LEAVES
+    };
+
+    private final int size;
+    private final int minXZ;
+    private final byte[] blocks;
+
+    /**
+     * @param size 一辺のブロック数（原点を中心にする）
+     * @param seed 地形の乱数の種（同じ種なら同じワールド）
+     */
+    public SimWorld(int size, long seed) {
+        this.size = size;
+        this.minXZ = -size / 2;
+        this.blocks = new byte[size * size * HEIGHT];
+        generate(new Random(seed));
+    }
+
+    private void generate(Random random) {
+        double phaseX = random.nextDouble() * Math.PI * 2;
+        double phaseZ = random.nextDouble() * Math.PI * 2;
+        for (int x = minXZ; x < minXZ + size; x++) {
+            for (int z = minXZ; z < minXZ + size; z++) {
+                int surface = 64 + (int) Math.round(2.5 * Math.sin(x / 9.0 + phaseX) + 2.5 * Math.sin(z / 13.0 + phaseZ));
+                boolean outcrop = surface >= 67;
+                for (int y = MIN_Y; y <= surface; y++) {
+                    Material material;
+                    if (y < surface - 3) {
+                        int roll = random.nextInt(150);
+                        material = roll < 3 ? Material.COAL_ORE : roll == 3 ? Material.IRON_ORE : Material.STONE;
+                    } else if (outcrop && y >= surface - 1) {
+                        material = Material.STONE;
+                    } else {
+                        material = y == surface ? Material.GRASS_BLOCK : Material.DIRT;
+                    }
+                    set(x, y, z, material);
+                }
+            }
+        }
+
+        // 木（幹4〜6ブロック、葉は幹の上の方を囲む）
+        for (int x = minXZ + 3; x < minXZ + size - 3; x++) {
+            for (int z = minXZ + 3; z < minXZ + size - 3; z++) {
+                if (random.nextInt(70) != 0 || getType(x, groundY(x, z) - 1, z) != Material.GRASS_BLOCK
+                        || hasLogNearby(x, z)) {
+                    continue;
+                }
+                int base = groundY(x, z);
+                int trunk = 4 + random.nextInt(3);
+                for (int dy = trunk - 2; dy <= trunk + 1; dy++) {
+                    int radius = dy > trunk - 1 ? 1 : 2;
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        for (int dz = -radius; dz <= radius; dz++) {
+                            if (getType(x + dx, base + dy, z + dz) == Material.AIR) {
+                                set(x + dx, base + dy, z + dz, Material.OAK_LEAVES);
+                            }
+                        }
+                    }
+                }
+                for (int dy = 0; dy < trunk; dy++) {
+                    set(x, base + dy, z, Material.OAK_LOG);
+                }
+            }
+        }
+    }
+
+    private boolean hasLogNearby(int x, int z) {
+        for (int dx = -3; dx <= 3; dx++) {
+            for (int dz = -3; dz <= 3; dz++) {
+                int y = groundY(x + dx, z + dz);
+                if (getType(x + dx, y, z + dz) == Material.OAK_LOG) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public Material getType(int x, int y, int z) {
+        if (y >= MAX_Y) {
+            return Material.AIR;
+        }
+        if (y < MIN_Y) {
+            return Material.STONE;
+        }
+        int index = index(x, y, z);
+        return index < 0 ? Material.AIR : PALETTE[blocks[index]];
+    }
+
+    /**
+     * ブロックを置き換える（パレットにない種類は空気になる）
+     */
+    public void set(int x, int y, int z, Material material) {
+        int index = y < MIN_Y || y >= MAX_Y ? -1 : index(x, y, z);
+        if (index < 0) {
+            return;
+        }
+        byte id = 0;
+        for (int i = 0; i < PALETTE.length; i++) {
+            if (PALETTE[i] == material) {
+                id = (byte) i;
+                break;
+            }
+        }
+        blocks[index] = id;
+    }
+
+    /**
+     * 立てる高さ（木の幹・葉を除いた一番上のブロックの1つ上）
+     */
+    public int groundY(int x, int z) {
+        for (int y = MAX_Y - 1; y >= MIN_Y; y--) {
+            Material material = getType(x, y, z);
+            if (material != Material.AIR && material != Material.OAK_LOG && material != Material.OAK_LEAVES) {
+                return y + 1;
+            }
+        }
+        return MIN_Y;
+    }
+
+    /**
+     * 座標を範囲内に収める（端から1ブロック内側）
+     */
+    public double clamp(double coordinate) {
+        return Math.max(minXZ + 1, Math.min(minXZ + size - 2, coordinate));
+    }
+
+    /**
+     * 範囲内にある指定した種類のブロックの数
+     */
+    public int count(Material material) {
+        int count = 0;
+        for (byte id : blocks) {
+            if (PALETTE[id] == material) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int index(int x, int y, int z) {
+        int localX = x - minXZ;
+        int localZ = z - minXZ;
+        if (localX < 0 || localX >= size || localZ < 0 || localZ >= size) {
+            return -1;
+        }
+        return (localX * size + localZ) * HEIGHT + (y - MIN_Y);
+    }
+}
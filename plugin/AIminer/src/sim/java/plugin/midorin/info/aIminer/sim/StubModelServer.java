@@ -0,0 +1,250 @@
+package plugin.midorin.info.aIminer.sim;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import plugin.midorin.info.aIminer.ai.LlamaCppBackend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LM Studioなどの代わりに応答するHTTPサーバー
+ * ai-server.backend の3種類のAPIに答える（openai: /v1/chat/completions、llamacpp: /completion、
+ * ollama: /api/chat。起動時の確認用の /v1/models・/health・/api/tags も返す）
+ * llamacppの生のプロンプトはテンプレートを外してシステム・ユーザーに分ける（gemmaは正しく分けられないため、
+ * 記録との照合では一致せず記録順の応答になる）
+ * 応答の中身はModelPolicyが決める。トークン数は応答に記録がなければ4文字で1トークンとして概算する
+ * 応答時間が分かっている応答は、その時間 × latencyScale だけ待ってから返す（0なら待たない）
+ * 記録上失敗したやり取りには500を返す
+ * 127.0.0.1で待ち受け、リクエストは1つずつ処理する（ローカルのLLMサーバーと同じ）
+ */
+public class StubModelServer {
+    private final ModelPolicy policy;
+    private final double latencyScale;
+    private final Gson gson = new Gson();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong promptChars = new AtomicLong();
+    private volatile long lastLatencyMillis = -1L;
+    private HttpServer server;
+
+    /**
+     * @param latencyScale 記録された応答時間に掛ける倍率（0で待たない）
+     */
+    public StubModelServer(ModelPolicy policy, double latencyScale) {
+        this.policy = policy;
+        this.latencyScale = Math.max(0.0, latencyScale);
+    }
+
+    /**
+     * 応答するAPIの形式
+     */
+    private enum Api {
+        OPENAI,
+        LLAMACPP,
+        OLLAMA
+    }
+
+    /**
+     * 空いているポートで待ち受ける
+     */
+    public void start() throws IOException {
+        start(0);
+    }
+
+    public void start(int port) throws IOException {
+        // ヘッダーと本文を別々に送るため、Nagleと遅延ACKで応答ごとに約40ms待たされないようにする
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/v1/chat/completions", exchange -> handleCompletion(exchange, Api.OPENAI));
+        server.createContext("/completion", exchange -> handleCompletion(exchange, Api.LLAMACPP));
+        server.createContext("/api/chat", exchange -> handleCompletion(exchange, Api.OLLAMA));
+        server.createContext("/v1/models", exchange -> handleHealth(exchange, "{\"object\":\"list\",\"data\":[]}"));
+        server.createContext("/health", exchange -> handleHealth(exchange, "{\"status\":\"ok\"}"));
+        server.createContext("/api/tags", exchange -> handleHealth(exchange, "{\"models\":[]}"));
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * AIServerClientに渡すURL（http://127.0.0.1:ポート）
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getPromptChars() {
+        return promptChars.get();
+    }
+
+    /**
+     * 最後に返した応答の記録上の応答時間（ミリ秒、不明なら-1。latencyScaleは掛けない）
+     */
+    public long getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    private void handleHealth(HttpExchange exchange, String json) throws IOException {
+        try (exchange) {
+            send(exchange, json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void handleCompletion(HttpExchange exchange, Api api) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String systemPrompt = "";
+            String userMessage = "";
+            try (InputStream in = exchange.getRequestBody()) {
+                JsonObject request = JsonParser.parseString(new String(in.readAllBytes(), StandardCharsets.UTF_8))
+                    .getAsJsonObject();
+                if (api == Api.LLAMACPP) {
+                    String[] messages = splitPrompt(request.get("prompt").getAsString());
+                    systemPrompt = messages[0];
+                    userMessage = messages[1];
+                } else {
+                    for (JsonElement element : request.getAsJsonArray("messages")) {
+                        JsonObject message = element.getAsJsonObject();
+                        String role = message.get("role").getAsString();
+                        if (role.equals("system")) {
+                            systemPrompt = message.get("content").getAsString();
+                        } else if (role.equals("user")) {
+                            userMessage = message.get("content").getAsString();
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            requests.incrementAndGet();
+            promptChars.addAndGet(systemPrompt.length() + userMessage.length());
+
+            ModelPolicy.Reply reply = policy.respond(systemPrompt, userMessage);
+            lastLatencyMillis = reply.getLatencyMillis();
+            if (reply.getLatencyMillis() > 0 && latencyScale > 0) {
+                try {
+                    Thread.sleep(Math.round(reply.getLatencyMillis() * latencyScale));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (reply.getContent() == null) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            int promptChars = systemPrompt.length() + userMessage.length();
+            JsonObject response = switch (api) {
+                case OPENAI -> completion(reply, promptChars);
+                case LLAMACPP -> llamaCppCompletion(reply, promptChars);
+                case OLLAMA -> ollamaChat(reply, promptChars);
+            };
+            send(exchange, gson.toJson(response).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void send(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * llamacppの生のプロンプトをシステム・ユーザーに分ける（どのテンプレートにも合わなければ全体をユーザーとする）
+     */
+    private static String[] splitPrompt(String prompt) {
+        for (LlamaCppBackend.Template template : LlamaCppBackend.Template.values()) {
+            String[] messages = template.split(prompt);
+            if (messages != null) {
+                return messages;
+            }
+        }
+        return new String[] {"", prompt};
+    }
+
+    private static long promptTokens(ModelPolicy.Reply reply, int promptChars) {
+        return reply.getPromptTokens() >= 0 ? reply.getPromptTokens() : Math.max(1, promptChars / 4);
+    }
+
+    private static long completionTokens(ModelPolicy.Reply reply) {
+        return reply.getCompletionTokens() >= 0
+            ? reply.getCompletionTokens() : Math.max(1, reply.getContent().length() / 4);
+    }
+
+    /**
+     * llama.cppの /completion の応答
+     */
+    private static JsonObject llamaCppCompletion(ModelPolicy.Reply reply, int promptChars) {
+        JsonObject response = new JsonObject();
+        response.addProperty("content", reply.getContent());
+        response.addProperty("stop", true);
+        response.addProperty("tokens_evaluated", promptTokens(reply, promptChars));
+        response.addProperty("tokens_predicted", completionTokens(reply));
+        return response;
+    }
+
+    /**
+     * Ollamaの /api/chat の応答
+     */
+    private static JsonObject ollamaChat(ModelPolicy.Reply reply, int promptChars) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", reply.getContent());
+        JsonObject response = new JsonObject();
+        response.addProperty("model", "sim-stub");
+        response.add("message", message);
+        response.addProperty("done", true);
+        response.addProperty("prompt_eval_count", promptTokens(reply, promptChars));
+        response.addProperty("eval_count", completionTokens(reply));
+        return response;
+    }
+
+    private static JsonObject completion(ModelPolicy.Reply reply, int promptChars) {
+        String content = reply.getContent();
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("message", message);
+        choice.addProperty("finish_reason", "stop");
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+
+        long promptTokens = promptTokens(reply, promptChars);
+        long completionTokens = completionTokens(reply);
+        JsonObject usage = new JsonObject();
+        usage.addProperty("prompt_tokens", promptTokens);
+        usage.addProperty("completion_tokens", completionTokens);
+        usage.addProperty("total_tokens", promptTokens + completionTokens);
+
+        JsonObject response = new JsonObject();
+        response.addProperty("object", "chat.completion");
+        response.addProperty("model", "sim-stub");
+        response.add("choices", choices);
+        response.add("usage", usage);
+        return response;
+    }
+}